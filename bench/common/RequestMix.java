@@ -0,0 +1,51 @@
+package common;
+
+import floor.ElevatorRequest;
+
+import java.time.LocalTime;
+import java.util.Random;
+
+/**
+ * The traffic patterns the benchmarks are run with. Requests are generated from a fixed seed so
+ * every run of a benchmark sees the same requests.
+ */
+public enum RequestMix {
+    /** Most passengers travel up from the lobby. */
+    UP_PEAK,
+    /** Most passengers travel down to the lobby. */
+    DOWN_PEAK,
+    /** Passengers travel between random floors. */
+    INTERFLOOR;
+
+    /** The share of peak passengers that start or end at the lobby. */
+    private static final double PEAK_SHARE = 0.8;
+
+    /**
+     * Generate requests for this mix.
+     * @param count the number of requests
+     * @param floors the number of floors in the building
+     * @param seed the random seed
+     * @return the requests, one second apart
+     */
+    public ElevatorRequest[] generate(int count, int floors, long seed) {
+        Random random = new Random(seed);
+        ElevatorRequest[] requests = new ElevatorRequest[count];
+        LocalTime time = LocalTime.of(14, 0);
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(floors);
+            int to = random.nextInt(floors);
+            if (this == UP_PEAK && random.nextDouble() < PEAK_SHARE) {
+                from = 0;
+            } else if (this == DOWN_PEAK && random.nextDouble() < PEAK_SHARE) {
+                to = 0;
+            }
+            if (from == to) {
+                to = from == floors - 1 ? from - 1 : from + 1;
+            }
+            ElevatorRequest.ButtonDirection direction = to > from ? ElevatorRequest.ButtonDirection.UP
+                    : ElevatorRequest.ButtonDirection.DOWN;
+            requests[i] = new ElevatorRequest(time.plusSeconds(i), from, direction, to);
+        }
+        return requests;
+    }
+}
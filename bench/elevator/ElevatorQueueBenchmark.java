@@ -0,0 +1,91 @@
+package elevator;
+
+import common.Config;
+import common.Log;
+import common.RequestMix;
+import floor.ElevatorRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks adding requests to an elevator's queue and taking them off again. The elevator's
+ * thread is not started, so only the queue handling and the state pushed to the Scheduler are measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ElevatorQueueBenchmark {
+
+    /** The number of pre-generated requests, a power of two. */
+    private static final int REQUESTS = 1024;
+
+    @Param({"22", "100"})
+    public int floors;
+
+    @Param({"UP_PEAK", "DOWN_PEAK", "INTERFLOOR"})
+    public RequestMix mix;
+
+    private Elevator elevator;
+    private ElevatorRequest[] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Log.disable();
+        elevator = new Elevator(0, new ElevatorSubsystem(0));
+        requests = mix.generate(REQUESTS, floors, 7);
+    }
+
+    /**
+     * Fill the elevator one request at a time, then empty it.
+     */
+    @Benchmark
+    public int addOneAtATime() {
+        for (int i = 0; i < Config.MAX_PASSENGERS; i++) {
+            elevator.addRequestToElevatorQueue(requests[next++ & (REQUESTS - 1)]);
+        }
+        return drain();
+    }
+
+    /**
+     * Fill the elevator with one group, as destination dispatch does, then empty it.
+     */
+    @Benchmark
+    public int addGroup() {
+        int from = next & (REQUESTS - 1);
+        next += Config.MAX_PASSENGERS;
+        List<ElevatorRequest> group = Arrays.asList(requests).subList(from, Math.min(REQUESTS, from + Config.MAX_PASSENGERS));
+        elevator.addRequestsToElevatorQueue(group);
+        return drain();
+    }
+
+    /**
+     * Take every request off the elevator's queue.
+     * @return the number of requests removed
+     */
+    private int drain() {
+        int removed = 0;
+        while (!elevator.getElevatorQueue().isEmpty()) {
+            elevator.removeRequestFromElevatorQueue();
+            removed++;
+        }
+        return removed;
+    }
+}
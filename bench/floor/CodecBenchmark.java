@@ -0,0 +1,106 @@
+package floor;
+
+import common.RequestMix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding requests for the wire, the work done for every UDP message.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    /** The number of pre-generated requests, a power of two. */
+    private static final int REQUESTS = 1024;
+
+    @Param({"22", "100"})
+    public int floors;
+
+    @Param({"UP_PEAK", "DOWN_PEAK", "INTERFLOOR"})
+    public RequestMix mix;
+
+    private ElevatorRequest[] requests;
+    private byte[][] binary;
+    private byte[][] text;
+    private ByteBuffer buffer;
+    private ElevatorRequest reused;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        requests = mix.generate(REQUESTS, floors, 7);
+        binary = new byte[REQUESTS][];
+        text = new byte[REQUESTS][];
+        for (int i = 0; i < REQUESTS; i++) {
+            ElevatorRequest er = requests[i];
+            binary[i] = er.getBytes();
+            // The text format the requests were sent in before the binary codec
+            text[i] = (er.getTime() + ";" + er.getButtonDirection() + ";" + er.getFloorNumber() + ";" + er.getButtonId()
+                    + ";0;0;NO_FAULT").getBytes(StandardCharsets.UTF_8);
+        }
+        buffer = ByteBuffer.allocate(ElevatorRequestCodec.SIZE);
+        reused = new ElevatorRequest();
+    }
+
+    /**
+     * Encode into a new array, as ElevatorRequest.getBytes does.
+     */
+    @Benchmark
+    public byte[] getBytes() {
+        return requests[next++ & (REQUESTS - 1)].getBytes();
+    }
+
+    /**
+     * Encode into a reused buffer.
+     */
+    @Benchmark
+    public ByteBuffer encodeInto() {
+        buffer.clear();
+        ElevatorRequestCodec.encode(requests[next++ & (REQUESTS - 1)], buffer);
+        return buffer;
+    }
+
+    /**
+     * Decode into a new request, as ElevatorRequest(byte[]) does.
+     */
+    @Benchmark
+    public ElevatorRequest decodeNew() {
+        return new ElevatorRequest(binary[next++ & (REQUESTS - 1)]);
+    }
+
+    /**
+     * Decode into a reused request.
+     */
+    @Benchmark
+    public ElevatorRequest decodeInto() {
+        ElevatorRequestCodec.decode(ByteBuffer.wrap(binary[next++ & (REQUESTS - 1)]), reused);
+        return reused;
+    }
+
+    /**
+     * Decode the older text format.
+     */
+    @Benchmark
+    public ElevatorRequest decodeText() {
+        return new ElevatorRequest(text[next++ & (REQUESTS - 1)]);
+    }
+}
@@ -0,0 +1,81 @@
+package floor;
+
+import common.Log;
+import common.RequestMix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading the input file of requests.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvParserBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"22", "100"})
+    public int floors;
+
+    @Param({"UP_PEAK", "INTERFLOOR"})
+    public RequestMix mix;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Log.disable();
+        file = Files.createTempFile("requests", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (ElevatorRequest er : mix.generate(rows, floors, 7)) {
+                writer.printf("%s; %d; %s; %d;%n", er.getTime(),
+                        er.getFloorNumber(), er.getButtonDirection() == ElevatorRequest.ButtonDirection.UP ? "Up" : "Down",
+                        er.getButtonId());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Parse the file, as the FloorSubsystem does on start up.
+     */
+    @Benchmark
+    public List<ElevatorRequest> parseCSV() {
+        return CSVParser.parseCSV(file.toString());
+    }
+
+    /**
+     * Parse and sort the file by time.
+     */
+    @Benchmark
+    public List<ElevatorRequest> parseAndSortCSV() {
+        return CSVParser.parseAndSortCSV(file.toString());
+    }
+}
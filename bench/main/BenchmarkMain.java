@@ -0,0 +1,34 @@
+package main;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.results.format.ResultFormatType;
+
+/**
+ * Runs the benchmarks with the gc profiler, so the allocation rate is reported next to the
+ * throughput and latency percentiles.
+ */
+public class BenchmarkMain {
+
+    /**
+     * Run the benchmarks.
+     * @param args optional regular expressions selecting the benchmarks, all benchmarks by default
+     * @throws RunnerException If a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result("bench_results.csv");
+        if (args.length == 0) {
+            options.include(".*Benchmark.*");
+        }
+        for (String arg : args) {
+            options.include(arg);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,135 @@
+package scheduler;
+
+import common.Config;
+import common.Log;
+import common.RequestMix;
+import elevator.Elevator;
+import elevator.ElevatorInfo;
+import floor.ElevatorRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks choosing an elevator for a request, from the fleet view the Scheduler keeps.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    /** The number of pre-generated requests, a power of two. */
+    private static final int REQUESTS = 1024;
+
+    /** The number of requests in a destination or batch dispatch batch. */
+    private static final int BATCH = 8;
+
+    @Param({"4", "16", "64"})
+    public int fleetSize;
+
+    @Param({"22", "100"})
+    public int floors;
+
+    @Param({"UP_PEAK", "DOWN_PEAK", "INTERFLOOR"})
+    public RequestMix mix;
+
+    @Param({"NEAREST", "ETA", "DESTINATION", "BATCH"})
+    public String strategy;
+
+    private DispatchStrategy dispatchStrategy;
+    private Scheduler scheduler;
+    private ProcessingRequestState processingState;
+    private FleetStateCache cache;
+    private FleetSnapshot fleet;
+    private ElevatorRequest[] requests;
+    private List<ElevatorRequest> batch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Log.disable();
+        switch (strategy) {
+            case "NEAREST":
+                dispatchStrategy = new NearestCarDispatchStrategy();
+                break;
+            case "ETA":
+                dispatchStrategy = new EtaDispatchStrategy();
+                break;
+            case "BATCH":
+                dispatchStrategy = new BatchDispatchStrategy();
+                break;
+            default:
+                dispatchStrategy = new DestinationDispatchStrategy();
+        }
+        scheduler = new Scheduler();
+        scheduler.setDispatchStrategy(dispatchStrategy);
+        processingState = new ProcessingRequestState();
+
+        // A busy fleet: every elevator has some passengers committed to it
+        Random random = new Random(42);
+        requests = mix.generate(REQUESTS, floors, 7);
+        cache = new FleetStateCache();
+        int r = 0;
+        for (int id = 0; id < fleetSize; id++) {
+            Elevator.State state = random.nextInt(10) == 0 ? Elevator.State.IDLE : Elevator.State.TRANSPORTING;
+            ElevatorRequest.ButtonDirection direction = state == Elevator.State.IDLE ? ElevatorRequest.ButtonDirection.NONE
+                    : random.nextBoolean() ? ElevatorRequest.ButtonDirection.UP : ElevatorRequest.ButtonDirection.DOWN;
+            int committed = state == Elevator.State.IDLE ? 0 : 1 + random.nextInt(Config.MAX_PASSENGERS - 1);
+            cache.update(new ElevatorInfo(id, state, random.nextInt(floors), direction, 0, committed, 1), 0);
+            for (int c = 0; c < committed; c++) {
+                cache.assign(id, requests[r++ % REQUESTS]);
+            }
+        }
+        fleet = cache.snapshot();
+        batch = Arrays.asList(Arrays.copyOf(requests, BATCH));
+    }
+
+    /**
+     * Choose an elevator with the strategy alone.
+     */
+    @Benchmark
+    public int selectElevator() {
+        return dispatchStrategy.selectElevator(requests[next++ & (REQUESTS - 1)], fleet);
+    }
+
+    /**
+     * Choose an elevator the way the Scheduler's ProcessingRequestState does, including its logging.
+     */
+    @Benchmark
+    public int processingRequestState() {
+        return processingState.selectElevator(scheduler, requests[next++ & (REQUESTS - 1)], fleet);
+    }
+
+    /**
+     * Choose elevators for a batch of requests arriving together.
+     */
+    @Benchmark
+    public int[] assignBatch() {
+        return dispatchStrategy.assignBatch(batch, fleet);
+    }
+
+    /**
+     * Take the snapshot of the fleet every dispatch starts from.
+     */
+    @Benchmark
+    public FleetSnapshot snapshot() {
+        return cache.snapshot();
+    }
+}
@@ -0,0 +1,147 @@
+package common;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that puts records in a fixed size ring buffer and writes them to another
+ * handler on its own thread, so logging threads never wait for the console. When the buffer
+ * is full new records are dropped and counted, and the count is written once there is room.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /** The buffered records. */
+    private final LogRecord[] ring;
+
+    /** The index of the oldest buffered record. */
+    private int head;
+
+    /** The number of buffered records. */
+    private int size;
+
+    /** The number of records dropped since the last one was written. */
+    private long dropped;
+
+    /** True while the thread writes a record taken from the buffer. */
+    private boolean writing;
+
+    /** Set once the handler is closed. */
+    private boolean closed;
+
+    /** The handler records are written to. */
+    private final Handler target;
+
+    /**
+     * Create a new handler and start its thread.
+     * @param target the handler records are written to
+     * @param capacity the number of records buffered
+     */
+    public AsyncLogHandler(Handler target, int capacity) {
+        this.target = target;
+        ring = new LogRecord[capacity];
+        Thread thread = new Thread(this::drain, "Log Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (size == ring.length) {
+            dropped++;
+            return;
+        }
+        ring[(head + size) % ring.length] = record;
+        size++;
+        if (size == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Get the number of records dropped and not yet reported.
+     * @return the number of records
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Wait until every buffered record has been written, then flush the target.
+     */
+    @Override
+    public void flush() {
+        synchronized (this) {
+            boolean interrupted = false;
+            while ((size > 0 || writing) && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        target.flush();
+    }
+
+    /**
+     * Write the buffered records and stop the thread.
+     */
+    @Override
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        target.flush();
+    }
+
+    /**
+     * Write records to the target until the handler is closed.
+     */
+    private void drain() {
+        while (true) {
+            LogRecord record;
+            long lost;
+            boolean last;
+            synchronized (this) {
+                writing = false;
+                if (size == 0) {
+                    notifyAll(); // wake flush
+                }
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                record = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                lost = dropped;
+                dropped = 0;
+                last = size == 0;
+                writing = true;
+            }
+            if (lost > 0) {
+                target.publish(new LogRecord(Level.WARNING, lost + " log messages dropped, the log buffer was full"));
+            }
+            target.publish(record);
+            if (last) {
+                target.flush();
+            }
+        }
+    }
+}
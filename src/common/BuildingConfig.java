@@ -0,0 +1,149 @@
+package common;
+
+/**
+ * The size of the building: the number of floors and of elevator cars. Every subsystem sizes
+ * its per-floor and per-car state from the current configuration, so it must be set with
+ * BuildingConfig.set before the systems are created. Floors are numbered from 0.
+ */
+public class BuildingConfig {
+
+    /** The number of floors when none is given. */
+    public static final int DEFAULT_FLOORS = 22;
+
+    /** The number of elevators when none is given. */
+    public static final int DEFAULT_ELEVATORS = 4;
+
+    /** The configuration used by the systems. */
+    private static volatile BuildingConfig current = new BuildingConfig(DEFAULT_FLOORS, DEFAULT_ELEVATORS);
+
+    /** The number of floors. */
+    private final int floors;
+
+    /** The number of elevators. */
+    private final int elevators;
+
+    /** The most passengers an elevator carries. */
+    private final int capacity;
+
+    /**
+     * Create a new configuration with elevators of Config.MAX_PASSENGERS passengers.
+     * @param floors the number of floors, at least 2
+     * @param elevators the number of elevators, at least 0
+     */
+    public BuildingConfig(int floors, int elevators) {
+        this(floors, elevators, Config.MAX_PASSENGERS);
+    }
+
+    /**
+     * Create a new configuration.
+     * @param floors the number of floors, at least 2
+     * @param elevators the number of elevators, at least 0
+     * @param capacity the most passengers an elevator carries, at least 1
+     */
+    public BuildingConfig(int floors, int elevators, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("An elevator must carry at least 1 passenger, not " + capacity);
+        }
+        this.capacity = capacity;
+        if (floors < 2) {
+            throw new IllegalArgumentException("A building needs at least 2 floors, not " + floors);
+        }
+        if (elevators < 0) {
+            throw new IllegalArgumentException("Negative number of elevators: " + elevators);
+        }
+        this.floors = floors;
+        this.elevators = elevators;
+    }
+
+    /**
+     * Get the configuration used by the systems, the one of the SimulationContext of the
+     * calling thread if it has one.
+     * @return the current configuration
+     */
+    public static BuildingConfig get() {
+        SimulationContext context = SimulationContext.scoped();
+        if (context != null && context.config != null) {
+            return context.config;
+        }
+        return current;
+    }
+
+    /**
+     * Change the configuration used by the systems of the process. Must be called before the systems are created.
+     * @param config the new configuration
+     */
+    public static void set(BuildingConfig config) {
+        current = config;
+    }
+
+    /**
+     * Get a copy of this configuration with a different number of floors.
+     * @param floors the number of floors
+     * @return the new configuration
+     */
+    public BuildingConfig withFloors(int floors) {
+        return new BuildingConfig(floors, elevators, capacity);
+    }
+
+    /**
+     * Get a copy of this configuration with a different number of elevators.
+     * @param elevators the number of elevators
+     * @return the new configuration
+     */
+    public BuildingConfig withElevators(int elevators) {
+        return new BuildingConfig(floors, elevators, capacity);
+    }
+
+    /**
+     * Get a copy of this configuration with elevators of a different capacity.
+     * @param capacity the most passengers an elevator carries
+     * @return the new configuration
+     */
+    public BuildingConfig withCapacity(int capacity) {
+        return new BuildingConfig(floors, elevators, capacity);
+    }
+
+    public int getFloors() {
+        return floors;
+    }
+
+    public int getElevators() {
+        return elevators;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Check if a floor is in the building.
+     * @param floor the floor number
+     * @return true if the floor is between 0 and the top floor
+     */
+    public boolean hasFloor(int floor) {
+        return floor >= 0 && floor < floors;
+    }
+
+    /**
+     * Read a --floors or --elevators count from the command line.
+     * @param args the command line
+     * @param i the index of the flag, the count follows it
+     * @return the count
+     * @throws IllegalArgumentException if the count is missing or not a number
+     */
+    public static int parseCount(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a number");
+        }
+        try {
+            return Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(args[i] + " needs a number, not " + args[i + 1]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return floors + " floors, " + elevators + " elevators of " + capacity + " passengers";
+    }
+}
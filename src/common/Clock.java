@@ -0,0 +1,77 @@
+package common;
+
+import java.time.LocalTime;
+
+/**
+ * The time source used by the simulation. All waiting in the elevator, floor and scheduler
+ * systems goes through the current clock so the same logic can be run either in real time
+ * (for the live demo) or on a virtual clock (for offline analysis).
+ */
+public abstract class Clock {
+
+    /** The clock used by the systems. Real time by default. */
+    private static volatile Clock current = new RealTimeClock();
+
+    /**
+     * Get the clock used by the systems, the one of the SimulationContext of the calling
+     * thread if it has one.
+     * @return The current clock.
+     */
+    public static Clock get() {
+        SimulationContext context = SimulationContext.scoped();
+        if (context != null && context.clock != null) {
+            return context.clock;
+        }
+        return current;
+    }
+
+    /**
+     * Change the clock used by the systems of the process. Must be called before the systems are created.
+     * @param clock The new clock.
+     */
+    public static void set(Clock clock) {
+        current = clock;
+    }
+
+    /**
+     * Get the number of milliseconds elapsed on this clock.
+     * @return The current time in milliseconds.
+     */
+    public abstract long millis();
+
+    /**
+     * Get the time of day on this clock.
+     * @return The current time of day.
+     */
+    public abstract LocalTime time();
+
+    /**
+     * Block the calling thread for an amount of time on this clock.
+     * @param millis The time to sleep in milliseconds.
+     * @throws InterruptedException If the thread is interrupted while sleeping.
+     */
+    public abstract void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Run a task once an amount of time has passed on this clock.
+     * @param delay The delay in milliseconds.
+     * @param task The task to run.
+     */
+    public abstract void schedule(long delay, Runnable task);
+
+    /**
+     * Mark a thread as doing work at the current instant. A virtual clock will not move
+     * forward until every held thread is sleeping or has been released. Does nothing in real time.
+     * @param thread The thread doing work.
+     */
+    public void hold(Thread thread) {
+    }
+
+    /**
+     * Mark a thread as no longer doing work, for example before it blocks waiting for
+     * another thread. Does nothing in real time.
+     * @param thread The thread that stopped working.
+     */
+    public void release(Thread thread) {
+    }
+}
@@ -19,6 +19,75 @@ public class Config {
     /** */
     public static final int TRANSIENT_FAULT_TIME = 20000; //20 seconds
 
+    /** The time in milliseconds between pushes of every elevator's state to the Scheduler. */
+    public static final int STATE_HEARTBEAT_TIME = 1000; //1 second
+
+    /** The age in milliseconds after which the Scheduler no longer trusts its view of an elevator. */
+    public static final int FLEET_STATE_MAX_AGE = 3000; //3 seconds
+
+    /** The most dispatched requests of one elevator in a fleet snapshot, the oldest first. Bounds the cost of a dispatch under overload. */
+    public static final int FLEET_SNAPSHOT_STOPS = 16;
+
+    /** The time in milliseconds the Scheduler waits for a GET-INFO reply. */
+    public static final int INFO_POLL_TIMEOUT = 500;
+
+    /** The number of GET-INFO requests the Scheduler sends before giving up. */
+    public static final int INFO_POLL_ATTEMPTS = 3;
+
+    /** The time in milliseconds requests are collected before destination dispatch assigns them. */
+    public static final int DESTINATION_BATCH_WINDOW = 2000; //2 seconds
+
+    /** The time in milliseconds requests are collected before batch dispatch assigns them together. */
+    public static final int BATCH_DISPATCH_WINDOW = 1000; //1 second
+
+    /** The number of floors in a destination zone. Passengers going to the same zone share an elevator. */
+    public static final int DESTINATION_ZONE_FLOORS = 3;
+
+    /** The most messages waiting for the Scheduler's dispatch worker before new ones are dropped. */
+    public static final int INGRESS_QUEUE_SIZE = 4096;
+
+    /** The most messages the Scheduler's dispatch worker takes from its queue at once. */
+    public static final int INGRESS_BATCH_SIZE = 64;
+
+    /** The receive buffer in bytes asked for the Scheduler's socket. */
+    public static final int INGRESS_SOCKET_BUFFER = 1 << 20; //1 MB
+
+    /** The messages a subsystem's inbox in the same process holds without a lock, more wait in an overflow queue. */
+    public static final int INBOX_SIZE = 4096;
+
+    /** The most messages a subsystem has sent to one peer over the network without an acknowledgement. */
+    public static final int RELIABLE_WINDOW = 64;
+
+    /** The retransmission timeout in milliseconds before the round trip to a peer is measured. */
+    public static final int RELIABLE_INITIAL_RTO = 200;
+
+    /** The least retransmission timeout in milliseconds. */
+    public static final int RELIABLE_MIN_RTO = 20;
+
+    /** The most retransmission timeout in milliseconds, after backing off. */
+    public static final int RELIABLE_MAX_RTO = 2000; //2 seconds
+
+    /** The number of times a message is sent before it is given up on. */
+    public static final int RELIABLE_MAX_SENDS = 10;
+
+    /** The time in milliseconds between checks for messages to send again. */
+    public static final int RELIABLE_TICK = 10;
+
+    /** The number of log messages buffered before new ones are dropped. */
+    public static final int LOG_BUFFER_SIZE = 4096;
+
+    /** The most requests sorted in memory at once when a trace is not in time order. */
+    public static final int TRACE_SORT_RUN = 1 << 16;
+
+    /** The bytes of the event journal mapped at once. */
+    public static final int JOURNAL_SEGMENT = 1 << 22; //4 MB
+
+    /** The time in milliseconds between forcing the event journal to disk. */
+    public static final int JOURNAL_FLUSH_TIME = 200;
+
+    /** The time in milliseconds elevator status updates are collected before they are sent to the floors in one batch. */
+    public static final int STATUS_FLUSH_TIME = 100;
+
     /** */
     public static final String TEXTURES = "res/textures";
     public static final int MAX_PASSENGERS = 5;
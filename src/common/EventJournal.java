@@ -0,0 +1,337 @@
+package common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only binary journal of the events of a run: the hall calls and faults that came
+ * in, and the decisions taken on them. Every event is a fixed size record written into a
+ * memory-mapped segment of the file, so an append is a few stores and the records survive the
+ * process crashing. The mapped pages are forced to disk in batches, every
+ * Config.JOURNAL_FLUSH_TIME, and when a segment is full.
+ *
+ * The journal of the process is set with set() before the systems start. Until then get()
+ * returns a journal that drops every event, so the systems can always append.
+ * Read a journal with a JournalReader.
+ */
+public class EventJournal implements Closeable {
+
+    /** The first bytes of a journal file, "EJRN". */
+    public static final int MAGIC = 0x454A524E;
+
+    /** The version of the record layout. */
+    public static final int VERSION = 1;
+
+    /** The size in bytes of the file header: magic, version, record size and a reserved int. */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size in bytes of a record:
+     * type (1), code (1), elevator (2), floor (4), value (4), extra (4), Clock millis (8), time (8).
+     */
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * The kinds of event. The meaning of a record's code, floor, value and extra depends on it.
+     */
+    public enum Type {
+        /** A run starts. Floor is the number of floors, value the number of elevators. */
+        BUILDING,
+        /** The Scheduler received a hall call. Code is the direction, value the destination, extra the fault. */
+        HALL_CALL,
+        /** The Scheduler assigned a hall call to an elevator. Same fields as the hall call. */
+        ASSIGNMENT,
+        /** The Scheduler found no working elevator for a hall call. Same fields as the hall call. */
+        UNASSIGNED,
+        /** The Scheduler changed state. Code is the state. */
+        SCHEDULER_STATE,
+        /** An elevator changed state. Code is the state, floor the elevator's floor. */
+        ELEVATOR_STATE,
+        /** An elevator stopped at a floor. Value is the number of door cycles. */
+        STOP,
+        /** An elevator opened and closed its doors. Code is 1 to load, 0 to unload. */
+        DOOR_CYCLE,
+        /** An elevator dropped a passenger off. Same fields as the hall call. */
+        DROP_OFF,
+        /** An elevator encountered a fault. Code is the fault. */
+        FAULT;
+
+        private static final Type[] TYPES = values();
+
+        /**
+         * Get the type stored in a record.
+         * @param id the stored id
+         * @return the type, or null if no type has the id
+         */
+        public static Type fromId(int id) {
+            return id >= 1 && id <= TYPES.length ? TYPES[id - 1] : null;
+        }
+
+        /**
+         * Get the id stored in a record. 0 is left for the end of the journal.
+         * @return the id
+         */
+        public int getId() {
+            return ordinal() + 1;
+        }
+    }
+
+    /** The journal that drops every event. */
+    static final EventJournal DISABLED = new EventJournal();
+
+    /** The journal of the process. */
+    private static volatile EventJournal journal = DISABLED;
+
+    /** The file, null if disabled. */
+    private final FileChannel channel;
+
+    /** The path of the file, null if disabled. */
+    private final Path path;
+
+    /** The size of a mapped segment. */
+    private final int segmentSize;
+
+    /** The mapped segment being written, null once closed. Guarded by this. */
+    private MappedByteBuffer segment;
+
+    /** The position in the file of the start of the segment. Guarded by this. */
+    private long segmentStart;
+
+    /** The position in the segment up to which it was forced to disk. Guarded by this. */
+    private int flushed;
+
+    /** The number of records appended. Guarded by this. */
+    private long count;
+
+    /** Forces the written records every Config.JOURNAL_FLUSH_TIME, null if disabled. */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Create the journal that drops every event.
+     */
+    private EventJournal() {
+        channel = null;
+        path = null;
+        segmentSize = 0;
+        flusher = null;
+    }
+
+    /**
+     * Create a journal writing to a file.
+     */
+    private EventJournal(Path path, FileChannel channel, int segmentSize) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Event Journal Flush Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, Config.JOURNAL_FLUSH_TIME, Config.JOURNAL_FLUSH_TIME,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a journal file, replacing an existing one.
+     * @param path the file
+     * @return the journal
+     * @throws IOException if the file cannot be created
+     */
+    public static EventJournal open(Path path) throws IOException {
+        return open(path, Config.JOURNAL_SEGMENT);
+    }
+
+    /**
+     * Create a journal file, replacing an existing one, mapped a given number of bytes at a time.
+     * @param path the file
+     * @param segmentSize the size of a mapped segment, rounded down to whole records
+     * @return the journal
+     * @throws IOException if the file cannot be created
+     */
+    public static EventJournal open(Path path, int segmentSize) throws IOException {
+        int size = Math.max(HEADER_SIZE + RECORD_SIZE, segmentSize / RECORD_SIZE * RECORD_SIZE);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new EventJournal(path, channel, size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a journal file and set it as the journal of the process, closed when the JVM
+     * shuts down. For the --journal command line option.
+     * @param path the file
+     * @return true if the journal was created
+     */
+    public static boolean start(String path) {
+        EventJournal eventJournal;
+        try {
+            eventJournal = open(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("IOException: could not create the event journal " + path + ": " + e.getMessage());
+            return false;
+        }
+        set(eventJournal);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                eventJournal.close();
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+            }
+        }, "Event Journal Close"));
+        return true;
+    }
+
+    /**
+     * Get the journal of the process, or of the SimulationContext of the calling thread.
+     * @return the journal, one that drops every event if none was set
+     */
+    public static EventJournal get() {
+        SimulationContext context = SimulationContext.scoped();
+        if (context != null && context.journal != null) {
+            return context.journal;
+        }
+        return journal;
+    }
+
+    /**
+     * Set the journal of the process.
+     * @param eventJournal the journal, or null to drop every event
+     */
+    public static void set(EventJournal eventJournal) {
+        journal = eventJournal == null ? DISABLED : eventJournal;
+    }
+
+    /**
+     * Check if events are written, to skip preparing them otherwise.
+     * @return true if this journal writes to a file
+     */
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    /**
+     * Get the file written.
+     * @return the path, or null if disabled
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Append an event, stamped with the Clock time.
+     * @param type the kind of event
+     * @param elevator the elevator, or -1
+     * @param code a small code, such as a state or a direction, 0 to 255
+     * @param floor a floor
+     * @param value a value, depending on the type
+     * @param extra a value, depending on the type
+     * @param time the time of the hall call in nanoseconds of the day, or -1
+     */
+    public void append(Type type, int elevator, int code, int floor, int value, int extra, long time) {
+        if (channel == null) {
+            return;
+        }
+        long millis = Clock.get().millis();
+        synchronized (this) {
+            if (segment == null) {
+                return; // closed
+            }
+            if (segment.remaining() < RECORD_SIZE && !nextSegment()) {
+                return;
+            }
+            segment.put((byte) type.getId()).put((byte) code).putShort((short) elevator).putInt(floor).putInt(value)
+                    .putInt(extra).putLong(millis).putLong(time);
+            count++;
+        }
+    }
+
+    /**
+     * Append an event with no extra value or hall call time.
+     * @param type the kind of event
+     * @param elevator the elevator, or -1
+     * @param code a small code, 0 to 255
+     * @param floor a floor
+     * @param value a value, depending on the type
+     */
+    public void append(Type type, int elevator, int code, int floor, int value) {
+        append(type, elevator, code, floor, value, 0, -1);
+    }
+
+    /**
+     * Force the full segment to disk and map the next one. If the file cannot grow, the
+     * journal stops and later events are dropped.
+     * @return true if a segment was mapped
+     */
+    private boolean nextSegment() {
+        segment.force();
+        segmentStart += segment.position();
+        flushed = 0;
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+            return true;
+        } catch (IOException e) {
+            System.err.println("IOException: could not extend the event journal: " + e.getMessage());
+            segment = null;
+            return false;
+        }
+    }
+
+    /**
+     * Force the records appended since the last flush to disk.
+     */
+    public synchronized void flush() {
+        if (segment == null || segment.position() == flushed) {
+            return;
+        }
+        segment.force(flushed, segment.position() - flushed);
+        flushed = segment.position();
+    }
+
+    /**
+     * Get the number of events appended.
+     * @return the count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Force every record to disk, cut the file to the records written and close it. Later
+     * events are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        flusher.shutdownNow();
+        long size;
+        synchronized (this) {
+            if (segment != null) {
+                segment.force();
+                segmentStart += segment.position();
+                segment = null;
+            }
+            size = segmentStart;
+        }
+        if (!channel.isOpen()) {
+            return;
+        }
+        channel.truncate(size);
+        channel.close();
+    }
+}
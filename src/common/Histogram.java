@@ -0,0 +1,189 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative long values with a fixed relative precision, in the layout of an
+ * HdrHistogram. Values are counted in buckets that double in size, each split into the same
+ * number of sub-buckets, so every recorded value is within 10^-significantDigits of the value
+ * it is reported as, whatever its magnitude, in a fixed amount of memory.
+ *
+ * Recording takes no lock and can be done by any thread. Reads while other threads record
+ * see a recent, not an exact, state.
+ */
+public class Histogram {
+
+    /** The largest value counted exactly, larger values are counted as this one. */
+    private final long highestTrackableValue;
+
+    /** The number of bits of a sub-bucket index. */
+    private final int subBucketBits;
+
+    /** Half the number of sub-buckets, the first half of every bucket but the first is unused. */
+    private final int subBucketHalfCount;
+
+    /** The number of sub-buckets minus one. */
+    private final long subBucketMask;
+
+    /** The count of each sub-bucket. */
+    private final AtomicLongArray counts;
+
+    /** The number of values recorded. */
+    private final LongAdder totalCount = new LongAdder();
+
+    /** The sum of the values recorded. */
+    private final LongAdder total = new LongAdder();
+
+    /** The smallest value recorded. */
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    /** The largest value recorded, before clamping to highestTrackableValue. */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Create an empty histogram.
+     * @param highestTrackableValue the largest value counted exactly, at least 2
+     * @param significantDigits the number of significant decimal digits kept, 1 to 5
+     */
+    public Histogram(long highestTrackableValue, int significantDigits) {
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("Highest trackable value must be at least 2: " + highestTrackableValue);
+        }
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("Significant digits must be between 1 and 5: " + significantDigits);
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        // Enough sub-buckets that one unit of the last kept digit is at most one sub-bucket wide
+        long largestSingleUnit = 2 * (long) Math.pow(10, significantDigits);
+        subBucketBits = 64 - Long.numberOfLeadingZeros(largestSingleUnit - 1);
+        subBucketHalfCount = 1 << (subBucketBits - 1);
+        subBucketMask = (1L << subBucketBits) - 1;
+        counts = new AtomicLongArray(countsIndex(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Count a value.
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(countsIndex(Math.min(value, highestTrackableValue)));
+        totalCount.increment();
+        total.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the number of values recorded.
+     * @return the count
+     */
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Get the smallest value recorded.
+     * @return the value, 0 if none was recorded
+     */
+    public long getMin() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    /**
+     * Get the largest value recorded.
+     * @return the value, 0 if none was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the sum of the values recorded.
+     * @return the sum
+     */
+    public long getSum() {
+        return total.sum();
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     * @return the mean, 0 if none was recorded
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * Get the value below which a percentage of the values fall, as the highest value that
+     * shares its sub-bucket.
+     * @param percentile the percentage, 0 to 100
+     * @return the value, 0 if none was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Forget every value recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        total.reset();
+        min.reset();
+        max.reset();
+    }
+
+    /**
+     * Get the index of the sub-bucket counting a value.
+     */
+    private int countsIndex(long value) {
+        int bucket = 63 - Long.numberOfLeadingZeros(value | subBucketMask) - (subBucketBits - 1);
+        int subBucket = (int) (value >>> bucket);
+        return ((bucket + 1) << (subBucketBits - 1)) + subBucket - subBucketHalfCount;
+    }
+
+    /**
+     * Get the highest value counted by a sub-bucket.
+     */
+    private long highestEquivalentValue(int index) {
+        int bucket = (index >> (subBucketBits - 1)) - 1;
+        int subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucket < 0) {
+            subBucket -= subBucketHalfCount;
+            bucket = 0;
+        }
+        long lowest = (long) subBucket << bucket;
+        return lowest + (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%d p50=%d p90=%d p99=%d p99.9=%d max=%d mean=%.1f",
+                getTotalCount(), getMin(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMax(), getMean());
+    }
+}
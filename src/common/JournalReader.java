@@ -0,0 +1,211 @@
+package common;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the events of an EventJournal file in the order they were appended. A journal whose
+ * process did not close it ends at the first empty record.
+ */
+public class JournalReader implements Closeable {
+
+    /**
+     * One event read from a journal.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final EventJournal.Type type;
+        private final int elevator;
+        private final int code;
+        private final int floor;
+        private final int value;
+        private final int extra;
+        private final long millis;
+        private final long time;
+
+        public Entry(EventJournal.Type type, int elevator, int code, int floor, int value, int extra, long millis, long time) {
+            this.type = type;
+            this.elevator = elevator;
+            this.code = code;
+            this.floor = floor;
+            this.value = value;
+            this.extra = extra;
+            this.millis = millis;
+            this.time = time;
+        }
+
+        public EventJournal.Type getType() {
+            return type;
+        }
+
+        /**
+         * Get the elevator of the event.
+         * @return the elevator, or -1
+         */
+        public int getElevator() {
+            return elevator;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public int getFloor() {
+            return floor;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getExtra() {
+            return extra;
+        }
+
+        /**
+         * Get the Clock time the event was appended at.
+         * @return the time in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Get the time of the hall call the event is about.
+         * @return the time in nanoseconds of the day, or -1
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Order by Clock time, then by every field, so events appended by several threads in
+         * the same millisecond compare the same whatever order the threads ran in.
+         */
+        @Override
+        public int compareTo(Entry e) {
+            int c = Long.compare(millis, e.millis);
+            if (c == 0) c = type.compareTo(e.type);
+            if (c == 0) c = Integer.compare(elevator, e.elevator);
+            if (c == 0) c = Long.compare(time, e.time);
+            if (c == 0) c = Integer.compare(floor, e.floor);
+            if (c == 0) c = Integer.compare(value, e.value);
+            if (c == 0) c = Integer.compare(code, e.code);
+            if (c == 0) c = Integer.compare(extra, e.extra);
+            return c;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && compareTo((Entry) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(millis) * 31 + type.hashCode() * 17 + Long.hashCode(time) + elevator * 7 + floor;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10d %-15s elevator=%d code=%d floor=%d value=%d extra=%d time=%d",
+                    millis, type, elevator, code, floor, value, extra, time);
+        }
+    }
+
+    /** The file. */
+    private final DataInputStream in;
+
+    /** True once the end of the journal was read. */
+    private boolean ended;
+
+    /**
+     * Open a journal file and check its header.
+     * @param path the file
+     * @throws IOException if the file cannot be read or is not a journal of this version
+     */
+    public JournalReader(Path path) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        try {
+            int magic = in.readInt();
+            int version = in.readInt();
+            int recordSize = in.readInt();
+            in.readInt();
+            if (magic != EventJournal.MAGIC) {
+                throw new IOException(path + " is not an event journal");
+            }
+            if (version != EventJournal.VERSION || recordSize != EventJournal.RECORD_SIZE) {
+                throw new IOException(path + " is an event journal of version " + version + ", not " + EventJournal.VERSION);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next event.
+     * @return the event, or null at the end of the journal
+     * @throws IOException if the file cannot be read or holds an unknown event
+     */
+    public Entry next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        int id;
+        try {
+            id = in.readUnsignedByte();
+        } catch (EOFException e) {
+            ended = true;
+            return null;
+        }
+        if (id == 0) { // the rest of a segment that was never written
+            ended = true;
+            return null;
+        }
+        EventJournal.Type type = EventJournal.Type.fromId(id);
+        if (type == null) {
+            throw new IOException("Unknown event type " + id);
+        }
+        try {
+            int code = in.readUnsignedByte();
+            int elevator = in.readShort();
+            int floor = in.readInt();
+            int value = in.readInt();
+            int extra = in.readInt();
+            long millis = in.readLong();
+            long time = in.readLong();
+            return new Entry(type, elevator, code, floor, value, extra, millis, time);
+        } catch (EOFException e) { // cut off mid record
+            ended = true;
+            return null;
+        }
+    }
+
+    /**
+     * Read every event of a journal file.
+     * @param path the file
+     * @return the events, in the order they were appended
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Entry> readAll(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(path)) {
+            Entry entry;
+            while ((entry = reader.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
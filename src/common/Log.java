@@ -1,22 +1,29 @@
 package common;
 
-import java.util.logging.ConsoleHandler; 
-import java.util.logging.Level; 
-import java.util.logging.LogRecord; 
-import java.util.logging.Logger; 
-import java.util.logging.SimpleFormatter; 
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
 
 /**
- * Wrapper for the Java logger.
+ * Logging facade over java.util.logging. The level is checked before a message is formatted,
+ * so a disabled or filtered call only costs the check: use the overloads that take arguments
+ * rather than concatenating, and guard calls whose arguments are expensive with isEnabled().
+ * Messages are written by an AsyncLogHandler, off the calling thread.
+ *
+ * A SimulationContext can set its own level, which then replaces the level of the logger in
+ * the threads of that simulation.
  */
 public class Log {
-    
-    /** The internal Java logger. */
+
     private static final Logger LOGGER;
 
-    /** The default logging level. */
     private static final Level DEFAULT_LEVEL = Level.INFO;
 
+    /** Writes the messages on its own thread. */
+    private static final AsyncLogHandler HANDLER;
+
     // Static initialization block to configure the logger
     static {
         LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
@@ -26,6 +33,7 @@ public class Log {
         // printed for each statement. We may want to print them in the future,
         // in which case we can delete the following
         ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(Level.ALL);
         SimpleFormatter formatter = new SimpleFormatter() {
             @Override
             public synchronized String format(LogRecord record) {
@@ -33,23 +41,121 @@ public class Log {
             }
         };
         handler.setFormatter(formatter);
-        LOGGER.addHandler(handler);
+        HANDLER = new AsyncLogHandler(handler, Config.LOG_BUFFER_SIZE);
+        LOGGER.addHandler(HANDLER);
         LOGGER.setUseParentHandlers(false);
+
+        // Write what is still buffered when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(HANDLER::close, "Log Shutdown Thread"));
     }
 
-    /**
-     * Disable all logging.
-     */
     public static void disable() {
         LOGGER.setLevel(Level.OFF);
     }
 
     /**
-     * Print an info level log message.
-     * @param string The first string or the format string.
-     * @param args The format string arguments or other strings.
+     * Change the lowest level that is logged. print logs at INFO and debug at FINE.
+     * @param level the level
+     */
+    public static void setLevel(Level level) {
+        LOGGER.setLevel(level);
+    }
+
+    /**
+     * Check if print messages are logged.
+     * @return true if print messages are logged
+     */
+    public static boolean isEnabled() {
+        return isLoggable(DEFAULT_LEVEL);
+    }
+
+    /**
+     * Check if debug messages are logged.
+     * @return true if debug messages are logged
+     */
+    public static boolean isDebugEnabled() {
+        return isLoggable(Level.FINE);
+    }
+
+    /**
+     * Check if a level is logged, at the level of the SimulationContext of the calling thread
+     * if it sets one.
      */
-    public static void print(String string, Object ...args) {
-        LOGGER.log(DEFAULT_LEVEL, String.format(string, args));
+    private static boolean isLoggable(Level level) {
+        SimulationContext context = SimulationContext.scoped();
+        if (context == null || context.logLevel == null) {
+            return LOGGER.isLoggable(level);
+        }
+        return context.logLevel != Level.OFF && level.intValue() >= context.logLevel.intValue();
+    }
+
+    /**
+     * Log a message that passed isLoggable. The logger would filter it again at its own level,
+     * so a message passed at the level of a SimulationContext goes to the handler directly.
+     */
+    private static void log(Level level, String message) {
+        SimulationContext context = SimulationContext.scoped();
+        if (context == null || context.logLevel == null) {
+            LOGGER.log(level, message);
+        } else {
+            LogRecord record = new LogRecord(level, message);
+            record.setLoggerName(LOGGER.getName());
+            HANDLER.publish(record);
+        }
+    }
+
+    /**
+     * Wait until every message logged so far has been written.
+     */
+    public static void flush() {
+        HANDLER.flush();
+    }
+
+    /**
+     * Log a message as is, without formatting.
+     */
+    public static void print(String message) {
+        if (isLoggable(DEFAULT_LEVEL)) {
+            log(DEFAULT_LEVEL, message);
+        }
+    }
+
+    public static void print(String format, Object arg) {
+        if (isLoggable(DEFAULT_LEVEL)) {
+            log(DEFAULT_LEVEL, String.format(format, arg));
+        }
+    }
+
+    public static void print(String format, Object arg1, Object arg2) {
+        if (isLoggable(DEFAULT_LEVEL)) {
+            log(DEFAULT_LEVEL, String.format(format, arg1, arg2));
+        }
+    }
+
+    public static void print(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(DEFAULT_LEVEL)) {
+            log(DEFAULT_LEVEL, String.format(format, arg1, arg2, arg3));
+        }
+    }
+
+    public static void print(String format, Object ...args) {
+        if (isLoggable(DEFAULT_LEVEL)) {
+            log(DEFAULT_LEVEL, String.format(format, args));
+        }
+    }
+
+    /**
+     * Log a detail message, only shown after setLevel(Level.FINE).
+     */
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (isLoggable(Level.FINE)) {
+            log(Level.FINE, String.format(format, arg1, arg2));
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Level.FINE)) {
+            log(Level.FINE, String.format(format, arg1, arg2, arg3));
+        }
     }
 }
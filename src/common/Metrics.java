@@ -0,0 +1,365 @@
+package common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of this process: counters, gauges and summaries, named and labelled like
+ * Prometheus metrics. Metrics with the same name form a family and differ by their labels,
+ * given as name, value pairs.
+ *
+ * Counters are LongAdders and summaries are Histograms, so they can be updated by any thread
+ * without a lock. Look a metric up once and keep it, the lookup is not meant for hot paths.
+ * Gauges and function counters read a value from their owner when the metrics are exported.
+ */
+public class Metrics {
+
+    /** The largest value a summary counts exactly. */
+    private static final long HIGHEST_SUMMARY_VALUE = 24L * 60 * 60 * 1000 * 1000;
+
+    /** The significant digits a summary keeps. */
+    private static final int SUMMARY_DIGITS = 3;
+
+    /** The quantiles exported for every summary. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /** The registry of this process. */
+    private static final Metrics metrics = new Metrics();
+
+    /**
+     * The kinds of metric, named as in the Prometheus text format.
+     */
+    public enum Type {
+        /** A value that only goes up. */
+        COUNTER,
+        /** A value that goes up and down. */
+        GAUGE,
+        /** A distribution, exported as quantiles, a sum and a count. */
+        SUMMARY
+    }
+
+    /** The families of metrics, by name in export order. */
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get the registry of this process, or of the SimulationContext of the calling thread.
+     * @return the registry
+     */
+    public static Metrics get() {
+        SimulationContext context = SimulationContext.scoped();
+        if (context != null && context.metrics != null) {
+            return context.metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Get a counter, creating it at 0 the first time.
+     * @param name the name of the family
+     * @param help the description of the family
+     * @param labels label names and values, in pairs
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).metrics.computeIfAbsent(formatLabels(labels), l -> new Counter());
+    }
+
+    /**
+     * Register a counter read from its owner, replacing a metric with the same name and labels.
+     * @param name the name of the family
+     * @param help the description of the family
+     * @param value reads the count
+     * @param labels label names and values, in pairs
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).metrics.put(formatLabels(labels), (Sampled) value::getAsLong);
+    }
+
+    /**
+     * Register a gauge read from its owner, replacing a metric with the same name and labels.
+     * @param name the name of the family
+     * @param help the description of the family
+     * @param value reads the gauge
+     * @param labels label names and values, in pairs
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).metrics.put(formatLabels(labels), (Sampled) value::getAsDouble);
+    }
+
+    /**
+     * Get a summary, creating it empty the first time.
+     * @param name the name of the family
+     * @param help the description of the family
+     * @param scale the unit of the recorded values in the exported unit, 1e-3 for milliseconds
+     *              exported as seconds
+     * @param labels label names and values, in pairs
+     * @return the summary
+     */
+    public Summary summary(String name, String help, double scale, String... labels) {
+        return (Summary) family(name, help, Type.SUMMARY).metrics.computeIfAbsent(formatLabels(labels), l -> new Summary(scale));
+    }
+
+    /**
+     * Remove the metric of a family with the given labels.
+     * @param name the name of the family
+     * @param labels label names and values, in pairs
+     */
+    public void remove(String name, String... labels) {
+        Family family = families.get(name);
+        if (family != null) {
+            family.metrics.remove(formatLabels(labels));
+        }
+    }
+
+    /**
+     * Remove every metric.
+     */
+    public void clear() {
+        families.clear();
+    }
+
+    /**
+     * Get the family of a name, creating it the first time.
+     */
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Format label pairs as they are exported, without the braces.
+     */
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name, value pairs: " + labels.length + " strings");
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"");
+            for (int j = 0; j < labels[i + 1].length(); j++) {
+                char c = labels[i + 1].charAt(j);
+                if (c == '\\' || c == '"') {
+                    formatted.append('\\').append(c);
+                } else if (c == '\n') {
+                    formatted.append("\\n");
+                } else {
+                    formatted.append(c);
+                }
+            }
+            formatted.append('"');
+        }
+        return formatted.toString();
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format, version 0.0.4.
+     * @param out the text to append to
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            if (family.metrics.isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Metric> metric : family.metrics.entrySet()) {
+                metric.getValue().write(name, metric.getKey(), out);
+            }
+        }
+    }
+
+    /**
+     * Get the Prometheus text exposition of every metric.
+     * @return the text
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        writePrometheus(out);
+        return out.toString();
+    }
+
+    /**
+     * Get the current value of every metric, by name and labels as they are exported. A summary
+     * gives its quantiles, sum and count.
+     * @return the values, sorted by name
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            for (Map.Entry<String, Metric> metric : entry.getValue().metrics.entrySet()) {
+                metric.getValue().snapshot(entry.getKey(), metric.getKey(), values);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Format the name and labels of a sample.
+     */
+    private static String sampleName(String name, String labels) {
+        return labels.isEmpty() ? name : name + '{' + labels + '}';
+    }
+
+    /**
+     * Format a sample value, integers without a fraction.
+     */
+    private static String formatValue(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * The metrics of one name.
+     */
+    private static final class Family {
+        /** The description of the family. */
+        private final String help;
+
+        /** The kind of every metric of the family. */
+        private final Type type;
+
+        /** The metrics, by formatted labels. */
+        private final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A metric with a name and labels.
+     */
+    private interface Metric {
+        /** Append the samples of the metric in the text format. */
+        void write(String name, String labels, StringBuilder out);
+
+        /** Put the samples of the metric in a map. */
+        void snapshot(String name, String labels, Map<String, Double> values);
+    }
+
+    /**
+     * A metric of one sample read when exported.
+     */
+    private interface Sampled extends Metric {
+        /** Read the value. */
+        double sample();
+
+        @Override
+        default void write(String name, String labels, StringBuilder out) {
+            out.append(sampleName(name, labels)).append(' ').append(formatValue(sample())).append('\n');
+        }
+
+        @Override
+        default void snapshot(String name, String labels, Map<String, Double> values) {
+            values.put(sampleName(name, labels), sample());
+        }
+    }
+
+    /**
+     * A count that only goes up.
+     */
+    public static final class Counter implements Sampled {
+        /** The count. */
+        private final LongAdder count = new LongAdder();
+
+        private Counter() {
+        }
+
+        /**
+         * Add one.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Add to the count.
+         * @param n the amount, not negative
+         */
+        public void add(long n) {
+            count.add(n);
+        }
+
+        /**
+         * Get the count.
+         * @return the count
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        public double sample() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * A distribution of values, kept in a Histogram and exported as quantiles.
+     */
+    public static final class Summary implements Metric {
+        /** The values recorded. */
+        private final Histogram histogram = new Histogram(HIGHEST_SUMMARY_VALUE, SUMMARY_DIGITS);
+
+        /** The unit of the recorded values in the exported unit. */
+        private final double scale;
+
+        private Summary(double scale) {
+            this.scale = scale;
+        }
+
+        /**
+         * Record a value.
+         * @param value the value, in the recorded unit
+         */
+        public void record(long value) {
+            histogram.record(value);
+        }
+
+        /**
+         * Get the values recorded.
+         * @return the histogram, in the recorded unit
+         */
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out) {
+            String separator = labels.isEmpty() ? "" : ",";
+            for (double quantile : QUANTILES) {
+                out.append(name).append('{').append(labels).append(separator).append("quantile=\"").append(quantile).append("\"} ")
+                        .append(formatValue(histogram.getValueAtPercentile(quantile * 100) * scale)).append('\n');
+            }
+            out.append(sampleName(name + "_sum", labels)).append(' ').append(formatValue(histogram.getSum() * scale)).append('\n');
+            out.append(sampleName(name + "_count", labels)).append(' ').append(histogram.getTotalCount()).append('\n');
+        }
+
+        @Override
+        public void snapshot(String name, String labels, Map<String, Double> values) {
+            String separator = labels.isEmpty() ? "" : ",";
+            for (double quantile : QUANTILES) {
+                values.put(name + '{' + labels + separator + "quantile=\"" + quantile + "\"}",
+                        histogram.getValueAtPercentile(quantile * 100) * scale);
+            }
+            values.put(sampleName(name + "_sum", labels), histogram.getSum() * scale);
+            values.put(sampleName(name + "_count", labels), (double) histogram.getTotalCount());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package common;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Exposes the Metrics of this process as a JMX MBean, so they can be watched with jconsole
+ * or any JMX client. Every sample is a read-only attribute named like its Prometheus sample,
+ * and the attributes are listed again each time the MBean's info is asked for, so metrics
+ * registered later show up.
+ */
+public class MetricsJmx implements DynamicMBean {
+
+    /** The name the MBean is registered under. */
+    public static final String OBJECT_NAME = "elevator:type=Metrics";
+
+    /** The metrics exposed. */
+    private final Metrics metrics;
+
+    /**
+     * Create the MBean of a registry.
+     * @param metrics the metrics to expose
+     */
+    public MetricsJmx(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Register the MBean of the process' metrics with the platform MBean server, once.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MetricsJmx(Metrics.get()), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by another subsystem in the same process
+        } catch (JMException e) {
+            System.err.println("JMException: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = metrics.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Double> values = metrics.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Double value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Metrics have no operations: " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Double> values = metrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for (String name : values.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Elevator system metrics", attributes, null, null, null);
+    }
+}
@@ -0,0 +1,144 @@
+package common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A small HTTP server on the loopback address answering GET /metrics with the Metrics of this
+ * process in the Prometheus text format, for a local Prometheus or curl to scrape. Each scrape
+ * reads the metrics without stopping the threads that update them.
+ */
+public class MetricsServer {
+
+    /** The path the metrics are served on. */
+    public static final String PATH = "/metrics";
+
+    /** The content type of the Prometheus text format. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The metrics served. */
+    private final Metrics metrics;
+
+    /** The server, null until started. */
+    private HttpServer server;
+
+    /**
+     * Create a server of a registry. Nothing is served until it is started.
+     * @param metrics the metrics to serve
+     */
+    public MetricsServer(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start serving on a port of the loopback address, on a daemon thread.
+     * @param port the port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(null); // the dispatcher thread answers, a scrape is cheap
+        // The dispatcher thread inherits daemon status from the thread that starts the server,
+        // so start it from a daemon thread to not keep the process running
+        Thread thread = new Thread(server::start, "Metrics Server Thread");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the port served on.
+     * @return the port, or -1 if the server is not started
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Answer a scrape.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Register the metrics with JMX, and serve them over HTTP if a port was given.
+     * @param port the port, or -1 to only register with JMX
+     * @return the server, or null if none was started
+     */
+    public static MetricsServer export(int port) {
+        MetricsJmx.register();
+        if (port < 0) {
+            return null;
+        }
+        MetricsServer server = new MetricsServer(Metrics.get());
+        try {
+            server.start(port);
+            System.out.println("Metrics served on http://localhost:" + server.getPort() + PATH);
+        } catch (IOException e) {
+            System.err.println("IOException: could not serve metrics on port " + port + ": " + e.getMessage());
+            return null;
+        }
+        return server;
+    }
+
+    /**
+     * Parse the value of --metrics-port.
+     * @param args the command line arguments
+     * @param i the index of the flag
+     * @return the port
+     */
+    public static int parsePort(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a port");
+        }
+        int port;
+        try {
+            port = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(args[i] + " needs a port: " + args[i + 1]);
+        }
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException(args[i] + " needs a port from 0 to 65535: " + port);
+        }
+        return port;
+    }
+}
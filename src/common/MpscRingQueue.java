@@ -0,0 +1,137 @@
+package common;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producer threads and one consumer thread. Elements are
+ * kept in a ring whose capacity is a power of two. Each slot has a sequence number that tells
+ * a producer when the slot is free and the consumer when it holds an element, so producers
+ * only compete on one compare-and-set of the tail and never wait for each other or the consumer.
+ * offer fails instead of blocking when the ring is full.
+ *
+ * Only one thread at a time may call poll or drainTo.
+ * @param <E> the type of the elements
+ */
+public class MpscRingQueue<E> {
+
+    /** The elements, indexed by position modulo the capacity. */
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * The sequence number of each slot. Equal to the position of the next offer into it when the
+     * slot is free, one more once the element is written.
+     */
+    private final AtomicLongArray sequences;
+
+    /** The capacity minus one, to turn a position into a slot index. */
+    private final int mask;
+
+    /** The position of the next offer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The position of the next poll. Only used by the consumer, read by size(). */
+    private volatile long head;
+
+    /**
+     * Create an empty queue.
+     * @param capacity the most elements held, rounded up to a power of two
+     */
+    public MpscRingQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Add an element if there is room. Can be called by any thread.
+     * @param element the element, not null
+     * @return true if the element was added, false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.setPlain(index, element);
+                    sequences.setRelease(index, position + 1); // publish the element
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // the consumer has not emptied the slot yet
+            }
+            // otherwise another producer took the position, try the next one
+        }
+    }
+
+    /**
+     * Remove the oldest element. Consumer thread only.
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.getAcquire(index) != position + 1) {
+            return null; // empty, or a producer has not finished writing
+        }
+        E element = elements.getPlain(index);
+        elements.setPlain(index, null);
+        sequences.setRelease(index, position + mask + 1); // free the slot for the next lap
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Remove up to max elements, oldest first, and add them to a collection. Consumer thread only.
+     * @param into the collection to add to
+     * @param max the most elements to remove
+     * @return the number of elements removed
+     */
+    public int drainTo(Collection<? super E> into, int max) {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null) {
+            into.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of elements. Only an estimate while other threads use the queue.
+     * @return the number of elements
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the most elements the queue holds.
+     * @return the capacity
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,44 @@
+package common;
+
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock backed by the system clock. Sleeping blocks for the real amount of time.
+ */
+public class RealTimeClock extends Clock {
+
+    /** Runs scheduled tasks. Created on first use. */
+    private ScheduledExecutorService executor;
+
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public LocalTime time() {
+        return LocalTime.now();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    @Override
+    public synchronized void schedule(long delay, Runnable task) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Clock Thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executor.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,578 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the messages one subsystem sends to the others exactly once over UDP. Every message
+ * is framed with a 64 bit ID and kept until the receiver acknowledges it. The receiver answers
+ * every frame with an ack holding the ID below which it has everything plus the IDs above it
+ * it has already, so a lost frame does not make the sender resend the ones after it. Up to
+ * Config.RELIABLE_WINDOW frames are in flight to a peer at once, more wait their turn.
+ *
+ * Frames that are not acknowledged within the retransmission timeout are sent again. The timeout
+ * follows the measured round trip time (smoothed round trip plus four times its variation,
+ * from frames sent only once) and doubles on every timeout, up to Config.RELIABLE_MAX_RTO. A
+ * frame is dropped after Config.RELIABLE_MAX_SENDS sends. The receiver remembers the IDs it has
+ * seen in a window above the last one it has everything below, so a resent frame whose ack was
+ * lost is acknowledged again but not delivered twice. Messages may still arrive out of order.
+ *
+ * Messages to a peer bound in the same process are sent as they are, nothing is lost there.
+ * Timeouts are in real time, like the network.
+ * <pre>
+ * offset size field
+ *      0    1 MAGIC
+ *      1    1 DATA or ACK
+ *      2    1 ordinal of the sending peer
+ *      3    1 DATA: reserved. ACK: the number of selective acks
+ *      4    4 session of the sender of the data, so a restarted sender starts afresh
+ *      8    8 DATA: the message ID. ACK: every ID below it has been received
+ *     16    8 DATA: the lowest ID the sender still waits on. ACK: the selective acks, 8 bytes each
+ *     24      DATA: the message
+ * </pre>
+ */
+public class ReliableChannel {
+
+    /** The first byte of a frame. Different from ElevatorRequestCodec.MAGIC and ElevatorInfo.MAGIC. */
+    public static final byte MAGIC = (byte) 0xE3;
+
+    /** The bytes of a data frame before the message. */
+    public static final int HEADER_SIZE = 24;
+
+    /** The type of a frame holding a message. */
+    private static final byte DATA = 1;
+
+    /** The type of a frame acknowledging messages. */
+    private static final byte ACK = 2;
+
+    /** The most selective acks in one ack. */
+    private static final int MAX_SACKS = 32;
+
+    /** The transport the frames are sent with. */
+    private final Transport transport;
+
+    /** The subsystem this channel sends for. */
+    private final Transport.Peer self;
+
+    /** Set when the channel is created, acks for another session are ignored. */
+    private final int session = ThreadLocalRandom.current().nextInt();
+
+    /** The messages sent to each peer, indexed by ordinal. */
+    private final Outbound[] outbound = new Outbound[Transport.Peer.values().length];
+
+    /** The messages received from each peer, indexed by ordinal. */
+    private final Inbound[] inbound = new Inbound[Transport.Peer.values().length];
+
+    /** Resends the frames whose timeout has passed. Started with the first frame. */
+    private ScheduledExecutorService timer;
+
+    /** The number of frames sent again. */
+    private long retransmits;
+
+    /** The number of frames received more than once. */
+    private long duplicates;
+
+    /** The number of messages dropped after Config.RELIABLE_MAX_SENDS sends. */
+    private long failed;
+
+    /**
+     * Create the channel of a subsystem and register its metrics.
+     * @param transport the transport the frames are sent with
+     * @param self the subsystem this channel sends for
+     * @param metrics the registry to register the metrics in
+     */
+    ReliableChannel(Transport transport, Transport.Peer self, Metrics metrics) {
+        this.transport = transport;
+        this.self = self;
+        for (Transport.Peer peer : Transport.Peer.values()) {
+            outbound[peer.ordinal()] = new Outbound(peer);
+            inbound[peer.ordinal()] = new Inbound();
+        }
+        String label = self.name().toLowerCase();
+        metrics.counter("transport_retransmits_total", "Frames sent again because they were not acknowledged in time.",
+                this::getRetransmits, "peer", label);
+        metrics.counter("transport_duplicates_total", "Frames received again and not delivered twice.",
+                this::getDuplicates, "peer", label);
+        metrics.counter("transport_failed_total", "Messages dropped because they were never acknowledged.",
+                this::getFailed, "peer", label);
+        metrics.gauge("transport_unacked_messages", "Messages sent and not yet acknowledged, or waiting to be sent.",
+                this::getUnacked, "peer", label);
+    }
+
+    /**
+     * Send a message to a peer, again until it is acknowledged.
+     * @param peer the peer to send to
+     * @param message the message, must not be changed after it is sent
+     * @throws IOException if the message could not be sent
+     */
+    public void send(Transport.Peer peer, byte[] message) throws IOException {
+        if (!transport.isNetworked(peer)) {
+            transport.send(peer, message);
+            return;
+        }
+        startTimer();
+        outbound[peer.ordinal()].send(message);
+    }
+
+    /**
+     * Take a message received by this subsystem. Acks are applied, data frames are acknowledged
+     * and unwrapped, and other messages are left as they are.
+     * @param message the message, from position to limit
+     * @return the message to handle, or null if there is none: an ack, or a frame already delivered
+     */
+    public ByteBuffer receive(ByteBuffer message) {
+        if (!isFrame(message)) {
+            return message;
+        }
+        int start = message.position();
+        byte type = message.get(start + 1);
+        Transport.Peer from = Transport.Peer.fromOrdinal(message.get(start + 2));
+        if (from == null) {
+            return null;
+        }
+        int peer = from.ordinal();
+        int frameSession = message.getInt(start + 4);
+        if (type == ACK) {
+            int count = Math.min(message.get(start + 3) & 0xFF, (message.remaining() - 16) / 8);
+            if (frameSession == session) {
+                outbound[peer].acked(message, start, count);
+            }
+            return null;
+        }
+        if (type != DATA || message.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        long id = message.getLong(start + 8);
+        long base = message.getLong(start + 16);
+        byte[] ack;
+        boolean deliver;
+        synchronized (this) {
+            Inbound in = inbound[peer];
+            deliver = in.receive(frameSession, id, base);
+            if (!deliver) {
+                duplicates++;
+            }
+            ack = in.ack(frameSession);
+        }
+        try {
+            transport.send(from, ack);
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+        if (!deliver) {
+            return null;
+        }
+        message.position(start + HEADER_SIZE);
+        return message.slice();
+    }
+
+    /**
+     * Get the message in a data frame without receiving it, for a look at what it holds.
+     * @param message the message, from position to limit
+     * @return the message in the frame, or the message itself if it is not a data frame
+     */
+    public static ByteBuffer payload(ByteBuffer message) {
+        if (!isFrame(message) || message.get(message.position() + 1) != DATA || message.remaining() < HEADER_SIZE) {
+            return message;
+        }
+        ByteBuffer data = message.duplicate();
+        data.position(data.position() + HEADER_SIZE);
+        return data.slice();
+    }
+
+    /**
+     * Check if the bytes at the buffer's position are a frame. Does not move the position.
+     * @param message the message
+     * @return true if the message is a frame
+     */
+    public static boolean isFrame(ByteBuffer message) {
+        return message.remaining() >= 16 && message.get(message.position()) == MAGIC;
+    }
+
+    /**
+     * Get the current retransmission timeout to a peer.
+     * @param peer the peer
+     * @return the timeout in milliseconds
+     */
+    public long getRto(Transport.Peer peer) {
+        Outbound out = outbound[peer.ordinal()];
+        synchronized (out) {
+            return out.rto;
+        }
+    }
+
+    /**
+     * Get the number of frames sent again.
+     * @return the number of frames
+     */
+    public synchronized long getRetransmits() {
+        return retransmits;
+    }
+
+    /**
+     * Get the number of frames received more than once.
+     * @return the number of frames
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Get the number of messages dropped because they were never acknowledged.
+     * @return the number of messages
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the number of messages not acknowledged yet, in flight or waiting to be sent.
+     * @return the number of messages
+     */
+    public long getUnacked() {
+        long count = 0;
+        for (Outbound out : outbound) {
+            synchronized (out) {
+                count += out.inFlight.size() + out.backlog.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop resending. Messages not acknowledged yet are dropped.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Start the thread that resends the frames, if it is not running.
+     */
+    private synchronized void startTimer() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Transport " + self + " Retransmit Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (Outbound out : outbound) {
+                out.resend(now);
+            }
+        }, Config.RELIABLE_TICK, Config.RELIABLE_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add to the counters of the channel.
+     */
+    private synchronized void count(long resent, long dropped) {
+        retransmits += resent;
+        failed += dropped;
+    }
+
+    /**
+     * Send a frame, logging a failure, for the timer thread.
+     */
+    private void sendFrame(Transport.Peer peer, byte[] frame) {
+        try {
+            transport.send(peer, frame);
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A frame sent and not acknowledged yet.
+     */
+    private static final class Pending {
+        /** The message ID. */
+        private final long id;
+        /** The frame, its lowest ID waited on is updated before every send. */
+        private final byte[] frame;
+        /** The System.nanoTime of the last send. */
+        private long sentAt;
+        /** The System.nanoTime the frame is sent again after. */
+        private long deadline;
+        /** The number of times the frame has been sent. */
+        private int sends;
+
+        private Pending(long id, byte[] frame) {
+            this.id = id;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * The messages sent to one peer: the frames in flight, in ID order, the messages waiting for
+     * room in the window, and the round trip estimate. Guarded by itself.
+     */
+    private final class Outbound {
+        /** The peer. */
+        private final Transport.Peer peer;
+        /** The frames sent and not acknowledged, in ID order. */
+        private final ArrayList<Pending> inFlight = new ArrayList<>();
+        /** The messages waiting for room in the window. */
+        private final ArrayDeque<byte[]> backlog = new ArrayDeque<>();
+        /** The ID of the next message. */
+        private long nextId = 1;
+        /** The smoothed round trip time in milliseconds, negative before the first sample. */
+        private double srtt = -1;
+        /** The variation of the round trip time in milliseconds. */
+        private double rttvar;
+        /** The retransmission timeout in milliseconds. */
+        private long rto = Config.RELIABLE_INITIAL_RTO;
+
+        private Outbound(Transport.Peer peer) {
+            this.peer = peer;
+        }
+
+        /**
+         * Send a message now if the window has room, or once it has.
+         */
+        private void send(byte[] message) {
+            byte[] frame;
+            synchronized (this) {
+                if (!hasRoom() || !backlog.isEmpty()) {
+                    backlog.add(message);
+                    return;
+                }
+                frame = frame(message, System.nanoTime());
+            }
+            sendFrame(peer, frame);
+        }
+
+        /**
+         * Check if the next ID is within the window from the lowest ID in flight, so the
+         * receiver has room to remember it. Must hold the lock.
+         */
+        private boolean hasRoom() {
+            return inFlight.isEmpty() || nextId - inFlight.get(0).id < Config.RELIABLE_WINDOW;
+        }
+
+        /**
+         * Frame a message with the next ID and put it in flight. Must hold the lock.
+         */
+        private byte[] frame(byte[] message, long now) {
+            byte[] frame = new byte[HEADER_SIZE + message.length];
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            buffer.put(MAGIC).put(DATA).put((byte) self.ordinal()).put((byte) 0).putInt(session);
+            Pending pending = new Pending(nextId++, frame);
+            buffer.putLong(pending.id).putLong(inFlight.isEmpty() ? pending.id : inFlight.get(0).id).put(message);
+            pending.sentAt = now;
+            pending.deadline = now + TimeUnit.MILLISECONDS.toNanos(rto);
+            pending.sends = 1;
+            inFlight.add(pending);
+            return frame;
+        }
+
+        /**
+         * Apply an ack: drop the frames it covers, measure the round trip and fill the window.
+         */
+        private void acked(ByteBuffer ack, int start, int count) {
+            long now = System.nanoTime();
+            long cumulative = ack.getLong(start + 8);
+            ArrayList<byte[]> frames = null;
+            synchronized (this) {
+                long sample = -1;
+                for (int i = inFlight.size() - 1; i >= 0; i--) {
+                    Pending pending = inFlight.get(i);
+                    if (pending.id < cumulative || isSelectivelyAcked(ack, start, count, pending.id)) {
+                        inFlight.remove(i);
+                        if (pending.sends == 1) { // Karn: a resent frame's ack could be for any send
+                            sample = Math.max(sample, now - pending.sentAt);
+                        }
+                    }
+                }
+                if (sample >= 0) {
+                    sampleRtt(sample / 1e6);
+                }
+                while (hasRoom() && !backlog.isEmpty()) {
+                    if (frames == null) {
+                        frames = new ArrayList<>();
+                    }
+                    frames.add(frame(backlog.poll(), now));
+                }
+            }
+            if (frames != null) {
+                for (byte[] frame : frames) {
+                    sendFrame(peer, frame);
+                }
+            }
+        }
+
+        /**
+         * Update the round trip estimate and the timeout with a new sample. Must hold the lock.
+         */
+        private void sampleRtt(double rtt) {
+            if (srtt < 0) {
+                srtt = rtt;
+                rttvar = rtt / 2;
+            } else {
+                rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+                srtt = 0.875 * srtt + 0.125 * rtt;
+            }
+            rto = Math.min(Config.RELIABLE_MAX_RTO, Math.max(Config.RELIABLE_MIN_RTO, Math.round(srtt + 4 * rttvar)));
+        }
+
+        /**
+         * Send again the frames whose timeout has passed, and drop those sent too often.
+         */
+        private void resend(long now) {
+            ArrayList<byte[]> frames = null;
+            long resent = 0, dropped = 0;
+            synchronized (this) {
+                boolean backedOff = false;
+                for (int i = 0; i < inFlight.size(); i++) {
+                    Pending pending = inFlight.get(i);
+                    if (now - pending.deadline < 0) {
+                        continue;
+                    }
+                    if (pending.sends >= Config.RELIABLE_MAX_SENDS) {
+                        inFlight.remove(i--);
+                        dropped++;
+                        continue;
+                    }
+                    if (!backedOff) {
+                        rto = Math.min(Config.RELIABLE_MAX_RTO, rto * 2);
+                        backedOff = true;
+                    }
+                    ByteBuffer.wrap(pending.frame).putLong(16, inFlight.get(0).id);
+                    pending.sentAt = now;
+                    pending.deadline = now + TimeUnit.MILLISECONDS.toNanos(rto);
+                    pending.sends++;
+                    if (frames == null) {
+                        frames = new ArrayList<>();
+                    }
+                    frames.add(pending.frame);
+                    resent++;
+                }
+                while (dropped > 0 && hasRoom() && !backlog.isEmpty()) {
+                    if (frames == null) {
+                        frames = new ArrayList<>();
+                    }
+                    frames.add(frame(backlog.poll(), now));
+                }
+            }
+            if (dropped > 0) {
+                Log.print("Transport: %d messages from %s to %s dropped, never acknowledged", dropped, self, peer);
+            }
+            if (resent > 0 || dropped > 0) {
+                count(resent, dropped);
+            }
+            if (frames != null) {
+                for (byte[] frame : frames) {
+                    sendFrame(peer, frame);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if an ack lists an ID in its selective acks.
+     */
+    private static boolean isSelectivelyAcked(ByteBuffer ack, int start, int count, long id) {
+        for (int i = 0; i < count; i++) {
+            if (ack.getLong(start + 16 + 8 * i) == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The messages received from one peer: the ID below which all have been received, and which
+     * IDs in the window above it have been. Guarded by the channel.
+     */
+    private final class Inbound {
+        /** The session of the sender, a new one resets the window. */
+        private int session;
+        /** True once a frame has been received. */
+        private boolean started;
+        /** Every ID below it has been received. */
+        private long cumulative;
+        /** The IDs from cumulative on that have been received, by ID modulo the window. */
+        private final boolean[] seen = new boolean[Config.RELIABLE_WINDOW];
+
+        /**
+         * Record a frame.
+         * @return true if it was not received before
+         */
+        private boolean receive(int frameSession, long id, long base) {
+            if (!started || frameSession != session) {
+                started = true;
+                session = frameSession;
+                cumulative = base;
+                Arrays.fill(seen, false);
+            }
+            // The sender has an ack for everything below its lowest ID in flight, or gave up on it
+            advanceTo(base);
+            if (id < cumulative || id >= cumulative + seen.length) {
+                return false;
+            }
+            int slot = slot(id);
+            if (seen[slot]) {
+                return false;
+            }
+            seen[slot] = true;
+            while (seen[slot(cumulative)]) {
+                seen[slot(cumulative)] = false;
+                cumulative++;
+            }
+            return true;
+        }
+
+        /**
+         * Move the cumulative ack up, forgetting the IDs below it.
+         */
+        private void advanceTo(long base) {
+            if (base - cumulative >= seen.length) {
+                Arrays.fill(seen, false);
+                cumulative = base;
+                return;
+            }
+            while (cumulative < base) {
+                seen[slot(cumulative)] = false;
+                cumulative++;
+            }
+        }
+
+        /**
+         * Get the slot of an ID in the window.
+         */
+        private int slot(long id) {
+            return (int) (id % seen.length);
+        }
+
+        /**
+         * Build the ack of everything received from the peer so far.
+         */
+        private byte[] ack(int frameSession) {
+            long[] sacks = new long[MAX_SACKS];
+            int count = 0;
+            for (long id = cumulative + 1; id < cumulative + seen.length && count < MAX_SACKS; id++) {
+                if (seen[slot(id)]) {
+                    sacks[count++] = id;
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(16 + 8 * count);
+            buffer.put(MAGIC).put(ACK).put((byte) self.ordinal()).put((byte) count).putInt(frameSession).putLong(cumulative);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(sacks[i]);
+            }
+            return buffer.array();
+        }
+    }
+}
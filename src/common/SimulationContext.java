@@ -0,0 +1,280 @@
+package common;
+
+import floor.RequestLatency;
+import gui.GUI;
+
+import java.util.logging.Level;
+
+/**
+ * The building, clock, transport, event journal, metrics, request latencies, log level and GUI of
+ * one simulation. While a task runs in a context, BuildingConfig.get, Clock.get, Transport.get,
+ * EventJournal.get, Metrics.get and RequestLatency.get return the context's values in place of the
+ * process ones, and Log uses the
+ * context's level, in the calling thread and in every thread it starts. So several simulations,
+ * each with its own VirtualClock and in process Transport, can run in one process at the same time.
+ *
+ * The Scheduler, ElevatorSubsystem, Elevator and FloorSubsystem keep the resolved context they
+ * were created in (see {@link #capture()}) and use its values, and run their threads in it.
+ *
+ * A context is immutable. Values it does not set are the process ones.
+ */
+public final class SimulationContext {
+
+    /**
+     * A task run in a context.
+     * @param <T> the result
+     * @param <E> the exception the task throws
+     */
+    public interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /** The context that sets nothing. */
+    private static final SimulationContext PROCESS = new SimulationContext(null, null, null, null, null, null, null, null);
+
+    /** The context of each thread. Threads start in the context of the thread that created them. */
+    private static final InheritableThreadLocal<SimulationContext> CURRENT = new InheritableThreadLocal<>();
+
+    /** The size of the building, null for the process one. */
+    final BuildingConfig config;
+
+    /** The clock, null for the process one. */
+    final Clock clock;
+
+    /** The transport, null for the process one. */
+    final Transport transport;
+
+    /** The event journal, null for the process one. */
+    final EventJournal journal;
+
+    /** The metrics registry, null for the process one. */
+    final Metrics metrics;
+
+    /** The request latency histograms, null for the process ones. */
+    final RequestLatency latency;
+
+    /** The lowest level logged, null for the level of the process logger. */
+    final Level logLevel;
+
+    /** The GUI showing the building, null for none. */
+    private final GUI gui;
+
+    private SimulationContext(BuildingConfig config, Clock clock, Transport transport, EventJournal journal,
+            Metrics metrics, RequestLatency latency, Level logLevel, GUI gui) {
+        this.config = config;
+        this.clock = clock;
+        this.transport = transport;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.latency = latency;
+        this.logLevel = logLevel;
+        this.gui = gui;
+    }
+
+    /**
+     * Get the context of the calling thread.
+     * @return the context, one that sets nothing outside of a simulation
+     */
+    public static SimulationContext current() {
+        SimulationContext context = CURRENT.get();
+        return context != null ? context : PROCESS;
+    }
+
+    /**
+     * Get the context of the calling thread, for the getters of the values.
+     * @return the context, or null outside of a simulation
+     */
+    static SimulationContext scoped() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Get the context of the calling thread with every value resolved, for a system to keep.
+     * Later changes to the process values do not change it.
+     * @return the resolved context
+     */
+    public static SimulationContext capture() {
+        return current().resolve();
+    }
+
+    /**
+     * Copy the context with the values it does not set replaced by the process ones. The log
+     * level and GUI are kept as they are.
+     * @return the resolved context
+     */
+    public SimulationContext resolve() {
+        return call(() -> new SimulationContext(BuildingConfig.get(), Clock.get(), Transport.get(),
+                EventJournal.get(), Metrics.get(), getLatency(), logLevel, gui));
+    }
+
+    /**
+     * Get the size of the building.
+     * @return the context's building, or the process one
+     */
+    public BuildingConfig getConfig() {
+        return config != null ? config : call(BuildingConfig::get);
+    }
+
+    /**
+     * Get the clock.
+     * @return the context's clock, or the process one
+     */
+    public Clock getClock() {
+        return clock != null ? clock : call(Clock::get);
+    }
+
+    /**
+     * Get the transport.
+     * @return the context's transport, or the process one
+     */
+    public Transport getTransport() {
+        return transport != null ? transport : call(Transport::get);
+    }
+
+    /**
+     * Get the event journal.
+     * @return the context's journal, or the process one
+     */
+    public EventJournal getJournal() {
+        return journal != null ? journal : call(EventJournal::get);
+    }
+
+    /**
+     * Get the metrics registry.
+     * @return the context's registry, or the process one
+     */
+    public Metrics getMetrics() {
+        return metrics != null ? metrics : call(Metrics::get);
+    }
+
+    /**
+     * Get the request latency histograms.
+     * @return the context's histograms, or the process ones
+     */
+    public RequestLatency getLatency() {
+        return latency != null ? latency : RequestLatency.process();
+    }
+
+    /**
+     * Get the lowest level logged.
+     * @return the level, or null for the level of the process logger
+     */
+    public Level getLogLevel() {
+        return logLevel;
+    }
+
+    /**
+     * Get the GUI showing the building.
+     * @return the GUI, or null for none
+     */
+    public GUI getGui() {
+        return gui;
+    }
+
+    /**
+     * Copy the context with another building.
+     * @param config the building
+     * @return the new context
+     */
+    public SimulationContext withConfig(BuildingConfig config) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with another clock.
+     * @param clock the clock
+     * @return the new context
+     */
+    public SimulationContext withClock(Clock clock) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with another transport.
+     * @param transport the transport
+     * @return the new context
+     */
+    public SimulationContext withTransport(Transport transport) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with another event journal.
+     * @param journal the journal, or null to drop every event
+     * @return the new context
+     */
+    public SimulationContext withJournal(EventJournal journal) {
+        return new SimulationContext(config, clock, transport, journal == null ? EventJournal.DISABLED : journal, metrics,
+                latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with another metrics registry.
+     * @param metrics the registry
+     * @return the new context
+     */
+    public SimulationContext withMetrics(Metrics metrics) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with other request latency histograms.
+     * @param latency the histograms
+     * @return the new context
+     */
+    public SimulationContext withLatency(RequestLatency latency) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with another log level. Log uses it in place of the level of the process
+     * logger, so one simulation can be quiet while another logs.
+     * @param logLevel the lowest level logged, Level.OFF for none, or null for the process one
+     * @return the new context
+     */
+    public SimulationContext withLogLevel(Level logLevel) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Copy the context with a GUI. A FloorSubsystem created in the context shows its building
+     * on it rather than opening a window of its own.
+     * @param gui the GUI, or null for none
+     * @return the new context
+     */
+    public SimulationContext withGui(GUI gui) {
+        return new SimulationContext(config, clock, transport, journal, metrics, latency, logLevel, gui);
+    }
+
+    /**
+     * Run a task in this context. The calling thread is back in its own context once the task
+     * ends. Threads the task starts stay in this context.
+     * @param task the task
+     * @return the result of the task
+     * @throws E if the task throws it
+     */
+    public <T, E extends Exception> T call(Task<T, E> task) throws E {
+        SimulationContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Run a task in this context, such as the body of a system's thread.
+     * @param task the task
+     */
+    public void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+}
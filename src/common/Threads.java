@@ -0,0 +1,115 @@
+package common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Creates the threads the systems run on: elevator cars, message listeners and GUI animators.
+ * By default they are platform threads. In virtual mode they are virtual threads, so a simulation
+ * with thousands of cars does not need thousands of OS threads. Virtual mode is turned on with
+ * setVirtual(true) or -Delevator.threads=virtual, and needs Java 21 or later. On an older JVM
+ * the threads stay platform threads.
+ *
+ * Virtual threads are found by reflection so the code still compiles and runs on Java 17.
+ * They are always daemon threads. On Java 21 to 23 a virtual thread blocked in Object.wait
+ * keeps its carrier thread, so idle cars still cost a carrier each there.
+ */
+public class Threads {
+
+    /** Creates a virtual thread builder, or null if the JVM has no virtual threads. */
+    private static final MethodHandle OF_VIRTUAL;
+
+    /** Sets the name of the next thread on a builder. */
+    private static final MethodHandle NAME;
+
+    /** Creates an unstarted thread from a builder. */
+    private static final MethodHandle UNSTARTED;
+
+    /** True to create virtual threads. */
+    private static volatile boolean virtual;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle unstarted = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualBuilder));
+            name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class));
+            unstarted = lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null; // older JVM, platform threads only
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+        virtual = OF_VIRTUAL != null && "virtual".equalsIgnoreCase(System.getProperty("elevator.threads"));
+    }
+
+    /**
+     * Check if the JVM has virtual threads.
+     * @return true if virtual mode can be used
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Check if new threads are virtual threads.
+     * @return true in virtual mode
+     */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Change the kind of threads created from now on. Threads already running are not changed.
+     * @param virtual true for virtual threads
+     * @return true if the mode was set, false if virtual threads were asked for but the JVM has none
+     */
+    public static boolean setVirtual(boolean virtual) {
+        if (virtual && OF_VIRTUAL == null) {
+            return false;
+        }
+        Threads.virtual = virtual;
+        return true;
+    }
+
+    /**
+     * Create a thread without starting it.
+     * @param name the name of the thread
+     * @param task the code the thread runs
+     * @param daemon true if the thread should not keep the program running. Virtual threads always are.
+     * @return the thread
+     */
+    public static Thread newThread(String name, Runnable task, boolean daemon) {
+        if (virtual) {
+            try {
+                Object builder = OF_VIRTUAL.invoke();
+                builder = NAME.invoke(builder, name);
+                return (Thread) UNSTARTED.invoke(builder, task);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not create virtual thread " + name, e);
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * Create and start a thread.
+     * @param name the name of the thread
+     * @param task the code the thread runs
+     * @param daemon true if the thread should not keep the program running. Virtual threads always are.
+     * @return the started thread
+     */
+    public static Thread start(String name, Runnable task, boolean daemon) {
+        Thread thread = newThread(name, task, daemon);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,516 @@
+package common;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends UDP messages between the subsystems. Owns one long lived socket for sending and
+ * resolves the address of every peer once, so sending a message does not open a socket
+ * or look up a host name.
+ *
+ * A peer can instead be bound to a receiver in the same process (see {@link #bind(Peer, Receiver)}),
+ * then messages to it are handed to the receiver's inbox thread without touching the network:
+ * the message array itself goes through a lock-free MpscRingQueue, with no copy and no system call.
+ * Messages stay encoded, so each subsystem still has its own copy of a request as over UDP.
+ *
+ * Messages that must arrive, such as requests and completions, are sent through the sending
+ * subsystem's ReliableChannel (see {@link #channel(Peer)}), which acknowledges and resends them
+ * over the network.
+ */
+public class Transport {
+
+    /**
+     * The subsystems that listen for messages.
+     */
+    public enum Peer {
+        /** The scheduler. */
+        SCHEDULER(5000),
+        /** The elevator subsystem. */
+        ELEVATOR_SUBSYSTEM(6000),
+        /** The floor subsystem. */
+        FLOOR_SUBSYSTEM(12345);
+
+        private static final Peer[] VALUES = values();
+
+        /** The port the peer listens on. */
+        private final int port;
+
+        Peer(int port) {
+            this.port = port;
+        }
+
+        /**
+         * Get the port the peer listens on without a port offset.
+         * @return The port the peer listens on.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Get the peer with an ordinal, as sent in a frame.
+         * @param ordinal the ordinal
+         * @return the peer, or null if no peer has the ordinal
+         */
+        public static Peer fromOrdinal(int ordinal) {
+            return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+        }
+    }
+
+    /**
+     * Handles the messages sent to a peer in the same process.
+     */
+    public interface Receiver {
+        /**
+         * Handle one message. Called on the peer's inbox thread, one message at a time.
+         * @param message The message, from position to limit.
+         */
+        void receive(ByteBuffer message);
+    }
+
+    /** The transport used by the systems. Created on first use. */
+    private static Transport current;
+
+    /** The resolved address of each peer, indexed by ordinal. */
+    private final InetSocketAddress[] addresses;
+
+    /** Added to the port of every peer, so several simulations can use the network on one host. */
+    private final int portOffset;
+
+    /** The socket all messages are sent from. */
+    private final DatagramSocket socket;
+
+    /** The socket used for request/reply exchanges. Created on first use. */
+    private DatagramSocket requestSocket;
+
+    /** The inbox of each peer bound in this process, indexed by ordinal. Read without a lock by senders. */
+    private final AtomicReferenceArray<Inbox> inboxes = new AtomicReferenceArray<>(Peer.values().length);
+
+    /** The messages an inbox holds in its ring. */
+    private final int inboxSize;
+
+    /** The reliable channel of each peer sending from this process, indexed by ordinal. Created on first use. */
+    private final ReliableChannel[] channels = new ReliableChannel[Peer.values().length];
+
+    /**
+     * Create a new transport where all peers are on the given host.
+     * @param host The host name of the peers.
+     * @throws UnknownHostException If the host cannot be resolved.
+     * @throws SocketException If the socket cannot be opened.
+     */
+    public Transport(String host) throws UnknownHostException, SocketException {
+        this(host, 0);
+    }
+
+    /**
+     * Create a new transport where all peers are on the given host, listening on their ports
+     * plus an offset.
+     * @param host The host name of the peers.
+     * @param portOffset Added to the port of every peer.
+     * @throws UnknownHostException If the host cannot be resolved.
+     * @throws SocketException If the socket cannot be opened.
+     */
+    public Transport(String host, int portOffset) throws UnknownHostException, SocketException {
+        if (portOffset < 0 || Peer.FLOOR_SUBSYSTEM.getPort() + portOffset > 65535) {
+            throw new IllegalArgumentException("Invalid port offset: " + portOffset);
+        }
+        this.portOffset = portOffset;
+        inboxSize = Config.INBOX_SIZE;
+        InetAddress address = InetAddress.getByName(host);
+        addresses = new InetSocketAddress[Peer.values().length];
+        for (Peer peer : Peer.values()) {
+            addresses[peer.ordinal()] = new InetSocketAddress(address, getPort(peer));
+        }
+        socket = new DatagramSocket();
+    }
+
+    /**
+     * Create a transport without a socket. Messages only reach peers bound in this process.
+     */
+    private Transport(int inboxSize) {
+        this.inboxSize = inboxSize;
+        portOffset = 0;
+        addresses = null;
+        socket = null;
+    }
+
+    /**
+     * Create a transport that delivers messages in this process only. Messages to peers that
+     * are not bound are dropped.
+     * @return The new transport.
+     */
+    public static Transport inProcess() {
+        return new Transport(Config.INBOX_SIZE);
+    }
+
+    /**
+     * Create a transport that delivers messages in this process only, with inboxes of a given
+     * size. Messages that do not fit in an inbox's ring wait in its overflow queue.
+     * @param inboxSize The messages an inbox holds in its ring.
+     * @return The new transport.
+     */
+    public static Transport inProcess(int inboxSize) {
+        return new Transport(inboxSize);
+    }
+
+    /**
+     * Get the transport used by the systems, the one of the SimulationContext of the calling
+     * thread if it has one. All peers are on localhost by default.
+     * @return The current transport.
+     */
+    public static Transport get() {
+        SimulationContext context = SimulationContext.scoped();
+        if (context != null && context.transport != null) {
+            return context.transport;
+        }
+        return getProcessTransport();
+    }
+
+    /**
+     * Get the transport of the process, creating it on first use.
+     */
+    private static synchronized Transport getProcessTransport() {
+        if (current == null) {
+            try {
+                current = new Transport("localhost");
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create transport", e);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Change the transport used by the systems of the process.
+     * @param transport The new transport.
+     */
+    public static synchronized void set(Transport transport) {
+        current = transport;
+    }
+
+    /**
+     * Use a localhost transport whose peers listen on their ports plus an offset for the
+     * systems of the process, so another simulation can run on the default ports.
+     * @param portOffset Added to the port of every peer.
+     */
+    public static synchronized void setPortOffset(int portOffset) {
+        try {
+            current = new Transport("localhost", portOffset);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create transport", e);
+        }
+    }
+
+    /**
+     * Parse the port offset following a command line flag.
+     * @param args the command line
+     * @param i the index of the flag
+     * @return the port offset
+     * @throws IllegalArgumentException if the offset is missing or moves a port past 65535
+     */
+    public static int parsePortOffset(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a port offset");
+        }
+        int portOffset;
+        try {
+            portOffset = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(args[i] + " needs a port offset: " + args[i + 1]);
+        }
+        if (portOffset < 0 || Peer.FLOOR_SUBSYSTEM.getPort() + portOffset > 65535) {
+            throw new IllegalArgumentException(args[i] + " needs a port offset from 0 to "
+                    + (65535 - Peer.FLOOR_SUBSYSTEM.getPort()) + ": " + portOffset);
+        }
+        return portOffset;
+    }
+
+    /**
+     * Deliver the messages sent to a peer to a receiver in this process, on a new inbox thread.
+     * The inbox thread is held on the Clock while it has messages, so a VirtualClock waits for them.
+     * @param peer The peer.
+     * @param receiver The receiver of the peer's messages.
+     */
+    public synchronized void bind(Peer peer, Receiver receiver) {
+        if (inboxes.get(peer.ordinal()) != null) {
+            throw new IllegalStateException(peer + " is already bound");
+        }
+        inboxes.set(peer.ordinal(), new Inbox(peer, receiver, inboxSize));
+    }
+
+    /**
+     * Check if a peer is bound in this process.
+     * @param peer The peer.
+     * @return True if messages to the peer do not go over the network.
+     */
+    public boolean isInProcess(Peer peer) {
+        return inboxes.get(peer.ordinal()) != null;
+    }
+
+    /**
+     * Check if messages to a peer go over the network, so they may be lost.
+     * @param peer The peer.
+     * @return True if the peer is not bound in this process and the transport has a socket.
+     */
+    boolean isNetworked(Peer peer) {
+        return socket != null && inboxes.get(peer.ordinal()) == null;
+    }
+
+    /**
+     * Get the channel a subsystem in this process sends its messages through when they must
+     * arrive, creating it on first use. Its metrics are registered in the current Metrics.
+     * @param self The subsystem sending.
+     * @return The subsystem's reliable channel.
+     */
+    public synchronized ReliableChannel channel(Peer self) {
+        ReliableChannel channel = channels[self.ordinal()];
+        if (channel == null) {
+            channel = new ReliableChannel(this, self, Metrics.get());
+            channels[self.ordinal()] = channel;
+        }
+        return channel;
+    }
+
+    /**
+     * Get the port a peer listens on with this transport.
+     * @param peer The peer.
+     * @return The port of the peer plus the port offset.
+     */
+    public int getPort(Peer peer) {
+        return peer.getPort() + portOffset;
+    }
+
+    /**
+     * Get the resolved address of a peer.
+     * @param peer The peer.
+     * @return The address of the peer.
+     */
+    public InetSocketAddress getAddress(Peer peer) {
+        return addresses[peer.ordinal()];
+    }
+
+    /**
+     * Send a message to a peer. A peer in this process receives the array itself, so it must not
+     * be changed after it is sent.
+     * @param peer The peer to send to.
+     * @param data The message.
+     * @throws IOException If the message could not be sent.
+     */
+    public void send(Peer peer, byte[] data) throws IOException {
+        Inbox inbox = inboxes.get(peer.ordinal());
+        if (inbox != null) {
+            inbox.post(data);
+            return;
+        }
+        sendPacket(peer, data, data.length);
+    }
+
+    /**
+     * Send the first bytes of a buffer to a peer. The buffer may be reused once this returns.
+     * @param peer The peer to send to.
+     * @param data The buffer holding the message.
+     * @param length The length of the message.
+     * @throws IOException If the message could not be sent.
+     */
+    public void send(Peer peer, byte[] data, int length) throws IOException {
+        Inbox inbox = inboxes.get(peer.ordinal());
+        if (inbox != null) {
+            inbox.post(Arrays.copyOf(data, length)); // the sender may reuse its buffer
+            return;
+        }
+        sendPacket(peer, data, length);
+    }
+
+    /**
+     * Send a message to a peer over the network.
+     */
+    private void sendPacket(Peer peer, byte[] data, int length) throws IOException {
+        if (socket == null) {
+            return; // in process only, nobody is listening
+        }
+        socket.send(new DatagramPacket(data, length, addresses[peer.ordinal()]));
+    }
+
+    /**
+     * Send a message to a peer and wait for its reply. Only one exchange runs at a time.
+     * @param peer The peer to send to.
+     * @param data The message.
+     * @param reply The packet to receive the reply into.
+     * @param timeout The time to wait for the reply in milliseconds, or 0 to wait forever.
+     * @throws IOException If the message could not be sent or no reply arrived in time.
+     */
+    public synchronized void request(Peer peer, byte[] data, DatagramPacket reply, int timeout) throws IOException {
+        if (socket == null) {
+            throw new IOException("No network in an in process transport");
+        }
+        if (requestSocket == null) {
+            requestSocket = new DatagramSocket();
+        }
+        requestSocket.setSoTimeout(timeout);
+        requestSocket.send(new DatagramPacket(data, data.length, addresses[peer.ordinal()]));
+        requestSocket.receive(reply);
+    }
+
+    /**
+     * Stop the inbox threads of the peers bound in this process and the retransmissions of the
+     * reliable channels, and close the sockets. The transport must not be used after.
+     */
+    public synchronized void close() {
+        for (ReliableChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        for (int i = 0; i < inboxes.length(); i++) {
+            Inbox inbox = inboxes.getAndSet(i, null);
+            if (inbox != null) {
+                inbox.thread.interrupt();
+            }
+        }
+        if (socket != null) {
+            socket.close();
+        }
+        if (requestSocket != null) {
+            requestSocket.close();
+        }
+    }
+
+    /**
+     * The messages waiting for a peer bound in this process, and the thread that delivers them.
+     * Senders add to a lock-free ring. Only when the ring is full do they take a lock, to add
+     * to an overflow queue that is emptied before the ring is used again, so the messages of
+     * each sender keep their order and none is lost.
+     */
+    private static class Inbox implements Runnable {
+        /** The messages not yet delivered. */
+        private final MpscRingQueue<byte[]> ring;
+        /** The messages that did not fit in the ring, guarded by itself. */
+        private final ArrayDeque<byte[]> overflow = new ArrayDeque<>();
+        /** True while the overflow queue has messages, so new ones go after them. */
+        private volatile boolean spilling;
+        /** The receiver of the messages. */
+        private final Receiver receiver;
+        /** The thread that delivers the messages. */
+        private final Thread thread;
+        /** The clock the thread is held on while it has messages. */
+        private final Clock clock;
+        /**
+         * True while the thread waits for a message and is released from the Clock. Set and
+         * cleared while synchronized on the inbox, read without a lock by senders.
+         */
+        private volatile boolean waiting;
+
+        private Inbox(Peer peer, Receiver receiver, int size) {
+            this.receiver = receiver;
+            ring = new MpscRingQueue<>(size);
+            clock = Clock.get();
+            thread = Threads.newThread("Transport " + peer + " Inbox", this, true);
+            clock.hold(thread);
+            thread.start();
+        }
+
+        /**
+         * Add a message and wake the thread if it waits.
+         * @param message The message.
+         */
+        private void post(byte[] message) {
+            if (spilling || !ring.offer(message)) {
+                synchronized (overflow) {
+                    if (spilling || !ring.offer(message)) {
+                        overflow.add(message);
+                        spilling = true;
+                    }
+                }
+            }
+            if (waiting) {
+                wake();
+            }
+        }
+
+        /**
+         * Take the next message, the ring first. The overflow queue is only read once every
+         * message put in the ring before it has been taken.
+         * @return The message, or null if there is none.
+         */
+        private byte[] take() {
+            byte[] message = ring.poll();
+            while (message == null && !ring.isEmpty()) {
+                Thread.yield(); // a sender claimed a slot and is filling it
+                message = ring.poll();
+            }
+            if (message == null && spilling) {
+                synchronized (overflow) {
+                    message = overflow.poll();
+                    spilling = !overflow.isEmpty();
+                }
+            }
+            return message;
+        }
+
+        /**
+         * Hold the waiting thread on the Clock and unpark it. Called by a sender, which is held
+         * itself, so time cannot move on while the message waits.
+         */
+        private synchronized void wake() {
+            if (waiting) {
+                waiting = false;
+                clock.hold(thread);
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Release the thread from the Clock unless a message came in after take. Senders check
+         * waiting after adding their message, so one of the two sees the other.
+         * @return True if the thread was released and should park.
+         */
+        private synchronized boolean startWaiting() {
+            waiting = true;
+            if (!ring.isEmpty() || spilling) {
+                waiting = false;
+                return false;
+            }
+            clock.release(thread);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                byte[] message = take();
+                if (message == null) {
+                    if (startWaiting()) {
+                        while (waiting && !Thread.currentThread().isInterrupted()) {
+                            LockSupport.park(this);
+                        }
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        synchronized (this) {
+                            if (!waiting) {
+                                clock.release(thread); // held by a sender, but the transport is closed
+                            }
+                            waiting = false;
+                        }
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    receiver.receive(ByteBuffer.wrap(message));
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
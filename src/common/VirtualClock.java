@@ -0,0 +1,215 @@
+package common;
+
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Discrete-event clock. Sleeping threads and scheduled tasks are kept in a priority queue
+ * ordered by wake up time. Whenever no held thread is doing work, time jumps straight to
+ * the next event instead of waiting for it, so a simulation runs as fast as the CPU allows.
+ *
+ * Threads that take part in the simulation must be held (see {@link #hold(Thread)}) while
+ * they work and released before they block on anything other than this clock. Threads
+ * that were never held may still sleep on this clock, but time does not wait for them.
+ */
+public class VirtualClock extends Clock {
+
+    /**
+     * An entry in the event queue. Either wakes a sleeping thread or runs a task.
+     */
+    private static class Event implements Comparable<Event> {
+        /** The time of the event in milliseconds. */
+        private final long time;
+        /** Tie breaker so events at the same time run in the order they were added. */
+        private final long sequence;
+        /** The sleeping thread, or null for a task. */
+        private final Thread thread;
+        /** The task to run, or null for a sleeping thread. */
+        private final Runnable task;
+        /** If the sleeping thread was held before it went to sleep. */
+        private final boolean held;
+        /** Set once the event has been taken from the queue. */
+        private boolean fired;
+
+        private Event(long time, long sequence, Thread thread, Runnable task, boolean held) {
+            this.time = time;
+            this.sequence = sequence;
+            this.thread = thread;
+            this.task = task;
+            this.held = held;
+        }
+
+        @Override
+        public int compareTo(Event e) {
+            int result = Long.compare(time, e.time);
+            return result != 0 ? result : Long.compare(sequence, e.sequence);
+        }
+    }
+
+    /** The time of day when the clock reads zero. */
+    private final LocalTime origin;
+
+    /** The current time in milliseconds. */
+    private long now;
+
+    /** The number of events added so far. */
+    private long sequence;
+
+    /** The pending events. */
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+    /** The threads currently doing work. Time stands still while this is not empty. */
+    private final Set<Thread> running = new HashSet<>();
+
+    /** Tasks whose time has come, waiting for the task thread. */
+    private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+
+    /** Runs scheduled tasks. Created on first use. */
+    private Thread taskThread;
+
+    /**
+     * Create a new virtual clock starting at midnight.
+     */
+    public VirtualClock() {
+        this(LocalTime.MIDNIGHT);
+    }
+
+    /**
+     * Create a new virtual clock.
+     * @param origin The time of day when the clock reads zero.
+     */
+    public VirtualClock(LocalTime origin) {
+        this.origin = origin;
+    }
+
+    @Override
+    public synchronized long millis() {
+        return now;
+    }
+
+    @Override
+    public LocalTime time() {
+        return origin.plusNanos(millis() * 1_000_000L);
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            boolean held = running.remove(thread);
+            Event event = new Event(now + Math.max(millis, 0), sequence++, thread, null, held);
+            events.add(event);
+            advance();
+            try {
+                while (!event.fired) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (!event.fired) {
+                    events.remove(event);
+                    if (held) {
+                        running.add(thread);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void schedule(long delay, Runnable task) {
+        events.add(new Event(now + Math.max(delay, 0), sequence++, null, task, false));
+        if (taskThread == null) {
+            taskThread = new Thread(this::runTasks, "Virtual Clock Thread");
+            taskThread.setDaemon(true);
+            taskThread.start();
+        }
+        advance();
+    }
+
+    @Override
+    public synchronized void hold(Thread thread) {
+        running.add(thread);
+    }
+
+    @Override
+    public synchronized void release(Thread thread) {
+        if (running.remove(thread)) {
+            advance();
+        }
+    }
+
+    /**
+     * Stop the thread that runs the scheduled tasks, for a simulation that has ended. The
+     * clock must not be used after.
+     */
+    public synchronized void close() {
+        if (taskThread != null) {
+            taskThread.interrupt();
+        }
+    }
+
+    /**
+     * Block until no thread is working and no events are left, meaning the simulation
+     * has nothing more to do. The calling thread must not be held.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!running.isEmpty() || !events.isEmpty() || !ready.isEmpty()) {
+            wait();
+        }
+    }
+
+    /**
+     * Move time forward event by event for as long as no held thread is working.
+     * Must be called while synchronized on the clock.
+     */
+    private void advance() {
+        while (running.isEmpty() && !events.isEmpty()) {
+            Event event = events.poll();
+            now = Math.max(now, event.time);
+            event.fired = true;
+            if (event.task != null) {
+                running.add(taskThread);
+                ready.add(event.task);
+            } else if (event.held) {
+                running.add(event.thread);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Body of the task thread. Runs scheduled tasks outside of the clock lock while
+     * holding the clock, so tasks see a consistent time.
+     */
+    private void runTasks() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                while (ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task = ready.poll();
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                if (ready.isEmpty()) {
+                    running.remove(taskThread);
+                    advance();
+                }
+            }
+        }
+    }
+}
@@ -1,25 +1,45 @@
 package elevator;
 
+import common.BuildingConfig;
 import common.Config;
+import common.EventJournal;
 import common.Log;
+import common.SimulationContext;
+import common.Threads;
+import common.Transport;
 import floor.ElevatorRequest.ButtonDirection;
 import floor.ElevatorRequest;
 import elevator.ElevatorSubsystem;
 
 import java.io.IOException;
-import java.net.*;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
 import java.util.*;
 
 /**
  * Represents a single 'Elevator' or 'Elevator Car'. Used by the ElevatorSubsystem
- * to schedule elevators for passengers.
+ * to schedule elevators for passengers. Each elevator runs on its own thread, created by
+ * Threads so it can be a virtual thread.
  */
-public class Elevator extends Thread{
+public class Elevator implements Runnable {
     /** Current state of the elevator */
     private ElevatorState currentState; // SEND
 
+    /** Name of the current state, pushed to the Scheduler. A new elevator is stationary. */
+    private State currentStateName = State.IDLE;
+
+    /** Increases every time the elevator's state is pushed to the Scheduler */
+    private long stateVersion = 0;
+
+    /** Guards the published state. Always taken after queueLock, never before */
+    private final Object publishLock = new Object();
+
+    /** The last state pushed to the Scheduler, to only push changes */
+    private int publishedFloor = -1;
+    private State publishedState;
+    private ButtonDirection publishedDirection;
+    private int publishedLoad = -1;
+    private int publishedQueueDepth = -1;
+
     /** Holds all the states of the elevator */
     private Map<State, ElevatorState> states;
 
@@ -40,13 +60,27 @@ public class Elevator extends Thread{
 
     /** The direction of movement of the elevator. Either up, down, or none. */
     private ButtonDirection currDirection = ButtonDirection.NONE; // SEND
-    /** The queue of requests assigned to the elevator */
-    private PriorityQueue<ElevatorRequest> elevatorQueue;
+    /** The requests assigned to the elevator, indexed by floor */
+    private final StopTable elevatorQueue;
+
+    /** The most passengers the elevator carries. */
+    private final int capacity;
+
+    /** The simulation the elevator belongs to, the one of its elevator subsystem. */
+    private final SimulationContext context;
 
     /** The elevator subsystem to use. */
     private ElevatorSubsystem elevatorSubsystem;
     /** Timer for elevator transporting state fault detection */
     private long transportingTimeout; // 1 minute
+    /** True while the elevator thread is idle and waiting on queueLock for a request */
+    private boolean idleWaiting = false;
+
+    /** The thread the elevator runs on, null until started */
+    private Thread thread;
+
+    /** The trips, stops, faults and utilisation of the elevator */
+    private final ElevatorMetrics metrics;
 
     /**
      * The door status.
@@ -75,7 +109,22 @@ public class Elevator extends Thread{
         IDLE,
         TRANSPORTING,
         FAULT,
-        UNKNOWN
+        UNKNOWN;
+
+        private static final State[] VALUES = values();
+
+        /**
+         * Get the state with an ordinal, as sent in a message.
+         * @param ordinal the ordinal
+         * @return the state
+         * @throws IllegalArgumentException if no state has the ordinal
+         */
+        public static State fromOrdinal(int ordinal) {
+            if (ordinal < 0 || ordinal >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown elevator state " + ordinal);
+            }
+            return VALUES[ordinal];
+        }
     }
 
     /**
@@ -84,17 +133,45 @@ public class Elevator extends Thread{
      */
     public Elevator(int elevatorId, ElevatorSubsystem elevatorSubsystem) {
         this.elevatorId = elevatorId;
-        this.elevatorQueue = new PriorityQueue<>();
         this.elevatorSubsystem = elevatorSubsystem;
+        this.context = elevatorSubsystem != null ? elevatorSubsystem.getContext() : SimulationContext.capture();
+        BuildingConfig config = context.getConfig();
+        this.elevatorQueue = new StopTable(config.getFloors());
+        this.capacity = config.getCapacity();
+        this.metrics = new ElevatorMetrics(this);
         this.states = new HashMap<>();
         addState(State.IDLE, new ElevatorIdleState());
         addState(State.TRANSPORTING, new ElevatorTransportingState(elevatorSubsystem));
         addState(State.FAULT, new ElevatorFaultState());
     }
 
+    /**
+     * Get the simulation the elevator belongs to.
+     * @return The resolved context of its elevator subsystem.
+     */
+    public SimulationContext getContext() {
+        return context;
+    }
+
     public ElevatorState getCurrentState(){
         return currentState;
     }
+
+    /**
+     * Get the name of the current state.
+     * @return The current state.
+     */
+    public State getCurrentStateName() {
+        return currentStateName;
+    }
+    /**
+     * Get the metrics of the elevator.
+     * @return The metrics.
+     */
+    ElevatorMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Get the current floor the elevator is on.
      * @return The current floor the elevator is on.
@@ -141,80 +218,128 @@ public class Elevator extends Thread{
      */
     public void setDoorStatus(DoorStatus doorStatus) {
         try {
-            Thread.sleep(Config.DOOR_TIME); // it takes 3 seconds to open/close door
+            context.getClock().sleep(Config.DOOR_TIME); // it takes 3 seconds to open/close door
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
         this.doorStatus = doorStatus;
-        //Log.print("Elevator " + elevatorId +" door is " + doorStatus.name().toLowerCase() + "!"); for debug
+        if (Log.isDebugEnabled()) {
+            Log.debug("Elevator %d door is %s!", elevatorId, doorStatus.name().toLowerCase());
+        }
     }
 
     public ButtonDirection getCurrDirection() {
         return currDirection;
     }
-    public void setDirection(ButtonDirection b) {this.currDirection = b;}
+    public void setDirection(ButtonDirection b) {
+        this.currDirection = b;
+        publishState();
+    }
 
     public void sendRequestBackToScheduler(ElevatorRequest request) throws IOException {
         try{
-            Thread.sleep(1000);
+            context.getClock().sleep(1000);
         } catch (InterruptedException e) {}
-        int schedulerPort = 5000; // Example port number for Scheduler
-        String schedulerHost = "localhost"; // Scheduler host, change as needed
-        DatagramSocket socket = new DatagramSocket();
-        InetAddress schedulerAddress = InetAddress.getByName(schedulerHost);
         byte[] sendData = request.getBytes();
-        DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, schedulerAddress, schedulerPort);
-        socket.send(sendPacket);
+        context.getTransport().channel(Transport.Peer.ELEVATOR_SUBSYSTEM).send(Transport.Peer.SCHEDULER, sendData);
 
         // Print the data sent, for testing
-        String sentDataString = new String(sendData, StandardCharsets.UTF_8);
-        Log.print("Elevator " + elevatorId + " full, sent request BACK to Scheduler: " + sentDataString);
+        Log.print("Elevator %d full, sent request BACK to Scheduler: %s", elevatorId, request);
     }
 
     /**
-     * Function to add a request to this Elevator's request queue. Synchronizing on queueLock rather than elevatorQueue
-     * so that elevatorQueue can be reinitialized without causing issues
+     * Function to add a request to this Elevator's request queue. Synchronizing on queueLock, which guards
+     * the elevatorQueue
      * @param request a request received from the scheduler
      */
     public void addRequestToElevatorQueue(ElevatorRequest request) {
+        addRequestsToElevatorQueue(Collections.singletonList(request));
+    }
+
+    /**
+     * Add a group of requests dispatched together to this Elevator's request queue, so the group is
+     * seen by the elevator at once. Requests that do not fit are sent back to the scheduler.
+     * @param requests requests received from the scheduler, in the order to add them
+     */
+    public void addRequestsToElevatorQueue(List<ElevatorRequest> requests) {
+        List<ElevatorRequest> rejected = null;
         synchronized (queueLock) {
-            // We are assuming each request is considered one person
-            if (elevatorQueue.size() + 1 > Config.MAX_PASSENGERS) {
-                Log.print("Elevator " + elevatorId + " is full. Cannot add more passengers.");
+            boolean added = false;
+            for (ElevatorRequest request : requests) {
+                // We are assuming each request is considered one person
+                if (elevatorQueue.size() + 1 > capacity) {
+                    if (rejected == null) {
+                        rejected = new ArrayList<>();
+                    }
+                    rejected.add(request);
+                    continue;
+                }
+                if (elevatorQueue.isEmpty()) {
+                    // the first request decides the order, lowest pickup floor first going up
+                    elevatorQueue.setDescending(request.getButtonDirection() != ButtonDirection.UP);
+                } else {
+                    if (request.getButtonDirection() == ButtonDirection.UP) {
+                        assert request.getButtonId() >= elevatorQueue.peek().getButtonId(); // this should not happen
+                    } else {
+                        assert request.getButtonId() <= elevatorQueue.peek().getButtonId(); // this should not happen
+                    }
+                }
+                long estimatedTime = (long) Config.TIME_TO_TRAVEL_1_FLOOR * Math.abs(request.getFloorNumber() - request.getButtonId());
+                estimatedTime += (long) Config.TIME_TO_TRAVEL_1_FLOOR * Math.abs(currentFloor - request.getFloorNumber());
+                estimatedTime += 2 * Config.LOAD_TIME + 4 * Config.DOOR_TIME + 30000; //add 30 seconds buffer time
+                if (elevatorQueue.isEmpty()) {
+                    transportingTimeout = estimatedTime;
+                } else {
+                    transportingTimeout += estimatedTime;
+                }
+                request.setStartTime(context.getClock().time());
+                elevatorQueue.add(request);
+                added = true;
+            }
+            if (added) {
+                publishState();
+                if (idleWaiting) { // hand the clock to the idle elevator thread before waking it up
+                    idleWaiting = false;
+                    context.getClock().hold(thread);
+                }
+                queueLock.notifyAll();
+            }
+        }
+        // Sent outside of queueLock so the elevator thread is not blocked while the requests bounce back
+        if (rejected != null) {
+            Log.print("Elevator " + elevatorId + " is full. Cannot add more passengers.");
+            for (ElevatorRequest request : rejected) {
                 try {
                     sendRequestBackToScheduler(request); // Send the request back to scheduler for re-assignment
                 }
                 catch (IOException e) {
                     throw new RuntimeException(e);
                 }
-                return;
             }
+        }
+    }
 
-            if (elevatorQueue.isEmpty()) {
-                if (request.getButtonDirection() == ButtonDirection.UP) {
-                    elevatorQueue = new PriorityQueue<>(); // default is up
-                } else {
-                    elevatorQueue = new PriorityQueue<>(Comparator.reverseOrder());
+    /**
+     * Block the elevator thread until a request is in the queue. The clock is released while
+     * waiting, and held again by addRequestToElevatorQueue when a request arrives.
+     * @return true once a request is in the queue, false if the elevator was stopped
+     */
+    public boolean waitForRequest() {
+        synchronized (queueLock) {
+            while (elevatorQueue.isEmpty()) {
+                if (!idleWaiting) {
+                    idleWaiting = true;
+                    context.getClock().release(thread);
                 }
-            } else {
-                if (request.getButtonDirection() == ButtonDirection.UP) {
-                    assert request.getButtonId() >= elevatorQueue.peek().getButtonId(); // this should not happen
-                } else {
-                    assert request.getButtonId() <= elevatorQueue.peek().getButtonId(); // this should not happen
+                try {
+                    queueLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
             }
-            long estimatedTime = (long) Config.TIME_TO_TRAVEL_1_FLOOR * Math.abs(request.getFloorNumber() - request.getButtonId());
-            estimatedTime += (long) Config.TIME_TO_TRAVEL_1_FLOOR * Math.abs(currentFloor - request.getFloorNumber());
-            estimatedTime += 2 * Config.LOAD_TIME + 4 * Config.DOOR_TIME + 30000; //add 30 seconds buffer time
-            if (elevatorQueue.isEmpty()) {
-                transportingTimeout = estimatedTime;
-            } else {
-                transportingTimeout += estimatedTime;
-            }
-            request.setStartTime(LocalTime.now());
-            elevatorQueue.add(request);
-            queueLock.notifyAll();
         }
+        return true;
     }
 
     /**
@@ -227,24 +352,68 @@ public class Elevator extends Thread{
 
     public void removeRequestFromElevatorQueue() {
         ElevatorRequest nextRequest = elevatorQueue.poll(); // Remove the next request if available, else will be null
+        publishState();
         // TODO: Don't need this assignment eventually, but useful for debugging
     }
 
     /**
      * Getter for the elevatorQueue
-     * @return elevatorQueue the priorityQueue for the elevator
+     * @return elevatorQueue the stop table for the elevator
      */
-    public PriorityQueue<ElevatorRequest> getElevatorQueue(){
+    public StopTable getElevatorQueue(){
         return this.elevatorQueue;
     }
 
+    /**
+     * Get the number of passengers on board.
+     * @return The number of loaded requests in the queue.
+     */
+    public int getLoad() {
+        synchronized (queueLock) {
+            return elevatorQueue.getLoad();
+        }
+    }
+
+    /**
+     * Push the elevator's state to the Scheduler if it changed since the last push.
+     */
+    public void publishState() {
+        int load = getLoad();
+        int queueDepth = elevatorQueue.size();
+        synchronized (publishLock) {
+            if (currentFloor == publishedFloor && currentStateName == publishedState && currDirection == publishedDirection
+                    && load == publishedLoad && queueDepth == publishedQueueDepth) {
+                return;
+            }
+            publishedFloor = currentFloor;
+            publishedState = currentStateName;
+            publishedDirection = currDirection;
+            publishedLoad = load;
+            publishedQueueDepth = queueDepth;
+            stateVersion++;
+            elevatorSubsystem.publishElevatorState(elevatorId, currentStateName, currentFloor, currDirection, load, queueDepth, stateVersion);
+        }
+    }
+
+    /**
+     * Get the current state as an ElevatorInfo, with the version of the last push.
+     * @return The elevator info.
+     */
+    public ElevatorInfo getInfo() {
+        int load = getLoad();
+        int queueDepth = elevatorQueue.size();
+        synchronized (publishLock) {
+            return new ElevatorInfo(elevatorId, currentStateName, currentFloor, currDirection, load, queueDepth, stateVersion);
+        }
+    }
+
     /**
      * Wait to load passengers. Each passenger takes Config.LOAD_TIME seconds to load.
      * @param numPassengers The number of passengers to load.
      */
     public void timeToLoadPassengers(int numPassengers) {
         try {
-            Thread.sleep(numPassengers * Config.LOAD_TIME); // it takes 1 second to load/unload each passenger
+            context.getClock().sleep((long) numPassengers * Config.LOAD_TIME); // it takes 1 second to load/unload each passenger
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -275,7 +444,11 @@ public class Elevator extends Thread{
     public int arrivedFloor(int floorNum) {
         this.currentFloor = floorNum;
         elevatorSubsystem.addFloorMoved();
-        //Log.print("Elevator " + this.elevatorId + " reached floor " + floorNum + " at " + LocalTime.now()); for debug
+        metrics.floorMoved();
+        publishState();
+        if (Log.isDebugEnabled()) {
+            Log.debug("Elevator %d reached floor %d at %s", elevatorId, floorNum, context.getClock().time());
+        }
         return -1;
     }
 
@@ -292,6 +465,10 @@ public class Elevator extends Thread{
      */
     public void setState(State s) {
         this.currentState = getState(s);
+        this.currentStateName = s;
+        metrics.stateChanged(s);
+        context.getJournal().append(EventJournal.Type.ELEVATOR_STATE, elevatorId, s.ordinal(), currentFloor, 0);
+        publishState();
         this.currentState.action(this);
 
     }
@@ -312,10 +489,45 @@ public class Elevator extends Thread{
     public ElevatorState getState(State s) { return states.get(s); }
 
     /**
-     * Sets the initial state to IdleState
+     * Start the elevator thread. The thread holds the clock until it first goes idle.
+     */
+    public synchronized void start() {
+        thread = Threads.newThread("Elevator " + elevatorId, () -> context.run(this), false);
+        context.getClock().hold(thread);
+        thread.start();
+    }
+
+    /**
+     * Stop the elevator thread the next time it waits for a request, for a simulation that
+     * has ended.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Get the thread the elevator runs on.
+     * @return the thread, or null if the elevator was not started
+     */
+    public synchronized Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Sets the initial state to IdleState. The elevator thread runs this in the elevator's simulation.
      */
     @Override
     public void run() {
-        setState(State.IDLE);
+        try {
+            setState(State.IDLE);
+        } finally {
+            synchronized (queueLock) {
+                if (!idleWaiting) { // the elevator stopped, so time should no longer wait for it
+                    context.getClock().release(Thread.currentThread());
+                }
+            }
+        }
     }
 }
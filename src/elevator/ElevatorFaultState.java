@@ -8,7 +8,9 @@ public class ElevatorFaultState implements ElevatorState {
     public void action(Elevator elevator) {
         Log.print("Elevator " + elevator.getElevatorId() + " transitioned to FAULT state at " + java.time.LocalDateTime.now());
         // Perform actions when the elevator enters the fault state
-        elevator.getElevatorQueue().clear();
+        synchronized (elevator.getQueueLock()) {
+            elevator.getElevatorQueue().clear();
+        }
         stopElevatorAtNearestFloor(elevator);
         openDoors(elevator);
         displayErrorMessage(elevator);
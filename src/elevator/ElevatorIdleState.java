@@ -2,8 +2,6 @@ package elevator;
 
 import common.Log;
 
-import java.time.LocalTime;
-
 /**
  * Elevator is stationary and waits for requests to be added to the elevatorQueue
  */
@@ -15,17 +13,12 @@ public class ElevatorIdleState implements ElevatorState{
      */
     @Override
     public void action(Elevator elevator) {
-        Log.print("Elevator " + elevator.getElevatorId() + " transitioned to IDLE state at " + LocalTime.now());
-        synchronized (elevator.getQueueLock()) {
-            while (elevator.getElevatorQueue().isEmpty()) {
-                try {
-                    elevator.getQueueLock().wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+        if (Log.isEnabled()) {
+            Log.print("Elevator %d transitioned to IDLE state at %s", elevator.getElevatorId(), elevator.getContext().getClock().time());
+        }
+        if (elevator.waitForRequest()) {
+            elevator.setState(Elevator.State.TRANSPORTING);
         }
-        elevator.setState(Elevator.State.TRANSPORTING);
     }
         @Override
     public String toString() {
@@ -2,18 +2,111 @@ package elevator;
 
 import floor.ElevatorRequest;
 
+import java.nio.ByteBuffer;
+
+/**
+ * The state of one elevator as seen by the Scheduler. Pushed by the ElevatorSubsystem
+ * whenever the elevator changes, and returned for GET-INFO requests.
+ *
+ * The binary layout is SIZE bytes:
+ * <pre>
+ * offset size field
+ *      0    1 MAGIC, marks an elevator info message
+ *      1    1 FORMAT
+ *      2    1 state ordinal
+ *      3    1 direction ordinal
+ *      4    4 elevator ID
+ *      8    4 current floor
+ *     12    4 passengers on board
+ *     16    4 requests in the elevator's queue
+ *     20    8 version, increases with every change of the elevator
+ * </pre>
+ */
 public class ElevatorInfo {
+    /** The first byte of an elevator info message. Different from ElevatorRequestCodec.MAGIC. */
+    public static final byte MAGIC = (byte) 0xE2;
+    /** The version of the layout. */
+    public static final byte FORMAT = 1;
+    /** The size of an encoded elevator info in bytes. */
+    public static final int SIZE = 28;
+
+
     private int elevatorId;
     private Elevator.State currentState;
     private int currentFloor;
     private ElevatorRequest.ButtonDirection currDirection;
+    private int load;
+    private int queueDepth;
+    private long version;
 
     public ElevatorInfo(int elevatorId, Elevator.State currentState, int currentFloor, ElevatorRequest.ButtonDirection currDirection) {
+        this(elevatorId, currentState, currentFloor, currDirection, 0, 0, 0);
+    }
+
+    public ElevatorInfo(int elevatorId, Elevator.State currentState, int currentFloor, ElevatorRequest.ButtonDirection currDirection,
+                        int load, int queueDepth, long version) {
         this.elevatorId = elevatorId;
         this.currentState = currentState;
         this.currentFloor = currentFloor;
         this.currDirection = currDirection;
+        this.load = load;
+        this.queueDepth = queueDepth;
+        this.version = version;
+    }
+
+    /**
+     * Write the state of an elevator at the buffer's position, without creating an ElevatorInfo.
+     * @param buffer the buffer to write to, must have SIZE bytes remaining
+     */
+    public static void encode(ByteBuffer buffer, int elevatorId, Elevator.State state, int currentFloor,
+                              ElevatorRequest.ButtonDirection direction, int load, int queueDepth, long version) {
+        buffer.put(MAGIC);
+        buffer.put(FORMAT);
+        buffer.put((byte) state.ordinal());
+        buffer.put((byte) direction.ordinal());
+        buffer.putInt(elevatorId);
+        buffer.putInt(currentFloor);
+        buffer.putInt(load);
+        buffer.putInt(queueDepth);
+        buffer.putLong(version);
+    }
+
+    /**
+     * Write this elevator info at the buffer's position.
+     * @param buffer the buffer to write to, must have SIZE bytes remaining
+     */
+    public void encode(ByteBuffer buffer) {
+        encode(buffer, elevatorId, currentState, currentFloor, currDirection, load, queueDepth, version);
+    }
+
+    /**
+     * Read an elevator info at the buffer's position and move the position past it.
+     * @param buffer the buffer to read from
+     * @return the elevator info
+     * @throws IllegalArgumentException if it holds an unknown state or direction
+     */
+    public static ElevatorInfo decode(ByteBuffer buffer) {
+        buffer.get(); // magic
+        buffer.get(); // format
+        Elevator.State state = Elevator.State.fromOrdinal(buffer.get());
+        ElevatorRequest.ButtonDirection direction = ElevatorRequest.ButtonDirection.fromOrdinal(buffer.get());
+        int elevatorId = buffer.getInt();
+        int currentFloor = buffer.getInt();
+        int load = buffer.getInt();
+        int queueDepth = buffer.getInt();
+        long version = buffer.getLong();
+        return new ElevatorInfo(elevatorId, state, currentFloor, direction, load, queueDepth, version);
+    }
+
+    /**
+     * Check if the bytes at the buffer's position are an elevator info message. Does not move the position.
+     * @param buffer the buffer to check
+     * @return true if the buffer holds an elevator info
+     */
+    public static boolean isElevatorInfo(ByteBuffer buffer) {
+        return buffer.remaining() >= SIZE && buffer.get(buffer.position()) == MAGIC;
     }
+
     @Override
     public String toString() {
         return "ElevatorInfo{" +
@@ -39,4 +132,16 @@ public class ElevatorInfo {
     public ElevatorRequest.ButtonDirection getCurrDirection() {
         return currDirection;
     }
+
+    public int getLoad() {
+        return load;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getVersion() {
+        return version;
+    }
 }
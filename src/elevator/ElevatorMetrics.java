@@ -0,0 +1,137 @@
+package elevator;
+
+import common.Clock;
+import common.Metrics;
+
+/**
+ * The metrics of one elevator, labelled with its ID: counters updated by the elevator thread,
+ * and gauges of its queue and utilisation read when the metrics are exported. Counters
+ * continue from the previous elevator with the same ID in the process, gauges follow the
+ * latest one.
+ *
+ * The registry and clock are those of the elevator's simulation, so gauges read on an
+ * exporter thread see the simulated time.
+ */
+class ElevatorMetrics {
+
+    /** Counts the moves to a floor. */
+    private final Metrics.Counter trips;
+
+    /** Counts the floors travelled. */
+    private final Metrics.Counter floorsMoved;
+
+    /** Counts the floors the doors cycled at. */
+    private final Metrics.Counter stops;
+
+    /** Counts the door cycles. */
+    private final Metrics.Counter doorCycles;
+
+    /** The registry the metrics are in. */
+    private final Metrics registry;
+
+    /** The clock of the elevator's simulation. */
+    private final Clock clock;
+
+    /** The label value of the elevator. */
+    private final String label;
+
+    /** The Clock time the elevator was created at, in milliseconds. */
+    private final long createdAt;
+
+    /** The time spent transporting before the current trip, in milliseconds. */
+    private volatile long busyMillis;
+
+    /** The Clock time the current trip started at, -1 while not transporting. */
+    private volatile long busySince = -1;
+
+    /**
+     * Create the metrics of an elevator and register its gauges.
+     * @param elevator the elevator
+     */
+    ElevatorMetrics(Elevator elevator) {
+        label = Integer.toString(elevator.getElevatorId());
+        registry = elevator.getContext().getMetrics();
+        clock = elevator.getContext().getClock();
+        createdAt = clock.millis();
+        Metrics metrics = registry;
+        trips = metrics.counter("elevator_trips_total", "Moves of the elevator to a floor.", "elevator", label);
+        floorsMoved = metrics.counter("elevator_floors_moved_total", "Floors travelled by the elevator.", "elevator", label);
+        stops = metrics.counter("elevator_stops_total", "Floors the elevator opened its doors at.", "elevator", label);
+        doorCycles = metrics.counter("elevator_door_cycles_total", "Times the elevator opened and closed its doors.",
+                "elevator", label);
+        metrics.gauge("elevator_queue_depth", "Requests assigned to the elevator and not completed.",
+                () -> elevator.getElevatorQueue().size(), "elevator", label);
+        metrics.gauge("elevator_load", "Passengers on board the elevator.", elevator::getLoad, "elevator", label);
+        metrics.gauge("elevator_utilisation", "Fraction of the time since the elevator started spent transporting.",
+                this::getUtilisation, "elevator", label);
+        metrics.gauge("elevator_busy_seconds", "Time the elevator spent transporting.",
+                () -> getBusyMillis() / 1000.0, "elevator", label);
+    }
+
+    /**
+     * Count a move to a floor.
+     */
+    void trip() {
+        trips.increment();
+    }
+
+    /**
+     * Count a floor travelled.
+     */
+    void floorMoved() {
+        floorsMoved.increment();
+    }
+
+    /**
+     * Count a stop, with the number of door cycles at it.
+     * @param cycles the door cycles
+     */
+    void stop(int cycles) {
+        stops.increment();
+        doorCycles.add(cycles);
+    }
+
+    /**
+     * Count a fault.
+     * @param fault the name of the fault
+     */
+    void fault(String fault) {
+        registry.counter("elevator_faults_total", "Faults encountered by the elevator.",
+                "elevator", label, "fault", fault).increment();
+    }
+
+    /**
+     * Track the time spent transporting. Called by the elevator thread on every change of state.
+     * @param state the new state
+     */
+    void stateChanged(Elevator.State state) {
+        long now = clock.millis();
+        long since = busySince;
+        if (state == Elevator.State.TRANSPORTING) {
+            if (since < 0) {
+                busySince = now;
+            }
+        } else if (since >= 0) {
+            busyMillis += now - since;
+            busySince = -1;
+        }
+    }
+
+    /**
+     * Get the time spent transporting, including the current trip.
+     * @return the time in milliseconds
+     */
+    long getBusyMillis() {
+        long since = busySince;
+        return busyMillis + (since < 0 ? 0 : Math.max(0, clock.millis() - since));
+    }
+
+    /**
+     * Get the fraction of the time since the elevator was created spent transporting.
+     * @return the fraction, 0 to 1
+     */
+    double getUtilisation() {
+        long elapsed = clock.millis() - createdAt;
+        return elapsed <= 0 ? 0 : Math.min(1, (double) getBusyMillis() / elapsed);
+    }
+}
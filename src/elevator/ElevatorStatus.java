@@ -0,0 +1,186 @@
+package elevator;
+
+import floor.ElevatorRequest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The position and status of one elevator as shown by the FloorSubsystem: the floor it is at
+ * or passing, where it is going, and the passengers it let off and took on there. The
+ * ElevatorSubsystem sends the statuses of all cars that changed in one batch message per
+ * flush interval (see StatusBatcher).
+ *
+ * A batch is a header of HEADER_SIZE bytes followed by ENTRY_SIZE bytes per elevator:
+ * <pre>
+ * offset size field
+ *      0    1 MAGIC, marks a status batch
+ *      1    1 FORMAT
+ *      2    2 number of elevators
+ * then for each elevator
+ *      0    1 state ordinal
+ *      1    1 direction ordinal
+ *      2    2 reserved
+ *      4    4 elevator ID
+ *      8    4 floor
+ *     12    4 destination floor
+ *     16    4 passengers let off since the previous batch
+ *     20    4 passengers taken on since the previous batch
+ * </pre>
+ */
+public class ElevatorStatus {
+    /** The first byte of a status batch. Different from the other message types. */
+    public static final byte MAGIC = (byte) 0xE4;
+    /** The version of the layout. */
+    public static final byte FORMAT = 1;
+    /** The size of the batch header in bytes. */
+    public static final int HEADER_SIZE = 4;
+    /** The size of one encoded status in bytes. */
+    public static final int ENTRY_SIZE = 24;
+    /** The most statuses in one batch, so it fits the FloorSubsystem's 1024 byte buffer. */
+    public static final int MAX_ENTRIES = (1024 - HEADER_SIZE) / ENTRY_SIZE;
+
+
+    private final int elevatorId;
+    private final Elevator.State state;
+    private final int floor;
+    private final ElevatorRequest.ButtonDirection direction;
+    private final int destinationFloor;
+    private final int unloaded;
+    private final int loaded;
+
+    public ElevatorStatus(int elevatorId, Elevator.State state, int floor, ElevatorRequest.ButtonDirection direction,
+                          int destinationFloor, int unloaded, int loaded) {
+        this.elevatorId = elevatorId;
+        this.state = state;
+        this.floor = floor;
+        this.direction = direction;
+        this.destinationFloor = destinationFloor;
+        this.unloaded = unloaded;
+        this.loaded = loaded;
+    }
+
+    /**
+     * Encode statuses into batch messages of at most MAX_ENTRIES each.
+     * @param statuses the statuses
+     * @return the messages, none if there are no statuses
+     */
+    public static List<byte[]> encode(List<ElevatorStatus> statuses) {
+        List<byte[]> messages = new ArrayList<>((statuses.size() + MAX_ENTRIES - 1) / MAX_ENTRIES);
+        for (int from = 0; from < statuses.size(); from += MAX_ENTRIES) {
+            int to = Math.min(statuses.size(), from + MAX_ENTRIES);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (to - from) * ENTRY_SIZE);
+            buffer.put(MAGIC);
+            buffer.put(FORMAT);
+            buffer.putShort((short) (to - from));
+            for (int i = from; i < to; i++) {
+                statuses.get(i).encode(buffer);
+            }
+            messages.add(buffer.array());
+        }
+        return messages;
+    }
+
+    /**
+     * Write this status at the buffer's position.
+     * @param buffer the buffer to write to, must have ENTRY_SIZE bytes remaining
+     */
+    private void encode(ByteBuffer buffer) {
+        buffer.put((byte) state.ordinal());
+        buffer.put((byte) direction.ordinal());
+        buffer.putShort((short) 0);
+        buffer.putInt(elevatorId);
+        buffer.putInt(floor);
+        buffer.putInt(destinationFloor);
+        buffer.putInt(unloaded);
+        buffer.putInt(loaded);
+    }
+
+    /**
+     * Read the statuses of a batch at the buffer's position and move the position past them.
+     * @param buffer the buffer to read from
+     * @return the statuses, in the order they were sent
+     * @throws IllegalArgumentException if the batch is cut short or holds an unknown state or direction
+     */
+    public static List<ElevatorStatus> decode(ByteBuffer buffer) {
+        buffer.get(); // magic
+        byte format = buffer.get();
+        if (format != FORMAT) {
+            throw new IllegalArgumentException("Unsupported status batch format " + format);
+        }
+        int count = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < count * ENTRY_SIZE) {
+            throw new IllegalArgumentException("Status batch of " + count + " elevators is cut short");
+        }
+        List<ElevatorStatus> statuses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Elevator.State state = Elevator.State.fromOrdinal(buffer.get());
+            ElevatorRequest.ButtonDirection direction = ElevatorRequest.ButtonDirection.fromOrdinal(buffer.get());
+            buffer.getShort(); // reserved
+            statuses.add(new ElevatorStatus(buffer.getInt(), state, buffer.getInt(), direction, buffer.getInt(),
+                    buffer.getInt(), buffer.getInt()));
+        }
+        return statuses;
+    }
+
+    /**
+     * Check if the bytes at the buffer's position are a status batch. Does not move the position.
+     * @param buffer the buffer to check
+     * @return true if the buffer holds a status batch
+     */
+    public static boolean isBatch(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.get(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Add the passengers of an earlier status of the same elevator to this one, which replaces it.
+     * @param earlier the status this one replaces
+     * @return the status with the passengers of both
+     */
+    ElevatorStatus after(ElevatorStatus earlier) {
+        return new ElevatorStatus(elevatorId, state, floor, direction, destinationFloor,
+                unloaded + earlier.unloaded, loaded + earlier.loaded);
+    }
+
+    @Override
+    public String toString() {
+        return "ElevatorStatus{" +
+                "elevatorId=" + elevatorId +
+                ", state=" + state +
+                ", floor=" + floor +
+                ", direction=" + direction +
+                ", destinationFloor=" + destinationFloor +
+                ", unloaded=" + unloaded +
+                ", loaded=" + loaded +
+                '}';
+    }
+
+    public int getElevatorId() {
+        return elevatorId;
+    }
+
+    public Elevator.State getState() {
+        return state;
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    public ElevatorRequest.ButtonDirection getDirection() {
+        return direction;
+    }
+
+    public int getDestinationFloor() {
+        return destinationFloor;
+    }
+
+    public int getUnloaded() {
+        return unloaded;
+    }
+
+    public int getLoaded() {
+        return loaded;
+    }
+}
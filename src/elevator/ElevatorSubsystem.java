@@ -1,17 +1,31 @@
 package elevator;
 
+import floor.CSVParser;
 import floor.ElevatorRequest.ButtonDirection;
 import floor.ElevatorRequest;
+import floor.ElevatorRequestCodec;
+import floor.RequestLatency;
 
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import common.BuildingConfig;
+import common.Config;
+import common.EventJournal;
 import common.Log;
+import common.MetricsServer;
+import common.SimulationContext;
+import common.Threads;
+import common.Transport;
 import scheduler.Scheduler;
 
 /**
@@ -21,19 +35,28 @@ public class ElevatorSubsystem implements Runnable {
     /** Listener variable */
     private RequestProcessedListener listener;
 
-    /** The elevators to schedule. */
-    private Elevator[] elevatorCars = new Elevator[4]; // 4 elevators max for now
+    /** The elevators to schedule, indexed by elevator ID. */
+    private final Elevator[] elevatorCars;
 
     /** The schedule to receive requests from. */
     private Scheduler scheduler;
 
+    /** The simulation the elevator subsystem and its elevators belong to. */
+    private final SimulationContext context;
+
     /** The requests from the scheduler. */
     private ArrayList<ElevatorRequest> elevatorSubsystemRequestsQueue = new ArrayList<ElevatorRequest>();
 
     /** The responses from the elevators. */
     private ArrayList<ElevatorRequest> elevatorSubsystemResponseLog = new ArrayList<ElevatorRequest>();
-    /** Track the number movements by elevators */
-    private int totalFloorsMoved;
+    /** The message the Scheduler sends to ask for the elevators info */
+    private static final byte[] GET_INFO = "GET-INFO".getBytes(StandardCharsets.UTF_8);
+    /** Track the number movements by elevators, counted by every elevator thread */
+    private final LongAdder totalFloorsMoved = new LongAdder();
+    /** Collects the status updates of the elevators into one message to the floors per flush */
+    private final StatusBatcher statusBatcher;
+    /** Pushes the state of the elevators to the Scheduler while serve runs, otherwise null */
+    private ScheduledExecutorService heartbeat;
     /**
      * Set the listener for request processing.
      * @param listener The listener to set.
@@ -46,7 +69,11 @@ public class ElevatorSubsystem implements Runnable {
      * Listener interface for notifying when a request is processed
      */
     public interface RequestProcessedListener {
-        void onRequestProcessed();
+        /**
+         * Called by the elevator thread that completed the request.
+         * @param request the completed request
+         */
+        void onRequestProcessed(ElevatorRequest request);
     }
 
     /**
@@ -55,11 +82,7 @@ public class ElevatorSubsystem implements Runnable {
      * @param numElevators The number of elevators to create
      */
     public ElevatorSubsystem(Scheduler scheduler, int numElevators) {
-        this.scheduler = scheduler;
-        for(int i = 0; i < numElevators; i++) { //create and start all elevators
-            this.elevatorCars[i] = new Elevator(i, this);
-            this.elevatorCars[i].start();
-        }
+        this(SimulationContext.capture(), scheduler, numElevators);
     }
 
     /**
@@ -67,11 +90,43 @@ public class ElevatorSubsystem implements Runnable {
      * @param numElevators The number of elevators to create
      */
     public ElevatorSubsystem(int numElevators) {
+        this(SimulationContext.capture(), null, numElevators);
+    }
+
+    /**
+     * Create a new elevator subsystem in a simulation. Creates and starts the specified number
+     * of elevators, in the same simulation.
+     * @param context The simulation, resolved.
+     * @param scheduler The scheduler to use for requests, or null.
+     * @param numElevators The number of elevators to create
+     */
+    public ElevatorSubsystem(SimulationContext context, Scheduler scheduler, int numElevators) {
+        this.context = context;
+        this.scheduler = scheduler;
+        this.elevatorCars = new Elevator[numElevators];
+        this.statusBatcher = new StatusBatcher(context, numElevators);
         for(int i = 0; i < numElevators; i++) { //create and start all elevators
             this.elevatorCars[i] = new Elevator(i, this);
             this.elevatorCars[i].start();
         }
-        this.totalFloorsMoved = 0;
+    }
+
+    /**
+     * Get the simulation the elevator subsystem belongs to.
+     * @return The resolved context it was created in.
+     */
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Stop the elevator threads once they are idle, and the heartbeat, for a simulation that has ended.
+     */
+    public void stop() {
+        stopHeartbeat();
+        for (Elevator elevator : elevatorCars) {
+            elevator.stop();
+        }
     }
 
     /**
@@ -87,20 +142,30 @@ public class ElevatorSubsystem implements Runnable {
      * them to the elevators, and sends them back to the scheduler.
      */
     public void run() {
-        int listenPort = 6000; // Different port than Scheduler
+        context.run(this::serve);
+    }
+
+    /**
+     * Receive the messages of the scheduler until the socket fails.
+     */
+    private void serve() {
+        int listenPort = context.getTransport().getPort(Transport.Peer.ELEVATOR_SUBSYSTEM); // Different port than Scheduler
 
         try (DatagramSocket serverSocket = new DatagramSocket(listenPort)) {
+            // The buffer and packet are reused for every message
             byte[] receiveData = new byte[1024]; // Buffer for incoming data
+            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+            ByteBuffer receiveBuffer = ByteBuffer.wrap(receiveData);
 
             System.out.println("ElevatorSubsystem listening on port " + listenPort);
+            startHeartbeat();
 
             while (true) { // Run indefinitely
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+                receivePacket.setLength(receiveData.length);
                 serverSocket.receive(receivePacket);
+                int length = receivePacket.getLength();
 
-                String received = new String(receivePacket.getData(), 0, receivePacket.getLength());
-
-                if ("GET-INFO".equals(received.trim())) { // received an info request from Scheduler
+                if (isGetInfo(receiveData, length)) { // received an info request from Scheduler
                     //System.out.println("Received GET-INFO request");
 
                     // Extract the address and port of the Scheduler from the received packet
@@ -109,62 +174,141 @@ public class ElevatorSubsystem implements Runnable {
 
                     // Reply back to the Scheduler with the elevator info
                     sendElevatorsInfo(serverSocket, schedulerAddress, schedulerPort);
-                } else { // received a request from the scheduler, with an elevator ID appended
-                   
-                // HANDLE FAULTS
-                    // if the received message contains "DEATH" fault then set the elevator to FAULT state
-                    if (received.contains("DEATH"))  {
-                        int elevatorID = ByteBuffer.wrap(receiveData, receivePacket.getLength() - 4, 4).getInt();
-                        System.out.println(">> Elevator " + elevatorID + " has encountered some unexpected fault!! :( ");
-
-
-                            // Send the FAULT to the FloorSubsystem
-                            String InfoString = "DEATH" + " fault encountered by Elevator " + elevatorID + " at floor " + elevatorCars[elevatorID].getCurrentFloor();
-                            byte[] directionBytes = InfoString.getBytes(StandardCharsets.UTF_8);
-                            InetAddress address = null;
-                            try {
-                                address = InetAddress.getByName("localhost");
-                            } catch (UnknownHostException e) {
-                                e.printStackTrace();
-                            } // the FloorSubsystem listen address
-                            int port = 12345; // the FloorSubsystem listen port
-                            DatagramPacket packet = new DatagramPacket(directionBytes, directionBytes.length, address, port);
-                            try (DatagramSocket socket = new DatagramSocket()) {
-                                socket.send(packet);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-
-
-
-                        System.out.println("Setting elevator " + elevatorID + " to FAULT state");
-                        elevatorCars[elevatorID].setState(Elevator.State.FAULT);
-                    }
-                    else if (received.contains("BAD_REQUEST")) { //ignore bad requests
-                        Log.print(">> ElevatorSubsystem: received BAD_REQUEST, ignoring request");
-                    }
-                    else {
-                        // Extract elevator ID from the end of the received packet
-                        int elevatorID = ByteBuffer.wrap(receiveData, receivePacket.getLength() - 4, 4).getInt();
-
-                        // Exclude the last 4 bytes (elevator ID) from the received data
-                        byte[] requestData = Arrays.copyOf(receiveData, receivePacket.getLength() - 4);
-
-                        // Create new request from bytes
-                        ElevatorRequest request = new ElevatorRequest(requestData);
-                        Log.print("Received Elevator request: " + request + " assigned to elevator " + elevatorID +
-                                " at " + LocalTime.now());
-                        assignRequest(request, elevatorID);
-                    }
+                } else {
+                    receiveBuffer.clear().limit(length);
+                    receive(receiveBuffer);
                 }
             }
         } catch (SocketException e) {
             System.err.println("SocketException: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("IOException: " + e.getMessage());
+        } finally {
+            stopHeartbeat(); // the elevators are no longer served
         }
     }
 
+    /**
+     * Handle requests from the scheduler, from the network or from a scheduler in the same
+     * process. The requests are followed by the ID of the elevator they are assigned to. Frames
+     * of the reliable channel are acknowledged and unwrapped first, and those already handled dropped.
+     * @param message the message, from position to limit
+     */
+    public void receive(ByteBuffer message) {
+        message = context.getTransport().channel(Transport.Peer.ELEVATOR_SUBSYSTEM).receive(message);
+        if (message == null) {
+            return;
+        }
+        if (message.remaining() <= 4) {
+            return;
+        }
+        // Extract elevator ID from the end of the received packet
+        int end = message.limit();
+        int elevatorID = message.getInt(end - 4);
+
+        // Decode the requests from the bytes before the elevator ID
+        message.limit(end - 4);
+        ArrayList<ElevatorRequest> requests = new ArrayList<>(1);
+        try {
+            do {
+                requests.add(ElevatorRequestCodec.decode(message));
+            } while (ElevatorRequestCodec.isBinary(message));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring malformed request: " + e.getMessage());
+            return;
+        }
+        handleElevatorRequests(requests, elevatorID);
+    }
+
+    /**
+     * Receive the requests of the scheduler from a transport in this process rather than the
+     * network. Replaces run(): the requests are handled on the transport's inbox thread.
+     * @param transport the transport the scheduler sends with
+     */
+    public void bind(Transport transport) {
+        transport.bind(Transport.Peer.ELEVATOR_SUBSYSTEM, this::receive);
+    }
+
+    /**
+     * Handle a request assigned to an elevator by the scheduler. Faults are handled here,
+     * other requests are added to the elevator's queue.
+     * @param request the request
+     * @param elevatorID the elevator chosen by the scheduler
+     */
+    public void handleElevatorRequest(ElevatorRequest request, int elevatorID) {
+        // HANDLE FAULTS
+        switch (request.getElevatorFault()) {
+            case DEATH: // set the elevator to FAULT state
+                System.out.println(">> Elevator " + elevatorID + " has encountered some unexpected fault!! :( ");
+
+                // Send the FAULT to the FloorSubsystem
+                String InfoString = "DEATH" + " fault encountered by Elevator " + elevatorID + " at floor " + elevatorCars[elevatorID].getCurrentFloor();
+                byte[] directionBytes = InfoString.getBytes(StandardCharsets.UTF_8);
+                try {
+                    context.getTransport().send(Transport.Peer.FLOOR_SUBSYSTEM, directionBytes);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+
+                elevatorCars[elevatorID].getMetrics().fault("DEATH");
+                context.getJournal().append(EventJournal.Type.FAULT, elevatorID, CSVParser.ElevatorFault.DEATH.ordinal(),
+                        elevatorCars[elevatorID].getCurrentFloor(), 0);
+                System.out.println("Setting elevator " + elevatorID + " to FAULT state");
+                elevatorCars[elevatorID].setState(Elevator.State.FAULT);
+                break;
+            case BAD_REQUEST: //ignore bad requests
+                Log.print(">> ElevatorSubsystem: received BAD_REQUEST, ignoring request");
+                break;
+            default:
+                if (Log.isEnabled()) {
+                    Log.print("Received Elevator request: %s assigned to elevator %d at %s", request, elevatorID, context.getClock().time());
+                }
+                assignRequest(request, elevatorID);
+        }
+    }
+
+    /**
+     * Handle a group of requests assigned to one elevator by the scheduler. Faults are handled
+     * one at a time, the other requests are added to the elevator's queue together.
+     * @param requests the requests
+     * @param elevatorID the elevator chosen by the scheduler
+     */
+    public void handleElevatorRequests(List<ElevatorRequest> requests, int elevatorID) {
+        if (requests.size() == 1) {
+            handleElevatorRequest(requests.get(0), elevatorID);
+            return;
+        }
+        ArrayList<ElevatorRequest> group = new ArrayList<>(requests.size());
+        for (ElevatorRequest request : requests) {
+            CSVParser.ElevatorFault fault = request.getElevatorFault();
+            if (fault == CSVParser.ElevatorFault.DEATH || fault == CSVParser.ElevatorFault.BAD_REQUEST) {
+                handleElevatorRequest(request, elevatorID);
+            } else {
+                group.add(request);
+            }
+        }
+        if (!group.isEmpty()) {
+            if (Log.isEnabled()) {
+                Log.print("Received %d Elevator requests: %s assigned to elevator %d at %s", group.size(), group, elevatorID,
+                        context.getClock().time());
+            }
+            elevatorCars[elevatorID].addRequestsToElevatorQueue(group);
+        }
+    }
+
+    /**
+     * Check if a message is the GET-INFO request, ignoring trailing whitespace
+     * @param data the message
+     * @param length the length of the message
+     * @return true if the message is GET-INFO
+     */
+    private static boolean isGetInfo(byte[] data, int length) {
+        while (length > 0 && data[length - 1] <= ' ') {
+            length--;
+        }
+        return Arrays.equals(data, 0, length, GET_INFO, 0, GET_INFO.length);
+    }
+
     /**
      * Get the requests from the scheduler for testing.
      * @return The requests from the scheduler for testing.
@@ -202,7 +346,15 @@ public class ElevatorSubsystem implements Runnable {
      * Add floor moved to count for stats
      */
     public void addFloorMoved() {
-        totalFloorsMoved++;
+        totalFloorsMoved.increment();
+    }
+
+    /**
+     * Get the batcher that sends the status updates of the elevators to the FloorSubsystem.
+     * @return the status batcher
+     */
+    public StatusBatcher getStatusBatcher() {
+        return statusBatcher;
     }
 
     /**
@@ -210,7 +362,7 @@ public class ElevatorSubsystem implements Runnable {
      * @return totalFloorsMoved
      */
     public int getTotalFloorsMoved() {
-        return totalFloorsMoved;
+        return totalFloorsMoved.intValue();
     }
 
     /**
@@ -222,24 +374,89 @@ public class ElevatorSubsystem implements Runnable {
     }
 
     /**
-     * Sends completed requests back to the scheduler
+     * Sends completed requests back to the scheduler through the reliable channel, and tells the listener
      * @param er the completed ElevatorRequest
      */
     public void sendCompletedElevatorRequest(ElevatorRequest er) {
+        if (listener != null) {
+            listener.onRequestProcessed(er);
+        }
         byte[] sendData = er.getBytes();
         try {
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, InetAddress.getByName("localhost"), 5000);
-            DatagramSocket serverSocket = new DatagramSocket();
-            serverSocket.send(sendPacket);
-        } catch (SocketException e) {
-            System.err.println("SocketException: " + e.getMessage());
-        } catch (UnknownHostException e) {
-            System.err.println("UnknownHostException: " + e.getMessage());
+            context.getTransport().channel(Transport.Peer.ELEVATOR_SUBSYSTEM).send(Transport.Peer.SCHEDULER, sendData);
         } catch (IOException e) {
             System.err.println("IOException: " + e.getMessage());
         }
     }
 
+    /**
+     * Tells the scheduler through the reliable channel that the passenger of a request boarded, so it
+     * knows the request is picked up
+     * @param er the boarded ElevatorRequest
+     */
+    public void sendBoardedElevatorRequest(ElevatorRequest er) {
+        byte[] sendData = er.getBytes();
+        try {
+            context.getTransport().channel(Transport.Peer.ELEVATOR_SUBSYSTEM).send(Transport.Peer.SCHEDULER, sendData);
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Push the state of one elevator to the Scheduler. Called by the elevator whenever it changes.
+     * @param elevatorId the elevator
+     * @param state the elevator's state
+     * @param currentFloor the elevator's floor
+     * @param direction the elevator's direction
+     * @param load the passengers on board
+     * @param queueDepth the requests in the elevator's queue
+     * @param version increases with every change of the elevator
+     */
+    public void publishElevatorState(int elevatorId, Elevator.State state, int currentFloor, ButtonDirection direction,
+                                     int load, int queueDepth, long version) {
+        byte[] sendData = new byte[ElevatorInfo.SIZE];
+        ElevatorInfo.encode(ByteBuffer.wrap(sendData), elevatorId, state, currentFloor, direction, load, queueDepth, version);
+        try {
+            context.getTransport().send(Transport.Peer.SCHEDULER, sendData);
+        } catch (IOException e) {
+            System.err.println("IOException in publishElevatorState: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Push the state of every elevator to the Scheduler every Config.STATE_HEARTBEAT_TIME, so the
+     * Scheduler knows its view of idle elevators is still current. Runs in real time since it
+     * only keeps the network view fresh.
+     */
+    private synchronized void startHeartbeat() {
+        if (heartbeat != null) {
+            return;
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ElevatorSubsystem Heartbeat Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            for (Elevator elevator : elevatorCars) {
+                ElevatorInfo info = elevator.getInfo();
+                publishElevatorState(info.getElevatorId(), info.getCurrentState(), info.getCurrentFloor(),
+                        info.getCurrDirection(), info.getLoad(), info.getQueueDepth(), info.getVersion());
+            }
+        }, 0, Config.STATE_HEARTBEAT_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop pushing the state of the elevators, if the heartbeat is running.
+     */
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+
     /**
      * Sends information about the current status of each elevator to the Scheduler via UDP
      * @param serverSocket socket to send from
@@ -248,19 +465,11 @@ public class ElevatorSubsystem implements Runnable {
      * @throws IOException
      */
     public void sendElevatorsInfo(DatagramSocket serverSocket, InetAddress schedulerAddress, int schedulerPort) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        for (Elevator elevator : elevatorCars) { // Assuming elevatorCars is an iterable list of Elevator
-            sb.append(elevator.getElevatorId())
-                    .append(';')
-                    .append(elevator.getCurrentState())
-                    .append(';')
-                    .append(elevator.getCurrentFloor())
-                    .append(';')
-                    .append(elevator.getCurrDirection())
-                    .append('\n');
+        ByteBuffer buffer = ByteBuffer.allocate(elevatorCars.length * ElevatorInfo.SIZE);
+        for (Elevator elevator : elevatorCars) {
+            elevator.getInfo().encode(buffer);
         }
-        byte[] sendData = sb.toString().getBytes();
-        DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, schedulerAddress, schedulerPort);
+        DatagramPacket sendPacket = new DatagramPacket(buffer.array(), buffer.position(), schedulerAddress, schedulerPort);
         try {
             serverSocket.send(sendPacket);
         } catch (IOException e) {
@@ -269,13 +478,69 @@ public class ElevatorSubsystem implements Runnable {
         //System.out.println("Sent elevators info to Scheduler.");
     }
 
+    /**
+     * Parse the status flush time that follows a command line option.
+     * @param args the command line
+     * @param i the index of the option
+     * @return the flush time in milliseconds
+     * @throws IllegalArgumentException if the flush time is missing or negative
+     */
+    public static long parseFlushTime(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a flush time in milliseconds");
+        }
+        long flushTime;
+        try {
+            flushTime = Long.parseLong(args[i + 1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(args[i] + " needs a flush time in milliseconds: " + args[i + 1]);
+        }
+        if (flushTime < 0) {
+            throw new IllegalArgumentException(args[i] + " needs a flush time of 0 or more: " + flushTime);
+        }
+        return flushTime;
+    }
+
     /**
      * Creates and starts an ElevatorSubsystem thread
-     * @param args command line (not used)
+     * @param args --virtual-threads to run the elevators and the listener on virtual threads,
+     *             --elevators N and --floors N to change the size of the building,
+     *             --metrics-port N to serve the metrics over HTTP,
+     *             --journal FILE to write the events to an event journal,
+     *             --port-offset N to move the ports of all subsystems up by N,
+     *             --status-flush N to collect the elevator status updates for N ms before sending them to the floors
      */
     public static void main(String[] args) {
-        ElevatorSubsystem elevatorSubsystem = new ElevatorSubsystem(4);
-        Thread elevatorSubsystemThread = new Thread(elevatorSubsystem,"ElevatorSubsystem Thread");
-        elevatorSubsystemThread.start();
+        BuildingConfig config = BuildingConfig.get();
+        int metricsPort = -1;
+        long statusFlushTime = Config.STATUS_FLUSH_TIME;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--virtual-threads") && !Threads.setVirtual(true)) {
+                System.err.println("Virtual threads need Java 21 or later, using platform threads");
+            } else if (args[i].equals("--elevators")) {
+                config = config.withElevators(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--floors")) {
+                config = config.withFloors(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--metrics-port")) {
+                metricsPort = MetricsServer.parsePort(args, i++);
+            } else if (args[i].equals("--journal") && i + 1 < args.length) {
+                EventJournal.start(args[++i]);
+            } else if (args[i].equals("--port-offset")) {
+                Transport.setPortOffset(Transport.parsePortOffset(args, i++));
+            } else if (args[i].equals("--status-flush")) {
+                statusFlushTime = parseFlushTime(args, i++);
+            }
+        }
+        BuildingConfig.set(config);
+        RequestLatency.get().dumpAtShutdown();
+        MetricsServer.export(metricsPort);
+        ElevatorSubsystem elevatorSubsystem = new ElevatorSubsystem(config.getElevators());
+        elevatorSubsystem.getStatusBatcher().setFlushTime(statusFlushTime);
+        Thread elevatorSubsystemThread = Threads.start("ElevatorSubsystem Thread", elevatorSubsystem, false);
+        try {
+            elevatorSubsystemThread.join(); // virtual threads do not keep the program running
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
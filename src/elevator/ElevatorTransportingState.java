@@ -1,17 +1,14 @@
 package elevator;
 
 import common.Config;
+import common.EventJournal;
 import common.Log;
+import common.Transport;
+import floor.CSVParser;
 import floor.ElevatorRequest;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.LocalTime;
 import java.util.ArrayList;
 
 /**
@@ -39,7 +36,9 @@ public class ElevatorTransportingState implements ElevatorState{
     @Override
     public void action(Elevator elevator) {
         this.elevator = elevator;
-        Log.print("Elevator " + elevator.getElevatorId() + " transitioned to TRANSPORTING state at " + LocalTime.now());
+        if (Log.isEnabled()) {
+            Log.print("Elevator %d transitioned to TRANSPORTING state at %s", elevator.getElevatorId(), elevator.getContext().getClock().time());
+        }
         simulateElevatorMovement();
     }
 
@@ -48,7 +47,8 @@ public class ElevatorTransportingState implements ElevatorState{
      */
     public void simulateElevatorMovement() {
         int destinationFloor;
-        while (!elevator.getElevatorQueue().isEmpty()) {
+        // A fault can leave requests in the queue, stop instead of moving again
+        while (!elevator.getElevatorQueue().isEmpty() && !(elevator.getCurrentState() instanceof ElevatorFaultState)) {
             // Extract the next destination floor from the queue
             ElevatorRequest request = elevator.getElevatorQueue().peek();
             destinationFloor = request.getButtonId();
@@ -61,22 +61,34 @@ public class ElevatorTransportingState implements ElevatorState{
             elevator.setMotorStatus(Elevator.MotorStatus.ON);
 
             //open doors if already on same floor as the request
-            boolean loaded = false;
+            ElevatorRequest firstLoaded = null;
             int numLoaded = 0;
+            ArrayList<ElevatorRequest> boarded = new ArrayList<>();
             synchronized (elevator.getQueueLock()) {
-                for (ElevatorRequest er : elevator.getElevatorQueue()) {
-                    if (request.getFloorNumber() == elevator.getCurrentFloor()) {
-                        if (!loaded) {
-                            loadElevator("loading", elevator.getCurrentFloor(), er);
-                            loaded = true;
+                StopTable queue = elevator.getElevatorQueue();
+                if (request.getFloorNumber() == elevator.getCurrentFloor()) {
+                    for (ElevatorRequest er : queue.requestsFrom(elevator.getCurrentFloor())) {
+                        if (!er.isLoaded()) {
+                            if (firstLoaded == null) {
+                                firstLoaded = er;
+                            }
+                            queue.board(er, elevator.getContext().getClock());
+                            boarded.add(er);
+                            numLoaded++;
                         }
-                        er.setLoaded();
-                        numLoaded++;
                     }
                 }
             }
-            if(loaded) { sendElevatorState(elevator.getElevatorId(), elevator.getCurrentState().toString(), elevator.getCurrentFloor(),
-                    ElevatorRequest.ButtonDirection.NONE, elevator.getCurrentFloor(), 0, numLoaded); }
+            for (ElevatorRequest er : boarded) {
+                elevatorSubsystem.sendBoardedElevatorRequest(er); //tell the scheduler the passenger got on
+            }
+            // The doors are cycled outside of queueLock so new requests can be added while passengers load
+            if (firstLoaded != null) {
+                loadElevator("loading", elevator.getCurrentFloor(), firstLoaded);
+                elevator.getMetrics().stop(1);
+                elevator.getContext().getJournal().append(EventJournal.Type.STOP, elevator.getElevatorId(), 0, elevator.getCurrentFloor(), 1);
+                sendElevatorState(elevator.getCurrentFloor(), ElevatorRequest.ButtonDirection.NONE, elevator.getCurrentFloor(), 0, numLoaded);
+            }
 
 
             //check if the elevator needs to move in opposite direction to get to starting floor
@@ -103,6 +115,9 @@ public class ElevatorTransportingState implements ElevatorState{
      */
     private void handleTimeoutError() {
         Log.print("Elevator " + elevator.getElevatorId() + " timed out in transporting state.");
+        elevator.getMetrics().fault("TIMEOUT");
+        elevator.getContext().getJournal().append(EventJournal.Type.FAULT, elevator.getElevatorId(), CSVParser.ElevatorFault.TIMEOUT_FAULT.ordinal(),
+                elevator.getCurrentFloor(), 0);
         elevator.setState(Elevator.State.FAULT);
     }
 
@@ -116,23 +131,29 @@ public class ElevatorTransportingState implements ElevatorState{
     public void moveElevator(int destinationFloor, ElevatorRequest.ButtonDirection direction, boolean isInitialPickup) {
         int floorsToMove = Math.abs(elevator.getCurrentFloor() - destinationFloor);
         elevator.setDirection(direction);
-        startTime = System.currentTimeMillis();
+        startTime = elevator.getContext().getClock().millis();
+        if (floorsToMove > 0) {
+            elevator.getMetrics().trip();
+        }
         int unloadedCount;
         int loadedCount;
         
         // Move the elevator from the current floor to the destination floor
         for (int floorsMoved = 0; floorsMoved < floorsToMove; floorsMoved++) {
             // Calculate elapsed time at each iteration
-            long currentTime = System.currentTimeMillis();
+            long currentTime = elevator.getContext().getClock().millis();
             long elapsedTime = currentTime - startTime;
             // Check if elapsed time exceeds the timeout threshold
             if (elapsedTime > elevator.getTransportingTimeout()) {
-                Log.print("Transporting state exceeded timeout threshold at " + LocalTime.now());
+                Log.print("Transporting state exceeded timeout threshold at " + elevator.getContext().getClock().time());
                 handleTimeoutError(); // Handle timeout error
                 return; // Exit method to stop further processing
             }
             int nextFloor = direction == ElevatorRequest.ButtonDirection.UP ? elevator.getCurrentFloor() + 1 : elevator.getCurrentFloor() - 1;
             ArrayList<ElevatorRequest> removeList = new ArrayList<>();
+            ArrayList<ElevatorRequest> doorCycles = new ArrayList<>(); // requests that open the doors at this floor
+            ArrayList<String> doorCycleTypes = new ArrayList<>();
+            ArrayList<ElevatorRequest> boarded = new ArrayList<>(); // passengers who got on at this floor
             elevator.arrivedFloor(nextFloor);
             boolean doorsOpened = false;
 
@@ -152,47 +173,75 @@ public class ElevatorTransportingState implements ElevatorState{
                 // Check if any unload requests on this floor
                unloadedCount = 0;
                loadedCount = 0;
+                StopTable queue = elevator.getElevatorQueue();
 
-                for (ElevatorRequest e : elevator.getElevatorQueue()) {
-                    if (nextFloor == e.getButtonId() && e.isLoaded()) {
-                        loadElevator("unloading", nextFloor, e); // Unload the elevator
-                        removeList.add(e);
-                        doorsOpened = true;
-                        unloadedCount++;
-                    }
-                    
-                    // Check if any load requests on this floor in the same direction
-                    else if (e.getFloorNumber() == nextFloor && (e.getButtonDirection() == direction && !isInitialPickup ||
-                            isInitialPickup && e.getFloorNumber() == newFloor && e.getButtonDirection() != direction)) {
-                        if (!doorsOpened) { // Prevents doors from opening twice on the same floor
-                            loadElevator("loading", nextFloor, e); // Load the elevator
+                if (queue.hasDropOff(nextFloor)) {
+                    for (ElevatorRequest e : queue.requestsTo(nextFloor)) {
+                        if (e.isLoaded()) {
+                            doorCycles.add(e); // Unload the elevator
+                            doorCycleTypes.add("unloading");
+                            removeList.add(e);
                             doorsOpened = true;
-                        } else {
-                            Log.print("Additional passenger got on elevator "+ elevator.getElevatorId() + " at floor " + nextFloor + "!");
+                            unloadedCount++;
                         }
-                        loadedCount++;
-                        // Adjust floorsToMove and destination to accommodate new request if necessary
-                        if ((direction == ElevatorRequest.ButtonDirection.UP && e.getButtonId() > destinationFloor) ||
-                                (direction == ElevatorRequest.ButtonDirection.DOWN && e.getButtonId() < destinationFloor)) {
-                            floorsToMove += Math.abs(e.getButtonId() - destinationFloor);
-                            destinationFloor = e.getButtonId();
+                    }
+                }
+
+                // Check if any load requests on this floor in the same direction
+                boolean pickup = isInitialPickup ? nextFloor == newFloor && queue.hasStopAt(nextFloor)
+                        : queue.hasPickup(nextFloor, direction);
+                if (pickup) {
+                    for (ElevatorRequest e : queue.requestsFrom(nextFloor)) {
+                        if (!e.isLoaded() && (e.getButtonDirection() == direction && !isInitialPickup ||
+                                isInitialPickup && e.getFloorNumber() == newFloor && e.getButtonDirection() != direction)) {
+                            if (!doorsOpened) { // Prevents doors from opening twice on the same floor
+                                doorCycles.add(e); // Load the elevator
+                                doorCycleTypes.add("loading");
+                                doorsOpened = true;
+                            } else {
+                                Log.print("Additional passenger got on elevator %d at floor %d!", elevator.getElevatorId(), nextFloor);
+                            }
+                            loadedCount++;
+                            // Adjust floorsToMove and destination to accommodate new request if necessary
+                            if ((direction == ElevatorRequest.ButtonDirection.UP && e.getButtonId() > destinationFloor) ||
+                                    (direction == ElevatorRequest.ButtonDirection.DOWN && e.getButtonId() < destinationFloor)) {
+                                floorsToMove += Math.abs(e.getButtonId() - destinationFloor);
+                                destinationFloor = e.getButtonId();
+                            }
+                            queue.board(e, elevator.getContext().getClock());
+                            boarded.add(e);
                         }
-                        e.setLoaded();
                     }
                 }
+            }
+
+            for (ElevatorRequest e : boarded) {
+                elevatorSubsystem.sendBoardedElevatorRequest(e); //tell the scheduler the passenger got on
+            }
+            // Cycle the doors outside of queueLock so the scheduler is not blocked while passengers load
+            for (int i = 0; i < doorCycles.size(); i++) {
+                loadElevator(doorCycleTypes.get(i), nextFloor, doorCycles.get(i));
+            }
+            if (!doorCycles.isEmpty()) {
+                elevator.getMetrics().stop(doorCycles.size());
+                elevator.getContext().getJournal().append(EventJournal.Type.STOP, elevator.getElevatorId(), 0, nextFloor, doorCycles.size());
+            }
 
-                // Send the elevator's current state packet to the FloorSubsystem (port 12345)
-                sendElevatorState(elevator.getElevatorId(), elevator.getCurrentState().toString(), nextFloor, direction, destinationFloor, unloadedCount, loadedCount);
+            // Send the elevator's current state packet to the FloorSubsystem (port 12345)
+            sendElevatorState(nextFloor, direction, destinationFloor, unloadedCount, loadedCount);
 
-                //remove completed requests
+            //remove completed requests
+            synchronized (elevator.getQueueLock()) {
                 for (ElevatorRequest e : removeList) {
-                    e.setProcessed(); // this set the processed variable to true
-                    Duration duration = Duration.between(e.getStartTime(), LocalTime.now());
-                    String formattedDuration = String.format("%d minutes, %d seconds",
-                            duration.toMinutesPart(), duration.toSecondsPart());
-                    Log.print("\nElevator %d completed %s at %s \n> Total floors moved by all elevators so far: %d \n" +
-                                    "> Processing time for request: %s\n", elevator.getElevatorId(), e, LocalTime.now().toString(),
-                            elevatorSubsystem.getTotalFloorsMoved(), formattedDuration);
+                    e.setProcessed(elevator.getContext().getClock()); // this set the processed variable to true
+                    elevator.getContext().getLatency().record(e);
+                    e.journal(elevator.getContext().getJournal(), EventJournal.Type.DROP_OFF, elevator.getElevatorId());
+                    if (Log.isEnabled()) {
+                        Log.print("\nElevator %d completed %s at %s \n> Total floors moved by all elevators so far: %d \n" +
+                                        "> Processing time for request: %d ms\n", elevator.getElevatorId(), e, elevator.getContext().getClock().time(),
+                                elevatorSubsystem.getTotalFloorsMoved(),
+                                e.getLatency(ElevatorRequest.Stage.ASSIGNED, ElevatorRequest.Stage.DROPPED_OFF));
+                    }
                     elevatorSubsystem.sendCompletedElevatorRequest(e); //notify scheduler request completed
                     elevator.getElevatorQueue().remove(e); //remove from elevator queue
                 }
@@ -202,7 +251,7 @@ public class ElevatorTransportingState implements ElevatorState{
             // it takes to travel one floor
             if (floorsMoved + 1 < floorsToMove) {
                 try {
-                    Thread.sleep(Config.TIME_TO_TRAVEL_1_FLOOR);
+                    elevator.getContext().getClock().sleep(Config.TIME_TO_TRAVEL_1_FLOOR);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt(); // Re-interrupt the thread
                     throw new RuntimeException("Thread was interrupted", e);
@@ -212,38 +261,34 @@ public class ElevatorTransportingState implements ElevatorState{
     }
 
     /**
-     * Send the elevator's current state with the next floor, direction, destination floor, unloaded count, and loaded count to the FloorSubsystem
-     * @param elevatorId
-     * @param state
+     * Send the elevator's current state with the next floor, direction, destination floor, unloaded count, and loaded count to the FloorSubsystem,
+     * in the next status batch of the elevator subsystem
      * @param nextFloor
      * @param direction
      * @param destinationFloor
      * @param unloadedCount
      * @param loadedCount
      */
-    private void sendElevatorState(int elevatorId, String state, int nextFloor, ElevatorRequest.ButtonDirection direction, int destinationFloor, int unloadedCount, int loadedCount) {
-        String infoString = String.format("%d;%s;%d;%s;%d;%d;%d",
-                elevatorId,
-                state,
-                nextFloor,
-                direction,
-                destinationFloor,
-                unloadedCount,
-                loadedCount);
-    
+    private void sendElevatorState(int nextFloor, ElevatorRequest.ButtonDirection direction, int destinationFloor, int unloadedCount, int loadedCount) {
+        elevatorSubsystem.getStatusBatcher().add(elevator.getElevatorId(), elevator.getCurrentStateName(), nextFloor, direction,
+                destinationFloor, unloadedCount, loadedCount);
+    }
+
+    /**
+     * Send a fault encountered by the elevator to the FloorSubsystem
+     * @param fault the name of the fault
+     * @param floor the floor the elevator is at
+     */
+    private void sendFault(String fault, int floor) {
+        elevator.getMetrics().fault(fault);
+        elevator.getContext().getJournal().append(EventJournal.Type.FAULT, elevator.getElevatorId(), CSVParser.ElevatorFault.fromString(fault).ordinal(),
+                floor, 0);
+        String infoString = fault + " fault encountered by Elevator " + elevator.getElevatorId() + " at floor " + floor;
         byte[] infoBytes = infoString.getBytes(StandardCharsets.UTF_8);
-        InetAddress address = null;
         try {
-            address = InetAddress.getByName("localhost");
-        } catch (UnknownHostException ex) {
-            ex.printStackTrace();
-        }
-        int port = 12345; // The FloorSubsystem listen port
-        DatagramPacket packet = new DatagramPacket(infoBytes, infoBytes.length, address, port);
-        try (DatagramSocket socket = new DatagramSocket()) {
-            socket.send(packet);
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            elevator.getContext().getTransport().send(Transport.Peer.FLOOR_SUBSYSTEM, infoBytes);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -251,61 +296,39 @@ public class ElevatorTransportingState implements ElevatorState{
      * Opens the doors, waits for passengers to load/unload, then closes doors
      * @param loadingType use "loading" or "unloading"
      * @param nextFloor the floor that the elevator is stopped at
+     * @param er the request the doors are cycled for, which may carry a door fault
      * @throws InterruptedException 
      */
     public void loadElevator(String loadingType, int nextFloor, ElevatorRequest er) {
-        Log.print("Elevator " + elevator.getElevatorId() + " is " + loadingType + " at floor " +
-                nextFloor + " at " + LocalTime.now());
-        while(elevator.getElevatorQueue().peek().getFault().equals("DOOR_NOT_OPEN")) {
-            Log.print(">> Elevator " + elevator.getElevatorId() + " door opening failed due to fault, retrying doors");
+        if (Log.isEnabled()) {
+            Log.print("Elevator %d is %s at floor %d at %s", elevator.getElevatorId(), loadingType, nextFloor, elevator.getContext().getClock().time());
+        }
+        // The fault is read from the request being loaded, not the head of the queue, which
+        // other threads change while the doors cycle outside of queueLock
+        while(er.getFault().equals("DOOR_NOT_OPEN")) {
+            Log.print(">> Elevator %d door opening failed due to fault, retrying doors", elevator.getElevatorId());
 
             // Send the FAULT to the FloorSubsystem
-            String InfoString = elevator.getElevatorQueue().peek().getFault() + " fault encountered by Elevator " + elevator.getElevatorId() + " at floor " + nextFloor;
-            byte[] directionBytes = InfoString.getBytes(StandardCharsets.UTF_8);
-            InetAddress address = null;
-            try {
-                address = InetAddress.getByName("localhost");
-            } catch (UnknownHostException e) {
-                e.printStackTrace();
-            } // the FloorSubsystem listen address
-            int port = 12345; // the FloorSubsystem listen port
-            DatagramPacket packet = new DatagramPacket(directionBytes, directionBytes.length, address, port);
-            try (DatagramSocket socket = new DatagramSocket()) {
-                socket.send(packet);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            sendFault(er.getFault(), nextFloor);
             // Sleep for 20 seconds (transient fault time)
             try{
-                Thread.sleep(Config.TRANSIENT_FAULT_TIME);
+                elevator.getContext().getClock().sleep(Config.TRANSIENT_FAULT_TIME);
             } catch (InterruptedException e) {}
             er.removeFault();
         }
+        elevator.getContext().getJournal().append(EventJournal.Type.DOOR_CYCLE, elevator.getElevatorId(), loadingType.equals("loading") ? 1 : 0,
+                nextFloor, 0);
         elevator.setDoorStatus(Elevator.DoorStatus.OPEN);
         elevator.timeToLoadPassengers(1);
         //if there is a DOOR_NOT_CLOSE fault, handle as transient fault: reopen door and wait, then try to close again
-        while(elevator.getElevatorQueue().peek().getFault().equals("DOOR_NOT_CLOSE")) {
-            Log.print(">> Elevator " + elevator.getElevatorId() + " door closing failed due to fault");
+        while(er.getFault().equals("DOOR_NOT_CLOSE")) {
+            Log.print(">> Elevator %d door closing failed due to fault", elevator.getElevatorId());
            
             // Send the FAULT to the FloorSubsystem
-            String InfoString = elevator.getElevatorQueue().peek().getFault() + " fault encountered by Elevator " + elevator.getElevatorId() + " at floor " + nextFloor;
-            byte[] directionBytes = InfoString.getBytes(StandardCharsets.UTF_8);
-            InetAddress address = null;
-            try {
-                address = InetAddress.getByName("localhost");
-            } catch (UnknownHostException e) {
-                e.printStackTrace();
-            } // the FloorSubsystem listen address
-            int port = 12345; // the FloorSubsystem listen port
-            DatagramPacket packet = new DatagramPacket(directionBytes, directionBytes.length, address, port);
-            try (DatagramSocket socket = new DatagramSocket()) {
-                socket.send(packet);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            sendFault(er.getFault(), nextFloor);
 
             try {
-                Thread.sleep(Config.TRANSIENT_FAULT_TIME);
+                elevator.getContext().getClock().sleep(Config.TRANSIENT_FAULT_TIME);
             } catch (InterruptedException e) {}
             er.removeFault();
         }
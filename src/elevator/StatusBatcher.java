@@ -0,0 +1,147 @@
+package elevator;
+
+import common.Config;
+import common.SimulationContext;
+import common.Transport;
+import floor.ElevatorRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the status updates of the elevators and sends them to the FloorSubsystem in one
+ * batch per flush interval instead of one message per elevator per floor. The latest position
+ * of each elevator wins, the passengers let off and taken on add up until the batch is sent.
+ */
+public class StatusBatcher {
+    /** The simulation whose clock times the flushes and whose transport sends the batches. */
+    private final SimulationContext context;
+
+    /** Guards the statuses not sent yet. */
+    private final Object lock = new Object();
+
+    /** The status of each elevator not sent yet, indexed by elevator ID, or null. */
+    private ElevatorStatus[] pending;
+
+    /** The number of elevators with a status not sent yet. */
+    private int pendingCount;
+
+    /** Whether a flush is scheduled for the statuses not sent yet. */
+    private boolean flushScheduled;
+
+    /** The time in milliseconds a status waits for others before the batch is sent. */
+    private volatile long flushTime = Config.STATUS_FLUSH_TIME;
+
+    /** The number of batch messages sent. */
+    private long batchesSent;
+
+    /**
+     * Create a batcher for the elevators of a simulation.
+     * @param context the simulation
+     * @param numElevators the number of elevators
+     */
+    public StatusBatcher(SimulationContext context, int numElevators) {
+        this.context = context;
+        this.pending = new ElevatorStatus[numElevators];
+    }
+
+    /**
+     * Change the time a status waits for others before the batch is sent. At 0 every status is
+     * sent as soon as it is added.
+     * @param flushTime the flush interval in milliseconds
+     */
+    public void setFlushTime(long flushTime) {
+        if (flushTime < 0) {
+            throw new IllegalArgumentException("Negative status flush time " + flushTime);
+        }
+        this.flushTime = flushTime;
+    }
+
+    /**
+     * Get the time a status waits for others before the batch is sent.
+     * @return the flush interval in milliseconds
+     */
+    public long getFlushTime() {
+        return flushTime;
+    }
+
+    /**
+     * Add the status of an elevator to the next batch, replacing any status of the same elevator
+     * not sent yet. The first status of a batch opens the flush interval.
+     * @param elevatorId the elevator
+     * @param state the state of the elevator
+     * @param floor the floor it is at or passing
+     * @param direction the direction it is moving in
+     * @param destinationFloor the floor it is going to
+     * @param unloaded the passengers it let off at the floor
+     * @param loaded the passengers it took on at the floor
+     */
+    public void add(int elevatorId, Elevator.State state, int floor, ElevatorRequest.ButtonDirection direction,
+                    int destinationFloor, int unloaded, int loaded) {
+        ElevatorStatus status = new ElevatorStatus(elevatorId, state, floor, direction, destinationFloor, unloaded, loaded);
+        long flushTime = this.flushTime;
+        synchronized (lock) {
+            if (elevatorId >= pending.length) { // an elevator added after the subsystem was created
+                pending = Arrays.copyOf(pending, elevatorId + 1);
+            }
+            if (pending[elevatorId] == null) {
+                pendingCount++;
+            } else {
+                status = status.after(pending[elevatorId]);
+            }
+            pending[elevatorId] = status;
+            if (!flushScheduled && flushTime > 0) {
+                flushScheduled = true;
+                context.getClock().schedule(flushTime, this::flush);
+            }
+        }
+        if (flushTime == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the statuses collected since the last batch, in order of elevator ID. Flushes are
+     * sent one at a time so a newer status of an elevator never overtakes an older one.
+     */
+    public synchronized void flush() {
+        List<ElevatorStatus> statuses;
+        synchronized (lock) {
+            if (pendingCount == 0) {
+                flushScheduled = false;
+                return;
+            }
+            statuses = new ArrayList<>(pendingCount);
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] != null) {
+                    statuses.add(pending[i]);
+                    pending[i] = null;
+                }
+            }
+            pendingCount = 0;
+            flushScheduled = false;
+        }
+        for (byte[] message : ElevatorStatus.encode(statuses)) {
+            try {
+                context.getTransport().send(Transport.Peer.FLOOR_SUBSYSTEM, message);
+            } catch (IOException e) {
+                System.err.println("IOException in flush: " + e.getMessage());
+            }
+            synchronized (lock) {
+                batchesSent++;
+            }
+        }
+    }
+
+    /**
+     * Get the number of batch messages sent.
+     * @return the number of batches
+     */
+    public long getBatchesSent() {
+        synchronized (lock) {
+            return batchesSent;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package elevator;
+
+import common.Clock;
+import floor.ElevatorRequest;
+import floor.ElevatorRequest.ButtonDirection;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The requests assigned to one elevator, indexed by floor. Each floor has the list of requests
+ * picked up there and the list of requests going there, and bitsets mark the floors with
+ * passengers waiting to go up, waiting to go down, or on board to get off. Checking a floor
+ * for work is a bit lookup and finding the next request is a bit scan, however many requests
+ * are queued.
+ *
+ * As a queue the requests are ordered by pickup floor, ascending unless setDescending(true),
+ * and in the order they were added within a floor. Passengers must get on through board(),
+ * not ElevatorRequest.setLoaded(), so the table can move them to the drop-off side.
+ * Not thread safe, the Elevator guards it with its queueLock.
+ */
+public class StopTable extends AbstractQueue<ElevatorRequest> {
+
+    /** The requests picked up at each floor, on board or not. */
+    private ArrayList<ElevatorRequest>[] fromFloor;
+    /** The requests going to each floor, on board or not. */
+    private ArrayList<ElevatorRequest>[] toFloor;
+    /** The passengers waiting to go up at each floor. */
+    private int[] waitingUp;
+    /** The passengers waiting to go down at each floor. */
+    private int[] waitingDown;
+    /** The passengers on board getting off at each floor. */
+    private int[] riding;
+
+    /** Floors with any request picked up there. */
+    private final BitSet pickupFloors = new BitSet();
+    /** Floors with passengers waiting to go up. */
+    private final BitSet upPickups = new BitSet();
+    /** Floors with passengers waiting to go down. */
+    private final BitSet downPickups = new BitSet();
+    /** Floors where passengers on board get off. */
+    private final BitSet dropOffs = new BitSet();
+
+    /** The number of requests. */
+    private int size;
+    /** The number of passengers on board. */
+    private int load;
+    /** True to order the requests by descending pickup floor. */
+    private boolean descending;
+
+    /**
+     * Create an empty table.
+     */
+    public StopTable() {
+        this(32);
+    }
+
+    /**
+     * Create an empty table.
+     * @param floors the number of floors to make room for, the table grows if a request needs more
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StopTable(int floors) {
+        fromFloor = new ArrayList[floors];
+        toFloor = new ArrayList[floors];
+        waitingUp = new int[floors];
+        waitingDown = new int[floors];
+        riding = new int[floors];
+    }
+
+    /**
+     * Change the order of the queue.
+     * @param descending true to order the requests by descending pickup floor
+     */
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Add a request. A request that is already loaded is added as a passenger on board.
+     * @param request the request
+     * @return true
+     */
+    @Override
+    public boolean offer(ElevatorRequest request) {
+        int pickup = request.getFloorNumber();
+        int destination = request.getButtonId();
+        if (pickup < 0 || destination < 0) {
+            throw new IllegalArgumentException("Negative floor in " + request);
+        }
+        ensureCapacity(Math.max(pickup, destination) + 1);
+        list(fromFloor, pickup).add(request);
+        list(toFloor, destination).add(request);
+        pickupFloors.set(pickup);
+        if (request.isLoaded()) {
+            addRiding(destination, 1);
+        } else {
+            addWaiting(request, 1);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Get the first request, the one with the lowest pickup floor, or the highest if descending.
+     * @return the request, or null if the table is empty
+     */
+    @Override
+    public ElevatorRequest peek() {
+        int floor = firstFloor();
+        return floor < 0 ? null : fromFloor[floor].get(0);
+    }
+
+    @Override
+    public ElevatorRequest poll() {
+        ElevatorRequest request = peek();
+        if (request != null) {
+            remove(request);
+        }
+        return request;
+    }
+
+    /**
+     * Remove a request. Only looks at the request's pickup and destination floors.
+     * @param o the request
+     * @return true if the request was in the table
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof ElevatorRequest)) {
+            return false;
+        }
+        ElevatorRequest request = (ElevatorRequest) o;
+        int pickup = request.getFloorNumber();
+        int destination = request.getButtonId();
+        if (pickup < 0 || pickup >= fromFloor.length || fromFloor[pickup] == null || !fromFloor[pickup].remove(request)) {
+            return false;
+        }
+        toFloor[destination].remove(request);
+        if (fromFloor[pickup].isEmpty()) {
+            pickupFloors.clear(pickup);
+        }
+        if (request.isLoaded()) {
+            addRiding(destination, -1);
+        } else {
+            addWaiting(request, -1);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Put a waiting passenger on board.
+     * @param request a request in the table
+     */
+    public void board(ElevatorRequest request) {
+        board(request, Clock.get());
+    }
+
+    /**
+     * Put a waiting passenger on board at the current time of a clock.
+     * @param request a request in the table
+     * @param clock the clock of the elevator's simulation
+     */
+    public void board(ElevatorRequest request, Clock clock) {
+        if (request.isLoaded()) {
+            return;
+        }
+        addWaiting(request, -1);
+        request.setLoaded(clock);
+        addRiding(request.getButtonId(), 1);
+    }
+
+    @Override
+    public void clear() {
+        for (int floor = pickupFloors.nextSetBit(0); floor >= 0; floor = pickupFloors.nextSetBit(floor + 1)) {
+            fromFloor[floor].clear();
+        }
+        for (ArrayList<ElevatorRequest> requests : toFloor) {
+            if (requests != null) {
+                requests.clear();
+            }
+        }
+        Arrays.fill(waitingUp, 0);
+        Arrays.fill(waitingDown, 0);
+        Arrays.fill(riding, 0);
+        pickupFloors.clear();
+        upPickups.clear();
+        downPickups.clear();
+        dropOffs.clear();
+        size = 0;
+        load = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of passengers on board.
+     * @return the number of loaded requests
+     */
+    public int getLoad() {
+        return load;
+    }
+
+    /**
+     * Check if the elevator has anything to do at a floor: a passenger waiting or getting off.
+     * @param floor the floor
+     * @return true if the elevator may need to stop
+     */
+    public boolean hasStopAt(int floor) {
+        return floor >= 0 && (upPickups.get(floor) || downPickups.get(floor) || dropOffs.get(floor));
+    }
+
+    /**
+     * Check if passengers are waiting at a floor to go in a direction.
+     * @param floor the floor
+     * @param direction UP or DOWN
+     * @return true if a passenger is waiting
+     */
+    public boolean hasPickup(int floor, ButtonDirection direction) {
+        return floor >= 0 && (direction == ButtonDirection.UP ? upPickups : downPickups).get(floor);
+    }
+
+    /**
+     * Check if passengers on board get off at a floor.
+     * @param floor the floor
+     * @return true if a passenger gets off
+     */
+    public boolean hasDropOff(int floor) {
+        return floor >= 0 && dropOffs.get(floor);
+    }
+
+    /**
+     * Get the requests picked up at a floor, on board or not. The list belongs to the table.
+     * @param floor the floor
+     * @return the requests, in the order they were added
+     */
+    public List<ElevatorRequest> requestsFrom(int floor) {
+        return floor >= 0 && floor < fromFloor.length && fromFloor[floor] != null ? fromFloor[floor] : Collections.emptyList();
+    }
+
+    /**
+     * Get the requests going to a floor, on board or not. The list belongs to the table.
+     * @param floor the floor
+     * @return the requests, in the order they were added
+     */
+    public List<ElevatorRequest> requestsTo(int floor) {
+        return floor >= 0 && floor < toFloor.length && toFloor[floor] != null ? toFloor[floor] : Collections.emptyList();
+    }
+
+    /**
+     * Iterate over the requests in queue order.
+     * @return the iterator
+     */
+    @Override
+    public Iterator<ElevatorRequest> iterator() {
+        return new Iterator<ElevatorRequest>() {
+            /** The floor of the next request, -1 at the end. */
+            private int floor = firstFloor();
+            /** The index of the next request in its floor's list. */
+            private int index;
+            /** The last request returned and its floor. */
+            private ElevatorRequest last;
+            private int lastFloor = -1;
+
+            @Override
+            public boolean hasNext() {
+                return floor >= 0;
+            }
+
+            @Override
+            public ElevatorRequest next() {
+                if (floor < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = fromFloor[floor].get(index++);
+                lastFloor = floor;
+                if (index == fromFloor[floor].size()) {
+                    floor = nextFloor(floor);
+                    index = 0;
+                }
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                StopTable.this.remove(last);
+                if (lastFloor == floor) {
+                    index--; // the rest of the floor moved down by one
+                }
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Get the pickup floor of the first request in queue order.
+     * @return the floor, or -1 if the table is empty
+     */
+    private int firstFloor() {
+        return descending ? pickupFloors.previousSetBit(fromFloor.length - 1) : pickupFloors.nextSetBit(0);
+    }
+
+    /**
+     * Get the next pickup floor in queue order.
+     * @return the floor, or -1 if there is none
+     */
+    private int nextFloor(int floor) {
+        return descending ? pickupFloors.previousSetBit(floor - 1) : pickupFloors.nextSetBit(floor + 1);
+    }
+
+    /**
+     * Count a waiting passenger in or out of its pickup floor.
+     */
+    private void addWaiting(ElevatorRequest request, int delta) {
+        int floor = request.getFloorNumber();
+        if (goingUp(request)) {
+            waitingUp[floor] += delta;
+            upPickups.set(floor, waitingUp[floor] > 0);
+        } else {
+            waitingDown[floor] += delta;
+            downPickups.set(floor, waitingDown[floor] > 0);
+        }
+    }
+
+    /**
+     * Count a passenger on board in or out of its destination floor.
+     */
+    private void addRiding(int floor, int delta) {
+        riding[floor] += delta;
+        dropOffs.set(floor, riding[floor] > 0);
+        load += delta;
+    }
+
+    /**
+     * Check the direction of a request. Uses the floors if the button has no direction.
+     */
+    private static boolean goingUp(ElevatorRequest request) {
+        ButtonDirection direction = request.getButtonDirection();
+        return direction == ButtonDirection.NONE ? request.getButtonId() > request.getFloorNumber() : direction == ButtonDirection.UP;
+    }
+
+    /**
+     * Get the list of a floor, creating it on first use.
+     */
+    private static ArrayList<ElevatorRequest> list(ArrayList<ElevatorRequest>[] lists, int floor) {
+        if (lists[floor] == null) {
+            lists[floor] = new ArrayList<>(4);
+        }
+        return lists[floor];
+    }
+
+    /**
+     * Grow the per-floor arrays to hold at least the given number of floors.
+     */
+    private void ensureCapacity(int floors) {
+        if (floors <= fromFloor.length) {
+            return;
+        }
+        int capacity = Math.max(floors, fromFloor.length * 2);
+        fromFloor = Arrays.copyOf(fromFloor, capacity);
+        toFloor = Arrays.copyOf(toFloor, capacity);
+        waitingUp = Arrays.copyOf(waitingUp, capacity);
+        waitingDown = Arrays.copyOf(waitingDown, capacity);
+        riding = Arrays.copyOf(riding, capacity);
+    }
+}
@@ -1,13 +1,11 @@
 package floor;
 
-import java.io.*;
-import java.time.LocalTime;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
 
 import common.Log;
 
@@ -28,8 +26,10 @@ public class CSVParser {
         DEATH,
         NO_FAULT;
 
+        private static final ElevatorFault[] VALUES = values();
+
         public static ElevatorFault fromString(String string) {
-            for (ElevatorFault ef : ElevatorFault.values()) {
+            for (ElevatorFault ef : VALUES) {
                 if (ef.name().toUpperCase().equals(string)) {
                     return ef;
                 }
@@ -37,6 +37,19 @@ public class CSVParser {
             return ElevatorFault.NO_FAULT;
         }
 
+        /**
+         * Get the fault with an ordinal, as sent in a message.
+         * @param ordinal the ordinal
+         * @return the fault
+         * @throws IllegalArgumentException if no fault has the ordinal
+         */
+        public static ElevatorFault fromOrdinal(int ordinal) {
+            if (ordinal < 0 || ordinal >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown fault " + ordinal);
+            }
+            return VALUES[ordinal];
+        }
+
         public boolean isHardFault() {
             return this == TIMEOUT_FAULT | this == WRONG_FLOOR || this == DEATH;
         }
@@ -48,93 +61,21 @@ public class CSVParser {
      * - floor number
      * - direction
      * - elevator number
+     * Use a TraceReader to stream large files instead of holding every request.
      * @param filePath The path to the CSV file.
-     * @return The list of elevator requests.
+     * @return The list of elevator requests, in file order.
      */
     public static List<ElevatorRequest> parseCSV(String filePath) {
         List<ElevatorRequest> elevatorRequests = new ArrayList<>();
-        try (Scanner scanner = new Scanner(new File(filePath))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(";");
-
-                // 1. time
-                String timeString = parts[0].trim();
-                LocalTime time;
-                try {
-                    time = LocalTime.parse(timeString);
-                } catch (DateTimeParseException e) {
-                    Log.print("Invalid time: " + timeString);
-                    continue;
-                }
-
-                // 2. floor number (i.e. The current floor)
-                int floorNumber;
-                try {
-                    floorNumber = Integer.parseInt(parts[1].trim());
-                } catch (NumberFormatException e) {
-                    Log.print("Invalid floor number: " + parts[1].trim());
-                    continue;
-                }
-
-                // 3. direction
-                String directionString = parts[2].trim().toLowerCase();
-
-                ElevatorRequest.ButtonDirection direction;
-                switch (directionString) {
-                    case "up":
-                        direction = ElevatorRequest.ButtonDirection.UP;
-                        break;
-                    case "down":
-                        direction = ElevatorRequest.ButtonDirection.DOWN;
-                        break;
-                    default:
-                        Log.print("Invalid direction: " + directionString);
-                        continue;
-                }
-
-                // 4. Button press inside elevator (i.e. The designation floor)
-                int buttonID;
-                try {
-                    buttonID = Integer.parseInt(parts[3].trim());
-                } catch (NumberFormatException e) {
-                    Log.print("Invalid button number: " + parts[3].trim());
-                    continue;
-                }
-
-                // Create ElevatorRequest as usual
-                ElevatorRequest elevatorRequest = new ElevatorRequest(time, floorNumber, direction, buttonID);
-
-                // 5. Optional fault string
-                ElevatorFault fault = ElevatorFault.NO_FAULT;
-                if (parts.length >= 5) {
-                    String faultString = parts[4].trim();
-                    fault = ElevatorFault.fromString(faultString); // Assuming ElevatorFault.fromString() handles conversion
-                    // create ElevatorRequest with fault appended
-                    elevatorRequest.addFault(fault);
-                }
-
-
-                // Print request
-                Log.print(
-                        "FloorSubsystem: Read ElevatorRequest(" + elevatorRequest + ") from File \n>> " + "Time: " + time
-                                + ", CurrentFloor: " + floorNumber + ", Direction: " + direction + ", ButtonPress/Destination: " + buttonID);
-
-                // Add request to list
-                elevatorRequests.add(elevatorRequest);
-            }
-
-            // Close the scanner
-            scanner.close();
-
-        } catch (FileNotFoundException e) {
+        try (TraceReader reader = TraceReader.openInFileOrder(filePath)) {
+            readAll(reader, elevatorRequests);
+        } catch (FileNotFoundException | NoSuchFileException e) {
             Log.print("Error: File not found");
             e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
         }
-
-        Log.print("\n***********************************************\n");
         return elevatorRequests;
-
     }
 
     /**
@@ -153,8 +94,25 @@ public class CSVParser {
      */
     public static List<ElevatorRequest> parseAndSortCSV(String filePath)
     {
-        List<ElevatorRequest> ers = parseCSV(filePath);
-        Collections.sort(ers, (e1, e2) -> e1.compareByTime(e2));
-        return ers;
+        List<ElevatorRequest> elevatorRequests = new ArrayList<>();
+        try (TraceReader reader = TraceReader.open(filePath)) {
+            readAll(reader, elevatorRequests);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            Log.print("Error: File not found");
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+        return elevatorRequests;
+    }
+
+    /**
+     * Add every remaining request of a trace to a list.
+     */
+    private static void readAll(TraceReader reader, List<ElevatorRequest> into) throws IOException {
+        ElevatorRequest request;
+        while ((request = reader.next()) != null) {
+            into.add(request);
+        }
     }
 }
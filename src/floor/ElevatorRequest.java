@@ -1,10 +1,17 @@
 package floor;
 
+import common.Clock;
+import common.EventJournal;
+
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Comparator;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents an entry in the CSV file. Contains information for the action an
@@ -23,9 +30,52 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 		/** The requested direction is down. */
 		DOWN,
 		/** No requested direction. */
-		NONE
+		NONE;
+
+		private static final ButtonDirection[] VALUES = values();
+
+		/**
+		 * Get the direction with an ordinal, as sent in a message.
+		 * @param ordinal the ordinal
+		 * @return the direction
+		 * @throws IllegalArgumentException if no direction has the ordinal
+		 */
+		public static ButtonDirection fromOrdinal(int ordinal) {
+			if (ordinal < 0 || ordinal >= VALUES.length) {
+				throw new IllegalArgumentException("Unknown direction " + ordinal);
+			}
+			return VALUES[ordinal];
+		}
+	}
+
+	/**
+	 * The stages a request goes through, in order.
+	 */
+	public enum Stage {
+		/** The FloorSubsystem sent the request. */
+		EMITTED,
+		/** The Scheduler received the request. */
+		RECEIVED,
+		/** The Scheduler assigned the request to an elevator. */
+		ASSIGNED,
+		/** The passenger got on the elevator. */
+		PICKED_UP,
+		/** The passenger got off the elevator. */
+		DROPPED_OFF
 	}
 
+	/** The timestamp of a stage the request has not reached. */
+	public static final long NOT_REACHED = -1;
+
+	/** The stages in order, handed out by stages() for the codec to walk on every request. */
+	private static final Stage[] STAGES = Stage.values();
+
+	/** The ID of the next request created. Requests are only created by the FloorSubsystem's process. */
+	private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+	/** Identifies the request in every subsystem, 0 if it is not known (the text format has none). */
+	private long id;
+
 	/** The requested direction. Either up or down. */
 	private ButtonDirection buttonDirection;
 
@@ -45,6 +95,10 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 	private boolean processed = false;
 	/** When the elevator request was assigned by the elevator (for stats) */
 	private LocalTime startTime;
+	/** When the passenger got on the elevator (for stats) */
+	private LocalTime pickupTime;
+	/** When the request reached each stage, in Clock milliseconds, indexed by stage */
+	private final long[] timestamps = newTimestamps();
 
 	/**
 	 * Create a new elevator request.
@@ -54,6 +108,7 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 	 * @param currTime The time of the request.
 	 */
 	public ElevatorRequest( LocalTime currTime, int floorNumber, ButtonDirection buttonDirection,  int buttonId) {
+		this.id = NEXT_ID.getAndIncrement();
 		this.currTime = currTime;
 		this.floorNumber = floorNumber;
 		this.buttonDirection = buttonDirection;
@@ -61,21 +116,61 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 	}
 
 	/**
-	 * Constructor to deserialize from byte array
+	 * Create an empty elevator request for the codec to decode into.
+	 */
+	ElevatorRequest() {
+	}
+
+	/**
+	 * Constructor to deserialize from byte array, in either the binary or the text format
 	 */
 	public ElevatorRequest(byte[] data) {
+		if (ElevatorRequestCodec.isBinary(data)) {
+			ElevatorRequestCodec.decode(ByteBuffer.wrap(data), this);
+		} else {
+			readText(data);
+		}
+	}
+
+	/**
+	 * Overwrite every field of the request. Used by the codec.
+	 */
+	void set(long id, LocalTime currTime, int floorNumber, ButtonDirection buttonDirection, int buttonId,
+			 boolean loaded, boolean processed, CSVParser.ElevatorFault fault) {
+		this.id = id;
+		this.currTime = currTime;
+		this.floorNumber = floorNumber;
+		this.buttonDirection = buttonDirection;
+		this.buttonId = buttonId;
+		this.loaded = loaded;
+		this.processed = processed;
+		this.fault = fault;
+	}
+
+	/**
+	 * Read the request from the text format "time;direction;floor;button;loaded;processed;fault"
+	 * @param data the text as bytes
+	 * @throws IllegalArgumentException if a field is missing or cannot be parsed
+	 */
+	void readText(byte[] data) {
 		String dataString = new String(data, StandardCharsets.UTF_8).trim(); // Also trim the whole string
 		String[] parts = dataString.split(";");
 
 		if (parts.length >= 6) {
-			this.currTime = LocalTime.parse(parts[0].trim(), DateTimeFormatter.ISO_LOCAL_TIME);
-			this.buttonDirection = ButtonDirection.valueOf(parts[1].trim());
-			this.floorNumber = Integer.parseInt(parts[2].trim());
-			this.buttonId = Integer.parseInt(parts[3].trim());
-			this.loaded = parts[4].trim().startsWith("1");
-			this.processed = parts[5].trim().startsWith("1");
-			if (parts.length >= 7) { // Check if there is a seventh part for fault
-				this.fault = CSVParser.ElevatorFault.fromString(parts[6].trim());
+			try {
+				Arrays.fill(this.timestamps, NOT_REACHED); // the text format has no timestamps
+				this.id = 0; // nor an ID
+				this.currTime = LocalTime.parse(parts[0].trim(), DateTimeFormatter.ISO_LOCAL_TIME);
+				this.buttonDirection = ButtonDirection.valueOf(parts[1].trim());
+				this.floorNumber = Integer.parseInt(parts[2].trim());
+				this.buttonId = Integer.parseInt(parts[3].trim());
+				this.loaded = parts[4].trim().startsWith("1");
+				this.processed = parts[5].trim().startsWith("1");
+				if (parts.length >= 7) { // Check if there is a seventh part for fault
+					this.fault = CSVParser.ElevatorFault.fromString(parts[6].trim());
+				}
+			} catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Invalid data for ElevatorRequest: " + e.getMessage(), e);
 			}
 		} else {
 			throw new IllegalArgumentException("Invalid data for ElevatorRequest");
@@ -93,8 +188,32 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 		return "NO_FAULT"; //in case there is no fault set in the csv file
 	}
 
+	/**
+	 * Get the fault of the request.
+	 * @return The fault, or NO_FAULT if none was set.
+	 */
+	public CSVParser.ElevatorFault getElevatorFault() {
+		return this.fault != null ? this.fault : CSVParser.ElevatorFault.NO_FAULT;
+	}
+
+	/**
+	 * Get the fault exactly as set, for the codec.
+	 * @return The fault, or null if none was set.
+	 */
+	CSVParser.ElevatorFault getElevatorFaultOrNull() {
+		return this.fault;
+	}
+
 	public void removeFault() {this.fault = CSVParser.ElevatorFault.NO_FAULT;}
 
+	/**
+	 * Get the ID of the request, the same in every subsystem.
+	 * @return the ID, or 0 if it is not known
+	 */
+	public long getId() {
+		return id;
+	}
+
 	/**
 	 * Get the processing status.
 	 * @return The requested direction.
@@ -144,16 +263,129 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 	}
 
 	/**
-	 * Set loaded to true
+	 * Set loaded to true, and remember when the passenger got on
 	 */
 	public void setLoaded() {
+		setLoaded(Clock.get());
+	}
+
+	/**
+	 * Set loaded to true, and remember when the passenger got on
+	 * @param clock the clock of the simulation the request is in
+	 */
+	public void setLoaded(Clock clock) {
+		if (!loaded) {
+			pickupTime = clock.time();
+			stamp(Stage.PICKED_UP, clock);
+		}
 		loaded = true;
 	}
 
+	/**
+	 * Set processed to true, and remember when the passenger got off
+	 */
 	public void setProcessed() {
+		setProcessed(Clock.get());
+	}
+
+	/**
+	 * Set processed to true, and remember when the passenger got off
+	 * @param clock the clock of the simulation the request is in
+	 */
+	public void setProcessed(Clock clock) {
+		if (!processed) {
+			stamp(Stage.DROPPED_OFF, clock);
+		}
 		processed = true;
 	}
 
+	/**
+	 * Record that the request reached a stage now. Only the first time a stage is reached counts,
+	 * so a request sent back and dispatched again keeps its first assignment.
+	 * @param stage the stage
+	 */
+	public void stamp(Stage stage) {
+		stamp(stage, Clock.get());
+	}
+
+	/**
+	 * Record that the request reached a stage at the current time of a clock.
+	 * @param stage the stage
+	 * @param clock the clock of the simulation the request is in
+	 */
+	public void stamp(Stage stage, Clock clock) {
+		if (timestamps[stage.ordinal()] == NOT_REACHED) {
+			timestamps[stage.ordinal()] = clock.millis();
+		}
+	}
+
+	/**
+	 * Get when the request reached a stage.
+	 * @param stage the stage
+	 * @return the time in Clock milliseconds, or NOT_REACHED
+	 */
+	public long getTimestamp(Stage stage) {
+		return timestamps[stage.ordinal()];
+	}
+
+	/**
+	 * Get the time between two stages.
+	 * @param from the earlier stage
+	 * @param to the later stage
+	 * @return the time in milliseconds, or NOT_REACHED if either stage was not reached
+	 */
+	public long getLatency(Stage from, Stage to) {
+		long start = timestamps[from.ordinal()];
+		long end = timestamps[to.ordinal()];
+		if (start == NOT_REACHED || end == NOT_REACHED) {
+			return NOT_REACHED;
+		}
+		return Math.max(0, end - start);
+	}
+
+	/**
+	 * Append an event about this request to the event journal of the process, with its
+	 * direction, floor, destination, fault and time.
+	 * @param type the kind of event
+	 * @param elevatorId the elevator, or -1
+	 */
+	public void journal(EventJournal.Type type, int elevatorId) {
+		journal(EventJournal.get(), type, elevatorId);
+	}
+
+	/**
+	 * Append an event about this request to an event journal.
+	 * @param journal the journal of the simulation the request is in
+	 * @param type the kind of event
+	 * @param elevatorId the elevator, or -1
+	 */
+	public void journal(EventJournal journal, EventJournal.Type type, int elevatorId) {
+		if (journal.isEnabled()) {
+			journal.append(type, elevatorId, buttonDirection.ordinal(), floorNumber, buttonId, getElevatorFault().ordinal(),
+					currTime.toNanoOfDay());
+		}
+	}
+
+	/**
+	 * Overwrite when the request reached a stage. Used by the codec.
+	 */
+	void setTimestamp(Stage stage, long millis) {
+		timestamps[stage.ordinal()] = millis;
+	}
+
+	/**
+	 * Get the stages in order, without copying the array.
+	 */
+	static Stage[] stages() {
+		return STAGES;
+	}
+
+	private static long[] newTimestamps() {
+		long[] timestamps = new long[STAGES.length];
+		Arrays.fill(timestamps, NOT_REACHED);
+		return timestamps;
+	}
+
 	/**
 	 * Return loaded
 	 * @return if the elevatorRequest is loaded
@@ -168,6 +400,14 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 		return startTime;
 	}
 
+	/**
+	 * Get the time the passenger got on the elevator
+	 * @return pickupTime, or null if not loaded by an elevator
+	 */
+	public LocalTime getPickupTime() {
+		return pickupTime;
+	}
+
 	/**
 	 * Set the start time
 	 * @param start startTime
@@ -207,7 +447,7 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 			return;
 		}
 		try {
-			Thread.sleep(time);
+			Clock.get().sleep(time);
 		} catch (InterruptedException e) {}
 	}
 
@@ -229,38 +469,12 @@ public class ElevatorRequest implements Comparable<ElevatorRequest> {
 
 
 	/**
-	 * Returns a bytes representation of an elevator request for UDP transport
-	 * It first builds a string of the following format:
-	 * "requestTime;buttonDirection;floorNumber;buttonID;1"
-	 * Where requestTime is the time of the request
-	 * buttonDirection is either UP or DOWN
-	 * floorNumber is the current floor
-	 * buttonID is the destination floor
+	 * Returns a bytes representation of an elevator request for UDP transport, in the
+	 * binary format of ElevatorRequestCodec
 	 */
 	public byte[] getBytes() {
-		// Use a delimiter to separate the properties in the string
-		String delimiter = ";";
-
-		// Serialize properties to string
-		StringBuilder sb = new StringBuilder();
-		// Format LocalTime to a string using a formatter
-		DateTimeFormatter timeFormatter = DateTimeFormatter.ISO_LOCAL_TIME;
-		sb.append(this.currTime.format(timeFormatter));
-		sb.append(delimiter);
-		sb.append(this.buttonDirection.name());
-		sb.append(delimiter);
-		sb.append(this.floorNumber);
-		sb.append(delimiter);
-		sb.append(this.buttonId);
-		sb.append(delimiter);
-		sb.append(this.loaded ? "1" : "0"); // Represent boolean as 1 (true) or 0 (false)
-		sb.append(delimiter);
-		sb.append(this.processed ? "1" : "0"); // Represent boolean as 1 (true) or 0 (false)
-		if (this.fault != null) {
-			sb.append(delimiter);
-			sb.append(this.fault); // TODO: verify that this prints what we want
-		}
-		// Convert the serialized string to bytes
-		return sb.toString().getBytes(StandardCharsets.UTF_8);
+		byte[] data = new byte[ElevatorRequestCodec.SIZE];
+		ElevatorRequestCodec.encode(this, ByteBuffer.wrap(data));
+		return data;
 	}
 }
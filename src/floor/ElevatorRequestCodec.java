@@ -0,0 +1,178 @@
+package floor;
+
+import java.nio.ByteBuffer;
+import java.time.LocalTime;
+
+/**
+ * Binary wire format for elevator requests. Every request is encoded in a fixed layout of
+ * SIZE bytes:
+ * <pre>
+ * offset size field
+ *      0    1 MAGIC, marks a binary request
+ *      1    1 VERSION
+ *      2    1 flags: loaded, processed, has fault
+ *      3    1 button direction ordinal
+ *      4    1 fault ordinal
+ *      5    1 reserved
+ *      6    4 floor number
+ *     10    4 button ID
+ *     14    8 time of the request in nanoseconds of the day
+ *     22    8 ID of the request, 0 if not known
+ *     30   40 the Clock millisecond timestamp of each ElevatorRequest.Stage, in order,
+ *             -1 for a stage not reached
+ * </pre>
+ * Requests are read from and written to a caller supplied buffer without building any
+ * strings. The older text format ("time;direction;floor;button;loaded;processed;fault") is
+ * still accepted by the decoder.
+ */
+public class ElevatorRequestCodec {
+
+    /** The first byte of a binary request. Can not be the first byte of a text request. */
+    public static final byte MAGIC = (byte) 0xE1;
+
+    /** The version of the layout. */
+    public static final byte VERSION = 3;
+
+    /** The size of an encoded request in bytes. */
+    public static final int SIZE = 30 + 8 * ElevatorRequest.Stage.values().length;
+
+    /** Flag set when the passenger has been loaded. */
+    private static final int LOADED = 1;
+
+    /** Flag set when the request has been processed. */
+    private static final int PROCESSED = 1 << 1;
+
+    /** Flag set when the request has a fault. */
+    private static final int HAS_FAULT = 1 << 2;
+
+    /** Ordinal written for a missing direction. */
+    private static final byte NONE = (byte) 0xFF;
+
+    /** The nanoseconds in a day, the range of the request time. */
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+
+    /**
+     * Write a request at the buffer's position and move the position past it.
+     * @param request The request to write.
+     * @param buffer The buffer to write to. Must have SIZE bytes remaining.
+     */
+    public static void encode(ElevatorRequest request, ByteBuffer buffer) {
+        CSVParser.ElevatorFault fault = request.getElevatorFaultOrNull();
+        int flags = (request.isLoaded() ? LOADED : 0)
+                | (request.isProcessed() ? PROCESSED : 0)
+                | (fault != null ? HAS_FAULT : 0);
+        ElevatorRequest.ButtonDirection direction = request.getButtonDirection();
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        buffer.put(direction != null ? (byte) direction.ordinal() : NONE);
+        buffer.put(fault != null ? (byte) fault.ordinal() : 0);
+        buffer.put((byte) 0);
+        buffer.putInt(request.getFloorNumber());
+        buffer.putInt(request.getButtonId());
+        buffer.putLong(request.getTime().toNanoOfDay());
+        buffer.putLong(request.getId());
+        for (ElevatorRequest.Stage stage : ElevatorRequest.stages()) {
+            buffer.putLong(request.getTimestamp(stage));
+        }
+    }
+
+    /**
+     * Read a request starting at the buffer's position, in either the binary or the text
+     * format, and move the position past it.
+     * @param buffer The buffer to read from.
+     * @return The new request.
+     * @throws IllegalArgumentException If the request is of another version or holds values out of range.
+     */
+    public static ElevatorRequest decode(ByteBuffer buffer) {
+        ElevatorRequest request = new ElevatorRequest();
+        decode(buffer, request);
+        return request;
+    }
+
+    /**
+     * Read a request starting at the buffer's position into an existing request, in either
+     * the binary or the text format, and move the position past it.
+     * @param buffer The buffer to read from.
+     * @param request The request to overwrite.
+     * @throws IllegalArgumentException If the request is of another version or holds values out of range.
+     */
+    public static void decode(ByteBuffer buffer, ElevatorRequest request) {
+        if (!isBinary(buffer)) {
+            byte[] text = new byte[buffer.remaining()];
+            buffer.get(text);
+            request.readText(text);
+            return;
+        }
+        buffer.get(); // magic
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported ElevatorRequest version " + version);
+        }
+        int flags = buffer.get();
+        byte direction = buffer.get();
+        byte fault = buffer.get();
+        buffer.get(); // reserved
+        int floorNumber = buffer.getInt();
+        int buttonId = buffer.getInt();
+        long nanos = buffer.getLong();
+        long id = buffer.getLong();
+        if (nanos < 0 || nanos >= NANOS_PER_DAY) {
+            throw new IllegalArgumentException("ElevatorRequest time out of range " + nanos);
+        }
+        request.set(id, LocalTime.ofNanoOfDay(nanos),
+                floorNumber,
+                direction != NONE ? ElevatorRequest.ButtonDirection.fromOrdinal(direction) : null,
+                buttonId,
+                (flags & LOADED) != 0,
+                (flags & PROCESSED) != 0,
+                (flags & HAS_FAULT) != 0 ? CSVParser.ElevatorFault.fromOrdinal(fault) : null);
+        for (ElevatorRequest.Stage stage : ElevatorRequest.stages()) {
+            request.setTimestamp(stage, buffer.getLong());
+        }
+    }
+
+    /**
+     * Check if the bytes at the buffer's position are a binary request. Does not move the position.
+     * @param buffer The buffer to check.
+     * @return True if the buffer holds a binary request.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.remaining() >= SIZE && buffer.get(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Check if the bytes are a binary request.
+     * @param data The bytes to check.
+     * @return True if the bytes are a binary request.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length >= SIZE && data[0] == MAGIC;
+    }
+
+    /**
+     * Check if the request at the buffer's position has been processed, without decoding it.
+     * Does not move the position.
+     * @param buffer The buffer holding the request.
+     * @return True if the request has been processed.
+     */
+    public static boolean isProcessed(ByteBuffer buffer) {
+        if (isBinary(buffer)) {
+            return (buffer.get(buffer.position() + 2) & PROCESSED) != 0;
+        }
+        return decode(buffer.duplicate()).isProcessed();
+    }
+
+    /**
+     * Check if the passenger of the request at the buffer's position has boarded, without
+     * decoding it. Does not move the position.
+     * @param buffer The buffer holding the request.
+     * @return True if the request has been loaded.
+     */
+    public static boolean isLoaded(ByteBuffer buffer) {
+        if (isBinary(buffer)) {
+            return (buffer.get(buffer.position() + 2) & LOADED) != 0;
+        }
+        return decode(buffer.duplicate()).isLoaded();
+    }
+}
@@ -49,9 +49,9 @@ public class Floor {
         isUpLampOn = direction == ButtonDirection.UP;
         isDownLampOn = direction == ButtonDirection.DOWN;
         if (isUpLampOn) {
-            Log.print("At Floor " + floorNumber + ", UP Lamp is On");
+            Log.print("At Floor %d, UP Lamp is On", floorNumber);
         } else if (isDownLampOn) {
-            Log.print("At Floor " + floorNumber + ", DOWN Lamp is On");
+            Log.print("At Floor %d, DOWN Lamp is On", floorNumber);
         } else {
             Log.print("Both Up and Down lamps are Off");
         }
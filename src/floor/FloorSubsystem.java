@@ -1,5 +1,6 @@
 package floor;
 
+import elevator.ElevatorStatus;
 import floor.CSVParser.ElevatorFault;
 import floor.ElevatorRequest.ButtonDirection;
 import scheduler.Scheduler;
@@ -8,9 +9,16 @@ import java.io.IOException;
 import java.net.*;
 import java.time.Duration;
 import java.time.LocalTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.FileNotFoundException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+import common.BuildingConfig;
 import common.Log;
+import common.SimulationContext;
+import common.Threads;
+import common.Transport;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import gui.GUI;
 
@@ -19,8 +27,11 @@ import gui.GUI;
  */
 public class FloorSubsystem implements Runnable {
 
-    /** The requests from the CSV file. */
-    private List<ElevatorRequest> elevatorRequests;
+    /** The requests from the CSV file, read in time order as they are sent. Null once all are read. */
+    private TraceReader trace;
+
+    /** The requests added with addIn, sent after the ones from the file. */
+    private final ArrayDeque<ElevatorRequest> elevatorRequests = new ArrayDeque<>();
 
     /** The array of floors. */
     private final Floor[] floorArray;
@@ -40,27 +51,90 @@ public class FloorSubsystem implements Runnable {
     /** The scheduler to push requests to. */
     private Scheduler scheduler;
 
+    /** If the floor subsystem runs without the GUI. */
+    private final boolean headless;
+
+    /** The simulation the floor subsystem belongs to. */
+    private final SimulationContext context;
+
+    /** The GUI showing the building, null when headless. */
+    private final GUI gui;
+
     /**
      * Create a new floor subsystem.
      * @param filePath The CSV file path.
      */
     public FloorSubsystem(String filePath) {
-        elevatorRequests = new ArrayList<>();
-        floorArray = new Floor[22]; // 22 floors
+        this(filePath, false);
+    }
+
+    /**
+     * Create a new floor subsystem.
+     * @param filePath The CSV file path.
+     * @param headless True to run without the GUI.
+     */
+    public FloorSubsystem(String filePath, boolean headless) {
+        this(openTrace(filePath), headless); // the requests are parsed as they are needed
+    }
+
+    /**
+     * Create a new floor subsystem sending the requests of an open trace, such as one from a
+     * TrafficGenerator. The trace is closed once all its requests are read.
+     * @param trace The requests, in time order, or null for none.
+     * @param headless True to run without the GUI.
+     */
+    public FloorSubsystem(TraceReader trace, boolean headless) {
+        this(SimulationContext.capture(), trace, headless);
+    }
+
+    /**
+     * Create a new floor subsystem in a simulation, sending the requests of an open trace. It
+     * shows the building on the GUI of the context, or opens its own window if there is none,
+     * and then logs nothing, since the window shows what it would log.
+     * @param context The simulation, resolved.
+     * @param trace The requests, in time order, or null for none.
+     * @param headless True to run without the GUI.
+     */
+    public FloorSubsystem(SimulationContext context, TraceReader trace, boolean headless) {
+        this.headless = headless;
+        // Quiet only this simulation, others in the process keep logging
+        this.context = headless || context.getGui() != null ? context : context.withLogLevel(Level.OFF);
+        floorArray = new Floor[context.getConfig().getFloors()];
         for (int i = 0; i < floorArray.length; i++) {
             floorArray[i] = new Floor(i+1); // Initialize each Floor object in the array
         }
         numExecutedRequests = 0;
-
-        // parse CSV
-        elevatorRequests = CSVParser.parseAndSortCSV(filePath);
-        numTotalRequests = elevatorRequests.size();
+        this.trace = trace;
+        numTotalRequests = trace == null ? 0 : trace.getCount();
 
         // handle timings
-        baseline = LocalTime.now();
-        t1 = LocalTime.now();
+        baseline = context.getClock().time();
+        t1 = context.getClock().time();
+
+        if (headless) {
+            gui = null;
+        } else if (context.getGui() != null) {
+            gui = context.getGui();
+        } else {
+            gui = new GUI(floorArray.length, context.getConfig().getElevators());
+        }
+    }
 
-        GUI.init();
+    /**
+     * Open a CSV trace, reporting a file that cannot be read.
+     * @param filePath The CSV file path.
+     * @return The trace, or null if the file cannot be read.
+     */
+    private static TraceReader openTrace(String filePath) {
+        try {
+            return TraceReader.open(filePath);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            Log.print("Error: File not found");
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+        return null;
     }
 
     /**
@@ -73,6 +147,17 @@ public class FloorSubsystem implements Runnable {
         this.baseline = baseline;
     }
 
+    /**
+     * Create a new floor subsystem with a custom baseline time.
+     * @param filePath The CSV file path.
+     * @param baseline The baseline time.
+     * @param headless True to run without the GUI.
+     */
+    public FloorSubsystem(String filePath, LocalTime baseline, boolean headless) {
+        this(filePath, headless);
+        this.baseline = baseline;
+    }
+
     /**
      * Create a new floor subsystem.
      */
@@ -89,26 +174,124 @@ public class FloorSubsystem implements Runnable {
         this.scheduler = scheduler;
     }
 
+    /**
+     * Get the time the floor subsystem was created. A request is sent at this time plus the
+     * time between the baseline and the request's time.
+     * @return The starting time.
+     */
+    public LocalTime getStartTime() {
+        return t1;
+    }
+
+    /**
+     * Get the starting time subtracted from the elevator request times.
+     * @return The baseline time.
+     */
+    public LocalTime getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Change the starting time subtracted from the elevator request times.
+     * @param baseline The baseline time.
+     */
+    public void setBaseline(LocalTime baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * Check if the floor subsystem runs without the GUI.
+     * @return True if there is no GUI.
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Get the simulation the floor subsystem belongs to.
+     * @return The resolved context it was created in.
+     */
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Get the GUI showing the building.
+     * @return The GUI, or null when headless.
+     */
+    public GUI getGui() {
+        return gui;
+    }
+
     /**
      * Wait until the elevator request's time has been reached and return the request.
      * @return The elevator request or null if there are no more.
      */
     public ElevatorRequest waitForRequestTriggered() {
-        if (elevatorRequests.isEmpty()) {
+        if (peekRequest() == null) {
             return null;
         }
 
         // calculate the time accrued from ctor and add to the baseline
-        LocalTime t2 = LocalTime.now();
+        LocalTime t2 = context.getClock().time();
         Duration duration = Duration.between(t1, t2);
         LocalTime baseline = this.baseline.plus(duration); 
 
         // pop the request and wait
-        ElevatorRequest er = elevatorRequests.remove(0);
+        ElevatorRequest er = pollRequest();
         er.waitForTime(baseline);
         return er;
     }
 
+    /**
+     * Get the next request to send without removing it.
+     * @return The next request or null if there are no more.
+     */
+    public ElevatorRequest peekRequest() {
+        if (trace != null) {
+            try {
+                ElevatorRequest er = trace.peek();
+                if (er != null) {
+                    return er;
+                }
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+            }
+            closeTrace(); // every request of the file has been read
+        }
+        return elevatorRequests.peekFirst();
+    }
+
+    /**
+     * Remove the next request to send.
+     * @return The next request or null if there are no more.
+     */
+    private ElevatorRequest pollRequest() {
+        if (peekRequest() == null) {
+            return null;
+        }
+        if (trace != null) {
+            try {
+                return trace.next();
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage()); // not reached, peek read it
+            }
+        }
+        return elevatorRequests.pollFirst();
+    }
+
+    /**
+     * Close the CSV file and delete its sort files.
+     */
+    private void closeTrace() {
+        try {
+            trace.close();
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+        trace = null;
+    }
+
     /**
      * Add a new elevator request.
      * @param elevatorRequest The elevator request.
@@ -124,11 +307,12 @@ public class FloorSubsystem implements Runnable {
      */
     public void receiveRequestFromScheduler(ElevatorRequest elevatorRequest) {
         
-        Log.print("(BACK) FloorSubsystem: Received ElevatorRequest(" + elevatorRequest + ") BACK from Scheduler at "
-                + LocalTime.now());
+        if (Log.isEnabled()) {
+            Log.print("(BACK) FloorSubsystem: Received ElevatorRequest(%s) BACK from Scheduler at %s", elevatorRequest, LocalTime.now());
+        }
         
         try {
-            Thread.sleep(1000);
+            context.getClock().sleep(1000);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -142,11 +326,11 @@ public class FloorSubsystem implements Runnable {
     }
 
     /**
-     * Get all of the elevator requests.
-     * @return All of the elevator requests.
+     * Get the number of requests, from the file and added.
+     * @return The number of requests.
      */
-    public List<ElevatorRequest> getAllElevatorRequestsFromFloorSubsystem() {
-        return elevatorRequests;
+    public int getTotalRequests() {
+        return numTotalRequests;
     }
 
     /**
@@ -166,15 +350,160 @@ public class FloorSubsystem implements Runnable {
      */
     @Override
     public void run() {
+        context.run(() -> {
+            while (true) {
+                ElevatorRequest er = waitForRequestTriggered();
+                if (er == null) {
+                    break;
+                }
+                er.stamp(ElevatorRequest.Stage.EMITTED, context.getClock());
+                scheduler.addToRequestQueue(er);
+            }
+        });
+    }
+
+    /**
+     * Send every request to the scheduler when its time is reached, through the reliable channel
+     * of the FloorSubsystem. Returns once all requests are sent.
+     * @param transport The transport to send with.
+     * @throws IOException If a request could not be sent.
+     */
+    public void sendRequests(Transport transport) throws IOException {
         while (true) {
             ElevatorRequest er = waitForRequestTriggered();
             if (er == null) {
-                break;
+                return;
+            }
+
+            if (gui != null && ElevatorFault.fromString(er.getFault()).isHardFault()) {
+                gui.add(er.getFloorNumber(), 1);
             }
-            scheduler.addToRequestQueue(er);
+
+            er.stamp(ElevatorRequest.Stage.EMITTED, context.getClock());
+            byte[] sendData = er.getBytes();
+            transport.channel(Transport.Peer.FLOOR_SUBSYSTEM).send(Transport.Peer.SCHEDULER, sendData);
+
+            // Print the data sent, for testing
+            System.out.println("Data sent: " + er + " at time: " + context.getClock().time());
         }
     }
 
+    /**
+     * Handle a message of the elevators, from the network or from an elevator subsystem in the
+     * same process: a batch of elevator statuses, shown on the GUI, or a fault an elevator encountered. The
+     * Scheduler's acknowledgements of the requests are handed to the reliable channel.
+     * @param message The message, from position to limit.
+     */
+    public void receive(ByteBuffer message) {
+        message = context.getTransport().channel(Transport.Peer.FLOOR_SUBSYSTEM).receive(message);
+        if (message == null) {
+            return;
+        }
+        if (ElevatorStatus.isBatch(message)) {
+            // The latest status of every elevator that changed since the last batch
+            for (ElevatorStatus status : ElevatorStatus.decode(message)) {
+                showStatus(status);
+            }
+            return;
+        }
+        String received = StandardCharsets.UTF_8.decode(message).toString();
+
+        // If the packet contains 'fault'
+        if (received.contains("fault")) {
+            System.out.println();
+            System.out.println("Received: " + received); //
+            String[] data = received.split(" ");
+            String fault = data[0];
+            int elevator = Integer.parseInt(data[5]);
+
+            if (gui == null) {
+                return;
+            }
+            if (ElevatorFault.fromString(fault).isHardFault()) {
+                gui.hardFault(elevator);
+            } else {
+                switch (fault) {
+                    case "DOOR_NOT_OPEN":
+                        gui.openFault(elevator);
+                        break;
+                    case "DOOR_NOT_CLOSE":
+                        gui.closeFault(elevator);
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Show the status of an elevator: change the lamps and move it on the GUI, opening the doors
+     * if it let off or took on passengers.
+     * @param status The status of the elevator.
+     */
+    private void showStatus(ElevatorStatus status) {
+        int elevator = status.getElevatorId();
+        int unloadedCount = status.getUnloaded();
+        int loadedCount = status.getLoaded();
+        System.out.printf("GUI update: Elevator %d is moving %s to next floor: %d, destination floor: %d, unloaded passengers: %d, loaded passengers: %d",
+                elevator, status.getDirection(), status.getFloor(), status.getDestinationFloor(), unloadedCount, loadedCount);
+        System.out.println();
+        changeLampStatus(status.getDirection());
+
+        if (gui != null) {
+            gui.move(elevator, status.getFloor());
+
+            // only open doors if there are passengers to unload or load
+            if (unloadedCount > 0 || loadedCount > 0) {
+                gui.open(elevator);
+
+                if (unloadedCount > 0) {
+                    gui.unload(elevator, unloadedCount);
+                }
+                if (loadedCount > 0) {
+                    gui.load(elevator, loadedCount);
+                }
+
+                gui.close(elevator);
+            }
+        }
+    }
+
+    /**
+     * Receive the messages of the elevators and the acknowledgements of the Scheduler from the
+     * network, on a new thread.
+     * @throws SocketException If the port is in use.
+     */
+    public void listen() throws SocketException {
+        int listenPort = context.getTransport().getPort(Transport.Peer.FLOOR_SUBSYSTEM);
+        DatagramSocket receiveSocket = new DatagramSocket(listenPort);
+        System.out.println("FloorSubsystem listening on port " + listenPort);
+        byte[] buffer = new byte[1024];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        // Create a separate thread to continuously listen for packets
+        Thread receiveThread = Threads.newThread("FloorSubsystem Receive Thread", () -> context.run(() -> {
+            while (true) {
+                try {
+                    // Receive the packet (For LampStatus changes)
+                    packet.setLength(buffer.length);
+                    receiveSocket.receive(packet);
+                    receive(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+                } catch (IOException e) {
+                    System.err.println("IOException while receiving packet: " + e.getMessage());
+                }
+            }
+        }), false);
+        receiveThread.start(); // Start the thread to listen for packets
+    }
+
+    /**
+     * Receive the messages of the elevators from a transport in this process rather than the
+     * network.
+     * @param transport The transport the elevator subsystem sends with.
+     */
+    public void bind(Transport transport) {
+        transport.bind(Transport.Peer.FLOOR_SUBSYSTEM, this::receive);
+    }
+
     /**
      * Get the array of floors.
      * @return The array of floors.
@@ -183,132 +512,37 @@ public class FloorSubsystem implements Runnable {
         return floorArray;
     }
 
+    /**
+     * Creates the FloorSubsystem and sends its requests to the Scheduler
+     * @param args --elevators N and --floors N to change the size of the building,
+     *             --port-offset N to move the ports of all subsystems up by N
+     */
     public static void main(String[] args) {
+        BuildingConfig config = BuildingConfig.get();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--elevators")) {
+                config = config.withElevators(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--floors")) {
+                config = config.withFloors(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--port-offset")) {
+                Transport.setPortOffset(Transport.parsePortOffset(args, i++));
+            }
+        }
+        BuildingConfig.set(config);
         String filePath = "res/input_faults.csv"; // Default file path
         //String filePath = "res/input_faults_bigger.csv"; // used for testing with more inputs
         //String filePath = "res/input_faults_bigger2.csv"; // used for testing with more inputs, spaced out more
         //String filePath = "res/input_demo.csv";
-        int schedulerPort = 5000; // Example port number for Scheduler
-        String schedulerHost = "localhost"; // Scheduler host, change as needed
-        System.out.println("FloorSubsystem listening on port 12345");
 
         // Initialize the FloorSubsystem with the file path
+        Log.disable(); // the GUI shows what would be logged
         FloorSubsystem floorSubsystem = new FloorSubsystem(filePath, LocalTime.of(14, 15));
 
         try {
-            DatagramSocket socket = new DatagramSocket();
-            InetAddress schedulerAddress = InetAddress.getByName(schedulerHost);
-
-            // Create a DatagramSocket to receive packets (For LampStatus changes)
-            DatagramSocket receiveSocket = new DatagramSocket(12345);
-            byte[] buffer = new byte[256];
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-            // Create a separate thread to continuously listen for packets
-            Thread receiveThread = new Thread(() -> {
-                while (true) {
-                    try {
-                    
-
-                        // Receive the packet (For LampStatus changes)
-                        receiveSocket.receive(packet);
-
-                        // If the packet has pattern "x;x;x;x;x;x;x;x" then it is a lamp status change trigger (example: 0;TRANSPORTING;4;UP;10;0;1)
-                        if (new String(packet.getData(), 0, packet.getLength()).matches("\\d+;\\w+;\\d+;\\w+;\\d+;\\d+;\\d+")) {
-                            // Process the packet (For LampStatus changes)
-                            String received = new String(packet.getData(), 0, packet.getLength());
-                            String[] data = received.split(";");
-                            int elevator = Integer.parseInt(data[0]);
-                            String state = data[1];
-                            // int currentFloor = Integer.parseInt(data[2]);
-                            int nextFloor = Integer.parseInt(data[2]);
-                            ButtonDirection direction = ButtonDirection.valueOf(data[3]);
-                            int destinationFloor = Integer.parseInt(data[4]);
-                            int unloadedCount = Integer.parseInt(data[5]);
-                            int loadedCount = Integer.parseInt(data[6]);
-
-                            System.out.printf("GUI update: Elevator %d is moving %s to next floor: %d, destination floor: %d, unloaded passengers: %d, loaded passengers: %d",
-                                    elevator, direction, nextFloor, destinationFloor, unloadedCount, loadedCount);
-                            System.out.println();
-                            floorSubsystem.changeLampStatus(direction);
-
-                            GUI.move(elevator, nextFloor);
-                            
-                            // only open doors if there are passengers to unload or load
-                            if (unloadedCount > 0 || loadedCount > 0) {
-                                GUI.open(elevator);
-                        
-                                if (unloadedCount > 0) {
-                                    GUI.unload(elevator, unloadedCount);
-                                }
-                                if (loadedCount > 0) {
-                                    GUI.load(elevator, loadedCount);
-                                }
-                                
-                                GUI.close(elevator);
-                            }
-
-                        }
-
-                        // If the packet contains 'fault'
-                        if (new String(packet.getData(), 0, packet.getLength()).contains("fault")) {
-                            // Process the packet (For LampStatus changes)
-                            String received = new String(packet.getData(), 0, packet.getLength());
-                            System.out.println();
-                            System.out.println("Received: " + received); //
-                            String[] data = received.split(" ");
-                            String fault = data[0];
-                            int elevator = Integer.parseInt(data[5]);
-
-                            if (ElevatorFault.fromString(fault).isHardFault()) {
-                                GUI.hardFault(elevator);
-                            } else {
-                                switch (fault) {
-                                    case "DOOR_NOT_OPEN":
-                                        GUI.openFault(elevator);
-                                        break;
-                                    case "DOOR_NOT_CLOSE":
-                                        GUI.closeFault(elevator);
-                                        break;
-                                }
-                            }
-                        }
-
-                    } catch (IOException e) {
-                        System.err.println("IOException while receiving packet: " + e.getMessage());
-                    }
-                }
-            });
-
-            receiveThread.start(); // Start the thread to listen for packets
+            floorSubsystem.listen();
 
-            while (true) { // Loop indefinitely
-                ElevatorRequest er = floorSubsystem.waitForRequestTriggered();
-                if (er != null) {
-
-                    if (ElevatorFault.fromString(er.getFault()).isHardFault()) {
-                        GUI.add(er.getFloorNumber(), 1);
-                    }
-
-                    byte[] sendData = er.getBytes();
-                    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, schedulerAddress, schedulerPort);
-                    socket.send(sendPacket);
-
-                    // Print the data sent, for testing
-                    String sentDataString = new String(sendData, StandardCharsets.UTF_8);
-                    System.out.println("Data sent: " + sentDataString + " at time: " + LocalTime.now());
-
-                } else {
-                    // If no request is available, wait a bit before checking again
-                    try {
-                        Thread.sleep(100); // Wait for 100 milliseconds
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt(); // Restore interrupted status
-                        System.err.println("Interrupted while waiting for a request.");
-                        break; // Exit the loop if the thread is interrupted
-                    }
-                }
-            }
+            // Send the requests, the receive thread keeps running afterwards
+            floorSubsystem.sendRequests(floorSubsystem.getContext().getTransport());
         } catch (SocketException e) {
             System.err.println("SocketException: " + e.getMessage());
         } catch (UnknownHostException e) {
@@ -0,0 +1,168 @@
+package floor;
+
+import common.Histogram;
+import common.SimulationContext;
+import floor.ElevatorRequest.Stage;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency histograms of the requests completed in a simulation, one per interval between two
+ * stages of a request's lifecycle. The process has one, and a SimulationContext can set its own
+ * so simulations running at the same time are measured apart, like Metrics. A request is recorded when its passenger is dropped off,
+ * with the stage timestamps it carried through the FloorSubsystem, Scheduler and elevator.
+ * Values are in Clock milliseconds, so on a VirtualClock they are simulated times.
+ */
+public class RequestLatency {
+
+    /** The largest latency counted exactly, one day in milliseconds. */
+    private static final long HIGHEST_LATENCY = 24L * 60 * 60 * 1000;
+
+    /** The significant digits kept, enough for a tenth of a percent. */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * The intervals measured.
+     */
+    public enum Interval {
+        /** From the FloorSubsystem sending the request to the Scheduler receiving it. */
+        QUEUE_WAIT(Stage.EMITTED, Stage.RECEIVED),
+        /** From the Scheduler receiving the request to assigning it to an elevator. */
+        ASSIGNMENT(Stage.RECEIVED, Stage.ASSIGNED),
+        /** From the request being made to the passenger getting on. */
+        HALL_WAIT(Stage.EMITTED, Stage.PICKED_UP),
+        /** From the passenger getting on to getting off. */
+        RIDE(Stage.PICKED_UP, Stage.DROPPED_OFF),
+        /** From the request being made to the passenger getting off. */
+        END_TO_END(Stage.EMITTED, Stage.DROPPED_OFF);
+
+        /** The stage the interval starts at. */
+        private final Stage from;
+
+        /** The stage the interval ends at. */
+        private final Stage to;
+
+        Interval(Stage from, Stage to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Stage getFrom() {
+            return from;
+        }
+
+        public Stage getTo() {
+            return to;
+        }
+    }
+
+    /** The intervals, walked for every request recorded. */
+    private static final Interval[] INTERVALS = Interval.values();
+
+    /** The histograms of this process. */
+    private static final RequestLatency latency = new RequestLatency();
+
+    /** The histogram of each interval, indexed by interval. */
+    private final Histogram[] histograms = new Histogram[INTERVALS.length];
+
+    /** True once the shutdown report is registered. */
+    private final AtomicBoolean dumpRegistered = new AtomicBoolean();
+
+    /**
+     * Create empty histograms, for a SimulationContext of its own.
+     */
+    public RequestLatency() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    /**
+     * Get the histograms of this process, or of the SimulationContext of the calling thread.
+     * @return the histograms
+     */
+    public static RequestLatency get() {
+        return SimulationContext.current().getLatency();
+    }
+
+    /**
+     * Get the histograms of this process, whatever the SimulationContext.
+     * @return the histograms
+     */
+    public static RequestLatency process() {
+        return latency;
+    }
+
+    /**
+     * Record every interval of a request whose two stages were both reached.
+     * @param request the request
+     */
+    public void record(ElevatorRequest request) {
+        for (Interval interval : INTERVALS) {
+            long latency = request.getLatency(interval.from, interval.to);
+            if (latency != ElevatorRequest.NOT_REACHED) {
+                histograms[interval.ordinal()].record(latency);
+            }
+        }
+    }
+
+    /**
+     * Get the histogram of an interval.
+     * @param interval the interval
+     * @return the histogram, in milliseconds
+     */
+    public Histogram getHistogram(Interval interval) {
+        return histograms[interval.ordinal()];
+    }
+
+    /**
+     * Get a percentile of an interval.
+     * @param interval the interval
+     * @param percentile the percentage, 0 to 100
+     * @return the latency in milliseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(Interval interval, double percentile) {
+        return getHistogram(interval).getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Forget every recorded request.
+     */
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Get a table of the count, percentiles, maximum and mean of each interval, in milliseconds.
+     * @return the report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Request latency (ms):\n");
+        report.append(String.format("%-11s %8s %8s %8s %8s %8s %8s %10s%n",
+                "interval", "count", "p50", "p90", "p99", "p99.9", "max", "mean"));
+        for (Interval interval : INTERVALS) {
+            Histogram h = getHistogram(interval);
+            report.append(String.format("%-11s %8d %8d %8d %8d %8d %8d %10.1f%n", interval, h.getTotalCount(),
+                    h.getValueAtPercentile(50), h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+                    h.getValueAtPercentile(99.9), h.getMax(), h.getMean()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Print the report on standard output when the JVM shuts down, if any request was recorded.
+     * Registers only once however often it is called.
+     */
+    public void dumpAtShutdown() {
+        if (dumpRegistered.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (getHistogram(Interval.END_TO_END).getTotalCount() > 0) {
+                    System.out.print(report());
+                    System.out.flush();
+                }
+            }, "Request Latency Report"));
+        }
+    }
+}
@@ -0,0 +1,689 @@
+package floor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import common.Config;
+import common.Log;
+
+/**
+ * Streams the elevator requests of a CSV trace in time order, in the format read by CSVParser.
+ * Lines are parsed straight from a byte buffer, without a String per line or field, so only
+ * the current request is held in memory.
+ *
+ * A first pass counts the requests and checks that they are in time order. A sorted trace is
+ * then read again as it is. Otherwise it is sorted by an external merge sort: runs of up to
+ * Config.TRACE_SORT_RUN requests are sorted in memory and written to temporary files in the
+ * binary ElevatorRequestCodec layout, and the runs are merged as the requests are read. A trace
+ * that fits in one run is sorted in memory. Requests with the same time keep their file order.
+ *
+ * The temporary files are deleted by close.
+ */
+public class TraceReader implements Closeable {
+
+    /** The size of the read and write buffers in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The names of the faults by ordinal, to match fault fields without making strings. */
+    private static final byte[][] FAULT_NAMES;
+
+    static {
+        CSVParser.ElevatorFault[] faults = CSVParser.ElevatorFault.values();
+        FAULT_NAMES = new byte[faults.length][];
+        for (CSVParser.ElevatorFault fault : faults) {
+            FAULT_NAMES[fault.ordinal()] = fault.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** Where the requests are read from. */
+    private final Source source;
+
+    /** The number of requests in the trace. */
+    private final int count;
+
+    /** True if the file was already in time order. */
+    private final boolean sorted;
+
+    /** The temporary files holding the sorted runs. */
+    private final List<Path> runs;
+
+    /** The next request, read ahead by peek. */
+    private ElevatorRequest next;
+
+    private TraceReader(Source source, int count, boolean sorted, List<Path> runs) {
+        this.source = source;
+        this.count = count;
+        this.sorted = sorted;
+        this.runs = runs;
+    }
+
+    /**
+     * Open a trace to read its requests in time order, sorting it if needed.
+     * @param filePath The path to the CSV file.
+     * @return The reader.
+     * @throws IOException If the file cannot be read or the runs cannot be written.
+     */
+    public static TraceReader open(String filePath) throws IOException {
+        return open(filePath, Config.TRACE_SORT_RUN);
+    }
+
+    /**
+     * Open a trace to read its requests in time order, sorting it if needed.
+     * @param filePath The path to the CSV file.
+     * @param runSize The most requests sorted in memory at once.
+     * @return The reader.
+     * @throws IOException If the file cannot be read or the runs cannot be written.
+     */
+    public static TraceReader open(String filePath, int runSize) throws IOException {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive: " + runSize);
+        }
+        Path path = Paths.get(filePath);
+
+        // Count the requests and check their order, reporting bad lines once
+        int count = 0;
+        boolean sorted = true;
+        try (CsvSource scan = new CsvSource(path, true)) {
+            LocalTime last = null;
+            ElevatorRequest request;
+            while ((request = scan.read()) != null) {
+                if (last != null && request.getTime().isBefore(last)) {
+                    sorted = false;
+                }
+                last = request.getTime();
+                count++;
+            }
+        }
+
+        if (sorted) {
+            return new TraceReader(new CsvSource(path, false), count, true, new ArrayList<>());
+        }
+        if (count <= runSize) {
+            List<ElevatorRequest> requests = new ArrayList<>(count);
+            try (CsvSource csv = new CsvSource(path, false)) {
+                readRun(csv, requests, count);
+            }
+            return new TraceReader(new IteratorSource(requests.iterator()), count, false, new ArrayList<>());
+        }
+
+        List<Path> runs = new ArrayList<>();
+        try {
+            writeRuns(path, runSize, runs);
+            return new TraceReader(new MergeSource(runs), count, false, runs);
+        } catch (IOException | RuntimeException e) {
+            deleteAll(runs);
+            throw e;
+        }
+    }
+
+    /**
+     * Read requests that are already in time order, such as the ones of a TrafficGenerator,
+     * as a trace. They are read as they are needed.
+     * @param requests The requests, in time order.
+     * @param count The number of requests.
+     * @return The reader.
+     */
+    public static TraceReader of(Iterator<ElevatorRequest> requests, int count) {
+        return new TraceReader(new IteratorSource(requests), count, true, new ArrayList<>());
+    }
+
+    /**
+     * Open a trace to read its requests in file order, without counting or sorting them.
+     * @param filePath The path to the CSV file.
+     * @return The reader. Its count is -1.
+     * @throws IOException If the file cannot be read.
+     */
+    static TraceReader openInFileOrder(String filePath) throws IOException {
+        return new TraceReader(new CsvSource(Paths.get(filePath), true), -1, false, new ArrayList<>());
+    }
+
+    /**
+     * Get the next request without removing it.
+     * @return The next request, or null if there are no more.
+     * @throws IOException If the trace cannot be read.
+     */
+    public ElevatorRequest peek() throws IOException {
+        if (next == null) {
+            next = source.read();
+        }
+        return next;
+    }
+
+    /**
+     * Remove and return the next request.
+     * @return The next request, or null if there are no more.
+     * @throws IOException If the trace cannot be read.
+     */
+    public ElevatorRequest next() throws IOException {
+        ElevatorRequest request = peek();
+        next = null;
+        return request;
+    }
+
+    /**
+     * Get the number of valid requests in the trace.
+     * @return The number of requests, -1 if the trace is read in file order.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Check if the requests in the file were already in time order.
+     * @return True if the trace did not need sorting.
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Get the number of sorted runs the trace was split into.
+     * @return The number of runs, 0 if the trace was not sorted on disk.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Stop reading and delete the temporary files.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            deleteAll(runs);
+        }
+    }
+
+    /**
+     * Split the trace into sorted runs, each in its own temporary file.
+     */
+    private static void writeRuns(Path path, int runSize, List<Path> runs) throws IOException {
+        List<ElevatorRequest> requests = new ArrayList<>(runSize);
+        ByteBuffer record = ByteBuffer.allocate(ElevatorRequestCodec.SIZE);
+        try (CsvSource csv = new CsvSource(path, false)) {
+            while (readRun(csv, requests, runSize) > 0) {
+                Path run = Files.createTempFile("trace", ".run");
+                runs.add(run);
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE)) {
+                    for (ElevatorRequest request : requests) {
+                        record.clear();
+                        ElevatorRequestCodec.encode(request, record);
+                        out.write(record.array());
+                    }
+                }
+                requests.clear();
+            }
+        }
+    }
+
+    /**
+     * Read up to max requests and sort them by time. The sort is stable.
+     * @return The number of requests read.
+     */
+    private static int readRun(Source source, List<ElevatorRequest> into, int max) throws IOException {
+        ElevatorRequest request;
+        while (into.size() < max && (request = source.read()) != null) {
+            into.add(request);
+        }
+        into.sort(ElevatorRequest::compareByTime);
+        return into.size();
+    }
+
+    /**
+     * Delete temporary files, reporting the ones that cannot be deleted.
+     */
+    private static void deleteAll(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+            }
+        }
+        files.clear();
+    }
+
+    /**
+     * A stream of requests.
+     */
+    private interface Source extends Closeable {
+
+        /**
+         * Read the next request.
+         * @return The request, or null if there are no more.
+         */
+        ElevatorRequest read() throws IOException;
+    }
+
+    /**
+     * Parses requests from the lines of a CSV file, in file order.
+     */
+    private static class CsvSource implements Source {
+
+        /** The most fields looked at in a line. */
+        private static final int FIELDS = 5;
+
+        /** The file. */
+        private final InputStream in;
+
+        /** True to log the lines that are not valid requests. */
+        private final boolean report;
+
+        /** The bytes read from the file. */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /** The position of the next unread byte in the buffer. */
+        private int position;
+
+        /** The number of bytes in the buffer. */
+        private int limit;
+
+        /** The current line, grown for long lines. */
+        private byte[] line = new byte[256];
+
+        /** The length of the current line. */
+        private int length;
+
+        /** The start of each field in the line, trimmed. */
+        private final int[] starts = new int[FIELDS];
+
+        /** The end of each field in the line, trimmed. */
+        private final int[] ends = new int[FIELDS];
+
+        CsvSource(Path path, boolean report) throws IOException {
+            this.in = Files.newInputStream(path);
+            this.report = report;
+        }
+
+        @Override
+        public ElevatorRequest read() throws IOException {
+            while (readLine()) {
+                ElevatorRequest request = parseLine();
+                if (request != null) {
+                    return request;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Copy the next line, without its line break, into line.
+         * @return False at the end of the file.
+         */
+        private boolean readLine() throws IOException {
+            length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length > 0;
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                int n = end - position;
+                if (length + n > line.length) {
+                    byte[] longer = new byte[Math.max(line.length * 2, length + n)];
+                    System.arraycopy(line, 0, longer, 0, length);
+                    line = longer;
+                }
+                System.arraycopy(buffer, position, line, length, n);
+                length += n;
+                position = end;
+                if (end < limit) {
+                    position++; // skip the line break
+                    if (length > 0 && line[length - 1] == '\r') {
+                        length--;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Parse the current line, in the format: time; floor number; direction; button; optional fault.
+         * @return The request, or null if the line is blank or not valid.
+         */
+        private ElevatorRequest parseLine() {
+            int fields = 0;
+            int start = 0;
+            int rest = length; // where the fifth field starts, before trimming
+            for (int i = 0; i <= length && fields < FIELDS; i++) {
+                if (i == length || line[i] == ';') {
+                    if (fields == FIELDS - 1) {
+                        rest = start;
+                    }
+                    starts[fields] = start;
+                    ends[fields] = i;
+                    trim(fields);
+                    fields++;
+                    start = i + 1;
+                }
+            }
+            if (fields == 1 && starts[0] == ends[0]) {
+                return null; // blank line
+            }
+            if (fields < 4) {
+                invalid("Invalid line: ", 0, length);
+                return null;
+            }
+
+            // 1. time
+            LocalTime time = parseTime(starts[0], ends[0]);
+            if (time == null) {
+                invalid("Invalid time: ", starts[0], ends[0]);
+                return null;
+            }
+
+            // 2. floor number (i.e. The current floor)
+            long floorNumber = parseInt(starts[1], ends[1]);
+            if (floorNumber == Long.MIN_VALUE) {
+                invalid("Invalid floor number: ", starts[1], ends[1]);
+                return null;
+            }
+
+            // 3. direction
+            ElevatorRequest.ButtonDirection direction;
+            if (equalsIgnoreCase(starts[2], ends[2], "up")) {
+                direction = ElevatorRequest.ButtonDirection.UP;
+            } else if (equalsIgnoreCase(starts[2], ends[2], "down")) {
+                direction = ElevatorRequest.ButtonDirection.DOWN;
+            } else {
+                invalid("Invalid direction: ", starts[2], ends[2]);
+                return null;
+            }
+
+            // 4. Button press inside elevator (i.e. The destination floor)
+            long buttonId = parseInt(starts[3], ends[3]);
+            if (buttonId == Long.MIN_VALUE) {
+                invalid("Invalid button number: ", starts[3], ends[3]);
+                return null;
+            }
+
+            ElevatorRequest request = new ElevatorRequest(time, (int) floorNumber, direction, (int) buttonId);
+
+            // 5. Optional fault, as long as something follows the fourth separator
+            if (fields == FIELDS && hasFault(rest)) {
+                request.addFault(parseFault(starts[4], ends[4]));
+            }
+            return request;
+        }
+
+        /**
+         * Move the bounds of a field past the spaces around it.
+         */
+        private void trim(int field) {
+            while (starts[field] < ends[field] && line[starts[field]] <= ' ') {
+                starts[field]++;
+            }
+            while (ends[field] > starts[field] && line[ends[field] - 1] <= ' ') {
+                ends[field]--;
+            }
+        }
+
+        /**
+         * Check if anything but separators is left on the line, like String.split keeps a last field.
+         */
+        private boolean hasFault(int from) {
+            for (int i = from; i < length; i++) {
+                if (line[i] != ';') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Parse a time in the format H:mm, H:mm:ss or H:mm:ss.fraction.
+         * @return The time, or null if it is not valid.
+         */
+        private LocalTime parseTime(int start, int end) {
+            int i = start;
+            int hour = 0;
+            int digits = 0;
+            while (i < end && isDigit(line[i]) && digits < 2) {
+                hour = hour * 10 + (line[i++] - '0');
+                digits++;
+            }
+            if (digits == 0 || i >= end || line[i++] != ':' || end - i < 2
+                    || !isDigit(line[i]) || !isDigit(line[i + 1])) {
+                return null;
+            }
+            int minute = (line[i] - '0') * 10 + (line[i + 1] - '0');
+            i += 2;
+            int second = 0;
+            int nanos = 0;
+            if (i < end) {
+                if (line[i++] != ':' || end - i < 2 || !isDigit(line[i]) || !isDigit(line[i + 1])) {
+                    return null;
+                }
+                second = (line[i] - '0') * 10 + (line[i + 1] - '0');
+                i += 2;
+                if (i < end) {
+                    if (line[i++] != '.' || i == end || end - i > 9) {
+                        return null;
+                    }
+                    int scale = 100_000_000;
+                    while (i < end) {
+                        if (!isDigit(line[i])) {
+                            return null;
+                        }
+                        nanos += (line[i++] - '0') * scale;
+                        scale /= 10;
+                    }
+                }
+            }
+            if (hour > 23 || minute > 59 || second > 59) {
+                return null;
+            }
+            return LocalTime.of(hour, minute, second, nanos);
+        }
+
+        /**
+         * Parse a decimal int, with an optional sign.
+         * @return The number, or Long.MIN_VALUE if it is not a valid int.
+         */
+        private long parseInt(int start, int end) {
+            boolean negative = start < end && line[start] == '-';
+            int i = start < end && (line[start] == '-' || line[start] == '+') ? start + 1 : start;
+            if (i == end || end - i > 10) {
+                return Long.MIN_VALUE;
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                if (!isDigit(line[i])) {
+                    return Long.MIN_VALUE;
+                }
+                value = value * 10 + (line[i] - '0');
+            }
+            value = negative ? -value : value;
+            return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+        }
+
+        /**
+         * Find the fault named by a field, NO_FAULT if none matches.
+         */
+        private CSVParser.ElevatorFault parseFault(int start, int end) {
+            for (int f = 0; f < FAULT_NAMES.length; f++) {
+                byte[] name = FAULT_NAMES[f];
+                if (name.length == end - start && equals(start, name)) {
+                    return CSVParser.ElevatorFault.fromOrdinal(f);
+                }
+            }
+            return CSVParser.ElevatorFault.NO_FAULT;
+        }
+
+        private boolean equals(int start, byte[] name) {
+            for (int i = 0; i < name.length; i++) {
+                if (line[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean equalsIgnoreCase(int start, int end, String word) {
+            if (end - start != word.length()) {
+                return false;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (Character.toLowerCase(line[start + i]) != word.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        /**
+         * Log a line that is not a valid request. Only then is a String made.
+         */
+        private void invalid(String message, int start, int end) {
+            if (report) {
+                Log.print(message + new String(line, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Requests sorted in memory, or generated in time order.
+     */
+    private static class IteratorSource implements Source {
+
+        /** The remaining requests. */
+        private final Iterator<ElevatorRequest> requests;
+
+        IteratorSource(Iterator<ElevatorRequest> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public ElevatorRequest read() {
+            return requests.hasNext() ? requests.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * One sorted run in a temporary file.
+     */
+    private static class RunSource implements Source {
+
+        /** The file. */
+        private final DataInputStream in;
+
+        /** The order of the run in the trace, to keep requests with the same time in file order. */
+        private final int index;
+
+        /** The bytes of one request. */
+        private final byte[] record = new byte[ElevatorRequestCodec.SIZE];
+
+        /** The next request of the run, null once the run is used up. */
+        private ElevatorRequest head;
+
+        RunSource(Path run, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE / 8));
+            this.index = index;
+        }
+
+        @Override
+        public ElevatorRequest read() throws IOException {
+            try {
+                in.readFully(record);
+            } catch (EOFException e) {
+                return null;
+            }
+            return ElevatorRequestCodec.decode(ByteBuffer.wrap(record));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Merges the sorted runs, taking the earliest head each time.
+     */
+    private static class MergeSource implements Source {
+
+        /** The runs that have requests left, ordered by their heads. */
+        private final PriorityQueue<RunSource> heads = new PriorityQueue<>((a, b) -> {
+            int order = a.head.compareByTime(b.head);
+            return order != 0 ? order : Integer.compare(a.index, b.index);
+        });
+
+        /** Every run, to close them. */
+        private final List<RunSource> all = new ArrayList<>();
+
+        MergeSource(List<Path> runs) throws IOException {
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunSource run = new RunSource(runs.get(i), i);
+                    all.add(run);
+                    run.head = run.read();
+                    if (run.head != null) {
+                        heads.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public ElevatorRequest read() throws IOException {
+            RunSource run = heads.poll();
+            if (run == null) {
+                return null;
+            }
+            ElevatorRequest request = run.head;
+            run.head = run.read();
+            if (run.head != null) {
+                heads.add(run);
+            }
+            return request;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RunSource run : all) {
+                run.close();
+            }
+        }
+    }
+}
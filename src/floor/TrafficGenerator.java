@@ -0,0 +1,568 @@
+package floor;
+
+import floor.CSVParser.ElevatorFault;
+import floor.ElevatorRequest.ButtonDirection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+import common.BuildingConfig;
+
+/**
+ * Generates the hall calls of a building from a traffic model, for traces far larger than the
+ * hand-written ones. Calls arrive as a Poisson process whose rate can change over time, and each
+ * call's origin and destination are drawn from an origin/destination matrix, built from a
+ * traffic pattern or given. A call can carry a fault with a given probability.
+ *
+ * A generator is immutable and seeded: the same settings always generate the same calls. They
+ * are generated lazily and in time order, so they can go straight to a FloorSubsystem through
+ * open(), or to a CSV trace through writeCsv().
+ */
+public class TrafficGenerator {
+
+    /**
+     * The traffic patterns of an office building. The lobby is where people enter and leave.
+     */
+    public enum Pattern {
+        /** The morning arrivals: most calls go from the lobby up. */
+        UP_PEAK(0.85, 0.05),
+        /** The evening departures: most calls go down to the lobby. */
+        DOWN_PEAK(0.05, 0.85),
+        /** Lunch time: calls go both to and from the lobby, with some between floors. */
+        LUNCH(0.40, 0.40),
+        /** The rest of the day: calls go between any two floors alike. */
+        INTERFLOOR(-1, -1);
+
+        /** The share of calls from the lobby, -1 to treat every floor alike. */
+        private final double fromLobby;
+        /** The share of calls to the lobby, -1 to treat every floor alike. */
+        private final double toLobby;
+
+        Pattern(double fromLobby, double toLobby) {
+            this.fromLobby = fromLobby;
+            this.toLobby = toLobby;
+        }
+
+        /**
+         * Get a pattern by name, as written on the command line.
+         * @param name the name, such as up-peak or UP_PEAK
+         * @return the pattern
+         * @throws IllegalArgumentException if no pattern has the name
+         */
+        public static Pattern fromString(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /** The arrival rate if none is set, in calls per minute. */
+    private static final double DEFAULT_RATE = 10;
+
+    /** The format of the request times in a CSV trace. */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    /** The number of floors. */
+    private final int floors;
+
+    /** The seed of the random numbers. */
+    private final long seed;
+
+    /** The pattern the matrix was built from, null for a given matrix. */
+    private final Pattern pattern;
+
+    /** The floor people enter and leave the building by. */
+    private final int lobby;
+
+    /** The arrival rate of each period, in calls per millisecond. */
+    private final double[] rates;
+
+    /** The length of a period of the rates, in milliseconds. The last rate holds after the last period. */
+    private final long period;
+
+    /** The cumulative weights of the calls from floor i to floor j, at index i * floors + j. */
+    private final double[] calls;
+
+    /** The faults that can be injected. */
+    private final ElevatorFault[] faults;
+
+    /** The cumulative probabilities of the faults. */
+    private final double[] faultOdds;
+
+    /**
+     * Create a generator of interfloor traffic at 10 calls per minute, with no faults, for the
+     * floors of the current BuildingConfig.
+     * @param seed the seed of the random numbers
+     */
+    public TrafficGenerator(long seed) {
+        this(BuildingConfig.get().getFloors(), seed);
+    }
+
+    /**
+     * Create a generator of interfloor traffic at 10 calls per minute, with no faults.
+     * @param floors the number of floors, the calls are between floor 0 and floors - 1
+     * @param seed the seed of the random numbers
+     */
+    public TrafficGenerator(int floors, long seed) {
+        if (floors < 2) {
+            throw new IllegalArgumentException("A building needs at least 2 floors: " + floors);
+        }
+        this.floors = floors;
+        this.seed = seed;
+        this.pattern = Pattern.INTERFLOOR;
+        this.lobby = 0;
+        this.rates = new double[] {DEFAULT_RATE / 60_000};
+        this.period = Long.MAX_VALUE;
+        this.calls = cumulative(matrix(pattern, floors, lobby));
+        this.faults = new ElevatorFault[0];
+        this.faultOdds = new double[0];
+    }
+
+    private TrafficGenerator(TrafficGenerator g, Pattern pattern, int lobby, double[] rates, long period, double[] calls,
+                             ElevatorFault[] faults, double[] faultOdds) {
+        this.floors = g.floors;
+        this.seed = g.seed;
+        this.pattern = pattern;
+        this.lobby = lobby;
+        this.rates = rates;
+        this.period = period;
+        this.calls = calls;
+        this.faults = faults;
+        this.faultOdds = faultOdds;
+    }
+
+    /**
+     * Copy the generator with the origin/destination matrix of a pattern.
+     * @param pattern the pattern
+     * @return the new generator
+     */
+    public TrafficGenerator withPattern(Pattern pattern) {
+        return new TrafficGenerator(this, pattern, lobby, rates, period, cumulative(matrix(pattern, floors, lobby)),
+                faults, faultOdds);
+    }
+
+    /**
+     * Copy the generator with another lobby floor, for the pattern's matrix.
+     * @param lobby the lobby
+     * @return the new generator
+     */
+    public TrafficGenerator withLobby(int lobby) {
+        if (lobby < 0 || lobby >= floors) {
+            throw new IllegalArgumentException("No floor " + lobby + " in a building of " + floors + " floors");
+        }
+        double[] matrix = pattern == null ? calls : cumulative(matrix(pattern, floors, lobby));
+        return new TrafficGenerator(this, pattern, lobby, rates, period, matrix, faults, faultOdds);
+    }
+
+    /**
+     * Copy the generator with a given origin/destination matrix in place of the pattern's.
+     * @param matrix the relative number of calls from floor i to floor j at [i][j]. The
+     *               diagonal is ignored.
+     * @return the new generator
+     */
+    public TrafficGenerator withMatrix(double[][] matrix) {
+        if (matrix.length != floors) {
+            throw new IllegalArgumentException("The matrix has " + matrix.length + " rows for " + floors + " floors");
+        }
+        double[][] copy = new double[floors][];
+        for (int i = 0; i < floors; i++) {
+            if (matrix[i].length != floors) {
+                throw new IllegalArgumentException("Row " + i + " of the matrix has " + matrix[i].length + " columns");
+            }
+            copy[i] = matrix[i].clone();
+            copy[i][i] = 0;
+        }
+        return new TrafficGenerator(this, null, lobby, rates, period, cumulative(copy), faults, faultOdds);
+    }
+
+    /**
+     * Copy the generator with a constant arrival rate.
+     * @param callsPerMinute the mean number of calls per minute
+     * @return the new generator
+     */
+    public TrafficGenerator withRate(double callsPerMinute) {
+        return withRates(Duration.ofMillis(Long.MAX_VALUE), callsPerMinute);
+    }
+
+    /**
+     * Copy the generator with an arrival rate that changes over time, such as a morning that
+     * builds up to its peak and falls off.
+     * @param period the length of each rate's period, from the start of the generated calls
+     * @param callsPerMinute the mean number of calls per minute of each period. The last one
+     *                       holds after the last period.
+     * @return the new generator
+     */
+    public TrafficGenerator withRates(Duration period, double... callsPerMinute) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("The period must be positive: " + period);
+        }
+        if (callsPerMinute.length == 0) {
+            throw new IllegalArgumentException("No rates");
+        }
+        double[] perMilli = new double[callsPerMinute.length];
+        boolean any = false;
+        for (int i = 0; i < callsPerMinute.length; i++) {
+            if (!(callsPerMinute[i] >= 0) || Double.isInfinite(callsPerMinute[i])) {
+                throw new IllegalArgumentException("Bad rate: " + callsPerMinute[i]);
+            }
+            perMilli[i] = callsPerMinute[i] / 60_000;
+            any |= callsPerMinute[i] > 0;
+        }
+        if (!any) {
+            throw new IllegalArgumentException("Every rate is 0");
+        }
+        return new TrafficGenerator(this, pattern, lobby, perMilli, period.toMillis(), calls, faults, faultOdds);
+    }
+
+    /**
+     * Copy the generator with a fault injected into a share of the calls. Each call carries
+     * at most one fault, so the probabilities of all faults add up to at most 1.
+     * @param fault the fault
+     * @param probability the probability of a call carrying the fault, 0 to remove it
+     * @return the new generator
+     */
+    public TrafficGenerator withFault(ElevatorFault fault, double probability) {
+        if (fault == ElevatorFault.NO_FAULT) {
+            throw new IllegalArgumentException("NO_FAULT cannot be injected");
+        }
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Bad probability: " + probability);
+        }
+        ElevatorFault[] all = ElevatorFault.values();
+        double[] odds = new double[all.length];
+        for (int i = 0; i < faults.length; i++) {
+            odds[faults[i].ordinal()] = faultOdds[i] - (i == 0 ? 0 : faultOdds[i - 1]);
+        }
+        odds[fault.ordinal()] = probability;
+
+        int n = 0;
+        for (double p : odds) {
+            if (p > 0) n++;
+        }
+        ElevatorFault[] newFaults = new ElevatorFault[n];
+        double[] newOdds = new double[n];
+        double total = 0;
+        n = 0;
+        for (ElevatorFault f : all) {
+            if (odds[f.ordinal()] > 0) {
+                total += odds[f.ordinal()];
+                newFaults[n] = f;
+                newOdds[n++] = total;
+            }
+        }
+        if (total > 1 + 1e-9) {
+            throw new IllegalArgumentException("The fault probabilities add up to " + total);
+        }
+        return new TrafficGenerator(this, pattern, lobby, rates, period, calls, newFaults, newOdds);
+    }
+
+    public int getFloors() {
+        return floors;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the pattern of the origin/destination matrix.
+     * @return the pattern, or null if a matrix was given
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Build the origin/destination matrix of a pattern. The calls to, from and not touching the
+     * lobby get the pattern's shares, spread evenly over their floors.
+     * @param pattern the pattern
+     * @param floors the number of floors
+     * @param lobby the lobby
+     * @return the relative number of calls from floor i to floor j at [i][j]
+     */
+    public static double[][] matrix(Pattern pattern, int floors, int lobby) {
+        double[][] matrix = new double[floors][floors];
+        if (pattern.fromLobby < 0) {
+            for (int i = 0; i < floors; i++) {
+                Arrays.fill(matrix[i], 1);
+                matrix[i][i] = 0;
+            }
+            return matrix;
+        }
+        int others = floors - 1;
+        double between = others < 2 ? 0 : (1 - pattern.fromLobby - pattern.toLobby) / (others * (others - 1));
+        for (int i = 0; i < floors; i++) {
+            for (int j = 0; j < floors; j++) {
+                if (i == j) {
+                    continue;
+                }
+                if (i == lobby) {
+                    matrix[i][j] = pattern.fromLobby / others;
+                } else if (j == lobby) {
+                    matrix[i][j] = pattern.toLobby / others;
+                } else {
+                    matrix[i][j] = between;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Flatten a matrix into cumulative weights, for drawing a call by binary search.
+     */
+    private static double[] cumulative(double[][] matrix) {
+        int floors = matrix.length;
+        double[] weights = new double[floors * floors];
+        double total = 0;
+        for (int i = 0; i < floors; i++) {
+            for (int j = 0; j < floors; j++) {
+                double w = matrix[i][j];
+                if (!(w >= 0) || Double.isInfinite(w)) {
+                    throw new IllegalArgumentException("Bad weight from floor " + i + " to " + j + ": " + w);
+                }
+                total += i == j ? 0 : w;
+                weights[i * floors + j] = total;
+            }
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The matrix has no calls");
+        }
+        return weights;
+    }
+
+    /**
+     * Generate the calls of a time span, in time order. Every call of the span is generated
+     * again, the same, each time this is called.
+     * @param start the time of day the span starts
+     * @param length the length of the span, ending before midnight
+     * @return the calls
+     */
+    public Iterator<ElevatorRequest> generate(LocalTime start, Duration length) {
+        long end = checkSpan(start, length);
+        double max = Arrays.stream(rates).max().getAsDouble();
+        return new Iterator<>() {
+            private final SplittableRandom random = new SplittableRandom(seed);
+            private double t = nextArrival(random, 0, max);
+
+            @Override
+            public boolean hasNext() {
+                return t < end;
+            }
+
+            @Override
+            public ElevatorRequest next() {
+                if (t >= end) {
+                    throw new NoSuchElementException();
+                }
+                ElevatorRequest request = newRequest(random, start.plusNanos((long) t * 1_000_000));
+                t = nextArrival(random, t, max);
+                return request;
+            }
+        };
+    }
+
+    /**
+     * Count the calls of a time span, without keeping them.
+     * @param start the time of day the span starts
+     * @param length the length of the span, ending before midnight
+     * @return the number of calls generate() returns
+     */
+    public int count(LocalTime start, Duration length) {
+        int count = 0;
+        for (Iterator<ElevatorRequest> it = generate(start, length); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Open the calls of a time span as a trace, to run them through a FloorSubsystem without a
+     * file. They are counted first, then generated again as they are read.
+     * @param start the time of day the span starts
+     * @param length the length of the span, ending before midnight
+     * @return the trace
+     */
+    public TraceReader open(LocalTime start, Duration length) {
+        return TraceReader.of(generate(start, length), count(start, length));
+    }
+
+    /**
+     * Write the calls of a time span to a CSV trace, in the format read by CSVParser.
+     * @param path the file, replaced if it exists
+     * @param start the time of day the span starts
+     * @param length the length of the span, ending before midnight
+     * @return the number of calls written
+     * @throws IOException if the file cannot be written
+     */
+    public int writeCsv(Path path, LocalTime start, Duration length) throws IOException {
+        int count = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Iterator<ElevatorRequest> it = generate(start, length); it.hasNext(); count++) {
+                ElevatorRequest request = it.next();
+                ElevatorFault fault = request.getElevatorFault();
+                out.write(TIME_FORMAT.format(request.getTime()));
+                out.write("; ");
+                out.write(Integer.toString(request.getFloorNumber()));
+                out.write(request.getButtonDirection() == ButtonDirection.UP ? "; Up; " : "; Down; ");
+                out.write(Integer.toString(request.getButtonId()));
+                out.write(";");
+                if (fault != ElevatorFault.NO_FAULT) {
+                    out.write(" ");
+                    out.write(fault.name());
+                }
+                out.newLine();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check that a span ends before midnight.
+     * @return the length in milliseconds
+     */
+    private static long checkSpan(LocalTime start, Duration length) {
+        if (length.isNegative()) {
+            throw new IllegalArgumentException("Negative length: " + length);
+        }
+        long end = length.toMillis();
+        if (end > Duration.between(start, LocalTime.MAX).toMillis()) {
+            throw new IllegalArgumentException("The span from " + start + " for " + length + " passes midnight");
+        }
+        return end;
+    }
+
+    /**
+     * Get the arrival rate at a time.
+     * @param t the time in milliseconds from the start of the span
+     * @return the rate in calls per millisecond
+     */
+    private double rate(double t) {
+        long i = (long) (t / period);
+        return rates[(int) Math.min(i, rates.length - 1)];
+    }
+
+    /**
+     * Draw the time of the next arrival by thinning: arrivals are drawn at the highest rate and
+     * each is kept with the probability of the rate at its time over the highest rate.
+     */
+    private double nextArrival(SplittableRandom random, double t, double max) {
+        do {
+            t += -Math.log(1 - random.nextDouble()) / max;
+        } while (random.nextDouble() * max >= rate(t) && !Double.isInfinite(t));
+        return t;
+    }
+
+    /**
+     * Draw a call's floors and fault.
+     */
+    private ElevatorRequest newRequest(SplittableRandom random, LocalTime time) {
+        int index = Arrays.binarySearch(calls, random.nextDouble() * calls[calls.length - 1]);
+        index = index < 0 ? -index - 1 : index + 1; // the first weight above the draw
+        while (calls[index] == (index == 0 ? 0 : calls[index - 1])) {
+            index++; // skip the diagonal and empty cells
+        }
+        int origin = index / floors;
+        int destination = index % floors;
+        ElevatorRequest request = new ElevatorRequest(time, origin,
+                destination > origin ? ButtonDirection.UP : ButtonDirection.DOWN, destination);
+
+        if (faults.length > 0) {
+            double draw = random.nextDouble();
+            for (int i = 0; i < faults.length; i++) {
+                if (draw < faultOdds[i]) {
+                    request.addFault(faults[i]);
+                    break;
+                }
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Write a generated CSV trace.
+     * @param args the output file, then --pattern up-peak|down-peak|lunch|interfloor,
+     *             --floors N (the BuildingConfig's by default), --lobby N, --rate R in calls per
+     *             minute, --start HH:mm, --minutes N, --seed N and --fault NAME=P, repeatable.
+     *             Exits with 0 once written, 1 if the file could not be written, 2 for bad arguments.
+     */
+    public static void main(String[] args) {
+        String output = null;
+        Pattern pattern = Pattern.INTERFLOOR;
+        int floors = BuildingConfig.get().getFloors();
+        int lobby = 0;
+        double rate = DEFAULT_RATE;
+        LocalTime start = LocalTime.of(8, 0);
+        long minutes = 60;
+        long seed = 1;
+        ElevatorFault[] all = ElevatorFault.values();
+        double[] faults = new double[all.length];
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--pattern": pattern = Pattern.fromString(value(args, i++)); break;
+                    case "--floors": floors = BuildingConfig.parseCount(args, i++); break;
+                    case "--lobby": lobby = Integer.parseInt(value(args, i++)); break;
+                    case "--rate": rate = Double.parseDouble(value(args, i++)); break;
+                    case "--start": start = LocalTime.parse(value(args, i++)); break;
+                    case "--minutes": minutes = Long.parseLong(value(args, i++)); break;
+                    case "--seed": seed = Long.parseLong(value(args, i++)); break;
+                    case "--fault": {
+                        String[] parts = value(args, i++).split("=", 2);
+                        ElevatorFault fault = ElevatorFault.fromString(parts[0].trim().toUpperCase(Locale.ROOT));
+                        if (fault == ElevatorFault.NO_FAULT || parts.length < 2) {
+                            throw new IllegalArgumentException("--fault needs NAME=PROBABILITY: " + args[i]);
+                        }
+                        faults[fault.ordinal()] = Double.parseDouble(parts[1]);
+                        break;
+                    }
+                    default:
+                        if (output != null || args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown argument " + args[i]);
+                        }
+                        output = args[i];
+                }
+            }
+            if (output == null) {
+                throw new IllegalArgumentException("No output file");
+            }
+            TrafficGenerator generator = new TrafficGenerator(floors, seed).withLobby(lobby).withPattern(pattern)
+                    .withRate(rate);
+            for (ElevatorFault fault : all) {
+                if (faults[fault.ordinal()] > 0) {
+                    generator = generator.withFault(fault, faults[fault.ordinal()]);
+                }
+            }
+            int count = generator.writeCsv(Path.of(output), start, Duration.ofMinutes(minutes));
+            System.out.println("Wrote " + count + " requests to " + output);
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+            System.exit(1);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: TrafficGenerator FILE [--pattern up-peak|down-peak|lunch|interfloor] "
+                    + "[--floors N] [--lobby N] [--rate CALLS_PER_MINUTE] [--start HH:mm] [--minutes N] [--seed N] "
+                    + "[--fault NAME=PROBABILITY]...");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Get the value following a flag.
+     */
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            throw new IllegalArgumentException(args[i] + " needs a value");
+        }
+        return args[i + 1];
+    }
+}
@@ -2,6 +2,7 @@ package gui;
 
 import common.MathHelper;
 import common.Config;
+import common.Threads;
 import java.awt.Color;
 import java.awt.Container;
 import java.util.concurrent.TimeUnit;
@@ -11,6 +12,8 @@ import java.util.concurrent.LinkedBlockingDeque;
  * 
  */
 public class Elevator {
+    /** The GUI the elevator is shown on. */
+    private final GUI gui;
     /** */
     private Thread thread;
     /** */
@@ -44,10 +47,12 @@ public class Elevator {
 
     /**
      * 
+     * @param gui the GUI the elevator is shown on
      * @param container
      * @param index
      */
-    public Elevator(Container container, int index) {
+    public Elevator(GUI gui, Container container, int index) {
+        this.gui = gui;
         int x = Floor.getWidth() + index * getWidth();
         room = new Resource(ResourceType.ROOM, x, 0);
         leftDoor = new Resource(ResourceType.DOOR, x, 0);
@@ -57,6 +62,9 @@ public class Elevator {
         corridor = new Resource(ResourceType.CORRIDOR, x, 0);
         number = new Number(x + 4, ResourceLoader.getHeight(ResourceType.ROOM) - 8, Color.WHITE);
         number.setSize(6);
+        leftRope.stretch(gui.getHeight());
+        rightRope.stretch(gui.getHeight());
+        corridor.stretch(gui.getHeight());
         container.add(leftDoor);
         container.add(rightDoor);
         container.add(number);
@@ -68,7 +76,7 @@ public class Elevator {
         openFault = false;
         closeFault = false;
         jobs = new LinkedBlockingDeque<>();
-        thread = new Thread(() -> {
+        thread = Threads.newThread("GUI Elevator Thread", () -> {
             while (true) {
                 if (hardFault) {
                     return;
@@ -88,8 +96,7 @@ public class Elevator {
                     case HARD_FAULT: handleHardFault(); break;
                 }
             }
-        });
-        thread.setDaemon(true);
+        }, true);
         thread.start();
     }
 
@@ -166,7 +173,7 @@ public class Elevator {
         int time = (int) (floors * 1.0f / Config.FLOORS_PER_SECOND * 1000.0f);
         int resolution = 100;
         try {
-            GUI.notifyLamp(floor, direction, true);
+            gui.notifyLamp(floor, direction, true);
             for (; i <= time; i += resolution) {
                 if (Thread.interrupted()) {
                     return;
@@ -180,7 +187,7 @@ public class Elevator {
                 setHeight(this.floor, alpha);
             }
         } finally {
-            GUI.notifyLamp(floor, direction, false);
+            gui.notifyLamp(floor, direction, false);
         }
         i = 0;
         setHeight(floor, 0);
@@ -203,10 +210,10 @@ public class Elevator {
             }
             if (load) {
                 number.addValue(1);
-                GUI.take(floor, 1);
+                gui.take(floor, 1);
             } else {
                 number.subValue(1);
-                GUI.deliver(floor, 1);
+                gui.deliver(floor, 1);
             }
         }
         i = 0;
@@ -30,12 +30,13 @@ public class Floor {
 
     /**
      * 
+     * @param gui the GUI the floor is shown on
      * @param container
      * @param index
      */
-    public Floor(Container container, int index) {
+    public Floor(GUI gui, Container container, int index) {
         x1 = ResourceLoader.getWidth(ResourceType.FLOOR);
-        x2 = x1 + Elevator.getWidth() * GUI.ELEVATORS;
+        x2 = x1 + Elevator.getWidth() * gui.getElevators();
         y = index * getHeight();
         leftFloor = new Resource(ResourceType.FLOOR, 0, y);
         rightFloor = new Resource(ResourceType.FLOOR, x2, y);
@@ -1,41 +1,82 @@
 package gui;
 
-import common.Log;
+import common.BuildingConfig;
+
+import java.awt.Component;
 
 /**
- * 
+ * A window showing one building. Each simulation that is shown has its own.
  */
 public class GUI {
-    /** */
-    public static final int FLOORS = 22;
-    /** */
-    public static final int ELEVATORS = 4;
-    /** */
-    public static final int WIDTH = 312;
-    /** */
-    public static final int HEIGHT = 572;
     /** */
     public static final int PEOPLE = 5;
     /** */
-    private static Window window;
+    private final Window window;
     /** */
-    private static Elevator[] elevators = new Elevator[ELEVATORS];
+    private final Elevator[] elevators;
     /** */
-    private static Floor[] floors = new Floor[FLOORS];
+    private final Floor[] floors;
 
     /**
-     * 
+     * Show the building of the current BuildingConfig.
+     */
+    public GUI() {
+        this(BuildingConfig.get().getFloors(), BuildingConfig.get().getElevators());
+    }
+
+    /**
+     * Show a building.
+     * @param floorCount the number of floors
+     * @param elevatorCount the number of elevators
      */
-    public static void init() {
-        Log.disable();
-        window = new Window(WIDTH, HEIGHT);
+    public GUI(int floorCount, int elevatorCount) {
+        elevators = new Elevator[elevatorCount];
+        floors = new Floor[floorCount];
+        window = new Window(getWidth(), getHeight());
         int i;
-        for (i = 0; i < ELEVATORS; i++) {
-            elevators[i] = new Elevator(window, i);
+        for (i = 0; i < elevatorCount; i++) {
+            elevators[i] = new Elevator(this, window.getCanvas(), i);
         }
-        for (i = 0; i < FLOORS; i++) {
-            floors[i] = new Floor(window, i);
+        for (i = 0; i < floorCount; i++) {
+            floors[i] = new Floor(this, window.getCanvas(), i);
         }
+        // every resource is drawn over the whole building
+        for (Component component : window.getCanvas().getComponents()) {
+            component.setBounds(0, 0, getWidth(), getHeight());
+        }
+        window.scrollToBottom();
+    }
+
+    /**
+     * 
+     * @return the number of floors shown
+     */
+    public int getFloors() {
+        return floors.length;
+    }
+
+    /**
+     * 
+     * @return the number of elevators shown
+     */
+    public int getElevators() {
+        return elevators.length;
+    }
+
+    /**
+     * 
+     * @return the width of the building in pixels
+     */
+    public int getWidth() {
+        return 2 * Floor.getWidth() + getElevators() * Elevator.getWidth();
+    }
+
+    /**
+     * 
+     * @return the height of the building in pixels
+     */
+    public int getHeight() {
+        return getFloors() * Floor.getHeight();
     }
 
     /**
@@ -44,7 +85,7 @@ public class GUI {
      * @param direction
      * @param incoming
      */
-    public static void notifyLamp(int floor, int direction, boolean incoming) {
+    public void notifyLamp(int floor, int direction, boolean incoming) {
         floors[floor].notifyLamp(direction, incoming);
     }
 
@@ -53,7 +94,7 @@ public class GUI {
      * @param floor
      * @param people
      */
-    public static void add(int floor, int people) {
+    public void add(int floor, int people) {
         floors[floor].add(people);
     }
 
@@ -62,7 +103,7 @@ public class GUI {
      * @param floor
      * @param people
      */
-    public static void take(int floor, int people) {
+    public void take(int floor, int people) {
         floors[floor].take(people);
     }
 
@@ -71,7 +112,7 @@ public class GUI {
      * @param floor
      * @param people
      */
-    public static void deliver(int floor, int people) {
+    public void deliver(int floor, int people) {
         floors[floor].deliver(people);
     }
 
@@ -80,7 +121,7 @@ public class GUI {
      * @param elevator
      * @param floor
      */
-    public static void move(int elevator, int floor) {
+    public void move(int elevator, int floor) {
         elevators[elevator].move(floor);
     }
 
@@ -89,7 +130,7 @@ public class GUI {
      * @param elevator
      * @param passengers
      */
-    public static void load(int elevator, int passengers) {
+    public void load(int elevator, int passengers) {
         elevators[elevator].load(passengers);
     }
 
@@ -98,7 +139,7 @@ public class GUI {
      * @param elevator
      * @param passengers
      */
-    public static void unload(int elevator, int passengers) {
+    public void unload(int elevator, int passengers) {
         elevators[elevator].unload(passengers);
     }
 
@@ -106,7 +147,7 @@ public class GUI {
      * 
      * @param elevator
      */
-    public static void open(int elevator) {
+    public void open(int elevator) {
         elevators[elevator].open();
     }
 
@@ -114,7 +155,7 @@ public class GUI {
      * 
      * @param elevator
      */
-    public static void close(int elevator) {
+    public void close(int elevator) {
         elevators[elevator].close();
     }
 
@@ -122,7 +163,7 @@ public class GUI {
      * 
      * @param elevator
      */
-    public static void openFault(int elevator) {
+    public void openFault(int elevator) {
         elevators[elevator].openFault();
     }
 
@@ -130,7 +171,7 @@ public class GUI {
      * 
      * @param elevator
      */
-    public static void closeFault(int elevator) {
+    public void closeFault(int elevator) {
         elevators[elevator].closeFault();
     }
 
@@ -138,7 +179,7 @@ public class GUI {
      * 
      * @param elevator
      */
-    public static void hardFault(int elevator) {
+    public void hardFault(int elevator) {
         elevators[elevator].hardFault();
     }
 
@@ -147,14 +188,14 @@ public class GUI {
      * @param elevator
      * @return
      */
-    public static boolean hasPassengers(int elevator) {
+    public boolean hasPassengers(int elevator) {
         return elevators[elevator].hasPassengers();
     }
 
     /**
      * 
      */
-    public static void update() {
+    public void update() {
         window.repaint();
     }
 
@@ -163,37 +204,37 @@ public class GUI {
      * @param args
      */
     public static void main(String[] args) {
-        init();
-
-        add(4, 5);
-        move(1, 4);
-        open(1);
-        open(1);
-        open(1);
-        open(1);
-        load(1, 5);
-        close(1);
-        close(1);
-        close(1);
-        close(1);
-        close(1);
-        move(1, 9);
-        open(1);
-        unload(1, 3);
-        close(1);
-        move(1, 12);
-        open(1);
-        unload(1, 2);
+        GUI gui = new GUI();
+
+        gui.add(4, 5);
+        gui.move(1, 4);
+        gui.open(1);
+        gui.open(1);
+        gui.open(1);
+        gui.open(1);
+        gui.load(1, 5);
+        gui.close(1);
+        gui.close(1);
+        gui.close(1);
+        gui.close(1);
+        gui.close(1);
+        gui.move(1, 9);
+        gui.open(1);
+        gui.unload(1, 3);
+        gui.close(1);
+        gui.move(1, 12);
+        gui.open(1);
+        gui.unload(1, 2);
 
         new Thread(() -> {
             try {
                 Thread.sleep(1000);
             } catch (InterruptedException e) {}
-            openFault(1);
+            gui.openFault(1);
             try {
                 Thread.sleep(7000);
             } catch (InterruptedException e) {}
-            closeFault(1);
+            gui.closeFault(1);
         }).start();
     }
 }
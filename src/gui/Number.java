@@ -34,7 +34,7 @@ public class Number extends ResourceHelper {
      */
     public void setSize(int size) {
         this.size = size;
-        GUI.update();
+        repaint();
     }
 
     /**
@@ -43,7 +43,7 @@ public class Number extends ResourceHelper {
      */
     public void setValue(int value) {
         this.value = value;
-        GUI.update();
+        repaint();
     }
 
     /**
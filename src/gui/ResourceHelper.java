@@ -19,7 +19,6 @@ public class ResourceHelper extends JComponent {
     public ResourceHelper(int x, int y) {
         coords.x = x;
         coords.y = y;
-        setBounds(0, 0, GUI.WIDTH, GUI.HEIGHT);
         setTint(new Color(0.0f, 0.0f, 0.0f, 0.0f));
     }
 
@@ -29,7 +28,7 @@ public class ResourceHelper extends JComponent {
      */
     public void setOffsetX(int x) {
         offset.width = x;
-        GUI.update();
+        repaint();
     }
 
     /**
@@ -38,7 +37,7 @@ public class ResourceHelper extends JComponent {
      */
     public void setOffsetY(int y) {
         offset.height = y;
-        GUI.update();
+        repaint();
     }
 
     /**
@@ -47,7 +46,7 @@ public class ResourceHelper extends JComponent {
      */
     public void setLeftClip(int x) {
         clip.width = x;
-        GUI.update();
+        repaint();
     }
 
     /**
@@ -56,7 +55,7 @@ public class ResourceHelper extends JComponent {
      */
     public void setRightClip(int x) {
         clip.height = x;
-        GUI.update();
+        repaint();
     }
 
     /**
@@ -65,13 +64,22 @@ public class ResourceHelper extends JComponent {
      */
     public void setTint(Color tint) {
         this.tint = tint;
-        GUI.update();
+        repaint();
+    }
+
+    /**
+     * Stretch the resource to a new height, for the ropes and corridors that span the building.
+     * @param height the height in pixels
+     */
+    public void stretch(int height) {
+        coords.height = height;
+        repaint();
     }
 
     protected Rectangle getRectangle() {
         Rectangle rectangle = new Rectangle();
         rectangle.x = coords.x + offset.width + clip.width;
-        rectangle.y = GUI.HEIGHT - coords.y - offset.height - coords.height;
+        rectangle.y = getHeight() - coords.y - offset.height - coords.height;
         rectangle.width = coords.width - clip.width - clip.height;
         rectangle.height = coords.height;
         return rectangle;
@@ -1,25 +1,52 @@
 package gui;
 
-import java.awt.Font;
-import java.awt.Graphics;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 
 import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 
 /**
  * 
  */
 public class Window extends JFrame {
+    /** The tallest the window gets, taller buildings scroll. */
+    private static final int MAX_HEIGHT = 800;
+    /** */
+    private final JPanel canvas;
 
     /**
-     * 
+     *
      * @param width
      * @param height
      */
     public Window(int width, int height) {
         super();
-        setSize(width + 16, height + 44);
+        canvas = new JPanel(null);
+        canvas.setPreferredSize(new Dimension(width, height));
+        JScrollPane scrollPane = new JScrollPane(canvas);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(Floor.getHeight());
+        setContentPane(scrollPane);
+        int scrollBar = height > MAX_HEIGHT ? scrollPane.getVerticalScrollBar().getPreferredSize().width : 0;
+        setSize(width + 16 + scrollBar, Math.min(height, MAX_HEIGHT) + 44);
         setResizable(false);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setVisible(true);
     }
+
+    /**
+     * Get the panel the building is drawn on.
+     * @return the canvas
+     */
+    public JPanel getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * Scroll to the ground floor.
+     */
+    public void scrollToBottom() {
+        canvas.scrollRectToVisible(new Rectangle(0, canvas.getPreferredSize().height - 1, 1, 1));
+    }
 }
@@ -0,0 +1,455 @@
+package main;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import common.BuildingConfig;
+import common.EventJournal;
+import common.Log;
+import common.SimulationContext;
+import common.Threads;
+import common.Transport;
+import common.VirtualClock;
+import elevator.ElevatorSubsystem;
+import floor.ElevatorRequest;
+import floor.FloorSubsystem;
+import floor.TrafficGenerator;
+import scheduler.BatchDispatchStrategy;
+import scheduler.DestinationDispatchStrategy;
+import scheduler.DispatchStrategy;
+import scheduler.EtaDispatchStrategy;
+import scheduler.NearestCarDispatchStrategy;
+import scheduler.Scheduler;
+
+/**
+ * Replays CSV traces through the FloorSubsystem, Scheduler and ElevatorSubsystem in one process,
+ * without the GUI or the network, on a VirtualClock so a trace runs as fast as the CPU allows.
+ * Each trace gets a fresh set of systems. Prints one line of JSON per trace, and one for all
+ * traces together, on standard output. Everything the systems print goes to standard error.
+ */
+public class BatchRunner {
+
+    /**
+     * The statistics of one run.
+     */
+    public static class Result {
+        /** The trace that was replayed. */
+        private final String trace;
+        /** The name of the dispatch strategy. */
+        private final String strategy;
+        /** The number of elevators. */
+        private final int elevators;
+        /** The number of requests in the trace. */
+        private final int requests;
+        /** The time each completed passenger waited for an elevator, in milliseconds. */
+        private final long[] waits;
+        /** The time each completed passenger spent in the elevator, in milliseconds. */
+        private final long[] rides;
+        /** The floors moved by all elevators. */
+        private final long floorsMoved;
+        /** The simulated time from the first request until the systems went idle, in milliseconds. */
+        private final long simulatedMillis;
+
+        public Result(String trace, String strategy, int elevators, int requests, long[] waits, long[] rides,
+                      long floorsMoved, long simulatedMillis) {
+            this.trace = trace;
+            this.strategy = strategy;
+            this.elevators = elevators;
+            this.requests = requests;
+            this.waits = waits;
+            this.rides = rides;
+            this.floorsMoved = floorsMoved;
+            this.simulatedMillis = simulatedMillis;
+        }
+
+        /**
+         * Combine the results of several runs, as if the traces were one.
+         * @param results the results
+         * @return the combined result
+         */
+        public static Result combine(List<Result> results) {
+            int elevators = 0;
+            int requests = 0;
+            long floorsMoved = 0;
+            long simulatedMillis = 0;
+            long[] waits = new long[0];
+            long[] rides = new long[0];
+            String strategy = null;
+            for (Result result : results) {
+                elevators = result.elevators;
+                strategy = result.strategy;
+                requests += result.requests;
+                floorsMoved += result.floorsMoved;
+                simulatedMillis += result.simulatedMillis;
+                waits = concat(waits, result.waits);
+                rides = concat(rides, result.rides);
+            }
+            return new Result("ALL", strategy, elevators, requests, waits, rides, floorsMoved, simulatedMillis);
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public int getCompleted() {
+            return rides.length;
+        }
+
+        public long[] getWaits() {
+            return waits.clone();
+        }
+
+        public long[] getRides() {
+            return rides.clone();
+        }
+
+        public long getFloorsMoved() {
+            return floorsMoved;
+        }
+
+        public long getSimulatedMillis() {
+            return simulatedMillis;
+        }
+
+        /**
+         * Get the mean time the completed passengers waited for an elevator.
+         * @return the mean wait in milliseconds, 0 if none completed
+         */
+        public double getWaitMean() {
+            return mean(waits);
+        }
+
+        /**
+         * Get a percentile of the time the completed passengers waited for an elevator.
+         * @param percent the percentile, 1 to 100
+         * @return the wait in milliseconds, 0 if none completed
+         */
+        public double getWaitPercentile(int percent) {
+            return percentile(waits, percent);
+        }
+
+        /**
+         * Get the mean time the completed passengers spent in the elevator.
+         * @return the mean ride in milliseconds, 0 if none completed
+         */
+        public double getRideMean() {
+            return mean(rides);
+        }
+
+        /**
+         * Get the number of requests completed per simulated hour.
+         * @return the throughput
+         */
+        public double getCompletedPerHour() {
+            return simulatedMillis == 0 ? 0 : getCompleted() * 3_600_000.0 / simulatedMillis;
+        }
+
+        /**
+         * Format the result as one line of JSON. Times are in seconds.
+         * @return the JSON object
+         */
+        public String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"trace\":\"%s\",\"strategy\":\"%s\",\"elevators\":%d,\"requests\":%d,\"completed\":%d," +
+                            "\"waitMean\":%.3f,\"waitP95\":%.3f,\"waitMax\":%.3f," +
+                            "\"rideMean\":%.3f,\"rideP95\":%.3f,\"rideMax\":%.3f," +
+                            "\"floorsMoved\":%d,\"simulatedSeconds\":%.3f,\"completedPerHour\":%.1f}",
+                    escape(trace), strategy, elevators, requests, getCompleted(),
+                    mean(waits) / 1000, percentile(waits, 95) / 1000, percentile(waits, 100) / 1000,
+                    mean(rides) / 1000, percentile(rides, 95) / 1000, percentile(rides, 100) / 1000,
+                    floorsMoved, simulatedMillis / 1000.0, getCompletedPerHour());
+        }
+
+        private static long[] concat(long[] a, long[] b) {
+            long[] c = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, c, a.length, b.length);
+            return c;
+        }
+
+        private static double mean(long[] values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return values.length == 0 ? 0 : (double) sum / values.length;
+        }
+
+        /**
+         * Get a percentile by the nearest rank method.
+         */
+        private static double percentile(long[] values, int percent) {
+            if (values.length == 0) {
+                return 0;
+            }
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        private static String escape(String s) {
+            return s.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+    }
+
+    /**
+     * Replay one trace. Each run has its own SimulationContext, with its own VirtualClock and
+     * in process Transport, so runs in different threads can overlap. The floors and capacity
+     * of the current BuildingConfig are used.
+     * @param trace the CSV file path
+     * @param elevators the number of elevators
+     * @param strategy creates the dispatch strategy
+     * @return the statistics of the run
+     * @throws InterruptedException if interrupted while the trace runs
+     */
+    public static Result run(String trace, int elevators, Supplier<DispatchStrategy> strategy) throws InterruptedException {
+        return run(trace, () -> new FloorSubsystem(trace, true), elevators, strategy);
+    }
+
+    /**
+     * Run the calls a TrafficGenerator generates for a time span, without writing a trace.
+     * Each run has its own SimulationContext, so runs in different threads can overlap. The
+     * floors and capacity of the current BuildingConfig are used.
+     * @param traffic the generator
+     * @param start the time of day the span starts
+     * @param length the length of the span
+     * @param elevators the number of elevators
+     * @param strategy creates the dispatch strategy
+     * @return the statistics of the run
+     * @throws InterruptedException if interrupted while the calls run
+     */
+    public static Result run(TrafficGenerator traffic, LocalTime start, Duration length, int elevators,
+                             Supplier<DispatchStrategy> strategy) throws InterruptedException {
+        String name = String.format(Locale.ROOT, "%s seed=%d %s+%dm",
+                traffic.getPattern() == null ? "MATRIX" : traffic.getPattern(), traffic.getSeed(), start,
+                length.toMinutes());
+        return run(name, () -> new FloorSubsystem(traffic.open(start, length), true), elevators, strategy);
+    }
+
+    /**
+     * Run the requests of a FloorSubsystem created once the VirtualClock is set.
+     */
+    private static Result run(String trace, Supplier<FloorSubsystem> floors, int elevators,
+                              Supplier<DispatchStrategy> strategy) throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        Transport transport = Transport.inProcess();
+        SimulationContext context = SimulationContext.current()
+                .withConfig(BuildingConfig.get().withElevators(elevators)).withClock(clock).withTransport(transport)
+                .resolve();
+        try {
+            return context.call(() -> simulate(context, trace, floors, elevators, strategy, clock, transport));
+        } finally {
+            transport.close();
+            clock.close();
+        }
+    }
+
+    /**
+     * Run the systems of one simulation, in its SimulationContext.
+     */
+    private static Result simulate(SimulationContext context, String trace, Supplier<FloorSubsystem> floors, int elevators,
+                                   Supplier<DispatchStrategy> strategy, VirtualClock clock, Transport transport)
+            throws InterruptedException {
+        ElevatorSubsystem elevatorSubsystem = null;
+        try {
+            FloorSubsystem floorSubsystem = floors.get();
+            int requestCount = floorSubsystem.getTotalRequests();
+            ElevatorRequest first = floorSubsystem.peekRequest();
+            if (first != null) {
+                floorSubsystem.setBaseline(first.getTime()); // start with the first request
+            }
+
+            Scheduler scheduler = new Scheduler(context, floorSubsystem);
+            DispatchStrategy dispatchStrategy = strategy.get();
+            scheduler.setDispatchStrategy(dispatchStrategy);
+            scheduler.bind(transport);
+
+            // Completed requests carry the clock milliseconds of each stage, which do not wrap at midnight
+            List<long[]> completed = new ArrayList<>();
+            elevatorSubsystem = new ElevatorSubsystem(context, scheduler, elevators);
+            elevatorSubsystem.setListener(request -> {
+                long wait = request.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.PICKED_UP);
+                long ride = request.getLatency(ElevatorRequest.Stage.PICKED_UP, ElevatorRequest.Stage.DROPPED_OFF);
+                if (wait == ElevatorRequest.NOT_REACHED) { // never loaded, count it as picked up when it completed
+                    wait = Math.max(0, request.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.DROPPED_OFF));
+                    ride = 0;
+                }
+                synchronized (completed) {
+                    completed.add(new long[] {wait, ride});
+                }
+            });
+            elevatorSubsystem.bind(transport);
+            clock.awaitIdle(); // the elevators have started and gone idle
+
+            Thread floorSubsystemThread = Threads.newThread("Floor Subsystem Thread", () -> {
+                try {
+                    floorSubsystem.sendRequests(transport);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    clock.release(Thread.currentThread());
+                }
+            }, false);
+            clock.hold(floorSubsystemThread);
+            long start = clock.millis();
+            floorSubsystemThread.start();
+            clock.awaitIdle();
+            floorSubsystemThread.join();
+
+            long[] waits;
+            long[] rides;
+            synchronized (completed) {
+                waits = new long[completed.size()];
+                rides = new long[completed.size()];
+                for (int k = 0; k < completed.size(); k++) {
+                    waits[k] = completed.get(k)[0];
+                    rides[k] = completed.get(k)[1];
+                }
+            }
+            return new Result(trace, dispatchStrategy.getClass().getSimpleName(), elevators, requestCount, waits, rides,
+                    elevatorSubsystem.getTotalFloorsMoved(), clock.millis() - start);
+        } finally {
+            if (elevatorSubsystem != null) {
+                elevatorSubsystem.stop();
+            }
+        }
+    }
+
+    /**
+     * Replay the given traces and print their statistics.
+     * @param args the CSV file paths, res/input.csv if none. --elevators N sets the number of
+     *             elevators, 3 by default, and --floors N the number of floors, 22 by default.
+     *             --destination-dispatch, --batch-dispatch or --nearest-car
+     *             change the dispatch strategy from the ETA strategy. --virtual-threads runs the
+     *             elevators and listeners on virtual threads. --journal FILE writes the
+     *             events of every run to an event journal, for Replay. --traffic PATTERN
+     *             runs the calls of a TrafficGenerator pattern as well as the traces, with
+     *             --rate R calls per minute, 10 by default, for --minutes N, 60 by default,
+     *             from --seed N, 1 by default.
+     *             Exits with 0 if every trace ran, 1 if one failed, 2 for bad arguments.
+     */
+    public static void main(String[] args) {
+        List<String> traces = new ArrayList<>();
+        List<TrafficGenerator.Pattern> patterns = new ArrayList<>();
+        double rate = 10;
+        long minutes = 60;
+        long seed = 1;
+        int elevators = 3;
+        Supplier<DispatchStrategy> strategy = EtaDispatchStrategy::new;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--elevators":
+                    try {
+                        elevators = BuildingConfig.parseCount(args, i++);
+                    } catch (IllegalArgumentException e) {
+                        elevators = 0;
+                    }
+                    if (elevators < 1) {
+                        System.err.println("--elevators must be at least 1");
+                        System.exit(2);
+                    }
+                    break;
+                case "--floors":
+                    try {
+                        BuildingConfig.set(BuildingConfig.get().withFloors(BuildingConfig.parseCount(args, i++)));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("--floors must be at least 2");
+                        System.exit(2);
+                    }
+                    break;
+                case "--destination-dispatch":
+                    strategy = DestinationDispatchStrategy::new;
+                    break;
+                case "--batch-dispatch":
+                    strategy = BatchDispatchStrategy::new;
+                    break;
+                case "--nearest-car":
+                    strategy = NearestCarDispatchStrategy::new;
+                    break;
+                case "--virtual-threads":
+                    if (!Threads.setVirtual(true)) {
+                        System.err.println("Virtual threads need Java 21 or later, using platform threads");
+                    }
+                    break;
+                case "--journal":
+                    if (i + 1 >= args.length || !EventJournal.start(args[++i])) {
+                        System.err.println("--journal needs a file that can be written");
+                        System.exit(2);
+                    }
+                    break;
+                case "--traffic":
+                case "--rate":
+                case "--minutes":
+                case "--seed":
+                    try {
+                        String value = args[++i];
+                        switch (args[i - 1]) {
+                            case "--traffic": patterns.add(TrafficGenerator.Pattern.fromString(value)); break;
+                            case "--rate": rate = Double.parseDouble(value); break;
+                            case "--minutes": minutes = Long.parseLong(value); break;
+                            default: seed = Long.parseLong(value);
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println(args[i - 1] + " needs a value: up-peak, down-peak, lunch or interfloor "
+                                + "for --traffic, a number otherwise");
+                        System.exit(2);
+                    }
+                    break;
+                default:
+                    traces.add(args[i]);
+            }
+        }
+        if (traces.isEmpty() && patterns.isEmpty()) {
+            traces.add("res/input.csv");
+        }
+
+        // Keep standard output for the report
+        PrintStream report = System.out;
+        System.setOut(System.err);
+        Log.disable();
+
+        List<Result> results = new ArrayList<>();
+        int status = 0;
+        for (String trace : traces) {
+            try {
+                Result result = run(trace, elevators, strategy);
+                results.add(result);
+                report.println(result.toJson());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = 1;
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Could not run " + trace + ": " + e);
+                status = 1;
+            }
+        }
+        for (TrafficGenerator.Pattern pattern : patterns) {
+            try {
+                TrafficGenerator traffic = new TrafficGenerator(seed).withPattern(pattern).withRate(rate);
+                Result result = run(traffic, LocalTime.of(8, 0), Duration.ofMinutes(minutes), elevators, strategy);
+                results.add(result);
+                report.println(result.toJson());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = 1;
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Could not run " + pattern + ": " + e);
+                status = 1;
+            }
+        }
+        if (results.size() > 1) {
+            report.println(Result.combine(results).toJson());
+        }
+        report.flush();
+        System.exit(status); // the elevator threads never end
+    }
+}
@@ -0,0 +1,513 @@
+package main;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
+
+import common.BuildingConfig;
+import common.Metrics;
+import common.SimulationContext;
+import floor.RequestLatency;
+import floor.TrafficGenerator;
+import scheduler.BatchDispatchStrategy;
+import scheduler.DestinationDispatchStrategy;
+import scheduler.DispatchStrategy;
+import scheduler.EtaDispatchStrategy;
+import scheduler.NearestCarDispatchStrategy;
+
+/**
+ * Runs a grid of building configurations, dispatch strategies and traffic, each over several
+ * seeds, and reports every configuration's statistics with 95% confidence intervals. Every run
+ * is a BatchRunner run of TrafficGenerator calls in its own SimulationContext, with its own
+ * VirtualClock, Transport and Metrics, so the runs go in parallel on a ForkJoinPool. Every
+ * configuration uses the same seeds, so they are compared on the same calls.
+ */
+public class ExperimentRunner {
+
+    /** The dispatch strategies, by their command line name. */
+    private static final Map<String, Supplier<DispatchStrategy>> STRATEGIES = new LinkedHashMap<>();
+
+    static {
+        STRATEGIES.put("eta", EtaDispatchStrategy::new);
+        STRATEGIES.put("nearest-car", NearestCarDispatchStrategy::new);
+        STRATEGIES.put("destination", DestinationDispatchStrategy::new);
+        STRATEGIES.put("batch", BatchDispatchStrategy::new);
+    }
+
+    /** The two sided 95% quantiles of Student's t distribution, by degrees of freedom from 1 to 30. */
+    private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+    /**
+     * One point of the grid.
+     */
+    public static final class Configuration {
+        private final BuildingConfig building;
+        private final String strategy;
+        private final TrafficGenerator.Pattern pattern;
+        private final double rate;
+
+        /**
+         * Create a configuration.
+         * @param building the floors, elevators and capacity
+         * @param strategy the name of the dispatch strategy: eta, nearest-car, destination or batch
+         * @param pattern the traffic pattern
+         * @param rate the calls per minute
+         */
+        public Configuration(BuildingConfig building, String strategy, TrafficGenerator.Pattern pattern, double rate) {
+            if (!STRATEGIES.containsKey(strategy)) {
+                throw new IllegalArgumentException("Unknown strategy " + strategy + ", not one of " + STRATEGIES.keySet());
+            }
+            this.building = building;
+            this.strategy = strategy;
+            this.pattern = pattern;
+            this.rate = rate;
+        }
+
+        public BuildingConfig getBuilding() {
+            return building;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public TrafficGenerator.Pattern getPattern() {
+            return pattern;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Get the calls of one replication.
+         * @param seed the seed of the replication
+         * @return the generator
+         */
+        public TrafficGenerator traffic(long seed) {
+            return new TrafficGenerator(building.getFloors(), seed).withPattern(pattern).withRate(rate);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s, %s, %s at %.1f calls/min", building, strategy, pattern, rate);
+        }
+    }
+
+    /**
+     * The estimate of a mean from independent replications.
+     */
+    public static final class Estimate {
+        private final int n;
+        private final double mean;
+        private final double stdDev;
+        private final double halfWidth;
+
+        private Estimate(int n, double mean, double stdDev, double halfWidth) {
+            this.n = n;
+            this.mean = mean;
+            this.stdDev = stdDev;
+            this.halfWidth = halfWidth;
+        }
+
+        /**
+         * Estimate the mean of some values with a 95% confidence interval from Student's t
+         * distribution.
+         * @param values the value of each replication
+         * @return the estimate, with a half width of 0 for fewer than 2 values
+         */
+        public static Estimate of(double[] values) {
+            int n = values.length;
+            if (n == 0) {
+                return new Estimate(0, Double.NaN, Double.NaN, Double.NaN);
+            }
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            double mean = sum / n;
+            if (n == 1) {
+                return new Estimate(1, mean, 0, 0);
+            }
+            double squares = 0;
+            for (double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            double stdDev = Math.sqrt(squares / (n - 1));
+            return new Estimate(n, mean, stdDev, t95(n - 1) * stdDev / Math.sqrt(n));
+        }
+
+        public int getCount() {
+            return n;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStdDev() {
+            return stdDev;
+        }
+
+        /**
+         * Get the half width of the 95% confidence interval of the mean.
+         * @return the half width
+         */
+        public double getHalfWidth() {
+            return halfWidth;
+        }
+
+        public double getLow() {
+            return mean - halfWidth;
+        }
+
+        public double getHigh() {
+            return mean + halfWidth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.3f +- %.3f", mean, halfWidth);
+        }
+    }
+
+    /**
+     * The results of one configuration over all its seeds.
+     */
+    public static final class Summary {
+        private final Configuration configuration;
+        private final List<BatchRunner.Result> runs;
+        private final int failed;
+
+        private Summary(Configuration configuration, List<BatchRunner.Result> runs, int failed) {
+            this.configuration = configuration;
+            this.runs = runs;
+            this.failed = failed;
+        }
+
+        public Configuration getConfiguration() {
+            return configuration;
+        }
+
+        /**
+         * Get the runs that ended, in seed order.
+         * @return the runs
+         */
+        public List<BatchRunner.Result> getRuns() {
+            return runs;
+        }
+
+        /**
+         * Get the number of runs that threw.
+         * @return the number of failed runs
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Get the mean wait for an elevator, in seconds.
+         * @return the estimate
+         */
+        public Estimate getWaitMean() {
+            return estimate(r -> r.getWaitMean() / 1000);
+        }
+
+        /**
+         * Get the 95th percentile wait for an elevator, in seconds.
+         * @return the estimate
+         */
+        public Estimate getWaitP95() {
+            return estimate(r -> r.getWaitPercentile(95) / 1000);
+        }
+
+        /**
+         * Get the mean ride in the elevator, in seconds.
+         * @return the estimate
+         */
+        public Estimate getRideMean() {
+            return estimate(r -> r.getRideMean() / 1000);
+        }
+
+        /**
+         * Get the requests completed per simulated hour.
+         * @return the estimate
+         */
+        public Estimate getCompletedPerHour() {
+            return estimate(BatchRunner.Result::getCompletedPerHour);
+        }
+
+        /**
+         * Get the share of requests completed.
+         * @return the estimate
+         */
+        public Estimate getCompletedShare() {
+            return estimate(r -> r.getRequests() == 0 ? 1 : (double) r.getCompleted() / r.getRequests());
+        }
+
+        /**
+         * Get the floors moved by all elevators.
+         * @return the estimate
+         */
+        public Estimate getFloorsMoved() {
+            return estimate(BatchRunner.Result::getFloorsMoved);
+        }
+
+        private Estimate estimate(ToDoubleFunction<BatchRunner.Result> measure) {
+            double[] values = new double[runs.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = measure.applyAsDouble(runs.get(i));
+            }
+            return Estimate.of(values);
+        }
+
+        /**
+         * Format the summary as one line of JSON. Every measure has its mean and the half width
+         * of its 95% confidence interval. Times are in seconds.
+         * @return the JSON object
+         */
+        public String toJson() {
+            BuildingConfig building = configuration.building;
+            StringBuilder json = new StringBuilder(512);
+            json.append(String.format(Locale.ROOT,
+                    "{\"floors\":%d,\"elevators\":%d,\"capacity\":%d,\"strategy\":\"%s\",\"pattern\":\"%s\",\"rate\":%.2f," +
+                            "\"runs\":%d,\"failed\":%d",
+                    building.getFloors(), building.getElevators(), building.getCapacity(), configuration.strategy,
+                    configuration.pattern, configuration.rate, runs.size(), failed));
+            append(json, "waitMean", getWaitMean());
+            append(json, "waitP95", getWaitP95());
+            append(json, "rideMean", getRideMean());
+            append(json, "completedPerHour", getCompletedPerHour());
+            append(json, "completedShare", getCompletedShare());
+            append(json, "floorsMoved", getFloorsMoved());
+            return json.append('}').toString();
+        }
+
+        private static void append(StringBuilder json, String name, Estimate estimate) {
+            json.append(String.format(Locale.ROOT, ",\"%s\":%.4f,\"%sCi\":%.4f", name, estimate.getMean(), name,
+                    estimate.getHalfWidth()));
+        }
+    }
+
+    /** The number of runs at once. */
+    private final int parallelism;
+
+    /**
+     * Create a runner with one run at once per processor.
+     */
+    public ExperimentRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a runner.
+     * @param parallelism the most runs at once
+     */
+    public ExperimentRunner(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Run every configuration with every seed, as many runs at once as the parallelism.
+     * @param grid the configurations
+     * @param seeds the seeds of the replications, the same for every configuration
+     * @param start the time of day the calls start
+     * @param length the length of the calls
+     * @return the summary of each configuration, in grid order
+     * @throws InterruptedException if interrupted while the runs go
+     */
+    public List<Summary> run(List<Configuration> grid, long[] seeds, LocalTime start, Duration length)
+            throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<BatchRunner.Result>> tasks = new ArrayList<>(grid.size() * seeds.length);
+            for (Configuration configuration : grid) {
+                for (long seed : seeds) {
+                    tasks.add(pool.submit(() -> runOne(configuration, seed, start, length)));
+                }
+            }
+
+            List<Summary> summaries = new ArrayList<>(grid.size());
+            int t = 0;
+            for (Configuration configuration : grid) {
+                List<BatchRunner.Result> runs = new ArrayList<>(seeds.length);
+                int failed = 0;
+                for (long seed : seeds) {
+                    BatchRunner.Result result = tasks.get(t++).join();
+                    if (result != null) {
+                        runs.add(result);
+                    } else {
+                        failed++;
+                    }
+                }
+                summaries.add(new Summary(configuration, runs, failed));
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return summaries;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run one replication of a configuration in its own SimulationContext.
+     * @return the result, or null if the run threw
+     */
+    private static BatchRunner.Result runOne(Configuration configuration, long seed, LocalTime start, Duration length) {
+        TrafficGenerator traffic = configuration.traffic(seed);
+        SimulationContext context = SimulationContext.current().withConfig(configuration.building)
+                .withMetrics(new Metrics()).withLatency(new RequestLatency()).withJournal(null).withLogLevel(Level.OFF);
+        try {
+            return context.call(() -> BatchRunner.run(traffic, start, length, configuration.building.getElevators(),
+                    STRATEGIES.get(configuration.strategy)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (RuntimeException e) {
+            System.err.println("Run of " + configuration + " with seed " + seed + " failed: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the two sided 95% quantile of Student's t distribution. Past 30 degrees of freedom,
+     * the quantile of the nearest tabled value below is used, which widens the interval a little.
+     */
+    private static double t95(int degrees) {
+        if (degrees <= T_95.length) {
+            return T_95[degrees - 1];
+        }
+        if (degrees < 40) return 2.042;
+        if (degrees < 60) return 2.021;
+        if (degrees < 120) return 2.000;
+        return 1.980;
+    }
+
+    /**
+     * Run a grid of configurations and print one line of JSON per configuration.
+     * @param args the grid, each list comma separated: --floors N,... (22), --elevators N,... (3),
+     *             --capacity N,... (Config.MAX_PASSENGERS), --strategies eta,nearest-car,destination,batch
+     *             (eta), --traffic up-peak,down-peak,lunch,interfloor (interfloor) and --rate R,...
+     *             calls per minute (10). --seeds N replications (10) from --seed N (1),
+     *             --minutes N of calls (60) from --start HH:mm (08:00), and --threads N runs at once
+     *             (the number of processors).
+     *             Exits with 0 if every run ended, 1 if one failed, 2 for bad arguments.
+     */
+    public static void main(String[] args) {
+        int[] floors = {BuildingConfig.DEFAULT_FLOORS};
+        int[] elevators = {3};
+        int[] capacities = {BuildingConfig.get().getCapacity()};
+        String[] strategies = {"eta"};
+        TrafficGenerator.Pattern[] patterns = {TrafficGenerator.Pattern.INTERFLOOR};
+        double[] rates = {10};
+        int replications = 10;
+        long firstSeed = 1;
+        long minutes = 60;
+        LocalTime start = LocalTime.of(8, 0);
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Configuration> grid = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(args[i] + " needs a value");
+                }
+                String[] values = args[++i].split(",");
+                switch (args[i - 1]) {
+                    case "--floors": floors = parseInts(values); break;
+                    case "--elevators": elevators = parseInts(values); break;
+                    case "--capacity": capacities = parseInts(values); break;
+                    case "--strategies": strategies = values; break;
+                    case "--traffic":
+                        patterns = new TrafficGenerator.Pattern[values.length];
+                        for (int k = 0; k < values.length; k++) {
+                            patterns[k] = TrafficGenerator.Pattern.fromString(values[k]);
+                        }
+                        break;
+                    case "--rate":
+                        rates = new double[values.length];
+                        for (int k = 0; k < values.length; k++) {
+                            rates[k] = Double.parseDouble(values[k].trim());
+                        }
+                        break;
+                    case "--seeds": replications = Integer.parseInt(args[i]); break;
+                    case "--seed": firstSeed = Long.parseLong(args[i]); break;
+                    case "--minutes": minutes = Long.parseLong(args[i]); break;
+                    case "--start": start = LocalTime.parse(args[i]); break;
+                    case "--threads": threads = Integer.parseInt(args[i]); break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + args[i - 1]);
+                }
+            }
+            if (replications < 1 || threads < 1) {
+                throw new IllegalArgumentException("--seeds and --threads must be at least 1");
+            }
+            for (int f : floors) {
+                for (int e : elevators) {
+                    for (int c : capacities) {
+                        for (String s : strategies) {
+                            for (TrafficGenerator.Pattern p : patterns) {
+                                for (double r : rates) {
+                                    grid.add(new Configuration(new BuildingConfig(f, e, c), s.trim(), p, r));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ExperimentRunner [--floors N,...] [--elevators N,...] [--capacity N,...] "
+                    + "[--strategies eta,nearest-car,destination,batch] [--traffic up-peak,down-peak,lunch,interfloor] "
+                    + "[--rate R,...] [--seeds N] [--seed N] [--minutes N] [--start HH:mm] [--threads N]");
+            System.exit(2);
+            return;
+        }
+        long[] seeds = new long[replications];
+        for (int i = 0; i < replications; i++) {
+            seeds[i] = firstSeed + i;
+        }
+
+        // Keep standard output for the report
+        PrintStream report = System.out;
+        System.setOut(System.err);
+
+        int status = 0;
+        try {
+            for (Summary summary : new ExperimentRunner(threads).run(grid, seeds, start, Duration.ofMinutes(minutes))) {
+                report.println(summary.toJson());
+                if (summary.getFailed() > 0) {
+                    status = 1;
+                }
+            }
+        } catch (InterruptedException e) {
+            status = 1;
+        }
+        report.flush();
+        System.exit(status);
+    }
+
+    private static int[] parseInts(String[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return ints;
+    }
+}
@@ -1,9 +1,22 @@
 package main;
 
+import java.io.IOException;
+import java.net.SocketException;
 import java.time.LocalTime;
 
+import common.BuildingConfig;
+import common.Config;
+import common.EventJournal;
+import common.Log;
+import common.MetricsServer;
+import common.Threads;
+import common.Transport;
+import elevator.Elevator;
 import elevator.ElevatorSubsystem;
 import floor.FloorSubsystem;
+import floor.RequestLatency;
+import scheduler.BatchDispatchStrategy;
+import scheduler.DestinationDispatchStrategy;
 import scheduler.Scheduler;
 
 /**
@@ -14,30 +27,109 @@ public class Main {
     /**
      * The entrypoint of the application. Creates all of the systems.
      * @param args is the file path to the data. Default to res/input.csv
-     *             if no arguments are provided.
+     *             if no arguments are provided. --destination-dispatch groups
+     *             passengers by destination when assigning elevators. --batch-dispatch
+     *             assigns the requests made at the same moment together.
+     *             --virtual-threads runs the elevators and listeners on virtual threads.
+     *             --elevators N and --floors N change the size of the building, 3 elevators
+     *             and 22 floors by default. --metrics-port N serves the metrics on
+     *             http://localhost:N/metrics, they are always registered with JMX.
+     *             --journal FILE writes the events of the run to an event journal.
+     *             The subsystems hand their messages to each other in this process.
+     *             --udp sends them over loopback UDP instead, as separate processes do, and
+     *             --port-offset N then moves the ports of all subsystems up by N, so another
+     *             simulation can run on the same host. --status-flush N collects the
+     *             elevator status updates for N ms and sends them to the floors in one
+     *             batch, 100 ms by default, 0 sends each update at once.
      */
     public static void main(String[] args) {
 
-        Thread schedulerThread, elevatorSubsystemThread, floorSubsystemThread;
-
         String filePath = "res/input.csv"; // Default file path
-        if (args.length > 0) {
-            filePath = args[0]; // Use provided file path
+        boolean destinationDispatch = false;
+        boolean batchDispatch = false;
+        boolean udp = false;
+        int metricsPort = -1;
+        long statusFlushTime = Config.STATUS_FLUSH_TIME;
+        BuildingConfig config = BuildingConfig.get().withElevators(3);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--destination-dispatch")) {
+                destinationDispatch = true;
+            } else if (arg.equals("--batch-dispatch")) {
+                batchDispatch = true;
+            } else if (arg.equals("--virtual-threads")) {
+                if (!Threads.setVirtual(true)) {
+                    System.err.println("Virtual threads need Java 21 or later, using platform threads");
+                }
+            } else if (arg.equals("--elevators")) {
+                config = config.withElevators(BuildingConfig.parseCount(args, i++));
+            } else if (arg.equals("--floors")) {
+                config = config.withFloors(BuildingConfig.parseCount(args, i++));
+            } else if (arg.equals("--metrics-port")) {
+                metricsPort = MetricsServer.parsePort(args, i++);
+            } else if (arg.equals("--journal") && i + 1 < args.length) {
+                EventJournal.start(args[++i]);
+            } else if (arg.equals("--udp")) {
+                udp = true;
+            } else if (arg.equals("--port-offset")) {
+                Transport.setPortOffset(Transport.parsePortOffset(args, i++));
+            } else if (arg.equals("--status-flush")) {
+                statusFlushTime = ElevatorSubsystem.parseFlushTime(args, i++);
+            } else {
+                filePath = arg; // Use provided file path
+            }
+        }
+        BuildingConfig.set(config); // before the systems size themselves from it
+        RequestLatency.get().dumpAtShutdown(); // printed when the FloorSubsystem exits after the last request
+        MetricsServer.export(metricsPort);
+        if (!udp) {
+            Transport.set(Transport.inProcess()); // before the systems are created
         }
 
         // Pass the file path to the FloorSubsystem constructor
+        Log.disable(); // the GUI shows what would be logged
         FloorSubsystem floorSubsystem = new FloorSubsystem(filePath, LocalTime.of(14, 15));
         Scheduler scheduler = new Scheduler(floorSubsystem);
-        ElevatorSubsystem elevatorSubsystem = new ElevatorSubsystem(scheduler, 3);
+        if (destinationDispatch) {
+            scheduler.setDispatchStrategy(new DestinationDispatchStrategy());
+        } else if (batchDispatch) {
+            scheduler.setDispatchStrategy(new BatchDispatchStrategy());
+        }
+        ElevatorSubsystem elevatorSubsystem = new ElevatorSubsystem(scheduler, config.getElevators());
+        elevatorSubsystem.getStatusBatcher().setFlushTime(statusFlushTime);
 
         floorSubsystem.setScheduler(scheduler);
 
-        schedulerThread = new Thread(scheduler, "Scheduler Thread");
-        elevatorSubsystemThread = new Thread(elevatorSubsystem, "Elevator Subsystem Thread");
-        floorSubsystemThread = new Thread(floorSubsystem, "Floor Subsystem Thread");
+        Transport transport = Transport.get();
+        Thread floorSubsystemThread = Threads.newThread("Floor Subsystem Thread", () -> {
+            try {
+                floorSubsystem.sendRequests(transport);
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+            }
+        }, false);
 
-        schedulerThread.start();
-        elevatorSubsystemThread.start();
-        floorSubsystemThread.start();
+        try {
+            if (udp) {
+                Thread schedulerThread = Threads.start("Scheduler Thread", scheduler, false);
+                Threads.start("Elevator Subsystem Thread", elevatorSubsystem, false);
+                floorSubsystem.listen(); // for the GUI updates and the Scheduler's acknowledgements
+                floorSubsystemThread.start();
+                schedulerThread.join(); // virtual threads do not keep the program running
+            } else {
+                scheduler.bind(transport);
+                elevatorSubsystem.bind(transport);
+                floorSubsystem.bind(transport);
+                floorSubsystemThread.start();
+                floorSubsystemThread.join();
+                for (Elevator elevator : elevatorSubsystem.getElevatorCars()) {
+                    elevator.getThread().join(); // the elevators keep running
+                }
+            }
+        } catch (SocketException e) {
+            System.err.println("SocketException: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
@@ -0,0 +1,376 @@
+package main;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import common.BuildingConfig;
+import common.EventJournal;
+import common.JournalReader;
+import common.Log;
+import common.SimulationContext;
+import floor.CSVParser;
+import floor.ElevatorRequest;
+import scheduler.BatchDispatchStrategy;
+import scheduler.DestinationDispatchStrategy;
+import scheduler.DispatchStrategy;
+import scheduler.EtaDispatchStrategy;
+import scheduler.NearestCarDispatchStrategy;
+import scheduler.Scheduler;
+
+/**
+ * Re-drives the Scheduler and the elevators from the hall calls of an event journal, through
+ * the BatchRunner on a VirtualClock, and compares the decisions of the replay with the recorded
+ * ones. Replayed with the recorded strategy, a BatchRunner run is reproduced exactly. Replayed
+ * with another strategy, or after the scheduler changed, the comparison shows which hall calls
+ * went to another elevator and where the runs first diverge.
+ */
+public class Replay {
+
+    /** The most differences printed per run. */
+    private static final int MAX_PRINTED = 10;
+
+    /**
+     * The events of one run of a journal, from a BUILDING event to the next.
+     */
+    public static class Run {
+        /** The number of floors, 0 if the journal does not say. */
+        private final int floors;
+        /** The number of elevators, 0 if the journal does not say. */
+        private final int elevators;
+        /** The code of the dispatch strategy. */
+        private final int strategy;
+        /** The hall calls received, in order. */
+        private final List<JournalReader.Entry> hallCalls = new ArrayList<>();
+        /** Every other event, with times from the start of the run. */
+        private final List<JournalReader.Entry> decisions = new ArrayList<>();
+
+        private Run(int floors, int elevators, int strategy) {
+            this.floors = floors;
+            this.elevators = elevators;
+            this.strategy = strategy;
+        }
+
+        public int getFloors() {
+            return floors;
+        }
+
+        public int getElevators() {
+            return elevators;
+        }
+
+        public int getStrategy() {
+            return strategy;
+        }
+
+        public List<JournalReader.Entry> getHallCalls() {
+            return hallCalls;
+        }
+
+        public List<JournalReader.Entry> getDecisions() {
+            return decisions;
+        }
+    }
+
+    /**
+     * The differences between the decisions of a recorded run and of its replay.
+     */
+    public static class Comparison {
+        /** The hall calls assigned in the recorded run. */
+        private int assignments;
+        /** The hall calls assigned to other elevators, or a different number of times, in the replay. */
+        private final List<String> differentAssignments = new ArrayList<>();
+        /** The index of the first decision that differs, -1 if none does. */
+        private int firstDifference = -1;
+        /** The decisions at the first difference, null past the end of a run. */
+        private JournalReader.Entry recordedAt;
+        private JournalReader.Entry replayedAt;
+
+        public int getAssignments() {
+            return assignments;
+        }
+
+        public List<String> getDifferentAssignments() {
+            return differentAssignments;
+        }
+
+        public int getFirstDifference() {
+            return firstDifference;
+        }
+
+        /**
+         * Check if the replay took the same decisions at the same times.
+         * @return true if the runs are the same
+         */
+        public boolean isIdentical() {
+            return firstDifference == -1;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%d hall calls assigned, %d assigned differently%n", assignments, differentAssignments.size()));
+            for (int i = 0; i < Math.min(MAX_PRINTED, differentAssignments.size()); i++) {
+                s.append("  ").append(differentAssignments.get(i)).append(System.lineSeparator());
+            }
+            if (isIdentical()) {
+                s.append("The replay took the same decisions").append(System.lineSeparator());
+            } else {
+                s.append("First difference at decision ").append(firstDifference).append(System.lineSeparator());
+                s.append("  recorded: ").append(recordedAt).append(System.lineSeparator());
+                s.append("  replayed: ").append(replayedAt).append(System.lineSeparator());
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Split the events of a journal into runs. Events before the first BUILDING event form a
+     * run of an unknown building.
+     * @param entries the events, in the order they were appended
+     * @return the runs
+     */
+    public static List<Run> split(List<JournalReader.Entry> entries) {
+        List<Run> runs = new ArrayList<>();
+        Run run = null;
+        long start = 0;
+        for (JournalReader.Entry entry : entries) {
+            if (entry.getType() == EventJournal.Type.BUILDING) {
+                run = new Run(entry.getFloor(), entry.getValue(), entry.getCode());
+                runs.add(run);
+                start = entry.getMillis();
+                continue;
+            }
+            if (run == null) {
+                run = new Run(0, 0, 0);
+                runs.add(run);
+                start = entry.getMillis();
+            }
+            if (entry.getType() == EventJournal.Type.HALL_CALL) {
+                run.hallCalls.add(entry);
+            } else {
+                run.decisions.add(new JournalReader.Entry(entry.getType(), entry.getElevator(), entry.getCode(),
+                        entry.getFloor(), entry.getValue(), entry.getExtra(), entry.getMillis() - start, entry.getTime()));
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Replay the hall calls of a run through the BatchRunner, journaling the replay.
+     * @param recorded the run
+     * @param strategy creates the dispatch strategy, or null for the recorded one
+     * @param journal the file to journal the replay to
+     * @return the replayed run
+     * @throws IOException if a file cannot be written or read
+     * @throws InterruptedException if interrupted while the run replays
+     */
+    public static Run replay(Run recorded, Supplier<DispatchStrategy> strategy, Path journal)
+            throws IOException, InterruptedException {
+        if (recorded.elevators < 1 || recorded.floors < 2) {
+            throw new IllegalArgumentException("The run does not say the size of the building");
+        }
+        Path trace = Files.createTempFile("replay", ".csv");
+        try {
+            writeTrace(recorded.hallCalls, trace);
+            try (EventJournal eventJournal = EventJournal.open(journal)) {
+                SimulationContext context = SimulationContext.current()
+                        .withConfig(BuildingConfig.get().withFloors(recorded.floors)).withJournal(eventJournal);
+                context.call(() -> BatchRunner.run(trace.toString(), recorded.elevators, strategy != null ? strategy
+                        : () -> Scheduler.newDispatchStrategy(recorded.strategy)));
+            }
+        } finally {
+            Files.deleteIfExists(trace);
+        }
+        List<Run> runs = split(JournalReader.readAll(journal));
+        if (runs.isEmpty()) {
+            throw new IOException("The replay journaled no events");
+        }
+        return runs.get(0);
+    }
+
+    /**
+     * Write hall calls as a CSV trace, with the time of day to the nanosecond.
+     */
+    private static void writeTrace(List<JournalReader.Entry> hallCalls, Path trace) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(trace))) {
+            for (JournalReader.Entry call : hallCalls) {
+                CSVParser.ElevatorFault fault = CSVParser.ElevatorFault.fromOrdinal(call.getExtra());
+                out.printf("%s; %d; %s; %d; %s%n", LocalTime.ofNanoOfDay(call.getTime()), call.getFloor(),
+                        ElevatorRequest.ButtonDirection.fromOrdinal(call.getCode()), call.getValue(), fault == CSVParser.ElevatorFault.NO_FAULT ? "" : fault);
+            }
+        }
+    }
+
+    /**
+     * Compare the decisions of two runs of the same hall calls. Decisions taken in the same
+     * millisecond are compared in a fixed order, since the elevator threads may take them in
+     * any order.
+     * @param recorded the recorded run
+     * @param replayed the replayed run
+     * @return the differences
+     */
+    public static Comparison compare(Run recorded, Run replayed) {
+        Comparison comparison = new Comparison();
+        Map<String, List<Integer>> recordedAssignments = assignments(recorded);
+        Map<String, List<Integer>> replayedAssignments = assignments(replayed);
+        comparison.assignments = recordedAssignments.size();
+        for (Map.Entry<String, List<Integer>> assignment : recordedAssignments.entrySet()) {
+            List<Integer> elevators = replayedAssignments.getOrDefault(assignment.getKey(), Collections.emptyList());
+            if (!elevators.equals(assignment.getValue())) {
+                comparison.differentAssignments.add(assignment.getKey() + " to elevator " + assignment.getValue()
+                        + ", replayed to " + elevators);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> assignment : replayedAssignments.entrySet()) {
+            if (!recordedAssignments.containsKey(assignment.getKey())) {
+                comparison.differentAssignments.add(assignment.getKey() + " not assigned, replayed to " + assignment.getValue());
+            }
+        }
+
+        List<JournalReader.Entry> a = new ArrayList<>(recorded.decisions);
+        List<JournalReader.Entry> b = new ArrayList<>(replayed.decisions);
+        Collections.sort(a);
+        Collections.sort(b);
+        for (int i = 0; i < Math.max(a.size(), b.size()); i++) {
+            JournalReader.Entry x = i < a.size() ? a.get(i) : null;
+            JournalReader.Entry y = i < b.size() ? b.get(i) : null;
+            if (x == null || !x.equals(y)) {
+                comparison.firstDifference = i;
+                comparison.recordedAt = x;
+                comparison.replayedAt = y;
+                break;
+            }
+        }
+        return comparison;
+    }
+
+    /**
+     * Get the elevators each hall call of a run was assigned to, in order.
+     */
+    private static Map<String, List<Integer>> assignments(Run run) {
+        Map<String, List<Integer>> assignments = new LinkedHashMap<>();
+        for (JournalReader.Entry entry : run.decisions) {
+            if (entry.getType() == EventJournal.Type.ASSIGNMENT) {
+                String call = String.format("%s floor %d to %d", LocalTime.ofNanoOfDay(entry.getTime()), entry.getFloor(),
+                        entry.getValue());
+                assignments.computeIfAbsent(call, c -> new ArrayList<>()).add(entry.getElevator());
+            }
+        }
+        return assignments;
+    }
+
+    /**
+     * Replay every run of a journal and compare the decisions.
+     * @param args the journal file. --print lists its events instead. --out FILE keeps the
+     *             journal of the replay, deleted otherwise. --destination-dispatch,
+     *             --batch-dispatch, --nearest-car or --eta replay with another strategy than
+     *             the recorded one. Exits with 0 if every run was reproduced, 1 if one differs,
+     *             2 for bad arguments or a journal that cannot be read.
+     */
+    public static void main(String[] args) {
+        String file = null;
+        String out = null;
+        boolean print = false;
+        Supplier<DispatchStrategy> strategy = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--print":
+                    print = true;
+                    break;
+                case "--out":
+                    if (i + 1 >= args.length) {
+                        System.err.println("--out needs a file");
+                        System.exit(2);
+                    }
+                    out = args[++i];
+                    break;
+                case "--eta":
+                    strategy = EtaDispatchStrategy::new;
+                    break;
+                case "--destination-dispatch":
+                    strategy = DestinationDispatchStrategy::new;
+                    break;
+                case "--batch-dispatch":
+                    strategy = BatchDispatchStrategy::new;
+                    break;
+                case "--nearest-car":
+                    strategy = NearestCarDispatchStrategy::new;
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: Replay [--print] [--out FILE] [--eta|--nearest-car|--destination-dispatch|--batch-dispatch] JOURNAL");
+            System.exit(2);
+        }
+
+        List<JournalReader.Entry> entries;
+        try {
+            entries = JournalReader.readAll(Path.of(file));
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (print) {
+            for (JournalReader.Entry entry : entries) {
+                System.out.println(entry);
+            }
+            return;
+        }
+
+        // Keep standard output for the report
+        PrintStream report = System.out;
+        System.setOut(System.err);
+        Log.disable();
+
+        int status = 0;
+        List<Run> runs = split(entries);
+        for (int k = 0; k < runs.size(); k++) {
+            Run run = runs.get(k);
+            report.printf("Run %d: %d floors, %d elevators, %d hall calls, %d decisions%n", k + 1, run.floors, run.elevators,
+                    run.hallCalls.size(), run.decisions.size());
+            Path journal = null;
+            try {
+                journal = out != null && runs.size() == 1 ? Path.of(out)
+                        : out != null ? Path.of(out + "." + (k + 1)) : Files.createTempFile("replay", ".journal");
+                Run replayed = replay(run, strategy, journal);
+                Comparison comparison = compare(run, replayed);
+                report.print(comparison);
+                if (!comparison.isIdentical()) {
+                    status = 1;
+                }
+            } catch (IllegalArgumentException e) {
+                report.println("Cannot replay: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+                status = 2;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = 1;
+                break;
+            } finally {
+                if (out == null && journal != null) {
+                    try {
+                        Files.deleteIfExists(journal);
+                    } catch (IOException e) {
+                        System.err.println("IOException: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        report.flush();
+        System.exit(status); // the elevator threads never end
+    }
+}
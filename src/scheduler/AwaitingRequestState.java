@@ -22,13 +22,13 @@ public class AwaitingRequestState implements SchedulerState {
     /**
      * Transition to ProcessingRequestState
      * @param scheduler the scheduler
-     * @param requestData the request data
+     * @param request the request received from the FloorSubsystem
      */
     @Override
-    public void processRequest(Scheduler scheduler, byte[] requestData) {
+    public void processRequest(Scheduler scheduler, ElevatorRequest request) {
         scheduler.setState(new ProcessingRequestState());
         Log.print("Scheduler: State transitioned to PROCESSING REQUEST STATE.");
-        scheduler.state.processRequest(scheduler, requestData);
+        scheduler.state.processRequest(scheduler, request);
     }
 
     @Override
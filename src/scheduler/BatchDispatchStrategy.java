@@ -0,0 +1,182 @@
+package scheduler;
+
+import common.Config;
+import elevator.Elevator;
+import floor.ElevatorRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Batch dispatch. Requests arriving within the batch window are assigned together, in one
+ * optimisation pass over the fleet snapshot, instead of one at a time in isolation, so calls
+ * made at the same moment are spread over the fleet when that lowers the total wait.
+ *
+ * Every free place in every working elevator is a column of an ETA cost matrix, the requests
+ * are its rows, and the Hungarian method finds the cheapest assignment. The n-th place given
+ * in an elevator costs n extra stops, like destination dispatch. The assignment is then
+ * improved by moving single requests between elevators while the ETA cost of the elevators'
+ * whole routes, with all their new requests together, goes down.
+ *
+ * Requests that do not fit in any elevator get the ETA strategy's choice.
+ */
+public class BatchDispatchStrategy extends EtaDispatchStrategy {
+
+    /** The time an extra stop costs: the doors open and close and one passenger gets on or off. */
+    private static final long STOP_TIME = 2L * Config.DOOR_TIME + Config.LOAD_TIME;
+
+    /** The cost of leaving a request without a place, higher than any real cost. */
+    private static final long NO_PLACE = 1L << 40;
+
+    /** The most rounds of moving requests between elevators. */
+    private static final int MAX_ROUNDS = 4;
+
+    /** The time requests are collected before they are dispatched. */
+    private final long batchWindow;
+
+    /**
+     * Create a new batch dispatch strategy with a batch window of Config.BATCH_DISPATCH_WINDOW.
+     */
+    public BatchDispatchStrategy() {
+        this(Config.BATCH_DISPATCH_WINDOW);
+    }
+
+    /**
+     * Create a new batch dispatch strategy.
+     * @param batchWindow the time requests are collected before they are dispatched, in milliseconds
+     */
+    public BatchDispatchStrategy(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    @Override
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    @Override
+    public int[] assignBatch(List<ElevatorRequest> requests, FleetSnapshot fleet) {
+        int n = requests.size();
+        int[] entries = new int[n]; // the fleet entry given to each request, -1 for none
+        Arrays.fill(entries, -1);
+
+        // One column per free place, at most n per elevator
+        int[] room = new int[fleet.size()];
+        int capacity = fleet.getCapacity();
+        List<int[]> places = new ArrayList<>(); // {entry, index of the place in the elevator}
+        for (int i = 0; i < fleet.size(); i++) {
+            if (working(fleet, i)) {
+                room[i] = Math.max(0, capacity - Math.max(fleet.getCommittedCount(i), fleet.getQueueDepth(i)));
+                for (int p = 0; p < Math.min(room[i], n); p++) {
+                    places.add(new int[] {i, p});
+                }
+            }
+        }
+
+        if (!places.isEmpty()) {
+            int columns = Math.max(places.size(), n); // the extra columns leave requests without a place
+            long[][] cost = new long[n][columns];
+            for (int r = 0; r < n; r++) {
+                Arrays.fill(cost[r], NO_PLACE);
+                long[] elevatorCost = new long[fleet.size()];
+                for (int i = 0; i < fleet.size(); i++) {
+                    elevatorCost[i] = room[i] > 0 ? cost(fleet, i, requests.get(r)) : 0;
+                }
+                for (int c = 0; c < places.size(); c++) {
+                    int[] place = places.get(c);
+                    cost[r][c] = elevatorCost[place[0]] + place[1] * STOP_TIME;
+                }
+            }
+            int[] columnOfRow = HungarianAssignment.solve(cost);
+            for (int r = 0; r < n; r++) {
+                if (columnOfRow[r] < places.size()) {
+                    entries[r] = places.get(columnOfRow[r])[0];
+                }
+            }
+            improve(requests, fleet, entries, room);
+        }
+
+        int[] elevatorIds = new int[n];
+        for (int r = 0; r < n; r++) {
+            elevatorIds[r] = entries[r] != -1 ? fleet.getElevatorId(entries[r]) : super.selectElevator(requests.get(r), fleet);
+        }
+        return elevatorIds;
+    }
+
+    /**
+     * Move single requests to the elevator where they lower the total cost of the batch the most,
+     * costing each elevator's route with all of its new requests together.
+     * @param requests the batch
+     * @param fleet the state of all elevators
+     * @param entries the fleet entry given to each request, updated
+     * @param room the free places in each elevator
+     */
+    private void improve(List<ElevatorRequest> requests, FleetSnapshot fleet, int[] entries, int[] room) {
+        int n = requests.size();
+        List<List<ElevatorRequest>> given = new ArrayList<>();
+        for (int i = 0; i < fleet.size(); i++) {
+            given.add(new ArrayList<>());
+        }
+        for (int r = 0; r < n; r++) {
+            if (entries[r] != -1) {
+                given.get(entries[r]).add(requests.get(r));
+            }
+        }
+        long[] routeCost = new long[fleet.size()];
+        for (int i = 0; i < fleet.size(); i++) {
+            routeCost[i] = given.get(i).isEmpty() ? 0 : cost(fleet, i, given.get(i));
+        }
+
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean moved = false;
+            for (int r = 0; r < n; r++) {
+                int from = entries[r];
+                if (from == -1) {
+                    continue;
+                }
+                ElevatorRequest request = requests.get(r);
+                List<ElevatorRequest> without = new ArrayList<>(given.get(from));
+                without.remove(request);
+                long fromCost = without.isEmpty() ? 0 : cost(fleet, from, without);
+
+                int best = -1;
+                long bestSaving = 0;
+                long bestCost = 0;
+                for (int to = 0; to < fleet.size(); to++) {
+                    if (to == from || given.get(to).size() >= room[to]) {
+                        continue;
+                    }
+                    List<ElevatorRequest> with = new ArrayList<>(given.get(to));
+                    with.add(request);
+                    long toCost = cost(fleet, to, with);
+                    long saving = routeCost[from] + routeCost[to] - fromCost - toCost;
+                    if (saving > bestSaving) {
+                        best = to;
+                        bestSaving = saving;
+                        bestCost = toCost;
+                    }
+                }
+                if (best != -1) {
+                    given.get(from).remove(request);
+                    given.get(best).add(request);
+                    routeCost[from] = fromCost;
+                    routeCost[best] = bestCost;
+                    entries[r] = best;
+                    moved = true;
+                }
+            }
+            if (!moved) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check if an elevator can take requests.
+     */
+    private static boolean working(FleetSnapshot fleet, int i) {
+        Elevator.State state = fleet.getState(i);
+        return state != Elevator.State.FAULT && state != Elevator.State.UNKNOWN;
+    }
+}
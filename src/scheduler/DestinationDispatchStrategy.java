@@ -0,0 +1,213 @@
+package scheduler;
+
+import common.Config;
+import elevator.Elevator;
+import floor.ElevatorRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Destination dispatch. Requests arriving within the batch window are grouped by origin floor,
+ * direction and destination zone (Config.DESTINATION_ZONE_FLOORS floors), and each group is sent
+ * to one elevator, so passengers going to the same part of the building ride together and every
+ * trip makes fewer stops.
+ *
+ * A group is given to the elevator with the lowest ETA cost for it, plus a penalty for every new
+ * stop the group adds and for mixing the group with passengers from the same floor going to a
+ * different zone. Groups larger than an elevator's free capacity are split.
+ */
+public class DestinationDispatchStrategy extends EtaDispatchStrategy {
+
+    /** The time an extra stop costs: the doors open and close and one passenger gets on or off. */
+    private static final long STOP_TIME = 2L * Config.DOOR_TIME + Config.LOAD_TIME;
+
+    /** The time requests are collected before they are dispatched. */
+    private final long batchWindow;
+
+    /**
+     * Create a new destination dispatch strategy with a batch window of Config.DESTINATION_BATCH_WINDOW.
+     */
+    public DestinationDispatchStrategy() {
+        this(Config.DESTINATION_BATCH_WINDOW);
+    }
+
+    /**
+     * Create a new destination dispatch strategy.
+     * @param batchWindow the time requests are collected before they are dispatched, in milliseconds
+     */
+    public DestinationDispatchStrategy(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    @Override
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    @Override
+    public int selectElevator(ElevatorRequest request, FleetSnapshot fleet) {
+        return assignBatch(Collections.singletonList(request), fleet)[0];
+    }
+
+    @Override
+    public int[] assignBatch(List<ElevatorRequest> requests, FleetSnapshot fleet) {
+        int n = requests.size();
+        int[] elevatorIds = new int[n];
+        Arrays.fill(elevatorIds, -1);
+
+        // Order the requests so every group is consecutive, nearest destinations first
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(k -> requests.get(k).getFloorNumber())
+                .thenComparingInt(k -> upward(requests.get(k)) ? 0 : 1)
+                .thenComparingInt(k -> zone(requests.get(k).getButtonId()))
+                .thenComparingInt(k -> requests.get(k).getButtonId()));
+
+        // Requests and zones given to each elevator within this batch
+        int[] added = new int[fleet.size()];
+        int[] batchOrigin = new int[fleet.size()];
+        int[] batchZone = new int[fleet.size()];
+        Arrays.fill(batchOrigin, Integer.MIN_VALUE);
+
+        int start = 0;
+        while (start < n) {
+            ElevatorRequest first = requests.get(order[start]);
+            int end = start + 1;
+            while (end < n && sameGroup(first, requests.get(order[end]))) {
+                end++;
+            }
+
+            // Give the group to the best elevators with room, splitting it if needed
+            while (start < end) {
+                int best = -1;
+                long bestCost = Long.MAX_VALUE;
+                for (int i = 0; i < fleet.size(); i++) {
+                    if (!working(fleet, i) || room(fleet, i, added) <= 0) {
+                        continue;
+                    }
+                    long cost = groupCost(fleet, i, requests, order, start, Math.min(end, start + room(fleet, i, added)),
+                            added, batchOrigin, batchZone);
+                    if (cost < bestCost) {
+                        best = i;
+                        bestCost = cost;
+                    }
+                }
+                if (best == -1) { // every elevator is full, fall back to the ETA choice
+                    for (int k = start; k < end; k++) {
+                        elevatorIds[order[k]] = super.selectElevator(requests.get(order[k]), fleet);
+                    }
+                    start = end;
+                    break;
+                }
+                int take = Math.min(end - start, room(fleet, best, added));
+                for (int k = start; k < start + take; k++) {
+                    elevatorIds[order[k]] = fleet.getElevatorId(best);
+                }
+                added[best] += take;
+                batchOrigin[best] = first.getFloorNumber() * (upward(first) ? 1 : -1);
+                batchZone[best] = zone(first.getButtonId());
+                start += take;
+            }
+        }
+        return elevatorIds;
+    }
+
+    /**
+     * Get the cost of giving part of a group to an elevator.
+     * @param fleet the state of all elevators
+     * @param i the entry of the elevator
+     * @param requests the batch
+     * @param order the batch ordered by group
+     * @param from the first request of the group to give
+     * @param to one past the last request of the group to give
+     * @param added the requests given to each elevator earlier in this batch
+     * @param batchOrigin the signed origin floor of the group given to each elevator earlier in this batch
+     * @param batchZone the zone of the group given to each elevator earlier in this batch
+     * @return the cost in milliseconds
+     */
+    private long groupCost(FleetSnapshot fleet, int i, List<ElevatorRequest> requests, Integer[] order, int from, int to,
+                           int[] added, int[] batchOrigin, int[] batchZone) {
+        ElevatorRequest first = requests.get(order[from]);
+        int size = to - from;
+        int origin = first.getFloorNumber();
+        boolean up = upward(first);
+        int zone = zone(first.getButtonId());
+
+        // Every passenger waits about as long as the first, and is delayed by the earlier groups of this batch
+        long cost = size * (cost(fleet, i, first) + added[i] * STOP_TIME);
+
+        // Mixing zones from the same floor brings back the stops destination dispatch avoids
+        int committedStart = fleet.getCommittedStart(i);
+        int committed = fleet.getCommittedCount(i);
+        boolean mixed = batchOrigin[i] == origin * (up ? 1 : -1) && batchZone[i] != zone;
+        for (int c = committedStart; c < committedStart + committed && !mixed; c++) {
+            int pickup = fleet.getCommittedPickup(c);
+            int destination = fleet.getCommittedDestination(c);
+            mixed = !fleet.isCommittedPickedUp(c) && pickup == origin && (destination > pickup) == up
+                    && zone(destination) != zone;
+        }
+        if (mixed) {
+            cost += 2 * size * STOP_TIME;
+        }
+
+        // Every destination the elevator is not already stopping at is a new stop
+        int previous = Integer.MIN_VALUE;
+        for (int k = from; k < to; k++) {
+            int destination = requests.get(order[k]).getButtonId();
+            if (destination == previous) {
+                continue; // ordered by destination within the group
+            }
+            previous = destination;
+            boolean stopping = false;
+            for (int c = committedStart; c < committedStart + committed && !stopping; c++) {
+                stopping = fleet.getCommittedDestination(c) == destination;
+            }
+            if (!stopping) {
+                cost += STOP_TIME;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Check if two requests belong to the same group.
+     */
+    private static boolean sameGroup(ElevatorRequest a, ElevatorRequest b) {
+        return a.getFloorNumber() == b.getFloorNumber() && upward(a) == upward(b)
+                && zone(a.getButtonId()) == zone(b.getButtonId());
+    }
+
+    /**
+     * Check if a request goes up. Uses the floors rather than the button, which may be missing.
+     */
+    private static boolean upward(ElevatorRequest request) {
+        return request.getButtonId() > request.getFloorNumber();
+    }
+
+    /**
+     * Get the destination zone of a floor.
+     */
+    private static int zone(int floor) {
+        return Math.floorDiv(floor, Config.DESTINATION_ZONE_FLOORS);
+    }
+
+    /**
+     * Check if an elevator can take requests.
+     */
+    private static boolean working(FleetSnapshot fleet, int i) {
+        Elevator.State state = fleet.getState(i);
+        return state != Elevator.State.FAULT && state != Elevator.State.UNKNOWN;
+    }
+
+    /**
+     * Get the number of requests an elevator can still take.
+     */
+    private static int room(FleetSnapshot fleet, int i, int[] added) {
+        return fleet.getCapacity() - Math.max(fleet.getCommittedCount(i), fleet.getQueueDepth(i)) - added[i];
+    }
+}
@@ -0,0 +1,46 @@
+package scheduler;
+
+import floor.ElevatorRequest;
+
+import java.util.List;
+
+/**
+ * Chooses the elevator a request is dispatched to. Called by the Scheduler's
+ * ProcessingRequestState with the Scheduler's current view of the fleet.
+ *
+ * A strategy with a batch window is given the requests that arrive within the window
+ * together, so it can place them relative to each other.
+ */
+public interface DispatchStrategy {
+
+    /**
+     * Choose an elevator for a request.
+     * @param request the request to dispatch
+     * @param fleet the state of all elevators
+     * @return the ID of the chosen elevator, or -1 if no elevator can take the request
+     */
+    int selectElevator(ElevatorRequest request, FleetSnapshot fleet);
+
+    /**
+     * Choose an elevator for each of a batch of requests. Requests given the same elevator
+     * are sent to it together.
+     * @param requests the requests to dispatch, in order of arrival
+     * @param fleet the state of all elevators
+     * @return the ID of the elevator chosen for each request, -1 if none can take it
+     */
+    default int[] assignBatch(List<ElevatorRequest> requests, FleetSnapshot fleet) {
+        int[] elevatorIds = new int[requests.size()];
+        for (int i = 0; i < elevatorIds.length; i++) {
+            elevatorIds[i] = selectElevator(requests.get(i), fleet);
+        }
+        return elevatorIds;
+    }
+
+    /**
+     * Get the time requests are collected before they are dispatched as a batch.
+     * @return the batch window in milliseconds, 0 to dispatch every request on arrival
+     */
+    default long getBatchWindow() {
+        return 0;
+    }
+}
@@ -1,15 +1,41 @@
 package scheduler;
+import common.EventJournal;
 import common.Log;
+import common.ReliableChannel;
+import common.SimulationContext;
+import common.Transport;
 import floor.ElevatorRequest;
+import floor.ElevatorRequestCodec;
 import java.io.IOException;
-import java.net.*;
 import java.nio.ByteBuffer;
-import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This state sends the request and chosen elevatorID to the ElevatorSubsystem
  */
 public class ElevatorDispatchState implements SchedulerState {
+    /** The most requests sent in one message, so it fits the ElevatorSubsystem's 1024 byte buffer once framed */
+    private static final int MAX_GROUP = (1024 - ReliableChannel.HEADER_SIZE - 4) / ElevatorRequestCodec.SIZE;
+
+    /** The simulation whose transport, clock and journal the dispatches use. */
+    private final SimulationContext context;
+
+    /**
+     * Create a dispatch state for the simulation of the calling thread.
+     */
+    public ElevatorDispatchState() {
+        this(SimulationContext.capture());
+    }
+
+    /**
+     * Create a dispatch state for a simulation, so dispatches made from any thread, such as a
+     * scheduled batch, go to that simulation.
+     * @param context the simulation, resolved
+     */
+    public ElevatorDispatchState(SimulationContext context) {
+        this.context = context;
+    }
 
     /**
      * Send the request and transition to AwaitingRequestState
@@ -19,53 +45,88 @@ public class ElevatorDispatchState implements SchedulerState {
      */
     @Override
     public void processRequest(Scheduler scheduler, ElevatorRequest request, int elevatorID) {
+        if (elevatorID == -1) { // no working elevator, the ElevatorSubsystem has nowhere to put it
+            Log.print("Scheduler: Dropping request %s, no working elevator", request);
+            scheduler.getMetrics().unassigned.increment();
+            request.journal(context.getJournal(), EventJournal.Type.UNASSIGNED, -1);
+            scheduler.setState(new AwaitingRequestState(scheduler));
+            return;
+        }
+        scheduler.getFleetState().assign(elevatorID, request);
+        request.stamp(ElevatorRequest.Stage.ASSIGNED, context.getClock());
+        request.journal(context.getJournal(), EventJournal.Type.ASSIGNMENT, elevatorID);
         sendRequestToElevator(request, elevatorID);
+        scheduler.getMetrics().dispatched(request);
 
-        Log.print("Scheduler: Request sent to elevator " + elevatorID + " for floor " + request.getFloorNumber() +
-                " and direction " + request.getButtonDirection() + " at " + LocalTime.now());
+        if (Log.isEnabled()) {
+            Log.print("Scheduler: Request sent to elevator %d for floor %d and direction %s at %s", elevatorID,
+                    request.getFloorNumber(), request.getButtonDirection(), context.getClock().time());
+        }
 
         // Transition back to the AwaitingRequestState
         scheduler.setState(new AwaitingRequestState(scheduler));
     }
 
     @Override
-    public void processRequest(Scheduler scheduler, byte[] requestData) {
+    public void processRequest(Scheduler scheduler, ElevatorRequest request) {
         // Not needed
         
     }
 
     /**
-     * Send the elevatorRequest and elevatorID to the ElevatorSubsystem via UDP
+     * Send a group of requests chosen for the same elevator in one message, and record them in
+     * the scheduler's view of the fleet
+     * @param scheduler the scheduler
+     * @param requests the requests
+     * @param elevatorID the chosen elevator
+     */
+    public void dispatchGroup(Scheduler scheduler, List<ElevatorRequest> requests, int elevatorID) {
+        for (ElevatorRequest request : requests) {
+            scheduler.getFleetState().assign(elevatorID, request);
+            request.stamp(ElevatorRequest.Stage.ASSIGNED, context.getClock());
+            request.journal(context.getJournal(), EventJournal.Type.ASSIGNMENT, elevatorID);
+        }
+        sendRequestsToElevator(requests, elevatorID);
+        for (ElevatorRequest request : requests) {
+            scheduler.getMetrics().dispatched(request);
+        }
+        if (Log.isEnabled()) {
+            Log.print("Scheduler: %d requests sent to elevator %d at %s", requests.size(), elevatorID, context.getClock().time());
+        }
+    }
+
+    /**
+     * Send the elevatorRequest and elevatorID to the ElevatorSubsystem through the Scheduler's reliable channel
      * @param request the request
      * @param elevatorID the chosen elevatorID
      */
     public void sendRequestToElevator(ElevatorRequest request, int elevatorID){
-        byte[] requestData = request.getBytes();
-        byte[] elevatorIDData = ByteBuffer.allocate(4).putInt(elevatorID).array(); // 4 bytes for an int
-
-        // Combine requestData and elevatorIDData into sendData
-        byte[] sendData = new byte[requestData.length + elevatorIDData.length];
-
-        System.arraycopy(requestData, 0, sendData, 0, requestData.length);
-        System.arraycopy(elevatorIDData, 0, sendData, requestData.length, elevatorIDData.length);
-
-        int elevatorSubsystemPort = 6000; // The port the ElevatorSubsystem is listening on
-        String elevatorSubsystemHost = "localhost"; // Assuming the ElevatorSubsystem is on the same host
-
-        try (DatagramSocket socket = new DatagramSocket()) {
-            InetAddress elevatorSubsystemAddress = InetAddress.getByName(elevatorSubsystemHost);
+        sendRequestsToElevator(Collections.singletonList(request), elevatorID);
+    }
 
-            // Send the Elevator request with the ID
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, elevatorSubsystemAddress, elevatorSubsystemPort);
-            socket.send(sendPacket);
+    /**
+     * Send requests and the elevatorID to the ElevatorSubsystem through the Scheduler's reliable
+     * channel, MAX_GROUP requests per message
+     * @param requests the requests, added to the elevator together
+     * @param elevatorID the chosen elevatorID
+     */
+    public void sendRequestsToElevator(List<ElevatorRequest> requests, int elevatorID) {
+        for (int from = 0; from < requests.size(); from += MAX_GROUP) {
+            int to = Math.min(requests.size(), from + MAX_GROUP);
+            // Encode the requests followed by the 4 byte elevator ID
+            byte[] sendData = new byte[(to - from) * ElevatorRequestCodec.SIZE + 4];
+            ByteBuffer buffer = ByteBuffer.wrap(sendData);
+            for (int i = from; i < to; i++) {
+                ElevatorRequestCodec.encode(requests.get(i), buffer);
+            }
+            buffer.putInt(elevatorID);
 
-        } catch (UnknownHostException e) {
-            System.err.println("UnknownHostException: " + e.getMessage());
-        } catch (SocketException e) {
-            System.err.println("SocketException: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("IOException: " + e.getMessage());
+            try {
+                // Send the Elevator requests with the ID
+                context.getTransport().channel(Transport.Peer.SCHEDULER).send(Transport.Peer.ELEVATOR_SUBSYSTEM, sendData);
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+            }
         }
     }
 }
-
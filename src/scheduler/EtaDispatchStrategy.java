@@ -0,0 +1,222 @@
+package scheduler;
+
+import common.Config;
+import elevator.Elevator;
+import floor.ElevatorRequest;
+import floor.ElevatorRequest.ButtonDirection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chooses the elevator that minimises the total passenger wait. For each working elevator the
+ * route through its committed stops is walked twice, without and with the new request, using
+ * Config.TIME_TO_TRAVEL_1_FLOOR per floor and two Config.DOOR_TIME plus one Config.LOAD_TIME
+ * per passenger at every stop. The cost of an elevator is the time until the new passenger is
+ * picked up plus the delay it causes to the passengers already committed to that elevator.
+ *
+ * Elevators with as many committed requests as the snapshot's capacity are only used if every working
+ * elevator is full. Not thread safe, the scratch arrays are reused between calls.
+ */
+public class EtaDispatchStrategy implements DispatchStrategy {
+
+    /** Pickup floor of each request on the route being walked. */
+    private int[] pickups = new int[Config.MAX_PASSENGERS + 1];
+    /** Destination floor of each request on the route being walked. */
+    private int[] destinations = new int[Config.MAX_PASSENGERS + 1];
+    /** True once the request is on board. */
+    private boolean[] onBoard = new boolean[Config.MAX_PASSENGERS + 1];
+    /** True once the request is dropped off. */
+    private boolean[] finished = new boolean[Config.MAX_PASSENGERS + 1];
+    /** Time each request is picked up, in milliseconds from now. */
+    private long[] pickedUpAt = new long[Config.MAX_PASSENGERS + 1];
+    /** Time each request is dropped off without the new request, in milliseconds from now. */
+    private long[] baseline = new long[Config.MAX_PASSENGERS + 1];
+    /** Time each request is dropped off, in milliseconds from now. */
+    private long[] droppedAt = new long[Config.MAX_PASSENGERS + 1];
+
+    @Override
+    public int selectElevator(ElevatorRequest request, FleetSnapshot fleet) {
+        int bestId = -1;
+        long bestCost = Long.MAX_VALUE;
+        boolean bestFull = true;
+        int capacity = fleet.getCapacity();
+        for (int i = 0; i < fleet.size(); i++) {
+            Elevator.State state = fleet.getState(i);
+            if (state == Elevator.State.FAULT || state == Elevator.State.UNKNOWN) {
+                continue;
+            }
+            int committed = fleet.getCommittedCount(i);
+            boolean full = Math.max(committed, fleet.getQueueDepth(i)) + 1 > capacity;
+            long cost = cost(fleet, i, request);
+            // A car with room always beats a full one, which would send the request back
+            if ((bestFull && !full) || (bestFull == full && cost < bestCost)) {
+                bestId = fleet.getElevatorId(i);
+                bestCost = cost;
+                bestFull = full;
+            }
+        }
+        return bestId;
+    }
+
+    /**
+     * Get the cost of adding a request to an elevator.
+     * @param fleet the state of all elevators
+     * @param i the entry of the elevator
+     * @param request the new request
+     * @return the wait of the new passenger plus the delay to the committed passengers, in milliseconds
+     */
+    long cost(FleetSnapshot fleet, int i, ElevatorRequest request) {
+        return cost(fleet, i, Collections.singletonList(request));
+    }
+
+    /**
+     * Get the cost of adding several requests to an elevator together.
+     * @param fleet the state of all elevators
+     * @param i the entry of the elevator
+     * @param requests the new requests
+     * @return the wait of the new passengers plus the delay to the committed passengers, in milliseconds
+     */
+    long cost(FleetSnapshot fleet, int i, List<ElevatorRequest> requests) {
+        int committed = fleet.getCommittedCount(i);
+        int count = committed + requests.size();
+        ensureCapacity(count);
+        ButtonDirection direction = fleet.getState(i) == Elevator.State.IDLE ? ButtonDirection.NONE : fleet.getDirection(i);
+
+        load(fleet, i, committed);
+        walk(fleet.getFloor(i), direction, committed);
+        System.arraycopy(droppedAt, 0, baseline, 0, committed);
+
+        load(fleet, i, committed);
+        for (int k = committed; k < count; k++) {
+            ElevatorRequest request = requests.get(k - committed);
+            pickups[k] = request.getFloorNumber();
+            destinations[k] = request.getButtonId();
+            onBoard[k] = false;
+        }
+        walk(fleet.getFloor(i), direction, count);
+
+        long cost = 0;
+        for (int k = committed; k < count; k++) {
+            cost += pickedUpAt[k];
+        }
+        for (int k = 0; k < committed; k++) {
+            cost += droppedAt[k] - baseline[k];
+        }
+        return cost;
+    }
+
+    /**
+     * Copy the committed requests of an elevator into the scratch arrays.
+     */
+    private void load(FleetSnapshot fleet, int i, int committed) {
+        int start = fleet.getCommittedStart(i);
+        for (int k = 0; k < committed; k++) {
+            pickups[k] = fleet.getCommittedPickup(start + k);
+            destinations[k] = fleet.getCommittedDestination(start + k);
+            onBoard[k] = fleet.isCommittedPickedUp(start + k);
+        }
+    }
+
+    /**
+     * Walk the elevator's route until every request is dropped off. The elevator keeps its
+     * direction while there are stops ahead, then turns around, the same way the elevator
+     * sweeps its queue. Fills pickedUpAt and droppedAt.
+     * @param floor the current floor of the elevator
+     * @param direction the current direction of the elevator, NONE if idle
+     * @param count the number of requests on the route
+     */
+    private void walk(int floor, ButtonDirection direction, int count) {
+        int step = direction == ButtonDirection.UP ? 1 : direction == ButtonDirection.DOWN ? -1 : 0;
+        int remaining = count;
+        long time = 0;
+        for (int k = 0; k < count; k++) {
+            finished[k] = false;
+            pickedUpAt[k] = 0;
+            droppedAt[k] = 0;
+        }
+        while (true) {
+            // Stop at this floor if anyone gets on or off
+            int passengers = 0;
+            for (int k = 0; k < count; k++) {
+                if (finished[k]) {
+                    continue;
+                }
+                if (!onBoard[k] && pickups[k] == floor) {
+                    onBoard[k] = true;
+                    pickedUpAt[k] = time;
+                    passengers++;
+                } else if (onBoard[k] && destinations[k] == floor) {
+                    finished[k] = true;
+                    droppedAt[k] = -1; // set once the doors close
+                    remaining--;
+                    passengers++;
+                }
+            }
+            if (passengers > 0) {
+                time += 2L * Config.DOOR_TIME + (long) passengers * Config.LOAD_TIME;
+                for (int k = 0; k < count; k++) {
+                    if (droppedAt[k] == -1) {
+                        droppedAt[k] = time;
+                    }
+                }
+            }
+            if (remaining == 0) {
+                return;
+            }
+
+            // Keep going while there are stops ahead, otherwise turn towards the nearest stop
+            int nearest = Integer.MAX_VALUE;
+            boolean ahead = false;
+            for (int k = 0; k < count; k++) {
+                if (finished[k]) {
+                    continue;
+                }
+                int target = onBoard[k] ? destinations[k] : pickups[k];
+                if (step != 0 && Integer.signum(target - floor) == step) {
+                    ahead = true;
+                }
+                if (Math.abs(target - floor) < Math.abs(nearest - floor)) {
+                    nearest = target;
+                }
+            }
+            if (!ahead) {
+                step = Integer.signum(nearest - floor);
+                if (step == 0) { // a passenger picked up here is also dropped off here
+                    for (int k = 0; k < count; k++) {
+                        if (!finished[k] && onBoard[k] && destinations[k] == floor) {
+                            finished[k] = true;
+                            droppedAt[k] = time;
+                            remaining--;
+                        }
+                    }
+                    if (remaining == 0) {
+                        return;
+                    }
+                    continue; // then on to the other stops
+                }
+            }
+            floor += step;
+            time += Config.TIME_TO_TRAVEL_1_FLOOR;
+        }
+    }
+
+    /**
+     * Grow the scratch arrays to hold at least the given number of requests.
+     * @param size the number of requests
+     */
+    private void ensureCapacity(int size) {
+        if (size <= pickups.length) {
+            return;
+        }
+        int capacity = Math.max(size, pickups.length * 2);
+        pickups = Arrays.copyOf(pickups, capacity);
+        destinations = Arrays.copyOf(destinations, capacity);
+        onBoard = Arrays.copyOf(onBoard, capacity);
+        finished = Arrays.copyOf(finished, capacity);
+        pickedUpAt = Arrays.copyOf(pickedUpAt, capacity);
+        baseline = Arrays.copyOf(baseline, capacity);
+        droppedAt = Arrays.copyOf(droppedAt, capacity);
+    }
+}
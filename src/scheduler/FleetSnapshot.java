@@ -0,0 +1,272 @@
+package scheduler;
+
+import common.BuildingConfig;
+import elevator.Elevator;
+import floor.ElevatorRequest.ButtonDirection;
+
+import java.util.Arrays;
+
+/**
+ * An immutable view of the fleet at one moment, used by the dispatch logic. Backed by
+ * primitive arrays: entry i holds the state of one elevator, in order of elevator ID.
+ * The requests dispatched to entry i and not yet completed are stops
+ * getCommittedStart(i) to getCommittedStart(i + 1) - 1 of the committed arrays.
+ */
+public class FleetSnapshot {
+
+
+    /** A snapshot with no elevators. */
+    public static final FleetSnapshot EMPTY = new FleetSnapshot(0, 0, new int[0], new byte[0], new int[0], new byte[0], new int[0], new int[0],
+            new int[1], new int[0], new int[0], new boolean[0]);
+
+    private final long version;
+    private final int capacity;
+    private final int[] elevatorIds;
+    private final byte[] states;
+    private final int[] floors;
+    private final byte[] directions;
+    private final int[] loads;
+    private final int[] queueDepths;
+    private final int[] committedStart;
+    private final int[] pickups;
+    private final int[] destinations;
+    private final boolean[] pickedUp;
+
+    /**
+     * Create a new snapshot. The arrays are owned by the snapshot and must not be changed afterwards.
+     * @param version the version of the fleet view the snapshot was taken from
+     * @param capacity the most passengers an elevator of the building carries
+     * @param elevatorIds the ID of each elevator
+     * @param states the state ordinal of each elevator
+     * @param floors the current floor of each elevator
+     * @param directions the direction ordinal of each elevator
+     * @param loads the passengers on board each elevator
+     * @param queueDepths the requests queued in each elevator
+     * @param committedStart the first committed request of each elevator, with one extra entry for the end
+     * @param pickups the floor each committed request is picked up at
+     * @param destinations the floor each committed request is going to
+     * @param pickedUp true if the committed request has been picked up
+     */
+    FleetSnapshot(long version, int capacity, int[] elevatorIds, byte[] states, int[] floors, byte[] directions, int[] loads, int[] queueDepths,
+                  int[] committedStart, int[] pickups, int[] destinations, boolean[] pickedUp) {
+        this.version = version;
+        this.capacity = capacity;
+        this.elevatorIds = elevatorIds;
+        this.states = states;
+        this.floors = floors;
+        this.directions = directions;
+        this.loads = loads;
+        this.queueDepths = queueDepths;
+        this.committedStart = committedStart;
+        this.pickups = pickups;
+        this.destinations = destinations;
+        this.pickedUp = pickedUp;
+    }
+
+    /**
+     * Builder for snapshots, mostly for tests and tools that do not have a FleetStateCache.
+     */
+    public static class Builder {
+        private int capacity = -1;
+        private int size;
+        private int[] elevatorIds = new int[4];
+        private byte[] states = new byte[4];
+        private int[] floors = new int[4];
+        private byte[] directions = new byte[4];
+        private int[] loads = new int[4];
+        private int[] queueDepths = new int[4];
+        private int[] committedStart = new int[5];
+        private int stops;
+        private int[] pickups = new int[4];
+        private int[] destinations = new int[4];
+        private boolean[] pickedUp = new boolean[4];
+
+        /**
+         * Set the most passengers an elevator carries, the capacity of the current BuildingConfig
+         * if not set.
+         * @return this builder
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Add an elevator to the snapshot.
+         * @return this builder
+         */
+        public Builder add(int elevatorId, Elevator.State state, int floor, ButtonDirection direction, int load, int queueDepth) {
+            if (size == elevatorIds.length) {
+                int capacity = size * 2;
+                elevatorIds = Arrays.copyOf(elevatorIds, capacity);
+                states = Arrays.copyOf(states, capacity);
+                floors = Arrays.copyOf(floors, capacity);
+                directions = Arrays.copyOf(directions, capacity);
+                loads = Arrays.copyOf(loads, capacity);
+                queueDepths = Arrays.copyOf(queueDepths, capacity);
+                committedStart = Arrays.copyOf(committedStart, capacity + 1);
+            }
+            elevatorIds[size] = elevatorId;
+            states[size] = (byte) state.ordinal();
+            floors[size] = floor;
+            directions[size] = (byte) direction.ordinal();
+            loads[size] = load;
+            queueDepths[size] = queueDepth;
+            size++;
+            committedStart[size] = stops;
+            return this;
+        }
+
+        /**
+         * Add a committed request to the last elevator added.
+         * @param pickup the floor the request is picked up at
+         * @param destination the floor the request is going to
+         * @param isPickedUp true if the request has been picked up
+         * @return this builder
+         */
+        public Builder commit(int pickup, int destination, boolean isPickedUp) {
+            if (stops == pickups.length) {
+                pickups = Arrays.copyOf(pickups, stops * 2);
+                destinations = Arrays.copyOf(destinations, stops * 2);
+                pickedUp = Arrays.copyOf(pickedUp, stops * 2);
+            }
+            pickups[stops] = pickup;
+            destinations[stops] = destination;
+            pickedUp[stops] = isPickedUp;
+            stops++;
+            committedStart[size] = stops;
+            return this;
+        }
+
+        /**
+         * Create the snapshot.
+         * @return the snapshot
+         */
+        public FleetSnapshot build() {
+            return new FleetSnapshot(0, capacity >= 0 ? capacity : BuildingConfig.get().getCapacity(),
+                    Arrays.copyOf(elevatorIds, size),
+                    Arrays.copyOf(states, size),
+                    Arrays.copyOf(floors, size),
+                    Arrays.copyOf(directions, size),
+                    Arrays.copyOf(loads, size),
+                    Arrays.copyOf(queueDepths, size),
+                    Arrays.copyOf(committedStart, size + 1),
+                    Arrays.copyOf(pickups, stops),
+                    Arrays.copyOf(destinations, stops),
+                    Arrays.copyOf(pickedUp, stops));
+        }
+    }
+
+    /**
+     * Get the version of the fleet view the snapshot was taken from.
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the most passengers an elevator carries, from the BuildingConfig of the simulation.
+     * @return the capacity of an elevator
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of elevators in the snapshot.
+     * @return the number of elevators
+     */
+    public int size() {
+        return elevatorIds.length;
+    }
+
+    /**
+     * Find the entry of an elevator.
+     * @param elevatorId the elevator ID
+     * @return the entry, or -1 if the elevator is not in the snapshot
+     */
+    public int indexOf(int elevatorId) {
+        for (int i = 0; i < elevatorIds.length; i++) {
+            if (elevatorIds[i] == elevatorId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the ID of an elevator.
+     * @param i the entry
+     * @return the elevator ID
+     */
+    public int getElevatorId(int i) {
+        return elevatorIds[i];
+    }
+
+    public Elevator.State getState(int i) {
+        return Elevator.State.fromOrdinal(states[i]);
+    }
+
+    public int getFloor(int i) {
+        return floors[i];
+    }
+
+    public ButtonDirection getDirection(int i) {
+        return ButtonDirection.fromOrdinal(directions[i]);
+    }
+
+    public int getLoad(int i) {
+        return loads[i];
+    }
+
+    public int getQueueDepth(int i) {
+        return queueDepths[i];
+    }
+
+    /**
+     * Get the number of requests dispatched to an elevator that have not completed.
+     * @param i the entry
+     * @return the number of committed requests
+     */
+    public int getCommittedCount(int i) {
+        return committedStart[i + 1] - committedStart[i];
+    }
+
+    /**
+     * Get the index of the first committed request of an elevator.
+     * @param i the entry
+     * @return the index into the committed arrays
+     */
+    public int getCommittedStart(int i) {
+        return committedStart[i];
+    }
+
+    public int getCommittedPickup(int k) {
+        return pickups[k];
+    }
+
+    public int getCommittedDestination(int k) {
+        return destinations[k];
+    }
+
+    public boolean isCommittedPickedUp(int k) {
+        return pickedUp[k];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FleetSnapshot{version=").append(version);
+        for (int i = 0; i < size(); i++) {
+            sb.append(", [elevatorId=").append(elevatorIds[i])
+                    .append(", state=").append(getState(i))
+                    .append(", floor=").append(floors[i])
+                    .append(", direction=").append(getDirection(i))
+                    .append(", load=").append(loads[i])
+                    .append(", queueDepth=").append(queueDepths[i])
+                    .append(", committed=").append(getCommittedCount(i))
+                    .append(']');
+        }
+        return sb.append('}').toString();
+    }
+}
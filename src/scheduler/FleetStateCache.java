@@ -0,0 +1,333 @@
+package scheduler;
+
+import elevator.Elevator;
+import elevator.ElevatorInfo;
+import floor.ElevatorRequest;
+import floor.ElevatorRequest.ButtonDirection;
+
+import common.BuildingConfig;
+import common.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The Scheduler's in-memory view of the fleet. Kept up to date by the state pushed from the
+ * ElevatorSubsystem, so choosing an elevator only reads local memory. Every elevator keeps
+ * the version of its last push, and older pushes arriving out of order are ignored.
+ *
+ * The cache also keeps the requests the Scheduler has dispatched to each elevator and that
+ * have not completed yet, indexed by request ID. A request counts as picked up once the
+ * ElevatorSubsystem reports that its passenger boarded. Snapshots hold at most
+ * Config.FLEET_SNAPSHOT_STOPS of them per elevator, the oldest first.
+ */
+public class FleetStateCache {
+
+
+    /** If a state has been received for the elevator, indexed by elevator ID. */
+    private boolean[] known = new boolean[0];
+    /** State ordinal of each elevator. */
+    private byte[] states = new byte[0];
+    /** Current floor of each elevator. */
+    private int[] floors = new int[0];
+    /** Direction ordinal of each elevator. */
+    private byte[] directions = new byte[0];
+    /** Passengers on board each elevator. */
+    private int[] loads = new int[0];
+    /** Requests queued in each elevator. */
+    private int[] queueDepths = new int[0];
+    /** Version of the last push accepted for each elevator. */
+    private long[] versions = new long[0];
+    /** Time in milliseconds each elevator was last heard from. */
+    private long[] updatedAt = new long[0];
+
+    /** Requests dispatched to each elevator that have not completed, indexed by elevator ID. */
+    private final ArrayList<ArrayList<Commitment>> committed = new ArrayList<>();
+
+    /** The requests in committed that have an ID, by ID. */
+    private final HashMap<Long, Commitment> committedById = new HashMap<>();
+
+    /** Increases with every accepted change to the fleet. */
+    private long version;
+
+    /** The most passengers an elevator carries, given to the snapshots. */
+    private final int capacity;
+
+    /**
+     * Create an empty view for the elevators of the current BuildingConfig.
+     */
+    public FleetStateCache() {
+        this(BuildingConfig.get().getCapacity());
+    }
+
+    /**
+     * Create an empty view.
+     * @param capacity the most passengers an elevator carries
+     */
+    public FleetStateCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Apply a pushed elevator state. Ignored if it is older than what is already known. A push
+     * with the same version only marks the elevator as recently heard from.
+     * @param info the elevator state
+     * @param now the current time in milliseconds
+     * @return true if the fleet changed
+     */
+    public synchronized boolean update(ElevatorInfo info, long now) {
+        int id = info.getElevatorId();
+        if (id < 0) {
+            return false;
+        }
+        ensureCapacity(id + 1);
+        if (known[id] && info.getVersion() < versions[id]) {
+            return false; // arrived out of order
+        }
+        updatedAt[id] = now;
+        if (known[id] && info.getVersion() == versions[id]) {
+            return false; // heartbeat
+        }
+        known[id] = true;
+        states[id] = (byte) info.getCurrentState().ordinal();
+        floors[id] = info.getCurrentFloor();
+        directions[id] = (byte) info.getCurrDirection().ordinal();
+        loads[id] = info.getLoad();
+        queueDepths[id] = info.getQueueDepth();
+        versions[id] = info.getVersion();
+        version++;
+        return true;
+    }
+
+    /**
+     * Record that a request was dispatched to an elevator. If the request was dispatched
+     * before, for example because a full elevator sent it back, the old dispatch is dropped.
+     * @param elevatorId the elevator the request was sent to
+     * @param request the request
+     */
+    public synchronized void assign(int elevatorId, ElevatorRequest request) {
+        if (elevatorId < 0) {
+            return;
+        }
+        ensureCapacity(elevatorId + 1);
+        remove(request);
+        Commitment commitment = new Commitment(elevatorId, request);
+        committed.get(elevatorId).add(commitment);
+        if (request.getId() != 0) {
+            committedById.put(request.getId(), commitment);
+        }
+        version++;
+    }
+
+    /**
+     * Record that the passenger of a dispatched request boarded its elevator.
+     * @param request the boarded request, as sent by the elevator
+     * @return true if the request was known and not picked up before
+     */
+    public synchronized boolean board(ElevatorRequest request) {
+        Commitment commitment = find(request);
+        if (commitment == null || commitment.pickedUp) {
+            return false;
+        }
+        commitment.pickedUp = true;
+        version++;
+        return true;
+    }
+
+    /**
+     * Record that a dispatched request was completed.
+     * @param request the completed request, as sent back by the elevator
+     * @return true if the request was known
+     */
+    public synchronized boolean complete(ElevatorRequest request) {
+        if (remove(request)) {
+            version++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove a dispatched request from whichever elevator it was sent to.
+     * @param request the request
+     * @return true if the request was found
+     */
+    private boolean remove(ElevatorRequest request) {
+        Commitment commitment = find(request);
+        if (commitment == null) {
+            return false;
+        }
+        committed.get(commitment.elevatorId).remove(commitment);
+        if (commitment.request.getId() != 0) {
+            committedById.remove(commitment.request.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Find a dispatched request. Requests are looked up by ID, or matched by floor, button and
+     * time when the ID is not known, as for the text format.
+     * @param request the request
+     * @return the dispatch of the request, or null if it is not known
+     */
+    private Commitment find(ElevatorRequest request) {
+        if (request.getId() != 0) {
+            return committedById.get(request.getId());
+        }
+        for (ArrayList<Commitment> list : committed) {
+            for (Commitment c : list) {
+                ElevatorRequest r = c.request;
+                if (r.getFloorNumber() == request.getFloorNumber() && r.getButtonId() == request.getButtonId()
+                        && r.getTime().equals(request.getTime())) {
+                    return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the view can be trusted: at least one elevator is known, and every known
+     * elevator has been heard from within the staleness bound.
+     * @param now the current time in milliseconds
+     * @param maxAge the staleness bound in milliseconds
+     * @return true if the view is fresh
+     */
+    public synchronized boolean isFresh(long now, long maxAge) {
+        boolean any = false;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i]) {
+                if (now - updatedAt[i] > maxAge) {
+                    return false;
+                }
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Get the known state of every elevator, ordered by elevator ID.
+     * @return the elevators info
+     */
+    public synchronized ElevatorInfo[] getElevatorsInfo() {
+        int count = 0;
+        for (boolean k : known) {
+            if (k) {
+                count++;
+            }
+        }
+        ElevatorInfo[] info = new ElevatorInfo[count];
+        int j = 0;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i]) {
+                info[j++] = new ElevatorInfo(i, Elevator.State.fromOrdinal(states[i]), floors[i], ButtonDirection.fromOrdinal(directions[i]),
+                        loads[i], queueDepths[i], versions[i]);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Take an immutable snapshot of the known elevators, ordered by elevator ID, with up to
+     * Config.FLEET_SNAPSHOT_STOPS of the oldest requests dispatched to each.
+     * @return the snapshot
+     */
+    public synchronized FleetSnapshot snapshot() {
+        int count = 0;
+        for (boolean k : known) {
+            if (k) {
+                count++;
+            }
+        }
+        int[] ids = new int[count];
+        byte[] snapshotStates = new byte[count];
+        int[] snapshotFloors = new int[count];
+        byte[] snapshotDirections = new byte[count];
+        int[] snapshotLoads = new int[count];
+        int[] snapshotDepths = new int[count];
+        int[] stopStart = new int[count + 1];
+        int stops = 0;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i]) {
+                stops += Math.min(committed.get(i).size(), Config.FLEET_SNAPSHOT_STOPS);
+            }
+        }
+        int[] pickups = new int[stops];
+        int[] destinations = new int[stops];
+        boolean[] pickedUp = new boolean[stops];
+        int j = 0;
+        int k = 0;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i]) {
+                ids[j] = i;
+                snapshotStates[j] = states[i];
+                snapshotFloors[j] = floors[i];
+                snapshotDirections[j] = directions[i];
+                snapshotLoads[j] = loads[i];
+                snapshotDepths[j] = queueDepths[i];
+                stopStart[j] = k;
+                ArrayList<Commitment> list = committed.get(i);
+                for (int n = 0; n < list.size() && n < Config.FLEET_SNAPSHOT_STOPS; n++) {
+                    Commitment c = list.get(n);
+                    pickups[k] = c.request.getFloorNumber();
+                    destinations[k] = c.request.getButtonId();
+                    pickedUp[k] = c.pickedUp;
+                    k++;
+                }
+                j++;
+            }
+        }
+        stopStart[count] = k;
+        return new FleetSnapshot(version, capacity, ids, snapshotStates, snapshotFloors, snapshotDirections, snapshotLoads, snapshotDepths,
+                stopStart, pickups, destinations, pickedUp);
+    }
+
+    /**
+     * Get the version of the fleet view.
+     * @return increases with every accepted change
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Grow the arrays to hold at least the given number of elevators.
+     * @param size the number of elevators
+     */
+    private void ensureCapacity(int size) {
+        if (size <= known.length) {
+            return;
+        }
+        int capacity = Math.max(size, known.length * 2);
+        known = Arrays.copyOf(known, capacity);
+        states = Arrays.copyOf(states, capacity);
+        floors = Arrays.copyOf(floors, capacity);
+        directions = Arrays.copyOf(directions, capacity);
+        loads = Arrays.copyOf(loads, capacity);
+        queueDepths = Arrays.copyOf(queueDepths, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        updatedAt = Arrays.copyOf(updatedAt, capacity);
+        while (committed.size() < capacity) {
+            committed.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * A request dispatched to an elevator.
+     */
+    private static class Commitment {
+        /** The elevator the request was dispatched to */
+        private final int elevatorId;
+        /** The dispatched request */
+        private final ElevatorRequest request;
+        /** True once the passenger has boarded */
+        private boolean pickedUp;
+
+        private Commitment(int elevatorId, ElevatorRequest request) {
+            this.elevatorId = elevatorId;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem: give each row of a cost matrix a different column so the
+ * total cost is the lowest possible. Uses the Hungarian method with row and column potentials,
+ * adding one row at a time, in O(rows^2 * columns) time.
+ */
+class HungarianAssignment {
+
+    private HungarianAssignment() {
+    }
+
+    /**
+     * Find the cheapest assignment of rows to columns.
+     * @param cost the cost of giving each row each column, at least as many columns as rows.
+     *             Costs must be small enough that a sum over all rows does not overflow.
+     * @return the column given to each row
+     */
+    static int[] solve(long[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) {
+            return new int[0];
+        }
+        int columns = cost[0].length;
+        if (columns < rows) {
+            throw new IllegalArgumentException("More rows than columns: " + rows + " > " + columns);
+        }
+        // Index 0 is a dummy column, so rows and columns are counted from 1 below
+        long[] rowPotential = new long[rows + 1];
+        long[] columnPotential = new long[columns + 1];
+        int[] rowOfColumn = new int[columns + 1];
+        int[] previous = new int[columns + 1];
+        long[] slack = new long[columns + 1];
+        boolean[] used = new boolean[columns + 1];
+
+        for (int row = 1; row <= rows; row++) {
+            // Grow a path of tight edges from the new row until it reaches a free column
+            rowOfColumn[0] = row;
+            int column = 0;
+            Arrays.fill(slack, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[column] = true;
+                int current = rowOfColumn[column];
+                long delta = Long.MAX_VALUE;
+                int next = 0;
+                for (int j = 1; j <= columns; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    long reduced = cost[current - 1][j - 1] - rowPotential[current] - columnPotential[j];
+                    if (reduced < slack[j]) {
+                        slack[j] = reduced;
+                        previous[j] = column;
+                    }
+                    if (slack[j] < delta) {
+                        delta = slack[j];
+                        next = j;
+                    }
+                }
+                for (int j = 0; j <= columns; j++) {
+                    if (used[j]) {
+                        rowPotential[rowOfColumn[j]] += delta;
+                        columnPotential[j] -= delta;
+                    } else {
+                        slack[j] -= delta;
+                    }
+                }
+                column = next;
+            } while (rowOfColumn[column] != 0);
+
+            // Flip the path so every row on it moves to the next column
+            do {
+                int before = previous[column];
+                rowOfColumn[column] = rowOfColumn[before];
+                column = before;
+            } while (column != 0);
+        }
+
+        int[] columnOfRow = new int[rows];
+        for (int j = 1; j <= columns; j++) {
+            if (rowOfColumn[j] != 0) {
+                columnOfRow[rowOfColumn[j] - 1] = j - 1;
+            }
+        }
+        return columnOfRow;
+    }
+}
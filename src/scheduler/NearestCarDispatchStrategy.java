@@ -0,0 +1,78 @@
+package scheduler;
+
+import common.Config;
+import elevator.Elevator;
+import floor.ElevatorRequest;
+import floor.ElevatorRequest.ButtonDirection;
+
+/**
+ * Chooses the closest elevator that is idle, or transporting and passing the request's floor
+ * in its direction. Otherwise chooses the closest working elevator. Ties go to the lowest
+ * elevator ID. Only the distance to the request is considered.
+ */
+public class NearestCarDispatchStrategy implements DispatchStrategy {
+
+    @Override
+    public int selectElevator(ElevatorRequest request, FleetSnapshot fleet) {
+        double speedPerFloor = Config.FLOORS_PER_SECOND;
+        int tier1Id = -1;
+        int tier1Time = Integer.MAX_VALUE;
+        int tier2Id = -1;
+        int tier2Time = Integer.MAX_VALUE;
+        for (int i = 0; i < fleet.size(); i++) {
+            Elevator.State currentState = fleet.getState(i);
+            if (currentState == Elevator.State.FAULT) {
+                continue;
+            }
+            int currentFloor = fleet.getFloor(i);
+            int travelTime = calculateTravelTime(currentFloor, request.getFloorNumber(), speedPerFloor);
+            //check if elevator is idle or transporting and on the way to the elevator's destination
+            if (currentState == Elevator.State.IDLE || (onTheWay(request, currentFloor, fleet.getDirection(i))
+                    && currentState == Elevator.State.TRANSPORTING)) {
+                if (travelTime < tier1Time) {
+                    tier1Time = travelTime;
+                    tier1Id = fleet.getElevatorId(i);
+                }
+            }
+            if (travelTime < tier2Time) {
+                tier2Time = travelTime;
+                tier2Id = fleet.getElevatorId(i);
+            }
+        }
+        //select the closest elevator that is idle or transporting in same direction, otherwise the closest elevator
+        return tier1Id != -1 ? tier1Id : tier2Id;
+    }
+
+    /**
+     * Check if request in the current path of the elevator
+     * @param er the request to schedule
+     * @param elevatorFloor the current floor of the elevator
+     * @param elevatorDirection the current direction of the elevator
+     * @return true if in the path, false otherwise
+     */
+    private boolean onTheWay(ElevatorRequest er, int elevatorFloor, ButtonDirection elevatorDirection) {
+        int reqFloor = er.getFloorNumber();
+        if((reqFloor > (elevatorFloor + 1) && elevatorDirection == ButtonDirection.UP && er.getButtonDirection() == ButtonDirection.UP) ||
+                (reqFloor < (elevatorFloor - 1) && elevatorDirection == ButtonDirection.DOWN && er.getButtonDirection() == ButtonDirection.DOWN)) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calculate the travel time from current floor to destination floor.
+     * @param currentFloor The current floor.
+     * @param destinationFloor The destination floor.
+     * @param speedPerFloor The speed of the elevator per floor.
+     * @return The travel time in seconds, or -1 if speedPerFloor is zero.
+     */
+    private int calculateTravelTime(int currentFloor, int destinationFloor, double speedPerFloor) {
+        if (speedPerFloor == 0) {
+            System.err.println("Error: Elevator is not moving. Speed per floor is zero.");
+            return -1;
+        }
+
+        int floorsToTravel = Math.abs(destinationFloor - currentFloor);
+        return (int) Math.ceil(floorsToTravel / speedPerFloor);
+    }
+}
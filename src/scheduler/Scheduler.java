@@ -1,15 +1,24 @@
 package scheduler;
 
+import common.BuildingConfig;
+import common.Config;
+import common.EventJournal;
 import common.Log;
+import common.MetricsServer;
+import common.SimulationContext;
+import common.Threads;
+import common.Transport;
 import elevator.Elevator;
 import elevator.ElevatorInfo;
 import floor.ElevatorRequest;
+import floor.ElevatorRequestCodec;
 import floor.FloorSubsystem;
 import floor.ElevatorRequest.ButtonDirection;
 
 import java.io.IOException;
-import java.net.*;
-import java.time.LocalTime;
+import java.net.DatagramPacket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,7 +41,34 @@ public class Scheduler implements Runnable {
     /** The requests to forward to the floor subsystem. */
     private ArrayList<ElevatorRequest> schedulerResponseLog = new ArrayList<>();
 
+    /** The state of every elevator, pushed by the ElevatorSubsystem. */
+    private final FleetStateCache fleetState;
+
+    /** The simulation the scheduler belongs to. */
+    private final SimulationContext context;
+
+    /** The metrics of the scheduler, in the registry of its simulation. */
+    private final SchedulerMetrics metrics;
+
+    /** Chooses the elevator each request is dispatched to. */
+    private DispatchStrategy dispatchStrategy = new EtaDispatchStrategy();
+
+    /** Receives the network messages and hands them to the dispatch worker. Created by run() */
+    private volatile SchedulerIngress ingress;
+
+    /** The states, by their code in the event journal. */
+    private static final List<Class<? extends SchedulerState>> STATES =
+            List.of(AwaitingRequestState.class, ProcessingRequestState.class, ElevatorDispatchState.class);
+
+    /** The dispatch strategies, by their code in the event journal. */
+    private static final List<Class<? extends DispatchStrategy>> STRATEGIES = List.of(EtaDispatchStrategy.class,
+            NearestCarDispatchStrategy.class, DestinationDispatchStrategy.class, BatchDispatchStrategy.class);
+
+    /** The requests waiting for the batch window to close. */
+    private final ArrayList<ElevatorRequest> pendingBatch = new ArrayList<>();
+
     public Scheduler() {
+        this(SimulationContext.capture(), null);
     }
 
     /**
@@ -40,7 +76,19 @@ public class Scheduler implements Runnable {
      * @param floorSubsystem The floor subsystem for the scheduler.
      */
     public Scheduler(FloorSubsystem floorSubsystem) {
+        this(SimulationContext.capture(), floorSubsystem);
+    }
+
+    /**
+     * Create a new scheduler in a simulation.
+     * @param context The simulation, resolved.
+     * @param floorSubsystem The floor subsystem for the scheduler.
+     */
+    public Scheduler(SimulationContext context, FloorSubsystem floorSubsystem) {
+        this.context = context;
         this.floorSubsystem = floorSubsystem;
+        fleetState = new FleetStateCache(context.getConfig().getCapacity());
+        metrics = new SchedulerMetrics(context.getMetrics());
     }
 
         /**
@@ -49,13 +97,62 @@ public class Scheduler implements Runnable {
      * @param requestsQueue The queue of requests.
      */
     public Scheduler(FloorSubsystem floorSubsystem, ArrayList<ElevatorRequest> requestsQueue) {
-        this.floorSubsystem = floorSubsystem;
+        this(SimulationContext.capture(), floorSubsystem);
         this.schedulerRequestsQueue = requestsQueue;
     }
 
     //  Set the state of the scheduler.
     public void setState(SchedulerState state) {
         this.state = state;
+        context.getJournal().append(EventJournal.Type.SCHEDULER_STATE, -1, stateCode(state), 0, 0);
+    }
+
+    /**
+     * Get the code of a state in the event journal.
+     * @param state the state
+     * @return the index of its class in STATES, or STATES.size() for another state
+     */
+    public static int stateCode(SchedulerState state) {
+        int code = STATES.indexOf(state == null ? null : state.getClass());
+        return code < 0 ? STATES.size() : code;
+    }
+
+    /**
+     * Append the start of a run to the event journal: the size of the building and the
+     * dispatch strategy, so the run can be replayed.
+     */
+    public void journalStart() {
+        BuildingConfig config = context.getConfig();
+        int code = STRATEGIES.indexOf(dispatchStrategy.getClass());
+        context.getJournal().append(EventJournal.Type.BUILDING, -1, code < 0 ? STRATEGIES.size() : code,
+                config.getFloors(), config.getElevators());
+    }
+
+    /**
+     * Create the dispatch strategy of a code in the event journal.
+     * @param code the code
+     * @return the strategy, the ETA strategy for an unknown code
+     */
+    public static DispatchStrategy newDispatchStrategy(int code) {
+        switch (code) {
+            case 1:
+                return new NearestCarDispatchStrategy();
+            case 2:
+                return new DestinationDispatchStrategy();
+            case 3:
+                return new BatchDispatchStrategy();
+            default:
+                return new EtaDispatchStrategy();
+        }
+    }
+
+    /**
+     * Get the name of a state from its code in the event journal.
+     * @param code the code
+     * @return the simple name of the state's class
+     */
+    public static String stateName(int code) {
+        return code < STATES.size() ? STATES.get(code).getSimpleName() : "Other";
     }
 
     //  * Get the queue of requests.
@@ -78,86 +175,187 @@ public class Scheduler implements Runnable {
      * @param elevatorRequest The request to add to the scheduler.
      */
     public void addToRequestQueue(ElevatorRequest elevatorRequest) {
+        received(elevatorRequest);
         synchronized (schedulerRequestsQueue) {
             schedulerRequestsQueue.add(elevatorRequest);
             schedulerRequestsQueue.notifyAll();
         }
     }
 
+    /**
+     * Stamp, count and journal a request the first time it is received. A request sent back by
+     * a full elevator is received again, with its first stamp.
+     * @param request the request
+     */
+    private void received(ElevatorRequest request) {
+        if (request.getTimestamp(ElevatorRequest.Stage.RECEIVED) == ElevatorRequest.NOT_REACHED) {
+            request.stamp(ElevatorRequest.Stage.RECEIVED, context.getClock());
+            metrics.received.increment();
+            request.journal(context.getJournal(), EventJournal.Type.HALL_CALL, -1);
+        }
+    }
+
+    /**
+     * Get a snapshot of the fleet state pushed by the ElevatorSubsystem. If that view is
+     * older than Config.FLEET_STATE_MAX_AGE, the ElevatorSubsystem is polled first, unless it
+     * runs in the same process where no push is ever lost.
+     * @return the fleet snapshot
+     */
+    public FleetSnapshot getFleetSnapshot() {
+        if (!context.getTransport().isInProcess(Transport.Peer.ELEVATOR_SUBSYSTEM)
+                && !fleetState.isFresh(System.currentTimeMillis(), Config.FLEET_STATE_MAX_AGE)) {
+            pollElevatorsInfo();
+        }
+        return fleetState.snapshot();
+    }
+
+    /**
+     * Get the strategy that chooses the elevator for each request.
+     * @return the dispatch strategy
+     */
+    public DispatchStrategy getDispatchStrategy() {
+        return dispatchStrategy;
+    }
+
+    /**
+     * Change the strategy that chooses the elevator for each request.
+     * @param dispatchStrategy the new dispatch strategy
+     */
+    public void setDispatchStrategy(DispatchStrategy dispatchStrategy) {
+        this.dispatchStrategy = dispatchStrategy;
+    }
+
+    /**
+     * Add a request to the batch dispatched when the strategy's batch window closes. The first
+     * request of a batch opens the window.
+     * @param request the request
+     */
+    public void addToBatch(ElevatorRequest request) {
+        synchronized (pendingBatch) {
+            pendingBatch.add(request);
+            if (pendingBatch.size() == 1) {
+                context.getClock().schedule(dispatchStrategy.getBatchWindow(), this::dispatchBatch);
+            }
+        }
+    }
+
+    /**
+     * Dispatch the requests collected in the batch window. Requests given to the same elevator
+     * are sent to it in one message.
+     */
+    public void dispatchBatch() {
+        ArrayList<ElevatorRequest> batch;
+        synchronized (pendingBatch) {
+            if (pendingBatch.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingBatch);
+            pendingBatch.clear();
+        }
+        FleetSnapshot fleet = getFleetSnapshot();
+        long start = System.nanoTime();
+        int[] elevatorIds = dispatchStrategy.assignBatch(batch, fleet);
+        metrics.strategyTime.record(System.nanoTime() - start);
+        ElevatorDispatchState dispatch = new ElevatorDispatchState(context);
+        boolean[] sent = new boolean[batch.size()];
+        for (int k = 0; k < batch.size(); k++) {
+            if (sent[k]) {
+                continue;
+            }
+            ArrayList<ElevatorRequest> group = new ArrayList<>();
+            for (int j = k; j < batch.size(); j++) {
+                if (elevatorIds[j] == elevatorIds[k]) {
+                    group.add(batch.get(j));
+                    sent[j] = true;
+                }
+            }
+            if (elevatorIds[k] == -1) {
+                Log.print("Failed to find a working elevator for %d requests", group.size());
+                metrics.unassigned.add(group.size());
+                for (ElevatorRequest request : group) {
+                    request.journal(context.getJournal(), EventJournal.Type.UNASSIGNED, -1);
+                }
+                continue;
+            }
+            dispatch.dispatchGroup(this, group, elevatorIds[k]);
+        }
+    }
+
+    /**
+     * Get the Scheduler's view of the fleet.
+     * @return the fleet state cache
+     */
+    public FleetStateCache getFleetState() {
+        return fleetState;
+    }
+
+    /**
+     * Get the metrics of the scheduler, for its states.
+     * @return the metrics
+     */
+    SchedulerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the simulation the scheduler belongs to.
+     * @return the resolved context it was created in
+     */
+    public SimulationContext getContext() {
+        return context;
+    }
+
     /**
      * This is asking the ElevatorSubsystem for the Elevators info
      * It sends a UDP request "GET-INFO" to the ElevatorSubsystem
-     * and gets a response back with the info
-     */
-    public String getElevatorsInfo() {
-        String getInfoRequest = "GET-INFO";
-        int elevatorSubsystemPort = 6000; // The port the ElevatorSubsystem is listening on
-        String elevatorSubsystemHost = "localhost"; // Assuming the ElevatorSubsystem is on the same host
-        String elevatorsInfo = null;
-
-        try (DatagramSocket socket = new DatagramSocket()) {
-            InetAddress elevatorSubsystemAddress = InetAddress.getByName(elevatorSubsystemHost);
-            byte[] sendData = getInfoRequest.getBytes();
-
-            // Send the GET-INFO request
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, elevatorSubsystemAddress, elevatorSubsystemPort);
-            socket.send(sendPacket);
-
-            // Prepare to receive the response
-            byte[] receiveData = new byte[1024];
-            DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-            socket.receive(receivePacket);
-
-            // Process the received data
-            String response = new String(receivePacket.getData(), 0, receivePacket.getLength());
-            Log.print("Received elevators info:\n" + response);
-            elevatorsInfo = Arrays.toString(parseElevatorsInfo(receivePacket.getData()));
-
-        } catch (UnknownHostException e) {
-            System.err.println("UnknownHostException: " + e.getMessage());
-        } catch (SocketException e) {
-            System.err.println("SocketException: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("IOException: " + e.getMessage());
-        }
+     * and waits up to Config.INFO_POLL_TIMEOUT for the response,
+     * retrying Config.INFO_POLL_ATTEMPTS times
+     * @return true if a response was received
+     */
+    public boolean pollElevatorsInfo() {
+        byte[] sendData = "GET-INFO".getBytes();
+        // One ElevatorInfo per elevator in the reply
+        byte[] receiveData = new byte[Math.max(1024, context.getConfig().getElevators() * ElevatorInfo.SIZE)];
+        DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
 
-        return elevatorsInfo;
+        for (int attempt = 1; attempt <= Config.INFO_POLL_ATTEMPTS; attempt++) {
+            try {
+                receivePacket.setLength(receiveData.length);
+                context.getTransport().request(Transport.Peer.ELEVATOR_SUBSYSTEM, sendData, receivePacket, Config.INFO_POLL_TIMEOUT);
+
+                // Process the received data
+                ElevatorInfo[] elevatorsInfo = parseElevatorsInfo(receiveData, receivePacket.getLength());
+                if (Log.isEnabled()) {
+                    Log.print("Received elevators info:\n%s", Arrays.toString(elevatorsInfo));
+                }
+                long now = System.currentTimeMillis();
+                for (ElevatorInfo info : elevatorsInfo) {
+                    fleetState.update(info, now);
+                }
+                return true;
+            } catch (SocketTimeoutException e) {
+                Log.print("Scheduler: GET-INFO attempt " + attempt + " timed out");
+            } catch (IOException e) {
+                System.err.println("IOException: " + e.getMessage());
+                break;
+            }
+        }
+        Log.print("Scheduler: no GET-INFO response, using last known elevators info");
+        return false;
     }
 
      /**
      * This parses the info received from the ElevatorSubsystem
      * about all the elevator cars and their current status
      * @param data the info received via UDP in the bytes format
+     * @param length the length of the info
      * @return an array of ElevatorInfo objects representing the current state of elevators
      */
-    public ElevatorInfo[] parseElevatorsInfo(byte[] data) {
-        String receivedInfo = new String(data);
-        String[] elevatorsInfo = receivedInfo.split("\n"); // Each elevator info is separated by a newline
-
+    public ElevatorInfo[] parseElevatorsInfo(byte[] data, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
         List<ElevatorInfo> elevatorInfoList = new ArrayList<>();
-
-        for (String elevatorInfo : elevatorsInfo) {
-            String[] info = elevatorInfo.split(";");
-            if (info.length == 4) { 
-                int elevatorId = Integer.parseInt(info[0]);
-                String stateString = info[1];
-                Elevator.State currentState;
-
-                try {
-                    currentState = Elevator.State.valueOf(stateString);
-                } catch (IllegalArgumentException e) {
-   
-                    System.err.println("Invalid elevator state: " + stateString);
-                    currentState = Elevator.State.UNKNOWN;
-                }
-
-                int currentFloor = Integer.parseInt(info[2]);
-                ButtonDirection currDirection = ButtonDirection.valueOf(info[3]);
-
-                // Create an ElevatorInfo object for each elevator and add to the list
-                ElevatorInfo elevatorInfoObj = new ElevatorInfo(elevatorId, currentState, currentFloor, currDirection);
-                elevatorInfoList.add(elevatorInfoObj);
-            }
+        while (ElevatorInfo.isElevatorInfo(buffer)) {
+            elevatorInfoList.add(ElevatorInfo.decode(buffer));
         }
         // Convert the list to an array
         return elevatorInfoList.toArray(new ElevatorInfo[0]);
@@ -173,51 +371,136 @@ public class Scheduler implements Runnable {
 
 
     /**
-     * The entrypoint of the scheduler. Continuously checks if there are any jobs in the
-     * FloorSubsystem. If there are, it adds the jobs to the queue and removes it from the
-     * FloorSubsystem.
+     * The entrypoint of the scheduler. Receives messages on the calling thread and hands them to
+     * a dispatch worker thread through a SchedulerIngress, both in the scheduler's simulation.
      */
     @Override
     public void run() {
+        context.run(this::serve);
+    }
+
+    /**
+     * Start the ingress and receive messages until it stops.
+     */
+    private void serve() {
+        journalStart();
         // set the initial state to IDLE
         setState(new AwaitingRequestState(this));
         
-        int listenPort = 5000;
-        try (DatagramSocket serverSocket = new DatagramSocket(listenPort)) {
-            Log.print("Scheduler listening on port " + listenPort);
-            while (true) {
-                byte[] receiveData = new byte[1024];
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                serverSocket.receive(receivePacket);
-                
-                // Parse the received data into an ElevatorRequest object
-                ElevatorRequest request = new ElevatorRequest(receivePacket.getData());
-                
-                if (request.isProcessed()) {
-                    // Handle completed request from the ElevatorSubsystem
-                    Log.print("Received completed request from ElevatorSubsystem: " + request + " at " + LocalTime.now());
-                    // Further processing...
-                } else {
-                    // Handle new request from the FloorSubsystem
-                    Log.print("Received new request from FloorSubsystem: " + request + " at " + LocalTime.now());
-                    state.processRequest(this, receivePacket.getData());
-                }
-            }
-        } catch (SocketException e) {
-            System.err.println("SocketException: " + e.getMessage());
+        int listenPort = context.getTransport().getPort(Transport.Peer.SCHEDULER);
+        try {
+            ingress = new SchedulerIngress(this, listenPort, Config.INGRESS_QUEUE_SIZE);
         } catch (IOException e) {
             System.err.println("IOException: " + e.getMessage());
+            return;
+        }
+        metrics.register(ingress);
+        Log.print("Scheduler listening on port " + listenPort);
+        ingress.startWorker();
+        ingress.runReader();
+    }
+
+    /**
+     * Receive the messages of the other subsystems from a transport in this process rather than
+     * the network. Replaces run(): the messages are handled on the transport's inbox thread.
+     * @param transport the transport the other subsystems send with
+     */
+    public void bind(Transport transport) {
+        journalStart();
+        setState(new AwaitingRequestState(this));
+        transport.bind(Transport.Peer.SCHEDULER, this::receive);
+    }
+
+    /**
+     * Get the receiver of the network messages, with its queue depth and drop counters.
+     * @return the ingress, or null until run() has started
+     */
+    public SchedulerIngress getIngress() {
+        return ingress;
+    }
+
+    /**
+     * Handle one message, from the network or from a peer in the same process. Either the state
+     * of an elevator, a request boarded or completed by the ElevatorSubsystem, or a new request. Frames of
+     * the reliable channel are acknowledged and unwrapped first, and those already handled dropped.
+     * @param message the message, from position to limit
+     */
+    public void receive(ByteBuffer message) {
+        message = context.getTransport().channel(Transport.Peer.SCHEDULER).receive(message);
+        if (message == null) {
+            return;
+        }
+
+        // State pushed by the ElevatorSubsystem
+        if (ElevatorInfo.isElevatorInfo(message)) {
+            fleetState.update(ElevatorInfo.decode(message), System.currentTimeMillis());
+            return;
+        }
+
+        // Parse the received data into an ElevatorRequest object
+        ElevatorRequest request;
+        try {
+            request = ElevatorRequestCodec.decode(message);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring malformed request: " + e.getMessage());
+            return;
+        }
+
+        if (request.isProcessed()) {
+            // Handle completed request from the ElevatorSubsystem
+            if (Log.isEnabled()) {
+                Log.print("Received completed request from ElevatorSubsystem: %s at %s", request, context.getClock().time());
+            }
+            fleetState.complete(request);
+            metrics.completed.increment();
+        } else if (request.isLoaded()) {
+            // The passenger of a dispatched request boarded, reported by the ElevatorSubsystem
+            fleetState.board(request);
+        } else {
+            // Handle new request from the FloorSubsystem
+            received(request);
+            if (Log.isEnabled()) {
+                Log.print("Received new request from FloorSubsystem: %s at %s", request, context.getClock().time());
+            }
+            state.processRequest(this, request);
         }
     }
 
     /**
      * Creates and starts a Scheduler thread
-     * @param args command line (not used)
+     * @param args --virtual-threads to run the listener on a virtual thread,
+     *             --elevators N and --floors N to change the size of the building,
+     *             --metrics-port N to serve the metrics over HTTP,
+     *             --journal FILE to write the events to an event journal,
+     *             --port-offset N to move the ports of all subsystems up by N
      */
     public static void main(String[] args) {
+        BuildingConfig config = BuildingConfig.get();
+        int metricsPort = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--virtual-threads") && !Threads.setVirtual(true)) {
+                System.err.println("Virtual threads need Java 21 or later, using platform threads");
+            } else if (args[i].equals("--elevators")) {
+                config = config.withElevators(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--floors")) {
+                config = config.withFloors(BuildingConfig.parseCount(args, i++));
+            } else if (args[i].equals("--metrics-port")) {
+                metricsPort = MetricsServer.parsePort(args, i++);
+            } else if (args[i].equals("--journal") && i + 1 < args.length) {
+                EventJournal.start(args[++i]);
+            } else if (args[i].equals("--port-offset")) {
+                Transport.setPortOffset(Transport.parsePortOffset(args, i++));
+            }
+        }
+        BuildingConfig.set(config);
+        MetricsServer.export(metricsPort);
         Scheduler scheduler = new Scheduler();
-        Thread schedulerThread = new Thread(scheduler, "Scheduler Thread");
-        schedulerThread.start();
+        Thread schedulerThread = Threads.start("Scheduler Thread", scheduler, false);
+        try {
+            schedulerThread.join(); // virtual threads do not keep the program running
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
\ No newline at end of file
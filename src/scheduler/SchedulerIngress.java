@@ -0,0 +1,351 @@
+package scheduler;
+
+import common.Config;
+import common.Log;
+import common.MpscRingQueue;
+import common.ReliableChannel;
+import common.Threads;
+import elevator.ElevatorInfo;
+import floor.ElevatorRequestCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Receives the Scheduler's messages from the network, apart from dispatching them. A reader
+ * thread takes datagrams off a DatagramChannel as fast as they arrive and puts them in a
+ * bounded MpscRingQueue. A dispatch worker drains the queue in batches and hands each message
+ * to Scheduler.receive, so a slow dispatch, such as a GET-INFO round trip, no longer leaves
+ * datagrams to overflow the socket buffer.
+ *
+ * When the queue is full new messages are dropped and counted, like the kernel would, and the
+ * count is logged once there is room again. Other threads can add messages with submit.
+ *
+ * Messages are copied into fixed size slots that the dispatch worker hands back once the
+ * scheduler is done with them, so the ingress path does not allocate once the pool is warm.
+ */
+public class SchedulerIngress {
+
+    /** The scheduler the messages are for. */
+    private final Scheduler scheduler;
+
+    /** The channel the messages arrive on. */
+    private final DatagramChannel channel;
+
+    /** The size of a message slot, the largest datagram the reader takes. */
+    private static final int SLOT_SIZE = 1024;
+
+    /** The messages waiting for the dispatch worker, each in a slot. */
+    private final MpscRingQueue<ByteBuffer> queue;
+
+    /**
+     * The slots not in use. The dispatch worker and dropping senders put them back, senders
+     * take them while synchronized on it, since the queue has a single consumer.
+     */
+    private final MpscRingQueue<ByteBuffer> freeSlots;
+
+    /** The dispatch worker thread, once started. */
+    private volatile Thread worker;
+
+    /** The dispatch worker while it is parked waiting for a message, otherwise null. */
+    private volatile Thread waitingWorker;
+
+    /** The number of messages received, dropped or not. */
+    private final AtomicLong received = new AtomicLong();
+
+    /** The number of messages dropped because the queue was full. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The number of messages dropped and not yet logged. */
+    private final AtomicLong unreported = new AtomicLong();
+
+    /** The number of messages handled by the dispatch worker. */
+    private final AtomicLong processed = new AtomicLong();
+
+    /** The number of messages the dispatch worker could not read. */
+    private final AtomicLong malformed = new AtomicLong();
+
+    /** The most messages that were waiting at once. */
+    private volatile int maxDepth;
+
+    /**
+     * Open the channel. Nothing is received until the threads are started.
+     * @param scheduler the scheduler the messages are for
+     * @param port the port to listen on, 0 for any free port
+     * @param capacity the most messages waiting for the dispatch worker
+     * @throws IOException if the channel cannot be opened
+     */
+    public SchedulerIngress(Scheduler scheduler, int port, int capacity) throws IOException {
+        this.scheduler = scheduler;
+        queue = new MpscRingQueue<>(capacity);
+        // Every slot is either queued, in the worker's batch or free
+        freeSlots = new MpscRingQueue<>(queue.capacity() + Config.INGRESS_BATCH_SIZE);
+        channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, Config.INGRESS_SOCKET_BUFFER);
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start the reader and the dispatch worker, each on its own thread.
+     */
+    public void start() {
+        startWorker();
+        Threads.start("Scheduler Ingress Thread", this::runReader, true);
+    }
+
+    /**
+     * Start the dispatch worker on its own thread, for a caller that runs the reader itself.
+     */
+    public void startWorker() {
+        worker = Threads.start("Scheduler Dispatch Thread", this::runWorker, true);
+    }
+
+    /**
+     * Read datagrams into the queue until the channel is closed.
+     */
+    public void runReader() {
+        // Direct buffer, so the channel reads straight into it without an extra copy
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        try {
+            while (true) {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (sender == null) {
+                    continue;
+                }
+                buffer.flip();
+                submit(buffer);
+            }
+        } catch (ClosedChannelException e) {
+            // closed, stop reading
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add a message for the dispatch worker. Can be called by any thread.
+     * @param message the message, from position to limit. Copied, so the caller may reuse it.
+     * @return true if the message was queued, false if it was dropped because the queue is full
+     */
+    public boolean submit(ByteBuffer message) {
+        received.incrementAndGet();
+        ByteBuffer slot = takeSlot(message.remaining());
+        slot.put(message).flip();
+        if (!queue.offer(slot)) {
+            releaseSlot(slot);
+            dropped.incrementAndGet();
+            unreported.incrementAndGet();
+            return false;
+        }
+        int depth = queue.size();
+        if (depth > maxDepth) {
+            maxDepth = depth; // a racy high water mark is good enough
+        }
+        Thread waiting = waitingWorker;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+        return true;
+    }
+
+    /**
+     * Hand the queued messages to the scheduler until the thread is interrupted. Each batch
+     * updates the fleet state first, so the requests in it are dispatched on the newest view.
+     */
+    public void runWorker() {
+        ArrayList<ByteBuffer> batch = new ArrayList<>(Config.INGRESS_BATCH_SIZE);
+        ArrayList<ByteBuffer> requests = new ArrayList<>(Config.INGRESS_BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            if (queue.drainTo(batch, Config.INGRESS_BATCH_SIZE) == 0) {
+                waitingWorker = Thread.currentThread();
+                if (queue.isEmpty()) { // check again, a message may have come before waitingWorker was set
+                    LockSupport.park(this);
+                }
+                waitingWorker = null;
+                continue;
+            }
+            reportDropped();
+            for (ByteBuffer message : batch) {
+                try {
+                    if (ElevatorInfo.isElevatorInfo(message) || isBoardedOrCompleted(message)) {
+                        scheduler.receive(message);
+                    } else {
+                        requests.add(message);
+                    }
+                } catch (RuntimeException e) {
+                    malformed(e);
+                }
+            }
+            for (ByteBuffer message : requests) {
+                handle(message);
+            }
+            processed.addAndGet(batch.size());
+            for (ByteBuffer slot : batch) {
+                releaseSlot(slot); // the scheduler does not keep the messages
+            }
+            batch.clear();
+            requests.clear();
+        }
+    }
+
+    /**
+     * Stop reading and stop the dispatch worker after its current batch.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("IOException: " + e.getMessage());
+        }
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Get the port the channel listens on.
+     * @return the port
+     */
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the number of messages received, including the dropped ones.
+     * @return the number of messages
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Get the number of messages dropped because the queue was full.
+     * @return the number of messages
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Get the number of messages handed to the scheduler.
+     * @return the number of messages
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Get the number of messages the dispatch worker skipped because it could not read them.
+     * @return the number of messages
+     */
+    public long getMalformed() {
+        return malformed.get();
+    }
+
+    /**
+     * Get the number of messages waiting for the dispatch worker.
+     * @return the number of messages
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the most messages that were waiting at once.
+     * @return the number of messages
+     */
+    public int getMaxQueueDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Get the most messages that can wait for the dispatch worker.
+     * @return the capacity of the queue
+     */
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    /**
+     * Take a free slot for a message, or make one until the pool is warm.
+     * @param size the size of the message
+     * @return an empty slot with room for the message
+     */
+    private ByteBuffer takeSlot(int size) {
+        if (size > SLOT_SIZE) {
+            return ByteBuffer.allocate(size); // larger than any datagram, not pooled
+        }
+        ByteBuffer slot;
+        synchronized (freeSlots) {
+            slot = freeSlots.poll();
+        }
+        return slot != null ? slot : ByteBuffer.allocate(SLOT_SIZE);
+    }
+
+    /**
+     * Put a slot back in the pool, once its message is handled or dropped.
+     * @param slot the slot
+     */
+    private void releaseSlot(ByteBuffer slot) {
+        if (slot.capacity() == SLOT_SIZE) {
+            slot.clear();
+            freeSlots.offer(slot);
+        }
+    }
+
+    /**
+     * Check if a message is a request boarded or completed by the ElevatorSubsystem.
+     */
+    private static boolean isBoardedOrCompleted(ByteBuffer message) {
+        ByteBuffer payload = ReliableChannel.payload(message);
+        return ElevatorRequestCodec.isProcessed(payload) || ElevatorRequestCodec.isLoaded(payload);
+    }
+
+    /**
+     * Give one message to the scheduler, so a bad message does not stop the worker.
+     */
+    private void handle(ByteBuffer message) {
+        try {
+            scheduler.receive(message);
+        } catch (RuntimeException e) {
+            malformed(e);
+        }
+    }
+
+    /**
+     * Count a message that could not be read or handled, and skip it.
+     */
+    private void malformed(RuntimeException e) {
+        malformed.incrementAndGet();
+        System.err.println("Ignoring malformed message: " + e);
+    }
+
+    /**
+     * Log the messages dropped since the last report.
+     */
+    private void reportDropped() {
+        long lost = unreported.getAndSet(0);
+        if (lost > 0) {
+            Log.print("Scheduler: %d messages dropped, the ingress queue was full", lost);
+        }
+    }
+}
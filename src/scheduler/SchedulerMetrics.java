@@ -0,0 +1,80 @@
+package scheduler;
+
+import common.Metrics;
+import floor.ElevatorRequest;
+
+/**
+ * The metrics of the Scheduler: the requests received, dispatched and completed, and how long
+ * dispatching them takes. Schedulers registering into the same Metrics share the counters.
+ */
+final class SchedulerMetrics {
+
+    /** The registry the metrics are in. */
+    private final Metrics metrics;
+
+    /** Counts the new requests received from the FloorSubsystem. */
+    final Metrics.Counter received;
+
+    /** Counts the requests sent to an elevator. */
+    final Metrics.Counter dispatched;
+
+    /** Counts the requests no working elevator could take. */
+    final Metrics.Counter unassigned;
+
+    /** Counts the requests completed by the ElevatorSubsystem. */
+    final Metrics.Counter completed;
+
+    /** The Clock time from receiving a request to assigning it, in milliseconds. */
+    final Metrics.Summary dispatchLatency;
+
+    /** The time the dispatch strategy takes to choose, in nanoseconds. */
+    final Metrics.Summary strategyTime;
+
+    /**
+     * Create the metrics of a Scheduler.
+     * @param metrics the registry to register them in
+     */
+    SchedulerMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        received = metrics.counter("scheduler_requests_received_total",
+                "New requests received by the scheduler.");
+        dispatched = metrics.counter("scheduler_requests_dispatched_total",
+                "Requests assigned and sent to an elevator.");
+        unassigned = metrics.counter("scheduler_requests_unassigned_total",
+                "Requests dropped because no elevator was working.");
+        completed = metrics.counter("scheduler_requests_completed_total",
+                "Requests the ElevatorSubsystem reported completed.");
+        dispatchLatency = metrics.summary("scheduler_dispatch_latency_seconds",
+                "Time from the scheduler receiving a request to assigning it to an elevator.", 1e-3);
+        strategyTime = metrics.summary("scheduler_strategy_seconds",
+                "Time the dispatch strategy takes to choose elevators for a request or a batch.", 1e-9);
+    }
+
+    /**
+     * Count a request sent to an elevator and record how long it waited to be assigned.
+     * @param request the request, stamped ASSIGNED
+     */
+    void dispatched(ElevatorRequest request) {
+        dispatched.increment();
+        long latency = request.getLatency(ElevatorRequest.Stage.RECEIVED, ElevatorRequest.Stage.ASSIGNED);
+        if (latency != ElevatorRequest.NOT_REACHED) {
+            dispatchLatency.record(latency);
+        }
+    }
+
+    /**
+     * Register the gauges and counters of a Scheduler's network ingress, replacing those of the
+     * previous one.
+     * @param ingress the ingress
+     */
+    void register(SchedulerIngress ingress) {
+        metrics.gauge("scheduler_ingress_queue_depth", "Messages waiting for the scheduler's dispatch worker.",
+                ingress::getQueueDepth);
+        metrics.gauge("scheduler_ingress_queue_capacity", "Most messages that can wait for the dispatch worker.",
+                ingress::getCapacity);
+        metrics.counter("scheduler_ingress_received_total", "Messages received by the scheduler, dropped or not.",
+                ingress::getReceived);
+        metrics.counter("scheduler_ingress_dropped_total", "Messages dropped because the ingress queue was full.",
+                ingress::getDropped);
+    }
+}
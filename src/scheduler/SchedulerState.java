@@ -3,6 +3,6 @@ package scheduler;
 import floor.ElevatorRequest;
 
 public interface SchedulerState {
-    void processRequest(Scheduler scheduler, byte[] requestData);
+    void processRequest(Scheduler scheduler, ElevatorRequest request);
     void processRequest(Scheduler scheduler, ElevatorRequest request, int elevatorID);
 }
\ No newline at end of file
@@ -7,12 +7,22 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import common.Config;
+import elevator.Elevator;
+import elevator.ElevatorInfo;
 import scheduler.AwaitingRequestState;
+import scheduler.BatchDispatchStrategy;
+import scheduler.DestinationDispatchStrategy;
+import scheduler.EtaDispatchStrategy;
+import scheduler.FleetSnapshot;
+import scheduler.FleetStateCache;
+import scheduler.NearestCarDispatchStrategy;
 import scheduler.ProcessingRequestState;
 import scheduler.Scheduler;
 
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -86,25 +96,179 @@ public class SchedulerTest {
         assertEquals(requestQueue.get(0).getFloorNumber(), 2);
     }
 
-    // @Test
-    // public void testSelectElevator() {
-    //     // Mock elevator information
-    //     String mockElevatorInfo = "1;IDLE;3;UP\n2;TRANSPORTING;5;DOWN\n3;IDLE;2;UP\n";
+    /**
+     * Test that the elevator is chosen from the fleet snapshot
+     */
+    @Test
+    public void testSelectElevator() {
+        // Mock elevator information
+        FleetSnapshot fleet = new FleetSnapshot.Builder()
+                .add(1, Elevator.State.IDLE, 3, ElevatorRequest.ButtonDirection.UP, 0, 0)
+                .add(2, Elevator.State.TRANSPORTING, 9, ElevatorRequest.ButtonDirection.DOWN, 1, 1)
+                .add(3, Elevator.State.IDLE, 2, ElevatorRequest.ButtonDirection.UP, 0, 0)
+                .add(4, Elevator.State.FAULT, 6, ElevatorRequest.ButtonDirection.UP, 0, 0)
+                .build();
+
+        // Create a ProcessingRequestState instance for testing
+        ProcessingRequestState processingRequestState = new ProcessingRequestState();
+        Scheduler scheduler = new Scheduler();
+
+        // Test case 1: a request going up from floor 3 should use elevator 1 since it is idle on floor 3
+        ElevatorRequest mockRequest1 = new ElevatorRequest(LocalTime.now(), 3, ElevatorRequest.ButtonDirection.UP, 10);
+        assertEquals(1, processingRequestState.selectElevator(scheduler, mockRequest1, fleet));
+
+        // Test case 2: a request going down from floor 7 should use elevator 2 since it is passing floor 7 going down
+        FleetSnapshot busy = new FleetSnapshot.Builder()
+                .add(1, Elevator.State.TRANSPORTING, 1, ElevatorRequest.ButtonDirection.UP, 1, 1)
+                .add(2, Elevator.State.TRANSPORTING, 9, ElevatorRequest.ButtonDirection.DOWN, 1, 1)
+                .add(4, Elevator.State.FAULT, 7, ElevatorRequest.ButtonDirection.UP, 0, 0)
+                .build();
+        ElevatorRequest mockRequest2 = new ElevatorRequest(LocalTime.now(), 7, ElevatorRequest.ButtonDirection.DOWN, 2);
+        assertEquals(2, processingRequestState.selectElevator(scheduler, mockRequest2, busy));
+
+        // Test case 3: no working elevator
+        FleetSnapshot broken = new FleetSnapshot.Builder()
+                .add(4, Elevator.State.FAULT, 7, ElevatorRequest.ButtonDirection.UP, 0, 0)
+                .build();
+        assertEquals(-1, processingRequestState.selectElevator(scheduler, mockRequest2, broken));
+    }
+
+    /**
+     * Test that the ETA strategy accounts for committed stops and capacity
+     */
+    @Test
+    public void testEtaDispatch() {
+        // Elevator 0 is close but has three stops to make first, elevator 1 is further away and free
+        FleetSnapshot fleet = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.TRANSPORTING, 2, ElevatorRequest.ButtonDirection.UP, 3, 4)
+                .commit(1, 3, true)
+                .commit(1, 4, true)
+                .commit(1, 5, true)
+                .commit(3, 6, false)
+                .add(1, Elevator.State.IDLE, 12, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        ElevatorRequest request = new ElevatorRequest(LocalTime.now(), 6, ElevatorRequest.ButtonDirection.UP, 8);
+        assertEquals(0, new NearestCarDispatchStrategy().selectElevator(request, fleet));
+        assertEquals(1, new EtaDispatchStrategy().selectElevator(request, fleet));
 
-    //     // Create a ProcessingRequestState instance for testing
-    //     ProcessingRequestState processingRequestState = new ProcessingRequestState();
+        // A full elevator is skipped even if it is on the floor
+        FleetSnapshot full = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.TRANSPORTING, 6, ElevatorRequest.ButtonDirection.UP, 5, 5)
+                .commit(0, 7, true).commit(0, 7, true).commit(0, 7, true).commit(0, 7, true).commit(0, 7, true)
+                .add(1, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        assertEquals(1, new EtaDispatchStrategy().selectElevator(request, full));
 
-    //     // Test case 1: Create a mock request going up from floor 3 to 10, so it should use elevator id number 1 since elevator 1 is in floor 3
-    //     ElevatorRequest mockRequest1 = new ElevatorRequest(LocalTime.now(),3, ElevatorRequest.ButtonDirection.UP,10);
-    //     int selectedElevatorId1 = processingRequestState.selectElevator(scheduler, mockRequest1, mockElevatorInfo);
-    //     assertEquals(1, selectedElevatorId1); // Elevator 1 is closest and idle
+        // A request for the floor the elevator is on does not finish its other requests
+        FleetSnapshot sameFloor = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.IDLE, 10, ElevatorRequest.ButtonDirection.NONE, 0, 2)
+                .commit(10, 10, false)
+                .commit(10, 20, false)
+                .add(1, Elevator.State.IDLE, 13, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        ElevatorRequest between = new ElevatorRequest(LocalTime.now(), 12, ElevatorRequest.ButtonDirection.UP, 14);
+        assertEquals(1, new EtaDispatchStrategy().selectElevator(between, sameFloor));
 
-    //     // Test case 2: Create a mock request going down from floor 6 to 2, so it should use elevator id number 2 since elevator 2 is in floor 5 and going down
-    //     ElevatorRequest mockRequest2 = new ElevatorRequest(LocalTime.now(),6, ElevatorRequest.ButtonDirection.DOWN,2);
-    //     int selectedElevatorId2 = processingRequestState.selectElevator(scheduler, mockRequest2, mockElevatorInfo);
-    //     assertEquals(2, selectedElevatorId2); // Elevator 2 is closest and idle
+        // Committed requests are tracked by the cache until they complete
+        FleetStateCache cache = new FleetStateCache();
+        cache.update(new ElevatorInfo(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0, 1), 0);
+        cache.assign(0, request);
+        assertEquals(1, cache.snapshot().getCommittedCount(0));
+        assertFalse(cache.snapshot().isCommittedPickedUp(0));
+        // Passing the floor is not a pickup, only the passenger boarding is
+        cache.update(new ElevatorInfo(0, Elevator.State.TRANSPORTING, 6, ElevatorRequest.ButtonDirection.UP, 0, 1, 2), 0);
+        assertFalse(cache.snapshot().isCommittedPickedUp(0));
+        ElevatorRequest boarded = new ElevatorRequest(request.getBytes());
+        boarded.setLoaded();
+        assertTrue(cache.board(boarded));
+        assertFalse(cache.board(boarded));
+        assertTrue(cache.snapshot().isCommittedPickedUp(0));
+        assertTrue(cache.complete(request));
+        assertEquals(0, cache.snapshot().getCommittedCount(0));
 
-    // }
+        // Snapshots hold the oldest requests of an overloaded elevator only
+        for (int k = 0; k < Config.FLEET_SNAPSHOT_STOPS + 10; k++) {
+            cache.assign(0, new ElevatorRequest(LocalTime.of(14, 0), k % 6, ElevatorRequest.ButtonDirection.UP, 7));
+        }
+        assertEquals(Config.FLEET_SNAPSHOT_STOPS, cache.snapshot().getCommittedCount(0));
+    }
+
+    /**
+     * Test that destination dispatch groups passengers by destination zone
+     */
+    @Test
+    public void testDestinationDispatch() {
+        FleetSnapshot fleet = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .add(1, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        LocalTime now = LocalTime.now();
+        List<ElevatorRequest> lobby = List.of(
+                new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 10),
+                new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 4),
+                new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 11),
+                new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 5));
+        int[] cars = new DestinationDispatchStrategy().assignBatch(lobby, fleet);
+
+        // Floors 4 and 5 share a car, floors 10 and 11 share the other
+        assertEquals(cars[1], cars[3]);
+        assertEquals(cars[0], cars[2]);
+        assertNotEquals(cars[0], cars[1]);
+
+        // A group larger than the free capacity is split
+        List<ElevatorRequest> crowd = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            crowd.add(new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 6));
+        }
+        cars = new DestinationDispatchStrategy().assignBatch(crowd, fleet);
+        int onFirst = 0;
+        for (int car : cars) {
+            assertNotEquals(-1, car);
+            if (car == cars[0]) {
+                onFirst++;
+            }
+        }
+        assertEquals(5, onFirst);
+    }
+
+    /**
+     * Test that batch dispatch assigns simultaneous requests together
+     */
+    @Test
+    public void testBatchDispatch() {
+        FleetSnapshot fleet = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .add(1, Elevator.State.IDLE, 5, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        LocalTime now = LocalTime.now();
+        List<ElevatorRequest> calls = List.of(
+                new ElevatorRequest(now, 1, ElevatorRequest.ButtonDirection.UP, 10),
+                new ElevatorRequest(now, 2, ElevatorRequest.ButtonDirection.UP, 3));
+
+        // One at a time both calls go to elevator 0, together the second is cheaper on elevator 1
+        assertArrayEquals(new int[] {0, 0}, new EtaDispatchStrategy().assignBatch(calls, fleet));
+        assertArrayEquals(new int[] {0, 1}, new BatchDispatchStrategy().assignBatch(calls, fleet));
+
+        // No elevator takes more than its free places
+        List<ElevatorRequest> crowd = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            crowd.add(new ElevatorRequest(now, 0, ElevatorRequest.ButtonDirection.UP, 6));
+        }
+        int[] cars = new BatchDispatchStrategy().assignBatch(crowd, fleet);
+        int onFirst = 0;
+        for (int car : cars) {
+            if (car == 0) {
+                onFirst++;
+            }
+        }
+        assertEquals(5, onFirst);
+
+        // Requests that fit nowhere get the ETA choice, and none without a working elevator
+        FleetSnapshot broken = new FleetSnapshot.Builder()
+                .add(0, Elevator.State.FAULT, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0)
+                .build();
+        assertArrayEquals(new int[] {-1, -1}, new BatchDispatchStrategy().assignBatch(calls, broken));
+    }
 
     /**
      * Test Scheduler state transitions
@@ -138,5 +302,39 @@ public class SchedulerTest {
 
     }
 
-}
+    /**
+     * Test that the fleet state cache keeps the newest pushed state and tracks staleness
+     */
+    @Test
+    public void testFleetStateCache() {
+        FleetStateCache cache = new FleetStateCache();
+        assertFalse(cache.isFresh(0, 3000)); // nothing known yet
 
+        assertTrue(cache.update(new ElevatorInfo(1, Elevator.State.TRANSPORTING, 4, ElevatorRequest.ButtonDirection.UP, 2, 3, 5), 1000));
+        assertTrue(cache.update(new ElevatorInfo(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0, 1), 1000));
+
+        // An older push arriving late is ignored
+        assertFalse(cache.update(new ElevatorInfo(1, Elevator.State.IDLE, 2, ElevatorRequest.ButtonDirection.NONE, 0, 0, 4), 1500));
+        ElevatorInfo[] info = cache.getElevatorsInfo();
+        assertEquals(2, info.length);
+        assertEquals(0, info[0].getElevatorId());
+        assertEquals(4, info[1].getCurrentFloor());
+        assertEquals(Elevator.State.TRANSPORTING, info[1].getCurrentState());
+        assertEquals(2, cache.getVersion());
+
+        FleetSnapshot snapshot = cache.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(1, snapshot.indexOf(1));
+        assertEquals(3, snapshot.getQueueDepth(1));
+        assertEquals(ElevatorRequest.ButtonDirection.UP, snapshot.getDirection(1));
+
+        // A heartbeat with the same version keeps the view fresh without changing it
+        assertTrue(cache.isFresh(3500, 3000));
+        assertFalse(cache.isFresh(4500, 3000));
+        assertFalse(cache.update(new ElevatorInfo(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE, 0, 0, 1), 4000));
+        assertFalse(cache.update(new ElevatorInfo(1, Elevator.State.TRANSPORTING, 4, ElevatorRequest.ButtonDirection.UP, 2, 3, 5), 4000));
+        assertTrue(cache.isFresh(4500, 3000));
+        assertEquals(2, cache.getVersion());
+    }
+}
@@ -0,0 +1,115 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import common.BuildingConfig;
+import common.Metrics;
+import common.SimulationContext;
+import floor.RequestLatency;
+import main.BatchRunner;
+import org.junit.jupiter.api.Test;
+import scheduler.EtaDispatchStrategy;
+
+/**
+ * JUnit tests for the BatchRunner class.
+ */
+public class TestBatchRunner {
+
+    /**
+     * Every request of the input file is completed, in virtual time.
+     */
+    @Test
+    void testRunInput() throws InterruptedException {
+        BatchRunner.Result result = BatchRunner.run("res/input.csv", 3, EtaDispatchStrategy::new);
+        assertEquals(3, result.getRequests());
+        assertEquals(3, result.getCompleted());
+        for (long wait : result.getWaits()) {
+            assertTrue(wait >= 0);
+        }
+        for (long ride : result.getRides()) {
+            assertTrue(ride > 0);
+        }
+        assertTrue(result.getFloorsMoved() > 0);
+        assertTrue(result.getSimulatedMillis() > 0);
+        assertTrue(result.toJson().contains("\"completed\":3"));
+    }
+
+    /**
+     * Every completed request is recorded at every stage of its lifecycle.
+     */
+    @Test
+    void testRequestLatency() throws InterruptedException {
+        RequestLatency latency = new RequestLatency();
+        BatchRunner.Result result = SimulationContext.current().withLatency(latency)
+                .call(() -> BatchRunner.run("res/input.csv", 3, EtaDispatchStrategy::new));
+        for (RequestLatency.Interval interval : RequestLatency.Interval.values()) {
+            assertEquals(3, latency.getHistogram(interval).getTotalCount(), interval.toString());
+        }
+        long hallWait = latency.getHistogram(RequestLatency.Interval.HALL_WAIT).getMax();
+        long endToEnd = latency.getHistogram(RequestLatency.Interval.END_TO_END).getMax();
+        assertTrue(hallWait < endToEnd);
+        long[] waits = result.getWaits().clone();
+        Arrays.sort(waits);
+        assertEquals(waits[waits.length - 1], hallWait);
+        long[] rides = result.getRides().clone();
+        Arrays.sort(rides);
+        assertEquals(rides[rides.length - 1], latency.getHistogram(RequestLatency.Interval.RIDE).getMax());
+        assertTrue(latency.report().contains("END_TO_END"));
+        assertNotSame(latency, RequestLatency.get());
+    }
+
+    /**
+     * Sum the samples of a metric family over every label.
+     */
+    private static double sum(Map<String, Double> snapshot, String name) {
+        double sum = 0;
+        for (Map.Entry<String, Double> sample : snapshot.entrySet()) {
+            if (sample.getKey().equals(name) || sample.getKey().startsWith(name + "{")) {
+                sum += sample.getValue();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The elevators and the scheduler count their work in the process' metrics.
+     */
+    @Test
+    void testFleetMetrics() throws InterruptedException {
+        Map<String, Double> before = Metrics.get().snapshot();
+        BatchRunner.Result result = BatchRunner.run("res/input.csv", 3, EtaDispatchStrategy::new);
+        Map<String, Double> after = Metrics.get().snapshot();
+
+        assertEquals(result.getFloorsMoved(), sum(after, "elevator_floors_moved_total") - sum(before, "elevator_floors_moved_total"));
+        assertEquals(3, sum(after, "scheduler_requests_dispatched_total") - sum(before, "scheduler_requests_dispatched_total"));
+        assertEquals(3, sum(after, "scheduler_dispatch_latency_seconds_count") - sum(before, "scheduler_dispatch_latency_seconds_count"));
+        // every passenger gets on and off
+        assertTrue(sum(after, "elevator_door_cycles_total") - sum(before, "elevator_door_cycles_total") >= 6);
+        assertTrue(sum(after, "elevator_trips_total") > sum(before, "elevator_trips_total"));
+        assertEquals(0, sum(after, "elevator_queue_depth"));
+        double utilisation = sum(after, "elevator_utilisation");
+        assertTrue(utilisation > 0 && utilisation <= 3, "utilisation " + utilisation);
+    }
+
+    /**
+     * A tall building with a large fleet sizes every subsystem from the BuildingConfig, and
+     * the configuration is put back after the run.
+     */
+    @Test
+    void testRunLargeBuilding() throws InterruptedException {
+        BuildingConfig previous = BuildingConfig.get();
+        BuildingConfig.set(previous.withFloors(100));
+        try {
+            BatchRunner.Result result = BatchRunner.run("res/input.csv", 24, EtaDispatchStrategy::new);
+            assertEquals(3, result.getCompleted());
+            assertTrue(result.toJson().contains("\"elevators\":24"));
+            assertEquals(100, BuildingConfig.get().getFloors());
+            assertEquals(previous.getElevators(), BuildingConfig.get().getElevators());
+        } finally {
+            BuildingConfig.set(previous);
+        }
+    }
+}
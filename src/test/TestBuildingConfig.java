@@ -0,0 +1,54 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.BuildingConfig;
+import common.Config;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit tests for the BuildingConfig class.
+ */
+public class TestBuildingConfig {
+
+    /**
+     * The copies change one dimension and keep the other.
+     */
+    @Test
+    void testWith() {
+        BuildingConfig config = new BuildingConfig(22, 4);
+        BuildingConfig tower = config.withFloors(120).withElevators(24);
+        assertEquals(120, tower.getFloors());
+        assertEquals(24, tower.getElevators());
+        assertEquals(22, config.getFloors());
+        assertEquals(4, config.getElevators());
+        assertTrue(tower.hasFloor(0));
+        assertTrue(tower.hasFloor(119));
+        assertFalse(tower.hasFloor(120));
+        assertFalse(tower.hasFloor(-1));
+        assertEquals(Config.MAX_PASSENGERS, tower.getCapacity());
+        assertEquals(8, tower.withCapacity(8).getCapacity());
+        assertEquals(120, tower.withCapacity(8).getFloors());
+    }
+
+    /**
+     * A building needs two floors and cannot have a negative fleet.
+     */
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new BuildingConfig(1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new BuildingConfig(22, -1));
+        assertDoesNotThrow(() -> new BuildingConfig(22, 0));
+    }
+
+    /**
+     * Counts are read from the argument after the flag.
+     */
+    @Test
+    void testParseCount() {
+        String[] args = {"--floors", "100", "--elevators"};
+        assertEquals(100, BuildingConfig.parseCount(args, 0));
+        assertThrows(IllegalArgumentException.class, () -> BuildingConfig.parseCount(args, 2));
+        assertThrows(IllegalArgumentException.class, () -> BuildingConfig.parseCount(new String[] {"--floors", "tall"}, 0));
+    }
+}
@@ -3,11 +3,17 @@ package test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collections;
 
+import common.Clock;
+import common.VirtualClock;
+import floor.CSVParser;
 import floor.ElevatorRequest;
+import floor.ElevatorRequestCodec;
 import floor.ElevatorRequest.ButtonDirection;
 import static test.Misc.assertWait;
 
@@ -47,4 +53,108 @@ public class TestElevatorRequest {
         assertWait(() -> er4.waitForTime(baseline), 5, 6);
         assertWait(() -> er5.waitForTime(baseline), 9, 10);
     }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        ElevatorRequest er = new ElevatorRequest(LocalTime.of(14, 15, 35, 1000000), 7, ButtonDirection.DOWN, 2);
+        er.addFault(CSVParser.ElevatorFault.DOOR_NOT_CLOSE);
+        er.setLoaded();
+
+        // Encode after some other data to check the codec honours the buffer position
+        ByteBuffer buffer = ByteBuffer.allocate(ElevatorRequestCodec.SIZE + 8);
+        buffer.putInt(42);
+        ElevatorRequestCodec.encode(er, buffer);
+        buffer.putInt(3);
+        assertEquals(ElevatorRequestCodec.SIZE + 8, buffer.position());
+
+        buffer.flip();
+        buffer.getInt();
+        assertTrue(ElevatorRequestCodec.isBinary(buffer));
+        assertFalse(ElevatorRequestCodec.isProcessed(buffer));
+        ElevatorRequest decoded = ElevatorRequestCodec.decode(buffer);
+        assertEquals(3, buffer.getInt());
+
+        assertEquals(LocalTime.of(14, 15, 35, 1000000), decoded.getTime());
+        assertEquals(7, decoded.getFloorNumber());
+        assertEquals(ButtonDirection.DOWN, decoded.getButtonDirection());
+        assertEquals(2, decoded.getButtonId());
+        assertEquals("DOOR_NOT_CLOSE", decoded.getFault());
+        assertTrue(decoded.isLoaded());
+        assertFalse(decoded.isProcessed());
+        assertEquals(er.getId(), decoded.getId());
+        assertNotEquals(er.getId(), new ElevatorRequest(er.getTime(), 7, ButtonDirection.DOWN, 2).getId());
+        assertEquals(er.toString(), new ElevatorRequest(er.getBytes()).toString());
+    }
+
+    @Test
+    public void testCorruptBinaryRejected() {
+        ElevatorRequest er = new ElevatorRequest(LocalTime.of(9, 0), 3, ButtonDirection.UP, 5);
+        er.addFault(CSVParser.ElevatorFault.DOOR_NOT_OPEN);
+        byte[] data = er.getBytes();
+
+        byte[] badDirection = data.clone();
+        badDirection[3] = 9;
+        assertThrows(IllegalArgumentException.class, () -> ElevatorRequestCodec.decode(ByteBuffer.wrap(badDirection)));
+        byte[] badFault = data.clone();
+        badFault[4] = 120;
+        assertThrows(IllegalArgumentException.class, () -> ElevatorRequestCodec.decode(ByteBuffer.wrap(badFault)));
+        byte[] badTime = data.clone();
+        ByteBuffer.wrap(badTime).putLong(14, -1);
+        assertThrows(IllegalArgumentException.class, () -> ElevatorRequestCodec.decode(ByteBuffer.wrap(badTime)));
+        assertEquals(er.toString(), ElevatorRequestCodec.decode(ByteBuffer.wrap(data)).toString());
+    }
+
+    @Test
+    public void testTextFormatStillAccepted() {
+        byte[] text = "14:15:05;UP;2;4;0;1;BAD_REQUEST".getBytes(StandardCharsets.UTF_8);
+        ElevatorRequest er = ElevatorRequestCodec.decode(ByteBuffer.wrap(text));
+
+        assertFalse(ElevatorRequestCodec.isBinary(text));
+        assertTrue(ElevatorRequestCodec.isProcessed(ByteBuffer.wrap(text)));
+        assertEquals(LocalTime.of(14, 15, 5), er.getTime());
+        assertEquals(ButtonDirection.UP, er.getButtonDirection());
+        assertEquals(2, er.getFloorNumber());
+        assertEquals(4, er.getButtonId());
+        assertEquals("BAD_REQUEST", er.getFault());
+        assertEquals(er.toString(), new ElevatorRequest(text).toString());
+
+        for (String bad : new String[] {"1;2;3;4;5;6;7;8", "14:15:05;UP;two;4;0;1"}) {
+            byte[] badText = bad.getBytes(StandardCharsets.UTF_8);
+            assertThrows(IllegalArgumentException.class, () -> ElevatorRequestCodec.decode(ByteBuffer.wrap(badText)));
+            assertThrows(IllegalArgumentException.class, () -> ElevatorRequestCodec.isProcessed(ByteBuffer.wrap(badText)));
+        }
+    }
+
+    @Test
+    public void testLifecycleTimestamps() throws InterruptedException {
+        Clock previous = Clock.get();
+        VirtualClock clock = new VirtualClock();
+        Clock.set(clock);
+        try {
+            ElevatorRequest er = new ElevatorRequest(LocalTime.of(14, 15), 3, ButtonDirection.UP, 9);
+            assertEquals(ElevatorRequest.NOT_REACHED, er.getTimestamp(ElevatorRequest.Stage.EMITTED));
+            assertEquals(ElevatorRequest.NOT_REACHED, er.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.RECEIVED));
+
+            er.stamp(ElevatorRequest.Stage.EMITTED);
+            clock.sleep(5);
+            er.stamp(ElevatorRequest.Stage.RECEIVED);
+            er.stamp(ElevatorRequest.Stage.ASSIGNED);
+            clock.sleep(10);
+            er.stamp(ElevatorRequest.Stage.ASSIGNED); // a second assignment does not count
+            er.setLoaded();
+            clock.sleep(20);
+            er.setProcessed();
+
+            // The timestamps travel with the request
+            ElevatorRequest decoded = new ElevatorRequest(er.getBytes());
+            assertEquals(5, decoded.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.RECEIVED));
+            assertEquals(0, decoded.getLatency(ElevatorRequest.Stage.RECEIVED, ElevatorRequest.Stage.ASSIGNED));
+            assertEquals(15, decoded.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.PICKED_UP));
+            assertEquals(20, decoded.getLatency(ElevatorRequest.Stage.PICKED_UP, ElevatorRequest.Stage.DROPPED_OFF));
+            assertEquals(35, decoded.getLatency(ElevatorRequest.Stage.EMITTED, ElevatorRequest.Stage.DROPPED_OFF));
+            assertTrue(decoded.isProcessed());
+        } finally {
+            Clock.set(previous);
+        }
+    }
 }
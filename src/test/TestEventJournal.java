@@ -0,0 +1,135 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.EventJournal;
+import common.JournalReader;
+import main.BatchRunner;
+import main.Replay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import scheduler.EtaDispatchStrategy;
+import scheduler.NearestCarDispatchStrategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * JUnit tests for the EventJournal, JournalReader and Replay classes.
+ */
+public class TestEventJournal {
+
+    /** The journal files of the test. */
+    private Path file;
+    private Path replayFile;
+
+    /**
+     * Delete the journal files after each test.
+     */
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        EventJournal.set(null);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+        if (replayFile != null) {
+            Files.deleteIfExists(replayFile);
+        }
+    }
+
+    /**
+     * Events are read back in order across several mapped segments, and closing cuts the file
+     * to the records written.
+     */
+    @Test
+    void testAppendAndRead() throws IOException {
+        file = Files.createTempFile("test", ".journal");
+        try (EventJournal journal = EventJournal.open(file, 256)) {
+            assertTrue(journal.isEnabled());
+            for (int i = 0; i < 100; i++) {
+                journal.append(EventJournal.Type.STOP, i % 4, 0, i, 2);
+            }
+            journal.append(EventJournal.Type.HALL_CALL, -1, 1, 7, 3, 2, 51305000000000L);
+            assertEquals(101, journal.getCount());
+        }
+        assertEquals(EventJournal.HEADER_SIZE + 101L * EventJournal.RECORD_SIZE, Files.size(file));
+
+        List<JournalReader.Entry> entries = JournalReader.readAll(file);
+        assertEquals(101, entries.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(EventJournal.Type.STOP, entries.get(i).getType());
+            assertEquals(i % 4, entries.get(i).getElevator());
+            assertEquals(i, entries.get(i).getFloor());
+            assertEquals(-1, entries.get(i).getTime());
+        }
+        JournalReader.Entry call = entries.get(100);
+        assertEquals(EventJournal.Type.HALL_CALL, call.getType());
+        assertEquals(-1, call.getElevator());
+        assertEquals(1, call.getCode());
+        assertEquals(7, call.getFloor());
+        assertEquals(3, call.getValue());
+        assertEquals(2, call.getExtra());
+        assertEquals(51305000000000L, call.getTime());
+    }
+
+    /**
+     * The records of a journal that was never closed, as after a crash, are read up to the
+     * last one written, and the disabled journal drops events.
+     */
+    @Test
+    void testUnclosedJournal() throws IOException {
+        file = Files.createTempFile("test", ".journal");
+        EventJournal journal = EventJournal.open(file);
+        journal.append(EventJournal.Type.FAULT, 1, 5, 3, 0);
+        journal.append(EventJournal.Type.ELEVATOR_STATE, 1, 2, 3, 0);
+        journal.flush();
+        try {
+            List<JournalReader.Entry> entries = JournalReader.readAll(file);
+            assertEquals(2, entries.size());
+            assertEquals(EventJournal.Type.ELEVATOR_STATE, entries.get(1).getType());
+        } finally {
+            journal.close();
+        }
+
+        EventJournal disabled = EventJournal.get();
+        assertFalse(disabled.isEnabled());
+        disabled.append(EventJournal.Type.STOP, 0, 0, 1, 1);
+        assertEquals(0, disabled.getCount());
+    }
+
+    /**
+     * A journaled batch run is reproduced by its replay, and a replay with another strategy
+     * is compared hall call by hall call.
+     */
+    @Test
+    void testReplay() throws IOException, InterruptedException {
+        file = Files.createTempFile("test", ".journal");
+        replayFile = Files.createTempFile("test", ".journal");
+        try (EventJournal journal = EventJournal.open(file)) {
+            EventJournal.set(journal);
+            BatchRunner.run("res/input.csv", 3, EtaDispatchStrategy::new);
+        } finally {
+            EventJournal.set(null);
+        }
+
+        List<Replay.Run> runs = Replay.split(JournalReader.readAll(file));
+        assertEquals(1, runs.size());
+        Replay.Run recorded = runs.get(0);
+        assertEquals(3, recorded.getElevators());
+        assertEquals(3, recorded.getHallCalls().size());
+
+        Replay.Run replayed = Replay.replay(recorded, null, replayFile);
+        Replay.Comparison same = Replay.compare(recorded, replayed);
+        assertTrue(same.isIdentical(), same.toString());
+        assertEquals(3, same.getAssignments());
+        assertEquals(recorded.getDecisions().size(), replayed.getDecisions().size());
+
+        Replay.Run other = Replay.replay(recorded, NearestCarDispatchStrategy::new, replayFile);
+        Replay.Comparison comparison = Replay.compare(recorded, other);
+        assertEquals(3, comparison.getAssignments());
+        assertEquals(3, other.getHallCalls().size());
+        assertEquals(1, other.getStrategy()); // journaled as the nearest car strategy
+    }
+}
@@ -0,0 +1,134 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.BuildingConfig;
+import common.Clock;
+import common.Metrics;
+import common.SimulationContext;
+import common.VirtualClock;
+import floor.TrafficGenerator;
+import main.BatchRunner;
+import main.ExperimentRunner;
+import org.junit.jupiter.api.Test;
+import scheduler.EtaDispatchStrategy;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * JUnit tests for the ExperimentRunner and SimulationContext classes.
+ */
+public class TestExperimentRunner {
+
+    private static final LocalTime START = LocalTime.of(8, 0);
+
+    private static final Duration LENGTH = Duration.ofMinutes(10);
+
+    /**
+     * A context's values are seen by the calling thread and the threads it starts, and the
+     * process values are back once the task ends.
+     */
+    @Test
+    void testContext() throws InterruptedException {
+        BuildingConfig process = BuildingConfig.get();
+        Clock processClock = Clock.get();
+        VirtualClock clock = new VirtualClock();
+        Metrics metrics = new Metrics();
+        SimulationContext context = SimulationContext.current().withConfig(new BuildingConfig(40, 6, 12))
+                .withClock(clock).withMetrics(metrics);
+
+        AtomicReference<BuildingConfig> seen = new AtomicReference<>();
+        AtomicReference<Clock> seenClock = new AtomicReference<>();
+        context.call(() -> {
+            assertEquals(12, BuildingConfig.get().getCapacity());
+            assertSame(metrics, Metrics.get());
+            Thread thread = new Thread(() -> {
+                seen.set(BuildingConfig.get());
+                seenClock.set(Clock.get());
+            });
+            thread.start();
+            thread.join();
+            return null;
+        });
+        assertEquals(40, seen.get().getFloors());
+        assertSame(clock, seenClock.get());
+        assertSame(process, BuildingConfig.get());
+        assertSame(processClock, Clock.get());
+        assertNotSame(metrics, Metrics.get());
+    }
+
+    /**
+     * Runs in parallel give the same results as the same runs one at a time, and their
+     * threads end with them.
+     */
+    @Test
+    void testParallelRunsMatchSequentialRuns() throws InterruptedException {
+        BuildingConfig building = new BuildingConfig(22, 3, 4);
+        ExperimentRunner.Configuration configuration = new ExperimentRunner.Configuration(building, "eta",
+                TrafficGenerator.Pattern.UP_PEAK, 6);
+        long[] seeds = {1, 2, 3, 4, 5, 6};
+        Set<Thread> before = Thread.getAllStackTraces().keySet(); // left alive by other tests
+
+        List<ExperimentRunner.Summary> summaries = new ExperimentRunner(4).run(List.of(configuration), seeds, START, LENGTH);
+        assertEquals(1, summaries.size());
+        ExperimentRunner.Summary summary = summaries.get(0);
+        assertEquals(0, summary.getFailed());
+        assertEquals(seeds.length, summary.getRuns().size());
+
+        for (int i = 0; i < seeds.length; i++) {
+            TrafficGenerator traffic = configuration.traffic(seeds[i]);
+            BatchRunner.Result alone = SimulationContext.current().withConfig(building)
+                    .call(() -> BatchRunner.run(traffic, START, LENGTH, 3, EtaDispatchStrategy::new));
+            BatchRunner.Result parallel = summary.getRuns().get(i);
+            assertEquals(alone.getRequests(), parallel.getRequests());
+            assertEquals(alone.getCompleted(), parallel.getCompleted());
+            assertEquals(alone.getFloorsMoved(), parallel.getFloorsMoved());
+            assertArrayEquals(alone.getWaits(), parallel.getWaits());
+        }
+        assertEquals(1.0, summary.getCompletedShare().getMean());
+        assertTrue(summary.getWaitMean().getLow() <= summary.getWaitMean().getHigh());
+
+        // The elevator, inbox and clock threads of the runs stop
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!simulationThreads(before).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of(), simulationThreads(before));
+    }
+
+    /**
+     * The confidence interval of a mean uses Student's t distribution.
+     */
+    @Test
+    void testEstimate() {
+        ExperimentRunner.Estimate estimate = ExperimentRunner.Estimate.of(new double[] {1, 2, 3, 4, 5});
+        assertEquals(5, estimate.getCount());
+        assertEquals(3.0, estimate.getMean(), 1e-12);
+        assertEquals(Math.sqrt(2.5), estimate.getStdDev(), 1e-12);
+        assertEquals(2.776 * Math.sqrt(2.5) / Math.sqrt(5), estimate.getHalfWidth(), 1e-9);
+        assertEquals(0, ExperimentRunner.Estimate.of(new double[] {7}).getHalfWidth());
+        assertTrue(Double.isNaN(ExperimentRunner.Estimate.of(new double[0]).getMean()));
+
+        assertThrows(IllegalArgumentException.class, () -> new ExperimentRunner.Configuration(
+                new BuildingConfig(22, 3), "fastest", TrafficGenerator.Pattern.LUNCH, 10));
+        assertThrows(IllegalArgumentException.class, () -> new BuildingConfig(22, 3, 0));
+    }
+
+    /**
+     * Get the names of the threads the systems of a simulation run on that were started after
+     * a set of threads was taken and are still alive.
+     */
+    private static List<String> simulationThreads(Set<Thread> before) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> !before.contains(thread) && thread.isAlive())
+                .map(Thread::getName)
+                .filter(name -> name.startsWith("Elevator ") || name.startsWith("Transport ")
+                        || name.equals("Virtual Clock Thread"))
+                .collect(Collectors.toList());
+    }
+}
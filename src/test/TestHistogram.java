@@ -0,0 +1,73 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Histogram;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit tests for the Histogram class.
+ */
+public class TestHistogram {
+
+    /**
+     * Small values are counted exactly.
+     */
+    @Test
+    void testExact() {
+        Histogram histogram = new Histogram(3_600_000, 3);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    /**
+     * Large values keep their significant digits.
+     */
+    @Test
+    void testPrecision() {
+        Histogram histogram = new Histogram(3_600_000, 3);
+        long[] values = {12_345, 250_000, 1_234_567, 3_599_999};
+        for (long value : values) {
+            // Alone, the value is reported exactly
+            Histogram single = new Histogram(3_600_000, 3);
+            single.record(value);
+            long reported = single.getValueAtPercentile(50);
+            assertEquals(value, reported); // the max bounds the only value
+            histogram.record(value);
+        }
+        assertEquals(3_599_999, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 250_000 && p50 <= 250_250, "p50 " + p50);
+        long p25 = histogram.getValueAtPercentile(25);
+        assertTrue(p25 >= 12_345 && p25 <= 12_358, "p25 " + p25);
+    }
+
+    /**
+     * Values above the highest trackable value are counted at it, but the max stays exact,
+     * and negative values count as 0.
+     */
+    @Test
+    void testOutOfRange() {
+        Histogram histogram = new Histogram(1000, 2);
+        histogram.record(-5);
+        histogram.record(5000);
+        assertEquals(0, histogram.getMin());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertTrue(histogram.getValueAtPercentile(100) >= 990);
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,73 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Transport;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JUnit tests for the in process Transport.
+ */
+public class TestInProcessTransport {
+
+    /**
+     * An in process peer receives the array that was sent, and messages past the size of its
+     * inbox wait in order rather than being dropped.
+     */
+    @Test
+    void testInboxHandsOverMessagesInOrder() throws Exception {
+        Transport transport = Transport.inProcess(4);
+        int count = 1000;
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1), done = new CountDownLatch(count);
+        try {
+            transport.bind(Transport.Peer.SCHEDULER, message -> {
+                started.countDown();
+                try {
+                    release.await(); // hold the inbox thread so the ring fills up
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(message.array());
+                done.countDown();
+            });
+            assertTrue(transport.isInProcess(Transport.Peer.SCHEDULER));
+            assertFalse(transport.isInProcess(Transport.Peer.ELEVATOR_SUBSYSTEM));
+
+            List<byte[]> sent = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                byte[] message = ByteBuffer.allocate(4).putInt(i).array();
+                sent.add(message);
+                transport.send(Transport.Peer.SCHEDULER, message);
+                if (i == 0) {
+                    assertTrue(started.await(5, TimeUnit.SECONDS));
+                }
+            }
+            byte[] buffer = {1, 2, 3, 4, 5, 6};
+            transport.send(Transport.Peer.SCHEDULER, buffer, 2); // copied, the buffer may be reused
+            release.countDown();
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < count; i++) {
+                assertSame(sent.get(i), received.get(i));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() <= count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            byte[] copy = received.get(count);
+            assertNotSame(buffer, copy);
+            assertArrayEquals(new byte[] {1, 2}, copy);
+        } finally {
+            release.countDown();
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.AsyncLogHandler;
+import common.Log;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * JUnit tests for the Log and AsyncLogHandler classes.
+ */
+public class TestLog {
+
+    /**
+     * Put the default level back after each test.
+     */
+    @AfterEach
+    public void restoreLevel() {
+        Log.setLevel(Level.INFO);
+    }
+
+    /**
+     * Collects the records written to it.
+     */
+    private static class ListHandler extends Handler {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void publish(LogRecord record) {
+            messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Arguments of a filtered message are never formatted.
+     */
+    @Test
+    void testFilteredMessageNotFormatted() {
+        int[] formatted = new int[1];
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                formatted[0]++;
+                return "argument";
+            }
+        };
+        Log.disable();
+        assertFalse(Log.isEnabled());
+        Log.print("disabled %s", argument);
+        Log.setLevel(Level.INFO);
+        assertTrue(Log.isEnabled());
+        assertFalse(Log.isDebugEnabled());
+        Log.debug("filtered %s %s", argument, argument);
+        assertEquals(0, formatted[0]);
+
+        Log.print("enabled %s", argument);
+        assertEquals(1, formatted[0]);
+        Log.flush();
+    }
+
+    /**
+     * A message without arguments is logged as is, even if it contains a format specifier.
+     */
+    @Test
+    void testMessageWithoutArguments() {
+        assertDoesNotThrow(() -> Log.print("Invalid time: 100%"));
+        Log.flush();
+    }
+
+    /**
+     * Records are written in order, and flush waits for them.
+     */
+    @Test
+    void testAsyncOrder() {
+        ListHandler target = new ListHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(target, 16);
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "message " + i));
+            if (i % 10 == 9) {
+                handler.flush();
+            }
+        }
+        handler.close();
+        assertEquals(100, target.messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message " + i, target.messages.get(i));
+        }
+    }
+
+    /**
+     * Records that do not fit are dropped and reported once there is room.
+     */
+    @Test
+    void testAsyncDrop() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ListHandler target = new ListHandler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getMessage().equals("first")) {
+                    blocked.countDown();
+                    try {
+                        release.await(); // keep the thread busy while the buffer fills
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.publish(record);
+            }
+        };
+        AsyncLogHandler handler = new AsyncLogHandler(target, 2);
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        blocked.await();
+        for (int i = 0; i < 5; i++) {
+            handler.publish(new LogRecord(Level.INFO, "more " + i));
+        }
+        assertEquals(3, handler.getDropped());
+        release.countDown();
+        handler.close();
+
+        assertEquals(List.of("first", "3 log messages dropped, the log buffer was full", "more 0", "more 1"),
+                target.messages);
+        handler.publish(new LogRecord(Level.INFO, "after close"));
+        assertEquals(4, target.messages.size());
+    }
+}
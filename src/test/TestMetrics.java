@@ -0,0 +1,100 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Metrics;
+import common.MetricsJmx;
+import common.MetricsServer;
+import org.junit.jupiter.api.Test;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JUnit tests for the Metrics class and its exporters.
+ */
+public class TestMetrics {
+
+    /**
+     * Counters, gauges and summaries are written in the Prometheus text format, grouped by
+     * name with their labels.
+     */
+    @Test
+    void testPrometheusText() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter trips = metrics.counter("trips_total", "Trips.", "elevator", "0");
+        trips.increment();
+        trips.add(2);
+        metrics.counter("trips_total", "Trips.", "elevator", "1").increment();
+        assertSame(trips, metrics.counter("trips_total", "Trips.", "elevator", "0"));
+        AtomicInteger depth = new AtomicInteger(4);
+        metrics.gauge("queue_depth", "Depth.", depth::get);
+        metrics.counter("faults_total", "Faults.", () -> 7, "fault", "say \"hi\"");
+        Metrics.Summary latency = metrics.summary("latency_seconds", "Latency.", 1e-3);
+        for (int i = 1; i <= 100; i++) {
+            latency.record(i * 10);
+        }
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# HELP trips_total Trips.\n# TYPE trips_total counter\n"
+                + "trips_total{elevator=\"0\"} 3\ntrips_total{elevator=\"1\"} 1\n"), text);
+        assertTrue(text.contains("# TYPE queue_depth gauge\nqueue_depth 4\n"), text);
+        assertTrue(text.contains("faults_total{fault=\"say \\\"hi\\\"\"} 7\n"), text);
+        assertTrue(text.contains("# TYPE latency_seconds summary\n"), text);
+        assertTrue(text.contains("latency_seconds{quantile=\"0.5\"} 0.5"), text);
+        assertTrue(text.contains("latency_seconds_sum 50.5\n"), text);
+        assertTrue(text.contains("latency_seconds_count 100\n"), text);
+
+        depth.set(9);
+        assertEquals(9.0, metrics.snapshot().get("queue_depth"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("trips_total", "Trips.", () -> 1));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("odd_total", "Odd.", "elevator"));
+    }
+
+    /**
+     * The MBean lists every sample as a read-only attribute.
+     */
+    @Test
+    void testJmx() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("stops_total", "Stops.", "elevator", "2").add(5);
+        MetricsJmx bean = new MetricsJmx(metrics);
+        MBeanAttributeInfo[] attributes = bean.getMBeanInfo().getAttributes();
+        assertEquals(1, attributes.length);
+        assertEquals("stops_total{elevator=\"2\"}", attributes[0].getName());
+        assertEquals(5.0, bean.getAttribute("stops_total{elevator=\"2\"}"));
+        assertThrows(AttributeNotFoundException.class, () -> bean.getAttribute("missing"));
+    }
+
+    /**
+     * The server answers a scrape with the current metrics.
+     */
+    @Test
+    void testHttpScrape() throws IOException {
+        Metrics metrics = new Metrics();
+        Metrics.Counter requests = metrics.counter("requests_total", "Requests.");
+        MetricsServer server = new MetricsServer(metrics);
+        server.start(0);
+        try {
+            requests.add(12);
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                    + MetricsServer.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            String body;
+            try (InputStream in = connection.getInputStream()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertTrue(body.contains("requests_total 12\n"), body);
+        } finally {
+            server.stop();
+        }
+        assertEquals(-1, server.getPort());
+    }
+}
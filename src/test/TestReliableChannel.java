@@ -0,0 +1,134 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Config;
+import common.ReliableChannel;
+import common.Transport;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * JUnit tests for the ReliableChannel class.
+ */
+public class TestReliableChannel {
+
+    /** Moves the ports of these tests away from those of the other tests. */
+    private static final int PORT_OFFSET = 400;
+
+    /**
+     * Every message arrives once over a network that loses a third of the frames and a quarter
+     * of the acks.
+     */
+    @Test
+    void testDeliversEveryMessageOnceOverLossyNetwork() throws Exception {
+        Transport floorTransport = new Transport("localhost", PORT_OFFSET);
+        Transport schedulerTransport = new Transport("localhost", PORT_OFFSET);
+        ReliableChannel floor = floorTransport.channel(Transport.Peer.FLOOR_SUBSYSTEM);
+        ReliableChannel scheduler = schedulerTransport.channel(Transport.Peer.SCHEDULER);
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger frames = new AtomicInteger(), acks = new AtomicInteger();
+
+        // Each side drops some of what it receives before the channel sees it
+        DatagramSocket schedulerSocket = listen(schedulerTransport.getPort(Transport.Peer.SCHEDULER), message -> {
+            if (frames.incrementAndGet() % 3 == 0) {
+                return;
+            }
+            ByteBuffer payload = scheduler.receive(message);
+            if (payload != null) {
+                delivered.add(payload.getLong());
+            }
+        });
+        DatagramSocket floorSocket = listen(floorTransport.getPort(Transport.Peer.FLOOR_SUBSYSTEM), message -> {
+            if (acks.incrementAndGet() % 4 == 0) {
+                return;
+            }
+            assertNull(floor.receive(message));
+        });
+        int count = 500;
+        try {
+            for (long i = 0; i < count; i++) {
+                floor.send(Transport.Peer.SCHEDULER, ByteBuffer.allocate(8).putLong(i).array());
+            }
+            long deadline = System.currentTimeMillis() + 30000;
+            while ((delivered.size() < count || floor.getUnacked() > 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(count, delivered.size());
+            assertEquals(count, new HashSet<>(delivered).size());
+            assertEquals(0, floor.getUnacked());
+            assertEquals(0, floor.getFailed());
+            assertTrue(floor.getRetransmits() > 0);
+            assertTrue(floor.getRto(Transport.Peer.SCHEDULER) >= Config.RELIABLE_MIN_RTO);
+        } finally {
+            schedulerSocket.close();
+            floorSocket.close();
+            floorTransport.close();
+            schedulerTransport.close();
+        }
+    }
+
+    /**
+     * Messages to a peer in the same process are handed over as they are, and messages that
+     * are not frames are received as they are.
+     */
+    @Test
+    void testInProcessMessagesAreNotFramed() throws Exception {
+        Transport transport = Transport.inProcess();
+        List<ByteBuffer> received = Collections.synchronizedList(new ArrayList<>());
+        try {
+            transport.bind(Transport.Peer.SCHEDULER, received::add);
+            ReliableChannel channel = transport.channel(Transport.Peer.FLOOR_SUBSYSTEM);
+            assertSame(channel, transport.channel(Transport.Peer.FLOOR_SUBSYSTEM));
+            byte[] message = {1, 2, 3};
+            channel.send(Transport.Peer.SCHEDULER, message);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertSame(message, received.get(0).array());
+            assertEquals(0, channel.getUnacked());
+
+            ByteBuffer plain = ByteBuffer.wrap(message);
+            assertFalse(ReliableChannel.isFrame(plain));
+            assertSame(plain, channel.receive(plain));
+            assertSame(plain, ReliableChannel.payload(plain));
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * Listen on a port and hand every datagram to a handler on a new thread.
+     */
+    private static DatagramSocket listen(int port, Consumer<ByteBuffer> handler) throws SocketException {
+        DatagramSocket socket = new DatagramSocket(port);
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[1024];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    handler.accept(ByteBuffer.wrap(buffer, 0, packet.getLength()));
+                } catch (IOException e) {
+                    return; // closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return socket;
+    }
+}
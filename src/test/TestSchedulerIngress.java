@@ -0,0 +1,178 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Log;
+import common.MpscRingQueue;
+import elevator.Elevator;
+import elevator.ElevatorInfo;
+import floor.ElevatorRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import scheduler.FleetSnapshot;
+import scheduler.Scheduler;
+import scheduler.SchedulerIngress;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * JUnit tests for the SchedulerIngress class and its MpscRingQueue.
+ */
+public class TestSchedulerIngress {
+
+    /**
+     * Put the default level back after each test.
+     */
+    @AfterEach
+    public void restoreLevel() {
+        Log.setLevel(Level.INFO);
+    }
+
+    /**
+     * The queue keeps the order of the elements and refuses new ones when full.
+     */
+    @Test
+    void testQueueOrderAndCapacity() {
+        MpscRingQueue<Integer> queue = new MpscRingQueue<>(3);
+        assertEquals(4, queue.capacity()); // rounded up to a power of two
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(0, queue.poll());
+        assertTrue(queue.offer(4)); // the freed slot is used on the next lap
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 10));
+        assertEquals(List.of(1, 2, 3, 4), drained);
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Every element offered by several producers at once is taken exactly once.
+     */
+    @Test
+    void testConcurrentProducers() throws InterruptedException {
+        MpscRingQueue<Integer> queue = new MpscRingQueue<>(64);
+        int producers = 4;
+        int perProducer = 20000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        Set<Integer> seen = new HashSet<>();
+        while (seen.size() < producers * perProducer) {
+            Integer element = queue.poll();
+            if (element != null) {
+                assertTrue(seen.add(element), "taken twice: " + element);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Elevator states sent over the network reach the Scheduler's view of the fleet.
+     */
+    @Test
+    void testMessagesReachScheduler() throws IOException, InterruptedException {
+        Log.disable();
+        Scheduler scheduler = new Scheduler();
+        SchedulerIngress ingress = new SchedulerIngress(scheduler, 0, 16);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            ingress.start();
+            for (int id = 0; id < 3; id++) {
+                send(socket, ingress, new ElevatorInfo(id, Elevator.State.IDLE, id + 2, ElevatorRequest.ButtonDirection.NONE, 0, 0, 1));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ingress.getProcessed() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, ingress.getProcessed());
+            assertEquals(0, ingress.getDropped());
+            FleetSnapshot fleet = scheduler.getFleetState().snapshot();
+            assertEquals(3, fleet.size());
+            assertEquals(4, fleet.getFloor(fleet.indexOf(2)));
+        } finally {
+            ingress.close();
+        }
+    }
+
+    /**
+     * Messages that do not fit in the queue while the dispatch worker is stopped are counted as dropped.
+     */
+    @Test
+    void testDropsCountedWhenFull() throws IOException {
+        Log.disable();
+        SchedulerIngress ingress = new SchedulerIngress(new Scheduler(), 0, 4);
+        try {
+            ByteBuffer message = ByteBuffer.allocate(ElevatorInfo.SIZE);
+            new ElevatorInfo(0, Elevator.State.IDLE, 0, ElevatorRequest.ButtonDirection.NONE).encode(message);
+            for (int i = 0; i < 10; i++) {
+                message.flip();
+                ingress.submit(message);
+            }
+            assertEquals(10, ingress.getReceived());
+            assertEquals(6, ingress.getDropped());
+            assertEquals(4, ingress.getQueueDepth());
+            assertEquals(4, ingress.getMaxQueueDepth());
+        } finally {
+            ingress.close();
+        }
+    }
+
+    /**
+     * A datagram that cannot be read is counted and skipped, and the worker goes on with the
+     * messages after it.
+     */
+    @Test
+    void testMalformedMessageSkipped() throws IOException, InterruptedException {
+        Log.disable();
+        Scheduler scheduler = new Scheduler();
+        SchedulerIngress ingress = new SchedulerIngress(scheduler, 0, 16);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            ingress.start();
+            byte[] bad = "1;2;3;4;5;6;7;8".getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(bad, bad.length, InetAddress.getLoopbackAddress(), ingress.getLocalPort()));
+            send(socket, ingress, new ElevatorInfo(0, Elevator.State.IDLE, 5, ElevatorRequest.ButtonDirection.NONE, 0, 0, 1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ingress.getProcessed() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, ingress.getProcessed());
+            assertEquals(1, ingress.getMalformed());
+            FleetSnapshot fleet = scheduler.getFleetState().snapshot();
+            assertEquals(1, fleet.size());
+            assertEquals(5, fleet.getFloor(fleet.indexOf(0)));
+        } finally {
+            ingress.close();
+        }
+    }
+
+    private static void send(DatagramSocket socket, SchedulerIngress ingress, ElevatorInfo info) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ElevatorInfo.SIZE);
+        info.encode(buffer);
+        socket.send(new DatagramPacket(buffer.array(), buffer.position(), InetAddress.getLoopbackAddress(), ingress.getLocalPort()));
+    }
+}
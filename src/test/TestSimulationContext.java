@@ -0,0 +1,96 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.BuildingConfig;
+import common.Log;
+import common.Metrics;
+import common.SimulationContext;
+import common.Transport;
+import common.VirtualClock;
+import elevator.Elevator;
+import elevator.ElevatorSubsystem;
+import org.junit.jupiter.api.Test;
+import scheduler.Scheduler;
+
+import java.time.LocalTime;
+import java.util.logging.Level;
+
+/**
+ * JUnit tests for the systems keeping the SimulationContext they were created in.
+ */
+public class TestSimulationContext {
+
+    /**
+     * A resolved context has every value, and systems created in it keep using its values when
+     * called from a thread outside of it.
+     */
+    @Test
+    void testSystemsKeepTheirContext() {
+        VirtualClock clock = new VirtualClock(LocalTime.of(9, 30));
+        Metrics metrics = new Metrics();
+        Transport transport = Transport.inProcess();
+        SimulationContext context = SimulationContext.current().withConfig(new BuildingConfig(30, 2, 5))
+                .withClock(clock).withMetrics(metrics).withTransport(transport).withJournal(null).resolve();
+        assertNotNull(context.getJournal());
+        assertNull(SimulationContext.current().getGui());
+        try {
+            Scheduler scheduler = new Scheduler(context, null);
+            ElevatorSubsystem elevatorSubsystem = new ElevatorSubsystem(context, scheduler, 0);
+            Elevator elevator = new Elevator(0, elevatorSubsystem);
+
+            assertSame(context, scheduler.getContext());
+            assertSame(context, elevator.getContext());
+            assertEquals(30, elevator.getContext().getConfig().getFloors());
+            assertSame(clock, elevator.getContext().getClock());
+            assertEquals(LocalTime.of(9, 30), elevator.getContext().getClock().time());
+            assertTrue(metrics.snapshot().containsKey("elevator_busy_seconds{elevator=\"0\"}"));
+            assertNotSame(metrics, Metrics.get());
+
+            // Created in the context on this thread, it keeps the context afterwards
+            Scheduler captured = context.call(() -> new Scheduler());
+            assertSame(clock, captured.getContext().getClock());
+            assertSame(transport, captured.getContext().getTransport());
+        } finally {
+            transport.close();
+            clock.close();
+        }
+    }
+
+    /**
+     * A context sets its own log level, leaving the process level alone.
+     */
+    @Test
+    void testLogLevel() {
+        Log.setLevel(Level.INFO);
+        assertTrue(Log.isEnabled());
+        SimulationContext.current().withLogLevel(Level.OFF).run(() -> {
+            assertFalse(Log.isEnabled());
+            assertFalse(Log.isDebugEnabled());
+        });
+        SimulationContext.current().withLogLevel(Level.FINE).run(() -> assertTrue(Log.isDebugEnabled()));
+        assertTrue(Log.isEnabled());
+        assertFalse(Log.isDebugEnabled());
+        assertNull(SimulationContext.current().getLogLevel());
+    }
+
+    /**
+     * A port offset moves every peer, so two simulations can use the network on one host.
+     */
+    @Test
+    void testPortOffset() throws Exception {
+        Transport transport = new Transport("localhost", 100);
+        try {
+            assertEquals(5100, transport.getPort(Transport.Peer.SCHEDULER));
+            assertEquals(6100, transport.getPort(Transport.Peer.ELEVATOR_SUBSYSTEM));
+            assertEquals(12445, transport.getAddress(Transport.Peer.FLOOR_SUBSYSTEM).getPort());
+        } finally {
+            transport.close();
+        }
+        assertEquals(5000, Transport.inProcess().getPort(Transport.Peer.SCHEDULER));
+        assertEquals(7, Transport.parsePortOffset(new String[] {"--port-offset", "7"}, 0));
+        assertThrows(IllegalArgumentException.class, () -> Transport.parsePortOffset(new String[] {"--port-offset", "60000"}, 0));
+        assertThrows(IllegalArgumentException.class, () -> Transport.parsePortOffset(new String[] {"--port-offset"}, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Transport("localhost", -1));
+    }
+}
@@ -0,0 +1,110 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Config;
+import common.SimulationContext;
+import common.Transport;
+import common.VirtualClock;
+import elevator.Elevator;
+import elevator.ElevatorStatus;
+import elevator.StatusBatcher;
+import floor.ElevatorRequest.ButtonDirection;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JUnit tests for the StatusBatcher and ElevatorStatus classes.
+ */
+public class TestStatusBatcher {
+
+    /**
+     * The updates of one flush interval reach the floors in one message, with the latest
+     * position of each elevator and the passengers of all its stops.
+     */
+    @Test
+    void testUpdatesAreCoalescedPerFlush() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        Transport transport = Transport.inProcess();
+        List<ByteBuffer> received = Collections.synchronizedList(new ArrayList<>());
+        try {
+            SimulationContext context = SimulationContext.current().withClock(clock).withTransport(transport).resolve();
+            context.run(() -> transport.bind(Transport.Peer.FLOOR_SUBSYSTEM, received::add)); // inbox held on the virtual clock
+            StatusBatcher batcher = new StatusBatcher(context, 3);
+            clock.hold(Thread.currentThread()); // keep time still until all updates are added
+            batcher.add(0, Elevator.State.TRANSPORTING, 1, ButtonDirection.UP, 4, 0, 1);
+            batcher.add(2, Elevator.State.TRANSPORTING, 9, ButtonDirection.DOWN, 5, 0, 0);
+            batcher.add(0, Elevator.State.TRANSPORTING, 2, ButtonDirection.UP, 4, 1, 0);
+            batcher.add(0, Elevator.State.TRANSPORTING, 3, ButtonDirection.UP, 4, 0, 2);
+            clock.release(Thread.currentThread());
+            clock.awaitIdle();
+
+            assertEquals(Config.STATUS_FLUSH_TIME, clock.millis());
+            assertEquals(1, received.size());
+            assertEquals(1, batcher.getBatchesSent());
+            ByteBuffer message = received.get(0);
+            assertTrue(ElevatorStatus.isBatch(message));
+            List<ElevatorStatus> statuses = ElevatorStatus.decode(message);
+            assertEquals(2, statuses.size());
+            ElevatorStatus first = statuses.get(0);
+            assertEquals(0, first.getElevatorId());
+            assertEquals(3, first.getFloor());
+            assertEquals(1, first.getUnloaded());
+            assertEquals(3, first.getLoaded());
+            ElevatorStatus second = statuses.get(1);
+            assertEquals(2, second.getElevatorId());
+            assertEquals(Elevator.State.TRANSPORTING, second.getState());
+            assertEquals(9, second.getFloor());
+            assertEquals(ButtonDirection.DOWN, second.getDirection());
+            assertEquals(5, second.getDestinationFloor());
+        } finally {
+            transport.close();
+            clock.close();
+        }
+    }
+
+    /**
+     * With no flush interval every update is sent as it is added, and a batch of more
+     * elevators than fit a datagram is split.
+     */
+    @Test
+    void testNoFlushTimeAndLargeBatches() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        Transport transport = Transport.inProcess();
+        List<ByteBuffer> received = Collections.synchronizedList(new ArrayList<>());
+        try {
+            SimulationContext context = SimulationContext.current().withClock(clock).withTransport(transport).resolve();
+            context.run(() -> transport.bind(Transport.Peer.FLOOR_SUBSYSTEM, received::add)); // inbox held on the virtual clock
+            StatusBatcher batcher = new StatusBatcher(context, 1);
+            batcher.setFlushTime(0);
+            clock.hold(Thread.currentThread()); // as an elevator thread is
+            batcher.add(0, Elevator.State.IDLE, 1, ButtonDirection.NONE, 1, 0, 0);
+            batcher.add(1, Elevator.State.IDLE, 2, ButtonDirection.NONE, 2, 0, 0); // past the elevators it was made for
+            clock.release(Thread.currentThread());
+            clock.awaitIdle();
+            assertEquals(2, received.size());
+            assertEquals(0, clock.millis());
+            assertThrows(IllegalArgumentException.class, () -> batcher.setFlushTime(-1));
+        } finally {
+            transport.close();
+            clock.close();
+        }
+
+        List<ElevatorStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            statuses.add(new ElevatorStatus(i, Elevator.State.FAULT, i, ButtonDirection.UP, i + 1, i, i));
+        }
+        List<byte[]> messages = ElevatorStatus.encode(statuses);
+        assertEquals((100 + ElevatorStatus.MAX_ENTRIES - 1) / ElevatorStatus.MAX_ENTRIES, messages.size());
+        List<ElevatorStatus> decoded = new ArrayList<>();
+        for (byte[] message : messages) {
+            assertTrue(message.length <= 1024);
+            decoded.addAll(ElevatorStatus.decode(ByteBuffer.wrap(message)));
+        }
+        assertEquals(statuses.toString(), decoded.toString());
+    }
+}
@@ -0,0 +1,107 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import elevator.StopTable;
+import floor.ElevatorRequest;
+import floor.ElevatorRequest.ButtonDirection;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * JUnit tests for the StopTable class.
+ */
+public class TestStopTable {
+
+    private static ElevatorRequest request(int floor, int destination) {
+        return new ElevatorRequest(LocalTime.NOON, floor, destination > floor ? ButtonDirection.UP : ButtonDirection.DOWN, destination);
+    }
+
+    /**
+     * The queue is ordered by pickup floor, then by the order requests were added.
+     */
+    @Test
+    void testOrder() {
+        StopTable table = new StopTable();
+        ElevatorRequest a = request(4, 1);
+        ElevatorRequest b = request(2, 4);
+        ElevatorRequest c = request(2, 5);
+        table.add(a);
+        table.add(b);
+        table.add(c);
+        assertEquals(3, table.size());
+        assertSame(b, table.peek());
+        assertEquals(List.of(b, c, a), new ArrayList<>(table));
+
+        table.setDescending(true);
+        assertSame(a, table.peek());
+        assertSame(a, table.poll());
+        assertSame(b, table.poll());
+        assertSame(c, table.poll());
+        assertNull(table.poll());
+        assertTrue(table.isEmpty());
+    }
+
+    /**
+     * Waiting passengers are found at their pickup floor, passengers on board at their destination.
+     */
+    @Test
+    void testStops() {
+        StopTable table = new StopTable(4); // grows past 4 floors
+        ElevatorRequest up = request(2, 9);
+        ElevatorRequest down = request(7, 3);
+        table.add(up);
+        table.add(down);
+        assertTrue(table.hasPickup(2, ButtonDirection.UP));
+        assertFalse(table.hasPickup(2, ButtonDirection.DOWN));
+        assertTrue(table.hasPickup(7, ButtonDirection.DOWN));
+        assertFalse(table.hasStopAt(9));
+        assertFalse(table.hasStopAt(5));
+        assertEquals(0, table.getLoad());
+
+        table.board(up);
+        assertTrue(up.isLoaded());
+        assertFalse(table.hasStopAt(2));
+        assertTrue(table.hasDropOff(9));
+        assertEquals(List.of(up), table.requestsTo(9));
+        assertEquals(1, table.getLoad());
+
+        assertTrue(table.remove(up));
+        assertFalse(table.remove(up));
+        assertFalse(table.hasDropOff(9));
+        assertEquals(0, table.getLoad());
+        assertEquals(1, table.size());
+
+        table.clear();
+        assertFalse(table.hasStopAt(7));
+        assertNull(table.peek());
+        assertTrue(table.requestsFrom(100).isEmpty());
+    }
+
+    /**
+     * Requests can be removed while iterating.
+     */
+    @Test
+    void testIteratorRemove() {
+        StopTable table = new StopTable();
+        ElevatorRequest a = request(1, 3);
+        ElevatorRequest b = request(1, 4);
+        ElevatorRequest c = request(2, 5);
+        table.add(a);
+        table.add(b);
+        table.add(c);
+        Iterator<ElevatorRequest> iterator = table.iterator();
+        assertSame(a, iterator.next());
+        iterator.remove();
+        assertSame(b, iterator.next());
+        assertSame(c, iterator.next());
+        iterator.remove();
+        assertFalse(iterator.hasNext());
+        assertEquals(List.of(b), new ArrayList<>(table));
+        assertFalse(table.hasStopAt(2));
+    }
+}
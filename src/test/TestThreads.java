@@ -0,0 +1,75 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Clock;
+import common.RealTimeClock;
+import common.Threads;
+import common.VirtualClock;
+import elevator.Elevator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit tests for the Threads class.
+ */
+public class TestThreads {
+
+    /**
+     * Put platform threads and the real time clock back after each test.
+     */
+    @AfterEach
+    public void restore() {
+        Threads.setVirtual(false);
+        Clock.set(new RealTimeClock());
+    }
+
+    /**
+     * Platform threads get the name and daemon flag asked for, and are not started.
+     */
+    @Test
+    void testPlatformThread() throws InterruptedException {
+        boolean[] ran = new boolean[1];
+        Thread thread = Threads.newThread("Test Thread", () -> ran[0] = true, true);
+        assertEquals("Test Thread", thread.getName());
+        assertTrue(thread.isDaemon());
+        assertEquals(Thread.State.NEW, thread.getState());
+
+        thread.start();
+        thread.join(1000);
+        assertTrue(ran[0]);
+    }
+
+    /**
+     * Virtual mode can only be turned on if the JVM has virtual threads, and threads still run either way.
+     */
+    @Test
+    void testVirtualMode() throws InterruptedException {
+        assertEquals(Threads.isVirtualSupported(), Threads.setVirtual(true));
+        assertEquals(Threads.isVirtualSupported(), Threads.isVirtual());
+
+        boolean[] ran = new boolean[1];
+        Thread thread = Threads.start("Test Thread", () -> ran[0] = true, false);
+        thread.join(1000);
+        assertTrue(ran[0]);
+        assertEquals("Test Thread", thread.getName());
+    }
+
+    /**
+     * An elevator runs on a thread named after it, which goes idle on the virtual clock.
+     */
+    @Test
+    void testElevatorThread() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        Clock.set(clock);
+        Threads.setVirtual(true);
+        Elevator elevator = new Elevator(7, null);
+        assertNull(elevator.getThread());
+
+        elevator.start();
+        clock.awaitIdle(); // returns once the elevator waits for a request
+        assertEquals("Elevator 7", elevator.getThread().getName());
+        assertTrue(elevator.getThread().isAlive());
+        assertEquals(Elevator.State.IDLE, elevator.getCurrentStateName());
+    }
+}
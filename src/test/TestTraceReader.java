@@ -0,0 +1,179 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import floor.ElevatorRequest;
+import floor.TraceReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JUnit tests for the TraceReader class.
+ */
+public class TestTraceReader {
+
+    /** The trace file of the test. */
+    private Path file;
+
+    /**
+     * Delete the trace file after each test.
+     */
+    @AfterEach
+    public void deleteFile() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Write a trace file.
+     */
+    private String write(String... lines) throws IOException {
+        file = Files.createTempFile("test", ".csv");
+        Files.write(file, List.of(lines));
+        return file.toString();
+    }
+
+    /**
+     * List the sorted runs in the temporary directory.
+     */
+    private static List<Path> listRuns() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(f -> f.getFileName().toString().startsWith("trace")
+                    && f.getFileName().toString().endsWith(".run")).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read every request left in a trace.
+     */
+    private static List<ElevatorRequest> readAll(TraceReader reader) throws IOException {
+        List<ElevatorRequest> requests = new ArrayList<>();
+        ElevatorRequest request;
+        while ((request = reader.next()) != null) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    /**
+     * A sorted trace is streamed as it is, with every field and the optional fault.
+     */
+    @Test
+    void testSorted() throws IOException {
+        String trace = write(
+                "14:15:05.000; 2; Up; 4; BAD_REQUEST",
+                "14:15:07.5; 2; down; 1;",
+                "",
+                "14:15:11; 12; UP; 15; DEATH");
+        try (TraceReader reader = TraceReader.open(trace)) {
+            assertTrue(reader.isSorted());
+            assertEquals(3, reader.getCount());
+            assertEquals(2, reader.peek().getFloorNumber());
+
+            List<ElevatorRequest> requests = readAll(reader);
+            assertEquals(3, requests.size());
+            assertEquals(LocalTime.of(14, 15, 5), requests.get(0).getTime());
+            assertEquals("BAD_REQUEST", requests.get(0).getFault());
+            assertEquals(LocalTime.of(14, 15, 7, 500_000_000), requests.get(1).getTime());
+            assertEquals(ElevatorRequest.ButtonDirection.DOWN, requests.get(1).getButtonDirection());
+            assertEquals("NO_FAULT", requests.get(1).getFault());
+            assertEquals(12, requests.get(2).getFloorNumber());
+            assertEquals(15, requests.get(2).getButtonId());
+            assertEquals("DEATH", requests.get(2).getFault());
+            assertNull(reader.peek());
+        }
+    }
+
+    /**
+     * Lines that are not valid requests are skipped and not counted.
+     */
+    @Test
+    void testInvalidLines() throws IOException {
+        String trace = write(
+                "14:15:05.000; 2; Up; 4",
+                "not a time; 2; Up; 4",
+                "14:15:06.000; two; Up; 4",
+                "14:15:07.000; 2; Sideways; 4",
+                "14:15:08.000; 2; Up",
+                "25:00:00.000; 2; Up; 4",
+                "14:15:09.000; 3; Down; 1");
+        try (TraceReader reader = TraceReader.open(trace)) {
+            List<ElevatorRequest> requests = readAll(reader);
+            assertEquals(2, reader.getCount());
+            assertEquals(2, requests.size());
+            assertEquals(3, requests.get(1).getFloorNumber());
+        }
+    }
+
+    /**
+     * A trace out of order is merge sorted from several runs on disk, keeping requests with
+     * the same time in file order, and the runs are deleted when the reader is closed.
+     */
+    @Test
+    void testExternalSort() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int second = (i * 37) % 50; // out of order, every time twice
+            lines.add(String.format("14:15:%02d.000; %d; Up; %d; %s", second, i, i + 1, i == 42 ? "DOOR_NOT_OPEN" : ""));
+        }
+        String trace = write(lines.toArray(new String[0]));
+
+        List<Path> existing = listRuns();
+        TraceReader reader = TraceReader.open(trace, 8);
+        assertFalse(reader.isSorted());
+        assertEquals(100, reader.getCount());
+        assertEquals(13, reader.getRunCount());
+        List<Path> runs = listRuns();
+        runs.removeAll(existing);
+        assertEquals(13, runs.size());
+
+        List<ElevatorRequest> requests = readAll(reader);
+        assertEquals(100, requests.size());
+        for (int i = 1; i < requests.size(); i++) {
+            ElevatorRequest before = requests.get(i - 1);
+            ElevatorRequest after = requests.get(i);
+            assertFalse(after.getTime().isBefore(before.getTime()));
+            if (after.getTime().equals(before.getTime())) {
+                assertTrue(after.getFloorNumber() > before.getFloorNumber());
+            }
+            assertEquals(after.getFloorNumber() + 1, after.getButtonId());
+        }
+        for (ElevatorRequest request : requests) {
+            assertEquals(request.getFloorNumber() == 42 ? "DOOR_NOT_OPEN" : "NO_FAULT", request.getFault());
+        }
+
+        reader.close();
+        for (Path run : runs) {
+            assertFalse(Files.exists(run));
+        }
+    }
+
+    /**
+     * A trace out of order that fits in one run is sorted in memory.
+     */
+    @Test
+    void testSortInMemory() throws IOException {
+        String trace = write(
+                "14:15:09.000; 1; Up; 2",
+                "14:15:05.000; 2; Up; 3",
+                "14:15:07.000; 3; Up; 4");
+        try (TraceReader reader = TraceReader.open(trace)) {
+            assertFalse(reader.isSorted());
+            assertEquals(0, reader.getRunCount());
+            List<ElevatorRequest> requests = readAll(reader);
+            assertEquals(2, requests.get(0).getFloorNumber());
+            assertEquals(3, requests.get(1).getFloorNumber());
+            assertEquals(1, requests.get(2).getFloorNumber());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import floor.CSVParser;
+import floor.ElevatorRequest;
+import floor.TraceReader;
+import floor.TrafficGenerator;
+import main.BatchRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import scheduler.EtaDispatchStrategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * JUnit tests for the TrafficGenerator class.
+ */
+public class TestTrafficGenerator {
+
+    private static final LocalTime START = LocalTime.of(8, 0);
+
+    /** The trace file of the test. */
+    private Path file;
+
+    /**
+     * Delete the trace file after each test.
+     */
+    @AfterEach
+    public void deleteFile() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<ElevatorRequest> generate(TrafficGenerator generator, Duration length) {
+        List<ElevatorRequest> requests = new ArrayList<>();
+        for (Iterator<ElevatorRequest> it = generator.generate(START, length); it.hasNext(); ) {
+            requests.add(it.next());
+        }
+        return requests;
+    }
+
+    /**
+     * The same seed generates the same calls, in time order, at about the set rate, and
+     * another seed other calls.
+     */
+    @Test
+    void testSeededPoissonArrivals() {
+        TrafficGenerator generator = new TrafficGenerator(20, 42).withRate(30);
+        List<ElevatorRequest> first = generate(generator, Duration.ofHours(2));
+        List<ElevatorRequest> second = generate(generator, Duration.ofHours(2));
+        assertEquals(first.size(), second.size());
+        assertEquals(first.size(), generator.count(START, Duration.ofHours(2)));
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getTime(), second.get(i).getTime());
+            assertEquals(first.get(i).getFloorNumber(), second.get(i).getFloorNumber());
+            assertEquals(first.get(i).getButtonId(), second.get(i).getButtonId());
+        }
+        assertEquals(3600, first.size(), 240); // 4 standard deviations
+        for (int i = 0; i < first.size(); i++) {
+            ElevatorRequest request = first.get(i);
+            assertNotEquals(request.getFloorNumber(), request.getButtonId());
+            assertTrue(request.getButtonId() >= 0 && request.getButtonId() < 20);
+            assertEquals(request.getButtonId() > request.getFloorNumber() ? ElevatorRequest.ButtonDirection.UP
+                    : ElevatorRequest.ButtonDirection.DOWN, request.getButtonDirection());
+            assertFalse(i > 0 && request.getTime().isBefore(first.get(i - 1).getTime()));
+            assertTrue(request.getTime().isBefore(START.plusHours(2)));
+        }
+
+        List<ElevatorRequest> other = generate(new TrafficGenerator(20, 43).withRate(30), Duration.ofHours(2));
+        assertNotEquals(first.get(0).getTime(), other.get(0).getTime());
+    }
+
+    /**
+     * The patterns send most calls from or to the lobby, the rates change by period, a given
+     * matrix is followed and faults are injected at their probability.
+     */
+    @Test
+    void testPatternsRatesAndFaults() {
+        TrafficGenerator upPeak = new TrafficGenerator(10, 1).withPattern(TrafficGenerator.Pattern.UP_PEAK)
+                .withLobby(2).withRate(60);
+        List<ElevatorRequest> up = generate(upPeak, Duration.ofHours(1));
+        long fromLobby = up.stream().filter(r -> r.getFloorNumber() == 2).count();
+        assertEquals(0.85, (double) fromLobby / up.size(), 0.03);
+
+        List<ElevatorRequest> down = generate(upPeak.withPattern(TrafficGenerator.Pattern.DOWN_PEAK), Duration.ofHours(1));
+        long toLobby = down.stream().filter(r -> r.getButtonId() == 2).count();
+        assertEquals(0.85, (double) toLobby / down.size(), 0.03);
+
+        // 10 calls a minute for the first half hour, 100 after
+        TrafficGenerator ramp = new TrafficGenerator(10, 5).withRates(Duration.ofMinutes(30), 10, 100);
+        List<ElevatorRequest> calls = generate(ramp, Duration.ofHours(1));
+        long early = calls.stream().filter(r -> r.getTime().isBefore(START.plusMinutes(30))).count();
+        assertEquals(300, early, 70);
+        assertEquals(3000, calls.size() - early, 220);
+
+        double[][] matrix = new double[10][10];
+        matrix[3][7] = 1;
+        matrix[7][3] = 3;
+        List<ElevatorRequest> pairs = generate(new TrafficGenerator(10, 9).withMatrix(matrix).withRate(60),
+                Duration.ofHours(1));
+        assertTrue(pairs.stream().allMatch(r -> r.getFloorNumber() == 3 && r.getButtonId() == 7
+                || r.getFloorNumber() == 7 && r.getButtonId() == 3));
+        long downs = pairs.stream().filter(r -> r.getFloorNumber() == 7).count();
+        assertEquals(0.75, (double) downs / pairs.size(), 0.05);
+
+        TrafficGenerator faulty = new TrafficGenerator(10, 2).withRate(100)
+                .withFault(CSVParser.ElevatorFault.DOOR_NOT_OPEN, 0.1)
+                .withFault(CSVParser.ElevatorFault.DEATH, 0.02);
+        List<ElevatorRequest> faults = generate(faulty, Duration.ofHours(1));
+        long doors = faults.stream().filter(r -> r.getElevatorFault() == CSVParser.ElevatorFault.DOOR_NOT_OPEN).count();
+        long deaths = faults.stream().filter(r -> r.getElevatorFault() == CSVParser.ElevatorFault.DEATH).count();
+        assertEquals(0.1, (double) doors / faults.size(), 0.015);
+        assertEquals(0.02, (double) deaths / faults.size(), 0.007);
+
+        assertThrows(IllegalArgumentException.class, () -> faulty.withFault(CSVParser.ElevatorFault.WRONG_FLOOR, 0.9));
+        assertThrows(IllegalArgumentException.class, () -> upPeak.withRates(Duration.ofMinutes(1), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> upPeak.generate(LocalTime.of(23, 0), Duration.ofHours(2)));
+    }
+
+    /**
+     * A written trace reads back as the generated calls, and generated calls run through the
+     * systems straight from the generator.
+     */
+    @Test
+    void testCsvAndDirectRun() throws IOException, InterruptedException {
+        TrafficGenerator generator = new TrafficGenerator(22, 11).withPattern(TrafficGenerator.Pattern.LUNCH)
+                .withRate(20).withFault(CSVParser.ElevatorFault.BAD_REQUEST, 0.2);
+        file = Files.createTempFile("traffic", ".csv");
+        int written = generator.writeCsv(file, START, Duration.ofMinutes(30));
+        List<ElevatorRequest> generated = generate(generator, Duration.ofMinutes(30));
+        assertEquals(generated.size(), written);
+        try (TraceReader trace = TraceReader.open(file.toString())) {
+            assertTrue(trace.isSorted());
+            assertEquals(written, trace.getCount());
+            for (ElevatorRequest expected : generated) {
+                ElevatorRequest read = trace.next();
+                assertEquals(expected.getTime(), read.getTime());
+                assertEquals(expected.getFloorNumber(), read.getFloorNumber());
+                assertEquals(expected.getButtonDirection(), read.getButtonDirection());
+                assertEquals(expected.getButtonId(), read.getButtonId());
+                assertEquals(expected.getElevatorFault(), read.getElevatorFault());
+            }
+            assertNull(trace.next());
+        }
+
+        TrafficGenerator small = new TrafficGenerator(22, 4).withPattern(TrafficGenerator.Pattern.UP_PEAK).withRate(4);
+        BatchRunner.Result result = BatchRunner.run(small, START, Duration.ofMinutes(5), 3, EtaDispatchStrategy::new);
+        assertEquals(small.count(START, Duration.ofMinutes(5)), result.getRequests());
+        assertEquals(result.getRequests(), result.getCompleted());
+    }
+}
@@ -1,4 +1,5 @@
 package test;
+import common.Transport;
 import floor.ElevatorRequest;
 import floor.Floor;
 import floor.FloorSubsystem;
@@ -64,4 +65,22 @@ public class TestUDPCommunications {
         serverSocket.close();
         clientSocket.close();
     }
+
+    @Test
+    public void testTransportSendToPeer() throws Exception {
+        DatagramSocket serverSocket = new DatagramSocket(Transport.Peer.FLOOR_SUBSYSTEM.getPort());
+
+        // Send twice through the shared transport, both should arrive on the peer's port
+        Transport.get().send(Transport.Peer.FLOOR_SUBSYSTEM, "First".getBytes());
+        Transport.get().send(Transport.Peer.FLOOR_SUBSYSTEM, "Second".getBytes());
+
+        byte[] receiveData = new byte[1024];
+        DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+        serverSocket.receive(receivePacket);
+        assertEquals("First", new String(receivePacket.getData(), 0, receivePacket.getLength()));
+        serverSocket.receive(receivePacket);
+        assertEquals("Second", new String(receivePacket.getData(), 0, receivePacket.getLength()));
+
+        serverSocket.close();
+    }
 }
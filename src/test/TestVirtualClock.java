@@ -0,0 +1,104 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import common.Clock;
+import common.Config;
+import common.RealTimeClock;
+import common.VirtualClock;
+import elevator.Elevator;
+import elevator.ElevatorSubsystem;
+import floor.ElevatorRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JUnit tests for the VirtualClock class.
+ */
+public class TestVirtualClock {
+
+    /**
+     * Put the real time clock back after each test.
+     */
+    @AfterEach
+    public void restoreClock() {
+        Clock.set(new RealTimeClock());
+    }
+
+    /**
+     * Scheduled tasks run in time order, not in the order they were added.
+     */
+    @Test
+    void testScheduleOrder() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        List<Long> times = Collections.synchronizedList(new ArrayList<>());
+        clock.hold(Thread.currentThread()); // keep time still until all tasks are added
+        clock.schedule(30000, () -> times.add(clock.millis()));
+        clock.schedule(10000, () -> times.add(clock.millis()));
+        clock.schedule(20000, () -> times.add(clock.millis()));
+        clock.release(Thread.currentThread());
+        clock.awaitIdle();
+
+        assertEquals(List.of(10000L, 20000L, 30000L), times);
+    }
+
+    /**
+     * A held thread sleeping for an hour returns straight away with the clock an hour ahead.
+     */
+    @Test
+    void testSleep() {
+        VirtualClock clock = new VirtualClock(LocalTime.of(14, 0));
+        clock.hold(Thread.currentThread());
+        assertTimeout(java.time.Duration.ofSeconds(1), () -> clock.sleep(3600000));
+        clock.release(Thread.currentThread());
+
+        assertEquals(3600000, clock.millis());
+        assertEquals(LocalTime.of(15, 0), clock.time());
+    }
+
+    /**
+     * Time does not move while a held thread is still working.
+     */
+    @Test
+    void testHeldThreadStopsTime() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        clock.hold(Thread.currentThread());
+        Thread sleeper = new Thread(() -> {
+            try {
+                clock.sleep(5000);
+            } catch (InterruptedException e) {}
+        });
+        sleeper.start();
+        Thread.sleep(100);
+        assertEquals(0, clock.millis());
+
+        clock.release(Thread.currentThread());
+        sleeper.join(1000);
+        assertEquals(5000, clock.millis());
+    }
+
+    /**
+     * An elevator driven on the virtual clock moves floors without waiting in real time.
+     */
+    @Test
+    void testElevatorOnVirtualClock() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        Clock.set(clock);
+        Elevator elevator = new Elevator(0, new ElevatorSubsystem(0));
+        elevator.start();
+        elevator.addRequestToElevatorQueue(new ElevatorRequest(LocalTime.now(), 0, ElevatorRequest.ButtonDirection.UP, 3));
+
+        long start = System.currentTimeMillis();
+        clock.awaitIdle();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        assertEquals(3, elevator.getCurrentFloor());
+        assertTrue(elevator.getElevatorQueue().isEmpty());
+        assertTrue(clock.millis() >= 2L * Config.TIME_TO_TRAVEL_1_FLOOR);
+    }
+}